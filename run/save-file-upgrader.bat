@@ -1 +1 @@
-start javaw -cp ./lib/* campaignencyclopedia.data.persistence.SaveFileUpgrader
\ No newline at end of file
+java -cp ./lib/* campaignencyclopedia.data.persistence.SaveFileUpgrader %*
\ No newline at end of file
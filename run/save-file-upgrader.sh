@@ -1 +1 @@
-java -cp ":./lib/*" campaignencyclopedia.data.persistence.SaveFileUpgrader
+java -cp ":./lib/*" campaignencyclopedia.data.persistence.SaveFileUpgrader "$@"
@@ -37,6 +37,19 @@ public class Campaign {
      * @param cal the campaign calendar.
      */
     public Campaign(String name, Set<Entity> entities, Map<UUID, RelationshipManager> relationships, Set<TimelineEntry> timelineData, CampaignCalendar cal) {
+        this(name, entities, relationships, timelineData, cal, true);
+    }
+
+    /**
+     * Constructor.
+     * @param name The name of the Campaign.
+     * @param entities The Entity data that makes up this Campaign's primary content.
+     * @param relationships the relationships in the campaign.
+     * @param timelineData the TimelineEntry data for the Campaign.
+     * @param cal the campaign calendar.
+     * @param copy true if the supplied collections should be copied, false if they may be held as is.
+     */
+    private Campaign(String name, Set<Entity> entities, Map<UUID, RelationshipManager> relationships, Set<TimelineEntry> timelineData, CampaignCalendar cal, boolean copy) {
         if (name == null || name.isEmpty()) {
             throw new IllegalArgumentException("Parameter 'name' must not be null or empty.");
         }
@@ -50,10 +63,30 @@ public class Campaign {
             throw new IllegalArgumentException("Parameter 'cal' must not be null.");
         }
         m_name = name;
-        m_entities = new HashSet<>(entities);
-        m_timelineEntries = new HashSet<>(timelineData);
         m_calendar = cal;
-        m_relationships = new HashMap<>(relationships);
+        if (copy) {
+            m_entities = new HashSet<>(entities);
+            m_timelineEntries = new HashSet<>(timelineData);
+            m_relationships = new HashMap<>(relationships);
+        } else {
+            m_entities = entities;
+            m_timelineEntries = timelineData;
+            m_relationships = relationships;
+        }
+    }
+
+    /**
+     * Creates a Campaign which holds the supplied collections without copying them.  Only for use with collections
+     * which are unmodifiable and will never change, such as the snapshots produced by the CampaignDataManager.
+     * @param name The name of the Campaign.
+     * @param entities The Entity data that makes up this Campaign's primary content.
+     * @param relationships the relationships in the campaign.
+     * @param timelineData the TimelineEntry data for the Campaign.
+     * @param cal the campaign calendar.
+     * @return a new Campaign backed by the supplied collections.
+     */
+    static Campaign snapshot(String name, Set<Entity> entities, Map<UUID, RelationshipManager> relationships, Set<TimelineEntry> timelineData, CampaignCalendar cal) {
+        return new Campaign(name, entities, relationships, timelineData, cal, false);
     }
 
     /**
@@ -0,0 +1,69 @@
+package campaignencyclopedia.data;
+
+import java.util.UUID;
+
+/**
+ * Receives every change a CampaignDataManager makes to its data, as the individual values it stores or removes, so that
+ * the changes can be persisted without rewriting the whole campaign.  Changes which cascade to other data (such as the
+ * removal of the Relationships pointing to a removed Entity) are reported as the changes to that data too, so applying
+ * the reported changes in order to the data they were made to reproduces the data exactly.
+ *
+ * Methods are called while the CampaignDataManager holds its write lock, in the order the changes are made, so they
+ * must be quick and must not call back into the CampaignDataManager.
+ *
+ * @author adam
+ */
+public interface CampaignChangeLog {
+
+    /**
+     * Called when an Entity is added or updated.
+     * @param entity the Entity stored.
+     */
+    public void entityStored(Entity entity);
+
+    /**
+     * Called when an Entity is removed.
+     * @param id the ID of the removed Entity.
+     */
+    public void entityRemoved(UUID id);
+
+    /**
+     * Called when the Relationships of an Entity are set.
+     * @param entity the ID of the Entity which owns the Relationships.
+     * @param relationships the Relationships of the Entity, which are read-only.
+     */
+    public void relationshipsStored(UUID entity, RelationshipManager relationships);
+
+    /**
+     * Called when the Relationships of an Entity are removed.
+     * @param entity the ID of the Entity which owned the Relationships.
+     */
+    public void relationshipsRemoved(UUID entity);
+
+    /**
+     * Called when a TimelineEntry is added or updated.
+     * @param entry the TimelineEntry stored.
+     */
+    public void timelineEntryStored(TimelineEntry entry);
+
+    /**
+     * Called when a TimelineEntry is removed.
+     * @param id the ID of the removed TimelineEntry.
+     */
+    public void timelineEntryRemoved(UUID id);
+
+    /**
+     * Called when the calendar is replaced.
+     * @param calendar the new calendar, which is never modified.
+     */
+    public void calendarStored(CampaignCalendar calendar);
+
+    /** Called when all of the data is replaced by that of another Campaign. */
+    public void campaignReplaced();
+
+    /**
+     * Called at the end of each mutation or batch of mutations, so that the changes made since the last call can be
+     * persisted together, without persisting part of a mutation.
+     */
+    public void changesComplete();
+}
@@ -1,13 +1,19 @@
 package campaignencyclopedia.data;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 import javax.swing.JOptionPane;
 
@@ -15,6 +21,21 @@ import javax.swing.JOptionPane;
  * A data management object that is used at run time to provide a mutable object containing the state of the entire
  * Campaign.  As changes are made, this manager is updated and when asked to save the data this data is dumped to file.
  *
+ * This manager is safe for use from multiple threads.  The campaign data itself is held in an immutable state object
+ * built from persistent (structurally shared) maps.  Reads never lock; they simply read the current state.  Mutations
+ * are serialized on a single write lock and publish a new state, and listeners are alerted after that lock has been
+ * released.  Because a state never changes once published, getData() returns a consistent point-in-time snapshot of
+ * the campaign in constant time.
+ *
+ * Relationships are held in a RelationshipGraph, part of the state, which each change to them updates in place of the
+ * rows it touches; RelationshipManagers are only created, read-only, when they are asked for.
+ *
+ * Many mutations may be applied together with runBatch(), which holds the write lock for the whole batch and alerts
+ * listeners once with a single coalesced ChangeSet rather than once per change.
+ *
+ * Every change is also reported, as it is made, to the CampaignChangeLog set on the manager, if any, so that it can be
+ * saved without rewriting the whole campaign.
+ *
  * @author adam
  */
 public class CampaignDataManager implements DataAccessor {
@@ -22,36 +43,81 @@ public class CampaignDataManager implements DataAccessor {
     /** A Logger. */
     private static final Logger LOGGER = Logger.getLogger(CampaignDataManager.class.getName());
 
-    /** The name of the campaign.  */
-    private String m_campaignName;
+    /** The current state of the campaign.  Never modified; each mutation publishes a new state instead. */
+    private volatile CampaignState m_state;
 
-    /** A map of UUIDs to their associated Entities. */
-    private final Map<UUID, Entity> m_entities;
+    /**
+     * The Entities of the current state, kept in sorted order under a precomputed sort key.  Replaced, rather than
+     * cleared, when new data is set.
+     */
+    private volatile ConcurrentSkipListMap<EntitySortKey, Entity> m_sortedEntities;
 
-    /** A map of UUIDs of Entities to Sets of Relationships. */
-    private final Map<UUID, RelationshipManager> m_relationships;
+    /**
+     * Incremented before and after each change to m_sortedEntities, so that it is odd while one is being made, and
+     * used to validate m_entitySnapshot.  Only modified by the holder of m_writeLock.
+     */
+    private volatile long m_entityVersion;
 
-    /** A map of UUIDs to their associated Timeline Entries. */
-    private final Map<UUID, TimelineEntry> m_timelineData;
+    /** The most recently built sorted, read-only list of all Entities; rebuilt lazily after changes. */
+    private volatile EntitySnapshot m_entitySnapshot;
 
-    /** The path to the file where the current campaign is stored, or null if no path exists. */
-    private String m_filename;
+    /** The TimelineEntries of the current state, kept in chronological order.  Replaced when new data is set. */
+    private volatile ConcurrentSkipListMap<TimelineSortKey, TimelineEntry> m_sortedTimeline;
+
+    /**
+     * A map of UUIDs of Entities to the UUIDs of the TimelineEntries associated with them.  Only modified by the holder
+     * of m_writeLock, and verified against the current state on read.  Replaced when new data is set.
+     */
+    private volatile Map<UUID, Set<UUID>> m_timelineByEntity;
+
+    /**
+     * The index of the tags of the Entities of the current state, built on first use.  It is told of each change to
+     * the Entities after m_sortedEntities shows it.
+     */
+    private final TagIndex m_tagIndex;
+
+    /**
+     * Running counts of the contents of the current state, whose tags and description words are counted on first use.
+     * It is told of each change to the Entities after m_sortedEntities shows it.
+     */
+    private final StatisticsAggregator m_statistics;
 
-    /** The currently configured campaign calendar. */
-    private CampaignCalendar m_cal;
+    /**
+     * The counts of the contents of the state published by the last mutation, so that they are read without locking,
+     * or null if the tags and description words had not been counted by then.
+     */
+    private volatile CampaignStatistics m_publishedStatistics;
+
+    /** The path to the file where the current campaign is stored, or null if no path exists. */
+    private volatile String m_filename;
 
     /** A Set of listeners on the CDM. */
     private final Set<CampaignDataManagerListener> m_listeners;
 
+    /** The lock which serializes all mutations of this data manager. */
+    private final ReentrantLock m_writeLock;
+
+    /** The changes made by the batch currently running, or null.  Only accessed by the holder of m_writeLock. */
+    private ChangeSet.Builder m_batchChanges;
+
+    /** The log told of every change made, or null.  Only accessed by the holder of m_writeLock. */
+    private CampaignChangeLog m_changeLog;
+
     public CampaignDataManager() {
-        m_campaignName = "New Campaign";
         m_filename = null;
 
-        m_entities = new HashMap<>();
-        m_relationships = new HashMap<>();
-        m_timelineData = new HashMap<>();
-        m_cal = new CampaignCalendar();
-        m_listeners = new HashSet<>();
+        m_state = new CampaignState("New Campaign",
+                                    PersistentHashMap.<UUID, Entity>empty(),
+                                    RelationshipGraph.EMPTY,
+                                    PersistentHashMap.<UUID, TimelineEntry>empty(),
+                                    new CampaignCalendar());
+        m_sortedEntities = new ConcurrentSkipListMap<>();
+        m_sortedTimeline = new ConcurrentSkipListMap<>();
+        m_timelineByEntity = new ConcurrentHashMap<>();
+        m_tagIndex = new TagIndex(this);
+        m_statistics = new StatisticsAggregator(this);
+        m_listeners = new CopyOnWriteArraySet<>();
+        m_writeLock = new ReentrantLock();
     }
 
     /**
@@ -72,28 +138,144 @@ public class CampaignDataManager implements DataAccessor {
         m_listeners.remove(listener);
     }
 
+    /**
+     * Sets the log to tell of every change made to the data from now on, replacing any set before.  The data as it is
+     * when the log is set is returned, so that the log can be paired with exactly the data its changes apply to.
+     * @param changeLog the log to tell of changes, or null to tell none.
+     * @return the data as it is when the log is set.
+     */
+    public Campaign setChangeLog(CampaignChangeLog changeLog) {
+        m_writeLock.lock();
+        try {
+            m_changeLog = changeLog;
+            return getData();
+        } finally {
+            m_writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the supplied log is the one told of every change made to the data.
+     * @param changeLog the log to check.
+     * @return true if the supplied log is told of every change made to the data.
+     */
+    public boolean hasChangeLog(CampaignChangeLog changeLog) {
+        m_writeLock.lock();
+        try {
+            return changeLog != null && m_changeLog == changeLog;
+        } finally {
+            m_writeLock.unlock();
+        }
+    }
+
+    /**
+     * Applies the supplied batch of mutations while holding the write lock, so that no other thread's mutations are
+     * interleaved with them.  Listeners are not alerted of the individual changes; once the batch completes (normally
+     * or not) they are alerted once, with the coalesced changes it made.  Batches run from within a batch simply join
+     * the outer batch.
+     * @param batch the batch of mutations to apply.
+     */
+    public void runBatch(DataBatch batch) {
+        if (batch == null) {
+            throw new IllegalArgumentException("Parameter 'batch' must not be null.");
+        }
+        ChangeSet changes;
+        m_writeLock.lock();
+        try {
+            if (m_batchChanges != null) {
+                batch.apply(this);
+                return;
+            }
+            m_batchChanges = new ChangeSet.Builder();
+            try {
+                batch.apply(this);
+            } finally {
+                changes = m_batchChanges.build();
+                m_batchChanges = null;
+            }
+        } finally {
+            releaseWriteLock();
+        }
+
+        if (!changes.isEmpty()) {
+            for (CampaignDataManagerListener cdml : m_listeners) {
+                cdml.dataChanged(changes);
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public Entity getEntity(UUID id) {
         if (id != null) {
-            return m_entities.get(id);
+            return m_state.entities.get(id);
         }
         return null;
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * The sorted order is maintained as Entities are added and removed, so this method does not sort.  The returned
+     * List is shared between callers until the next change to the Entities.
+     */
     @Override
     public List<Entity> getAllEntities() {
-        List<Entity> list = new ArrayList<>(m_entities.values());
-        Collections.sort(list);
-        return list;
+        long version = m_entityVersion;
+        EntitySnapshot snapshot = m_entitySnapshot;
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot.entities;
+        }
+        // A copy begun while no change was being made, and finished before another began, holds exactly the Entities
+        // of a published state.
+        if ((version & 1) == 0) {
+            List<Entity> entities = Collections.unmodifiableList(new ArrayList<>(m_sortedEntities.values()));
+            if (m_entityVersion == version) {
+                m_entitySnapshot = new EntitySnapshot(version, entities);
+                return entities;
+            }
+        }
+
+        // A writer is part way through changing the sorted Entities, so sort those of the published state instead.
+        Map<EntitySortKey, Entity> sorted = new TreeMap<>();
+        for (Map.Entry<UUID, Entity> mapping : m_state.entities) {
+            sorted.put(new EntitySortKey(mapping.getValue()), mapping.getValue());
+        }
+        return Collections.unmodifiableList(new ArrayList<>(sorted.values()));
     }
 
     /** {@inheritDoc} */
     @Override
     public void addOrUpdateEntity(Entity entity) {
         if (entity != null) {
-            m_entities.put(entity.getId(), entity);
+            m_writeLock.lock();
+            try {
+                CampaignState state = m_state;
+                Entity old = state.entities.get(entity.getId());
+                m_state = state.withEntities(state.entities.plus(entity.getId(), entity));
+                m_entityVersion++;
+                if (old != null) {
+                    m_sortedEntities.remove(new EntitySortKey(old));
+                    m_tagIndex.remove(old);
+                }
+                m_sortedEntities.put(new EntitySortKey(entity), entity);
+                m_entityVersion++;
+                m_tagIndex.add(entity);
+                m_statistics.entityChanged(old, entity);
+                if (m_changeLog != null) {
+                    m_changeLog.entityStored(entity);
+                }
+                if (m_batchChanges != null) {
+                    if (old == null) {
+                        m_batchChanges.entityAdded(entity.getId());
+                    } else {
+                        m_batchChanges.entityUpdated(entity.getId());
+                    }
+                    return;
+                }
+            } finally {
+                releaseWriteLock();
+            }
         }
 
         // Alert Listeners
@@ -107,7 +289,28 @@ public class CampaignDataManager implements DataAccessor {
     @Override
     public void addOrUpdateTimelineEntry(TimelineEntry entry) {
         if (entry != null) {
-            m_timelineData.put(entry.getId(), entry);
+            m_writeLock.lock();
+            try {
+                CampaignState state = m_state;
+                TimelineEntry old = state.timeline.get(entry.getId());
+                m_state = state.withTimeline(state.timeline.plus(entry.getId(), entry));
+                if (old != null) {
+                    m_sortedTimeline.remove(new TimelineSortKey(old));
+                    unindexTimelineEntry(old);
+                }
+                m_sortedTimeline.put(new TimelineSortKey(entry), entry);
+                indexTimelineEntry(m_timelineByEntity, entry);
+                m_statistics.timelineEntryChanged(old, entry);
+                if (m_changeLog != null) {
+                    m_changeLog.timelineEntryStored(entry);
+                }
+                if (m_batchChanges != null) {
+                    m_batchChanges.timelineEntryAddedOrUpdated(entry.getId());
+                    return;
+                }
+            } finally {
+                releaseWriteLock();
+            }
         }
         for (CampaignDataManagerListener cdml : m_listeners) {
             cdml.timelineEntryAddedOrUpdated(entry);
@@ -118,7 +321,28 @@ public class CampaignDataManager implements DataAccessor {
     @Override
     public void removeTimelineEntry(UUID id) {
         if (id != null) {
-            m_timelineData.remove(id);
+            m_writeLock.lock();
+            try {
+                CampaignState state = m_state;
+                TimelineEntry removed = state.timeline.get(id);
+                m_state = state.withTimeline(state.timeline.minus(id));
+                if (removed != null) {
+                    m_sortedTimeline.remove(new TimelineSortKey(removed));
+                    unindexTimelineEntry(removed);
+                    m_statistics.timelineEntryChanged(removed, null);
+                    if (m_changeLog != null) {
+                        m_changeLog.timelineEntryRemoved(id);
+                    }
+                }
+                if (m_batchChanges != null) {
+                    if (removed != null) {
+                        m_batchChanges.timelineEntryRemoved(id);
+                    }
+                    return;
+                }
+            } finally {
+                releaseWriteLock();
+            }
         }
         for (CampaignDataManagerListener cdml : m_listeners) {
             cdml.timelineEntryRemoved(id);
@@ -129,25 +353,51 @@ public class CampaignDataManager implements DataAccessor {
     @Override
     public void removeEntity(UUID id) {
         if (id != null) {
-            // Remove the Entity
-            m_entities.remove(id);
-
-            // Remove relationships for the removed Entity
-            m_relationships.remove(id);
-
-            // Check for any relationships that point to the removed Entity and remove them too.
-            for (UUID entityId : m_relationships.keySet()) {
-                RelationshipManager relationshipManager = m_relationships.get(entityId);
-                // Collect all of the relationships that point at the removed Entity
-                Set<Relationship> toRemove = new HashSet<>();
-                for (Relationship rel : relationshipManager.getAllRelationships()) {
-                    if (rel.getRelatedEntity().equals(id)) {
-                        toRemove.add(rel);
+            m_writeLock.lock();
+            try {
+                CampaignState state = m_state;
+
+                // Remove the Entity
+                Entity removed = state.entities.get(id);
+                if (removed != null) {
+                    m_entityVersion++;
+                    m_sortedEntities.remove(new EntitySortKey(removed));
+                    m_entityVersion++;
+                    m_tagIndex.remove(removed);
+                    m_statistics.entityChanged(removed, null);
+                    if (m_changeLog != null) {
+                        m_changeLog.entityRemoved(id);
+                    }
+                }
+
+                // Remove relationships for the removed Entity, and any owned by other Entities that point to it.
+                RelationshipGraph graph = state.relationships;
+                RelationshipGraph relationships = graph.withoutEntity(id);
+                relationshipsChanged(graph, relationships);
+                if (m_changeLog != null && graph.isOwner(id)) {
+                    m_changeLog.relationshipsRemoved(id);
+                }
+                int node = graph.indexOf(id);
+                for (int i = 0; node >= 0 && i < graph.getSourceCount(node); i++) {
+                    UUID owner = graph.getId(graph.getSource(node, i));
+                    if (!owner.equals(id)) {
+                        if (m_changeLog != null) {
+                            m_changeLog.relationshipsStored(owner, relationships.getRelationships(owner));
+                        }
+                        if (m_batchChanges != null) {
+                            m_batchChanges.entityUpdated(owner);
+                        }
+                    }
+                }
+                m_state = new CampaignState(state.name, state.entities.minus(id), relationships, state.timeline, state.calendar);
+                if (m_batchChanges != null) {
+                    if (removed != null) {
+                        m_batchChanges.entityRemoved(id);
                     }
+                    return;
                 }
-                // Remove the bad relations, and set the updated Set back into the map.
-                relationshipManager.removeAll(toRemove);
-                m_relationships.put(entityId, relationshipManager);
+            } finally {
+                releaseWriteLock();
             }
         }
 
@@ -158,16 +408,51 @@ public class CampaignDataManager implements DataAccessor {
     }
 
     /**
-     * Updates the calendar in this CDM using the supplied one.
+     * Updates the calendar in this CDM using the supplied one.  TimelineEntries in months the new calendar lacks are
+     * moved to its first month, and reported to listeners as updated.
      * @param cal the new calendar.
      */
     public void updateCalendar(CampaignCalendar cal) {
-        m_cal.updateMonths(cal.getMonths());
-        for (UUID id : m_timelineData.keySet()) {
-            TimelineEntry entry = m_timelineData.get(id);
-            if (!m_cal.hasMonth(entry.getMonth())) {
-                TimelineEntry updated = new TimelineEntry(entry.getTitle(), m_cal.getMonthForIndex(0), entry.getYear(), entry.isSecret(), entry.getAssociatedId(), entry.getId());
-                m_timelineData.put(id, updated);
+        ChangeSet.Builder moved = new ChangeSet.Builder();
+        m_writeLock.lock();
+        try {
+            // Replace rather than modify the calendar so that readers holding the old one never see it change.
+            CampaignState state = m_state;
+            CampaignCalendar updatedCal = new CampaignCalendar();
+            updatedCal.updateMonths(cal.getMonths());
+            PersistentHashMap<UUID, TimelineEntry> timeline = state.timeline;
+            for (Map.Entry<UUID, TimelineEntry> mapping : state.timeline) {
+                TimelineEntry entry = mapping.getValue();
+                if (!updatedCal.hasMonth(entry.getMonth())) {
+                    TimelineEntry updated = new TimelineEntry(entry.getTitle(), updatedCal.getMonthForIndex(0), entry.getYear(), entry.isSecret(), entry.getAssociatedId(), entry.getId());
+                    timeline = timeline.plus(entry.getId(), updated);
+                    m_sortedTimeline.remove(new TimelineSortKey(entry));
+                    m_sortedTimeline.put(new TimelineSortKey(updated), updated);
+                    if (m_changeLog != null) {
+                        m_changeLog.timelineEntryStored(updated);
+                    }
+                    moved.timelineEntryAddedOrUpdated(entry.getId());
+                    if (m_batchChanges != null) {
+                        m_batchChanges.timelineEntryAddedOrUpdated(entry.getId());
+                    }
+                }
+            }
+            if (m_changeLog != null) {
+                m_changeLog.calendarStored(updatedCal);
+            }
+            m_state = new CampaignState(state.name, state.entities, state.relationships, timeline, updatedCal);
+            if (m_batchChanges != null) {
+                return;
+            }
+        } finally {
+            releaseWriteLock();
+        }
+
+        // Alert listeners of the TimelineEntries moved.
+        ChangeSet changes = moved.build();
+        if (!changes.isEmpty()) {
+            for (CampaignDataManagerListener cdml : m_listeners) {
+                cdml.dataChanged(changes);
             }
         }
     }
@@ -176,68 +461,139 @@ public class CampaignDataManager implements DataAccessor {
      * Creates and returns a Campaign that is represented by all of the data in the CampaignDataManager.  The CDM is
      * not modified in any way.  Each time this method is called, a new Campaign object is instantiated and returned.
      *
+     * The returned Campaign is an unmodifiable, point-in-time snapshot which shares its structure with the CDM, so this
+     * method runs in constant time and later edits are never visible through it.
+     *
      * @return a Campaign that contains all of the data in the CampaignDataManager.
      */
     public Campaign getData() {
-        return new Campaign(m_campaignName, new HashSet<>(m_entities.values()), m_relationships, new HashSet<>(m_timelineData.values()), m_cal);
+        CampaignState state = m_state;
+        return Campaign.snapshot(state.name,
+                                 new EntitySet(state.entities),
+                                 state.relationships.asMap(),
+                                 new TimelineEntrySet(state.timeline),
+                                 state.calendar);
     }
 
     /**
-     * Clears all old data and sets the supplied campaign data on this display.
+     * Clears all old data and sets the supplied campaign data on this display.  Listeners are alerted of the cleared
+     * data, then of all of the newly set data as a single batch of additions.
      * @param campaign the new data to set.
      */
     public void setData(Campaign campaign) {
-        m_entities.clear();
-        m_timelineData.clear();
-        m_relationships.clear();
-        
-        // Alert listeners of cleared data.
-        for (CampaignDataManagerListener cdml : m_listeners) {
-            cdml.clearAllData();
-        }
-        
-        m_campaignName = campaign.getName();
-        m_cal = campaign.getCalendar();
+        setData(campaign, false, null);
+    }
 
+    /**
+     * Clears all old data and sets the supplied campaign data on this display, and replaces the change log with the
+     * supplied one.  The old change log is not told of the new data, and the new one is told of every change made after
+     * it, so a log can be set along with the data its changes apply to.  Listeners are alerted as by setData(Campaign).
+     * @param campaign the new data to set.
+     * @param changeLog the log to tell of changes to the new data, or null to tell none.
+     */
+    public void setData(Campaign campaign, CampaignChangeLog changeLog) {
+        setData(campaign, true, changeLog);
+    }
 
+    /**
+     * Clears all old data and sets the supplied campaign data on this display.
+     * @param campaign the new data to set.
+     * @param replaceChangeLog true if the change log should be replaced by the supplied one, false if the current one
+     * should be kept and told that the data was replaced.
+     * @param changeLog the log to tell of changes to the new data, if the change log is being replaced.
+     */
+    private void setData(Campaign campaign, boolean replaceChangeLog, CampaignChangeLog changeLog) {
         // Set to collect all of the previously saved relationships.  This is used later to ensure that all established
         // Relationships are in the RelationshipOptionManager.
         Set<String> relationships = new HashSet<>();
+        boolean monthsAdded = false;
+        ChangeSet.Builder added = new ChangeSet.Builder();
 
-        // Add all of the Entities.
-        for (Entity e : campaign.getEntities()) {
-            UUID entityId = e.getId();
-            m_entities.put(entityId, e);
+        // The new state and its indexes are built aside and then published together, so that readers, which do not
+        // lock, see either all of the old campaign or all of the new one, and never an empty or partly set one.
+        m_writeLock.lock();
+        try {
+            CampaignCalendar cal = campaign.getCalendar();
+            PersistentHashMap<UUID, Entity> entities = PersistentHashMap.empty();
+            List<UUID> owners = new ArrayList<>();
+            PersistentHashMap<UUID, TimelineEntry> timeline = PersistentHashMap.empty();
+            ConcurrentSkipListMap<EntitySortKey, Entity> sortedEntities = new ConcurrentSkipListMap<>();
+            ConcurrentSkipListMap<TimelineSortKey, TimelineEntry> sortedTimeline = new ConcurrentSkipListMap<>();
+            Map<UUID, Set<UUID>> timelineByEntity = new ConcurrentHashMap<>();
+            StatisticsAggregator statistics = new StatisticsAggregator(this);
+
+            // Add all of the Entities.
+            for (Entity e : campaign.getEntities()) {
+                UUID entityId = e.getId();
+                entities = entities.plus(entityId, e);
+                sortedEntities.put(new EntitySortKey(e), e);
+                statistics.entityChanged(null, e);
+                added.entityAdded(entityId);
+
+                // Create a RelationshipManager for all Entities in the Campaign
+                owners.add(entityId);
+
+                // Collect all of the previously saved relationships and add them to our Set above.
+                RelationshipManager entityRelMgr = campaign.getRelationships(entityId);
+                if (entityRelMgr != null) {
+                    for (Relationship r : entityRelMgr.getAllRelationships()) {
+                        relationships.add(r.getRelationshipText());
+                    }
+                }
+            }
 
-            // Create a RelationshipManager for all Entities in the Campaign
-            m_relationships.put(entityId, new RelationshipManager());
+            // Add all of the Relationships.
+            RelationshipGraph relationshipGraph = RelationshipGraph.build(owners, campaign.getAllRelationships());
+            statistics.relationshipsChanged(relationshipGraph.getEdgeCount(), relationshipGraph.getSecretEdgeCount());
 
-            // Collect all of the previously saved relationships and add them to our Set above.
-            RelationshipManager entityRelMgr = campaign.getRelationships(entityId);
-            if (entityRelMgr != null) {
-                for (Relationship r : entityRelMgr.getAllRelationships()) {
-                    relationships.add(r.getRelationshipText());
+            // Roll through each of the timeline entries for this campaign and ensure that the months all exist in the
+            // campaign.  If any are missing, add them to the Calendar and alert the user with a popup message.
+            for (TimelineEntry tle : campaign.getTimelineEntries()) {
+                timeline = timeline.plus(tle.getId(), tle);
+                sortedTimeline.put(new TimelineSortKey(tle), tle);
+                indexTimelineEntry(timelineByEntity, tle);
+                statistics.timelineEntryChanged(null, tle);
+                added.timelineEntryAddedOrUpdated(tle.getId());
+                if (!cal.hasMonth(tle.getMonth())) {
+                    cal.addMonth(tle.getMonth());
+                    monthsAdded = true;
                 }
             }
+
+            m_sortedEntities = sortedEntities;
+            m_sortedTimeline = sortedTimeline;
+            m_timelineByEntity = timelineByEntity;
+            m_statistics.replaceWith(statistics);
+            m_state = new CampaignState(campaign.getName(), entities, relationshipGraph, timeline, cal);
+            m_tagIndex.reset();
+            // The sorted Entities are replaced at once, so are never part way through a change.
+            m_entityVersion += 2;
+            if (replaceChangeLog) {
+                m_changeLog = changeLog;
+            } else if (m_changeLog != null) {
+                m_changeLog.campaignReplaced();
+            }
+        } finally {
+            releaseWriteLock();
         }
 
-        // Add all of the Relationships.
-        m_relationships.putAll(campaign.getAllRelationships());
+        // Alert listeners of cleared data.
+        for (CampaignDataManagerListener cdml : m_listeners) {
+            cdml.clearAllData();
+        }
 
         // Ensure that all of the relationships previously saved are in the local
         // relationships file, and indeed the Relationship Data Manager as well.
         RelationshipOptionManager.addRelationships(new ArrayList<>(relationships));
 
-        // Roll through each of the timeline entries for this campaign and ensure that the months all exist in the
-        // campaign.  If any are missing, add them to the Calendar and alert the user with a popup message.
-        boolean monthsAdded = false;
-        for (TimelineEntry tle : campaign.getTimelineEntries()) {
-            m_timelineData.put(tle.getId(), tle);
-            if (!m_cal.hasMonth(tle.getMonth())) {
-                m_cal.addMonth(tle.getMonth());
-                monthsAdded = true;
+        // Alert listeners of the new data.
+        ChangeSet changes = added.build();
+        if (!changes.isEmpty()) {
+            for (CampaignDataManagerListener cdml : m_listeners) {
+                cdml.dataChanged(changes);
             }
         }
+
         if (monthsAdded) {
             JOptionPane.showMessageDialog(null,
                                           "One or more 'months' were added to your campaign\n"
@@ -258,11 +614,13 @@ public class CampaignDataManager implements DataAccessor {
     }
 
     /**
-     * Sets the save file name.
+     * Sets the save file name.  Names without the extension of either the JSON or the binary save file format, or that
+     * of a compressed save file, are given the JSON one.
      * @param filename the file name of the campaign.
      */
     public void setFileName(String filename) {
-        if (filename != null && !filename.endsWith(".campaign")) {
+        if (filename != null && !filename.endsWith(".campaign") && !filename.endsWith(".bcampaign")
+                && !filename.endsWith(".gz")) {
             filename += ".campaign";
         }
         m_filename = filename;
@@ -274,29 +632,130 @@ public class CampaignDataManager implements DataAccessor {
      */
     @Override
     public Set<TimelineEntry> getTimelineData() {
-        return new HashSet<>(m_timelineData.values());
+        return new HashSet<>(new TimelineEntrySet(m_state.timeline));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<TimelineEntry> getTimelineEntries(int fromYear, int fromMonth, int toYear, int toMonth) {
+        TimelineSortKey from = new TimelineSortKey(fromYear, fromMonth, -1);
+        TimelineSortKey to = new TimelineSortKey(toYear, toMonth, 1);
+        if (from.compareTo(to) > 0) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(m_sortedTimeline.subMap(from, to).values()));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<TimelineEntry> getTimelineEntriesFor(UUID entity) {
+        Set<TimelineEntry> entries = new HashSet<>();
+        Set<UUID> ids = entity == null ? null : m_timelineByEntity.get(entity);
+        if (ids != null) {
+            CampaignState state = m_state;
+            for (UUID id : ids) {
+                TimelineEntry entry = state.timeline.get(id);
+                if (entry != null && entry.getAssociatedId().equals(entity)) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setTimelineEntrySecrecy(final UUID entity, final boolean secret) {
+        if (entity == null) {
+            throw new IllegalArgumentException("Parameter 'entity' must not be null.");
+        }
+        runBatch(new DataBatch() {
+            @Override
+            public void apply(DataAccessor accessor) {
+                for (TimelineEntry tle : getTimelineEntriesFor(entity)) {
+                    if (tle.isSecret() != secret) {
+                        addOrUpdateTimelineEntry(new TimelineEntry(tle.getTitle(), tle.getMonth(), tle.getYear(), secret, tle.getAssociatedId(), tle.getId()));
+                    }
+                }
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void removeTimelineEntriesFor(final UUID entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("Parameter 'entity' must not be null.");
+        }
+        runBatch(new DataBatch() {
+            @Override
+            public void apply(DataAccessor accessor) {
+                for (TimelineEntry tle : getTimelineEntriesFor(entity)) {
+                    removeTimelineEntry(tle.getId());
+                }
+            }
+        });
     }
 
     /** {@inheritDoc} */
     @Override
     public CampaignCalendar getCalendar() {
-        return m_cal;
+        return m_state.calendar;
     }
 
     /** {@inheritDoc} */
     @Override
     public void addRelationship(UUID entity, Relationship rel) {
-        if (m_relationships.get(entity) == null) {
-            m_relationships.put(entity, new RelationshipManager());
+        if (entity == null) {
+            LOGGER.warning("Attempted to add a Relationship to a null Entity.  Relationship was:  " + rel);
+            return;
+        }
+        m_writeLock.lock();
+        try {
+            CampaignState state = m_state;
+            RelationshipGraph updated = state.relationships.withRelationship(entity, rel);
+            m_state = state.withRelationships(updated);
+            relationshipsChanged(state.relationships, updated);
+            if (m_changeLog != null) {
+                m_changeLog.relationshipsStored(entity, updated.getRelationships(entity));
+            }
+            if (m_batchChanges != null && state.entities.containsKey(entity)) {
+                m_batchChanges.entityUpdated(entity);
+            }
+        } finally {
+            releaseWriteLock();
         }
-        m_relationships.get(entity).addRelationship(rel);
     }
 
     /** {@inheritDoc} */
     @Override
     public void removeRelationship(UUID entity, Relationship toRemove) {
-        RelationshipManager relationships = m_relationships.get(entity);
-        relationships.remove(toRemove);
+        if (entity == null) {
+            LOGGER.warning("Attempted to remove a Relationship from a null Entity.  Relationship was:  " + toRemove);
+            return;
+        }
+        m_writeLock.lock();
+        try {
+            CampaignState state = m_state;
+            if (!state.relationships.isOwner(entity)) {
+                // The Entity has no Relationships, so there is nothing to remove.
+                return;
+            }
+            RelationshipGraph updated = state.relationships.withoutRelationship(entity, toRemove);
+            m_state = state.withRelationships(updated);
+            relationshipsChanged(state.relationships, updated);
+            if (m_changeLog != null) {
+                m_changeLog.relationshipsStored(entity, updated.getRelationships(entity));
+            }
+            if (m_batchChanges != null) {
+                if (state.entities.containsKey(entity)) {
+                    m_batchChanges.entityUpdated(entity);
+                }
+                return;
+            }
+        } finally {
+            releaseWriteLock();
+        }
         
         // Alert Listeners, data updated because relationship removed
         Entity actualEntity = getEntity(entity);
@@ -305,17 +764,42 @@ public class CampaignDataManager implements DataAccessor {
         }
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * The returned RelationshipManager is read-only, and created from the RelationshipGraph on each call.  To change an
+     * Entity's Relationships, copy it, modify the copy and supply that to addOrUpdateAllRelationships.
+     */
     @Override
     public RelationshipManager getRelationshipsForEntity(UUID entity) {
-        return m_relationships.get(entity);
+        if (entity != null) {
+            return m_state.relationships.getRelationships(entity);
+        }
+        return null;
     }
 
     /** {@inheritDoc} */
     @Override
     public void addOrUpdateAllRelationships(UUID entity, RelationshipManager relMgr) {
         if (entity != null && relMgr != null) {
-            m_relationships.put(entity, relMgr);
+            m_writeLock.lock();
+            try {
+                CampaignState state = m_state;
+                RelationshipGraph updated = state.relationships.withRelationships(entity, relMgr);
+                m_state = state.withRelationships(updated);
+                relationshipsChanged(state.relationships, updated);
+                if (m_changeLog != null) {
+                    m_changeLog.relationshipsStored(entity, updated.getRelationships(entity));
+                }
+                if (m_batchChanges != null) {
+                    if (state.entities.containsKey(entity)) {
+                        m_batchChanges.entityUpdated(entity);
+                    }
+                    return;
+                }
+            } finally {
+                releaseWriteLock();
+            }
             
             // Alert Listeners, data updated because relationship added
             Entity actualEntity = getEntity(entity);
@@ -327,4 +811,379 @@ public class CampaignDataManager implements DataAccessor {
                     entity + ", RelationshipManager was:  " + relMgr);
         }
     }
-}
\ No newline at end of file
+
+    /** {@inheritDoc} */
+    @Override
+    public RelationshipGraph getRelationshipGraph() {
+        return m_state.relationships;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public TagIndex getTagIndex() {
+        return m_tagIndex;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CampaignStatistics getStatistics() {
+        CampaignStatistics statistics = m_publishedStatistics;
+        if (statistics != null) {
+            return statistics;
+        }
+        // The tags and description words have not been counted since the data was set, so count them now; the counts
+        // are published at the end of the next mutation.
+        return m_statistics.getStatistics(m_state.calendar.getMonths().size());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Relationship> getRelationshipsPointingTo(UUID entity) {
+        return m_state.relationships.getRelationshipsPointingTo(entity);
+    }
+
+    /**
+     * Releases the write lock, first publishing the counts of the state and telling the change log that the changes
+     * made are complete if this releases it for the last time, at the end of a mutation or batch.
+     */
+    private void releaseWriteLock() {
+        if (m_writeLock.getHoldCount() == 1) {
+            if (m_statistics.isContentCounted()) {
+                m_publishedStatistics = m_statistics.getStatistics(m_state.calendar.getMonths().size());
+            } else {
+                m_publishedStatistics = null;
+            }
+            if (m_changeLog != null) {
+                m_changeLog.changesComplete();
+            }
+        }
+        m_writeLock.unlock();
+    }
+
+    /**
+     * Accounts in the running counts for the Relationships added and removed by a change to the graph.  Must only be
+     * called by the holder of m_writeLock.
+     * @param old the graph before the change.
+     * @param updated the graph after the change.
+     */
+    private void relationshipsChanged(RelationshipGraph old, RelationshipGraph updated) {
+        m_statistics.relationshipsChanged(updated.getEdgeCount() - old.getEdgeCount(),
+                                          updated.getSecretEdgeCount() - old.getSecretEdgeCount());
+    }
+
+    /**
+     * Records the supplied TimelineEntry against its associated Entity in the supplied index.  Must only be called by
+     * the holder of m_writeLock.
+     * @param index the index of TimelineEntries by Entity to record the TimelineEntry in.
+     * @param entry the TimelineEntry to index.
+     */
+    private static void indexTimelineEntry(Map<UUID, Set<UUID>> index, TimelineEntry entry) {
+        Set<UUID> entries = index.get(entry.getAssociatedId());
+        if (entries == null) {
+            entries = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+            index.put(entry.getAssociatedId(), entries);
+        }
+        entries.add(entry.getId());
+    }
+
+    /**
+     * Removes the supplied TimelineEntry from the record of its associated Entity.  Must only be called by the holder
+     * of m_writeLock.
+     * @param entry the TimelineEntry to remove from the index.
+     */
+    private void unindexTimelineEntry(TimelineEntry entry) {
+        Set<UUID> entries = m_timelineByEntity.get(entry.getAssociatedId());
+        if (entries != null) {
+            entries.remove(entry.getId());
+            if (entries.isEmpty()) {
+                m_timelineByEntity.remove(entry.getAssociatedId());
+            }
+        }
+    }
+
+    /**
+     * The key under which Entities are kept in sorted order.  The Entity's precomputed sort key orders the Entities,
+     * and the Entity ID breaks ties between Entities which share a name.
+     */
+    private static final class EntitySortKey implements Comparable<EntitySortKey> {
+
+        /** The sort key of the Entity. */
+        private final String m_sortName;
+
+        /** The ID of the Entity. */
+        private final UUID m_id;
+
+        /**
+         * Creates the sort key for the supplied Entity.
+         * @param entity the Entity to create a key for.
+         */
+        private EntitySortKey(Entity entity) {
+            m_sortName = entity.getSortKey();
+            m_id = entity.getId();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int compareTo(EntitySortKey t) {
+            int result = m_sortName.compareTo(t.m_sortName);
+            if (result == 0) {
+                result = m_id.compareTo(t.m_id);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The key under which TimelineEntries are kept in chronological order: by year, then month index, then title, with
+     * the entry ID breaking ties.  Bounding keys, which sort before or after every entry of their month, are used for
+     * range queries.
+     */
+    private static final class TimelineSortKey implements Comparable<TimelineSortKey> {
+
+        /** The year of the entry. */
+        private final int m_year;
+
+        /** The index of the month of the entry. */
+        private final int m_month;
+
+        /** The title of the entry, which may be null. */
+        private final String m_title;
+
+        /** The ID of the entry, or null for a bounding key. */
+        private final UUID m_id;
+
+        /** -1 for a key before every entry of its month, 1 for one after them, or 0 for the key of an entry. */
+        private final int m_bound;
+
+        /**
+         * Creates the sort key for the supplied TimelineEntry.
+         * @param entry the TimelineEntry to create a key for.
+         */
+        private TimelineSortKey(TimelineEntry entry) {
+            m_year = entry.getYear();
+            m_month = entry.getMonth().getIndex();
+            m_title = entry.getTitle();
+            m_id = entry.getId();
+            m_bound = 0;
+        }
+
+        /**
+         * Creates a bounding key for the supplied month.
+         * @param year the year.
+         * @param month the month index.
+         * @param bound -1 for a key before every entry of the month, 1 for one after them.
+         */
+        private TimelineSortKey(int year, int month, int bound) {
+            m_year = year;
+            m_month = month;
+            m_title = null;
+            m_id = null;
+            m_bound = bound;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int compareTo(TimelineSortKey t) {
+            int result = Integer.compare(m_year, t.m_year);
+            if (result == 0) {
+                result = Integer.compare(m_month, t.m_month);
+            }
+            if (result == 0) {
+                result = Integer.compare(m_bound, t.m_bound);
+            }
+            if (result == 0 && m_bound == 0) {
+                if (m_title == null || t.m_title == null) {
+                    result = m_title == null ? (t.m_title == null ? 0 : -1) : 1;
+                } else {
+                    result = m_title.compareTo(t.m_title);
+                }
+                if (result == 0) {
+                    result = m_id.compareTo(t.m_id);
+                }
+            }
+            return result;
+        }
+    }
+
+    /** A sorted, read-only list of Entities, tagged with the entity version it was built from. */
+    private static final class EntitySnapshot {
+
+        /** The value of m_entityVersion when this snapshot was built. */
+        private final long version;
+
+        /** The sorted, unmodifiable list of Entities. */
+        private final List<Entity> entities;
+
+        /**
+         * Creates a new EntitySnapshot.
+         * @param version the entity version the snapshot was built from.
+         * @param entities the sorted, unmodifiable list of Entities.
+         */
+        private EntitySnapshot(long version, List<Entity> entities) {
+            this.version = version;
+            this.entities = entities;
+        }
+    }
+
+    /** An immutable snapshot of all of the data of a campaign. */
+    private static final class CampaignState {
+
+        /** The name of the campaign. */
+        private final String name;
+
+        /** A map of UUIDs to their associated Entities. */
+        private final PersistentHashMap<UUID, Entity> entities;
+
+        /** The Relationships of the campaign. */
+        private final RelationshipGraph relationships;
+
+        /** A map of UUIDs to their associated Timeline Entries. */
+        private final PersistentHashMap<UUID, TimelineEntry> timeline;
+
+        /** The campaign calendar. */
+        private final CampaignCalendar calendar;
+
+        /**
+         * Creates a new CampaignState.
+         * @param name the name of the campaign.
+         * @param entities the Entities of the campaign.
+         * @param relationships the Relationships of the campaign.
+         * @param timeline the Timeline Entries of the campaign.
+         * @param calendar the campaign calendar.
+         */
+        private CampaignState(String name,
+                              PersistentHashMap<UUID, Entity> entities,
+                              RelationshipGraph relationships,
+                              PersistentHashMap<UUID, TimelineEntry> timeline,
+                              CampaignCalendar calendar) {
+            this.name = name;
+            this.entities = entities;
+            this.relationships = relationships;
+            this.timeline = timeline;
+            this.calendar = calendar;
+        }
+
+        /**
+         * Returns a copy of this state with the supplied Entities.
+         * @param updated the new Entities.
+         * @return a copy of this state with the supplied Entities.
+         */
+        private CampaignState withEntities(PersistentHashMap<UUID, Entity> updated) {
+            return new CampaignState(name, updated, relationships, timeline, calendar);
+        }
+
+        /**
+         * Returns a copy of this state with the supplied Relationships.
+         * @param updated the new Relationships.
+         * @return a copy of this state with the supplied Relationships.
+         */
+        private CampaignState withRelationships(RelationshipGraph updated) {
+            return new CampaignState(name, entities, updated, timeline, calendar);
+        }
+
+        /**
+         * Returns a copy of this state with the supplied Timeline Entries.
+         * @param updated the new Timeline Entries.
+         * @return a copy of this state with the supplied Timeline Entries.
+         */
+        private CampaignState withTimeline(PersistentHashMap<UUID, TimelineEntry> updated) {
+            return new CampaignState(name, entities, relationships, updated, calendar);
+        }
+    }
+
+    /**
+     * An unmodifiable Set view of the values of a PersistentHashMap keyed by the ID of each value.
+     * @param <V> the value type.
+     */
+    private abstract static class ValueSet<V> extends AbstractSet<V> {
+
+        /** The map whose values this Set presents. */
+        private final PersistentHashMap<UUID, V> m_map;
+
+        /**
+         * Creates a new ValueSet.
+         * @param map the map whose values this Set presents.
+         */
+        private ValueSet(PersistentHashMap<UUID, V> map) {
+            m_map = map;
+        }
+
+        /**
+         * Returns the ID of the supplied object if it is of this Set's value type, or null.
+         * @param o the object to get the ID of.
+         * @return the ID of the supplied object, or null.
+         */
+        protected abstract UUID idOf(Object o);
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean contains(Object o) {
+            UUID id = idOf(o);
+            return id != null && o.equals(m_map.get(id));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return m_map.size();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Iterator<V> iterator() {
+            final Iterator<Map.Entry<UUID, V>> entries = m_map.iterator();
+            return new Iterator<V>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public V next() {
+                    return entries.next().getValue();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Campaign snapshots are unmodifiable.");
+                }
+            };
+        }
+    }
+
+    /** An unmodifiable Set view of the Entities of a CampaignState. */
+    private static final class EntitySet extends ValueSet<Entity> {
+
+        /**
+         * Creates a new EntitySet.
+         * @param entities the Entities to present.
+         */
+        private EntitySet(PersistentHashMap<UUID, Entity> entities) {
+            super(entities);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected UUID idOf(Object o) {
+            return o instanceof Entity ? ((Entity) o).getId() : null;
+        }
+    }
+
+    /** An unmodifiable Set view of the Timeline Entries of a CampaignState. */
+    private static final class TimelineEntrySet extends ValueSet<TimelineEntry> {
+
+        /**
+         * Creates a new TimelineEntrySet.
+         * @param timeline the Timeline Entries to present.
+         */
+        private TimelineEntrySet(PersistentHashMap<UUID, TimelineEntry> timeline) {
+            super(timeline);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected UUID idOf(Object o) {
+            return o instanceof TimelineEntry ? ((TimelineEntry) o).getId() : null;
+        }
+    }
+}
@@ -34,4 +34,10 @@ public interface CampaignDataManagerListener {
     
     /** Called when all data from the campaign is cleared. */
     public void clearAllData();
+
+    /**
+     * Called once after a batch of changes has been applied, in place of the individual callbacks above.
+     * @param changes the coalesced changes made by the batch.
+     */
+    public void dataChanged(ChangeSet changes);
 }
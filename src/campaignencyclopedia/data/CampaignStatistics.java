@@ -0,0 +1,179 @@
+package campaignencyclopedia.data;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * An immutable, point-in-time set of counts describing the contents of a campaign.
+ * @author adam
+ */
+public final class CampaignStatistics {
+
+    /** The number of Entities. */
+    private final int m_entities;
+
+    /** The number of secret Entities. */
+    private final int m_secretEntities;
+
+    /** The number of Entities of each type. */
+    private final Map<EntityType, Integer> m_entitiesByType;
+
+    /** The number of words in all descriptions, public and secret. */
+    private final int m_descriptionWords;
+
+    /** The number of words in secret descriptions. */
+    private final int m_secretDescriptionWords;
+
+    /** The number of tags, public and secret. */
+    private final int m_tags;
+
+    /** The number of secret tags. */
+    private final int m_secretTags;
+
+    /** The number of Relationships. */
+    private final int m_relationships;
+
+    /** The number of secret Relationships. */
+    private final int m_secretRelationships;
+
+    /** The number of TimelineEntries. */
+    private final int m_timelineEntries;
+
+    /** The number of secret TimelineEntries. */
+    private final int m_secretTimelineEntries;
+
+    /** The number of months in the campaign calendar. */
+    private final int m_configuredMonths;
+
+    /**
+     * Creates a new CampaignStatistics.
+     * @param entities the number of Entities.
+     * @param secretEntities the number of secret Entities.
+     * @param entitiesByType the number of Entities of each type; types absent from the map have none.
+     * @param descriptionWords the number of words in all descriptions, public and secret.
+     * @param secretDescriptionWords the number of words in secret descriptions.
+     * @param tags the number of tags, public and secret.
+     * @param secretTags the number of secret tags.
+     * @param relationships the number of Relationships.
+     * @param secretRelationships the number of secret Relationships.
+     * @param timelineEntries the number of TimelineEntries.
+     * @param secretTimelineEntries the number of secret TimelineEntries.
+     * @param configuredMonths the number of months in the campaign calendar.
+     */
+    CampaignStatistics(int entities, int secretEntities, Map<EntityType, Integer> entitiesByType,
+                       int descriptionWords, int secretDescriptionWords, int tags, int secretTags,
+                       int relationships, int secretRelationships, int timelineEntries, int secretTimelineEntries,
+                       int configuredMonths) {
+        m_entities = entities;
+        m_secretEntities = secretEntities;
+        m_entitiesByType = new EnumMap<>(EntityType.class);
+        m_entitiesByType.putAll(entitiesByType);
+        m_descriptionWords = descriptionWords;
+        m_secretDescriptionWords = secretDescriptionWords;
+        m_tags = tags;
+        m_secretTags = secretTags;
+        m_relationships = relationships;
+        m_secretRelationships = secretRelationships;
+        m_timelineEntries = timelineEntries;
+        m_secretTimelineEntries = secretTimelineEntries;
+        m_configuredMonths = configuredMonths;
+    }
+
+    /**
+     * Returns the number of Entities.
+     * @return the number of Entities.
+     */
+    public int getEntities() {
+        return m_entities;
+    }
+
+    /**
+     * Returns the number of secret Entities.
+     * @return the number of secret Entities.
+     */
+    public int getSecretEntities() {
+        return m_secretEntities;
+    }
+
+    /**
+     * Returns the number of Entities of the supplied type.
+     * @param type the type to count Entities of.
+     * @return the number of Entities of the supplied type.
+     */
+    public int getEntities(EntityType type) {
+        Integer count = m_entitiesByType.get(type);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Returns the number of words in all descriptions, public and secret.
+     * @return the number of words in all descriptions.
+     */
+    public int getDescriptionWords() {
+        return m_descriptionWords;
+    }
+
+    /**
+     * Returns the number of words in secret descriptions.
+     * @return the number of words in secret descriptions.
+     */
+    public int getSecretDescriptionWords() {
+        return m_secretDescriptionWords;
+    }
+
+    /**
+     * Returns the number of tags, public and secret.
+     * @return the number of tags.
+     */
+    public int getTags() {
+        return m_tags;
+    }
+
+    /**
+     * Returns the number of secret tags.
+     * @return the number of secret tags.
+     */
+    public int getSecretTags() {
+        return m_secretTags;
+    }
+
+    /**
+     * Returns the number of Relationships.
+     * @return the number of Relationships.
+     */
+    public int getRelationships() {
+        return m_relationships;
+    }
+
+    /**
+     * Returns the number of secret Relationships.
+     * @return the number of secret Relationships.
+     */
+    public int getSecretRelationships() {
+        return m_secretRelationships;
+    }
+
+    /**
+     * Returns the number of TimelineEntries.
+     * @return the number of TimelineEntries.
+     */
+    public int getTimelineEntries() {
+        return m_timelineEntries;
+    }
+
+    /**
+     * Returns the number of secret TimelineEntries.
+     * @return the number of secret TimelineEntries.
+     */
+    public int getSecretTimelineEntries() {
+        return m_secretTimelineEntries;
+    }
+
+    /**
+     * Returns the number of months in the campaign calendar.
+     * @return the number of months in the campaign calendar.
+     */
+    public int getConfiguredMonths() {
+        return m_configuredMonths;
+    }
+}
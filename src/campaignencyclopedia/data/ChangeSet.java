@@ -0,0 +1,169 @@
+package campaignencyclopedia.data;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The coalesced changes made to a CampaignDataManager by a batch of mutations.  Each ID appears in at most one of the
+ * added, updated or removed Sets of its kind; an Entity added and then removed in the same batch does not appear at all.
+ * @author adam
+ */
+public final class ChangeSet {
+
+    /** The IDs of the Entities added. */
+    private final Set<UUID> m_addedEntities;
+
+    /** The IDs of the Entities updated, including those whose Relationships changed. */
+    private final Set<UUID> m_updatedEntities;
+
+    /** The IDs of the Entities removed. */
+    private final Set<UUID> m_removedEntities;
+
+    /** The IDs of the TimelineEntries added or updated. */
+    private final Set<UUID> m_addedOrUpdatedTimelineEntries;
+
+    /** The IDs of the TimelineEntries removed. */
+    private final Set<UUID> m_removedTimelineEntries;
+
+    /**
+     * Creates a new ChangeSet from the supplied Builder.
+     * @param builder the Builder holding the changes.
+     */
+    private ChangeSet(Builder builder) {
+        m_addedEntities = Collections.unmodifiableSet(new HashSet<>(builder.m_addedEntities));
+        m_updatedEntities = Collections.unmodifiableSet(new HashSet<>(builder.m_updatedEntities));
+        m_removedEntities = Collections.unmodifiableSet(new HashSet<>(builder.m_removedEntities));
+        m_addedOrUpdatedTimelineEntries = Collections.unmodifiableSet(new HashSet<>(builder.m_addedOrUpdatedTimelineEntries));
+        m_removedTimelineEntries = Collections.unmodifiableSet(new HashSet<>(builder.m_removedTimelineEntries));
+    }
+
+    /**
+     * Returns the IDs of the Entities added.
+     * @return the IDs of the Entities added.
+     */
+    public Set<UUID> getAddedEntities() {
+        return m_addedEntities;
+    }
+
+    /**
+     * Returns the IDs of the Entities updated, including those whose Relationships changed.
+     * @return the IDs of the Entities updated.
+     */
+    public Set<UUID> getUpdatedEntities() {
+        return m_updatedEntities;
+    }
+
+    /**
+     * Returns the IDs of the Entities removed.
+     * @return the IDs of the Entities removed.
+     */
+    public Set<UUID> getRemovedEntities() {
+        return m_removedEntities;
+    }
+
+    /**
+     * Returns the IDs of the TimelineEntries added or updated.
+     * @return the IDs of the TimelineEntries added or updated.
+     */
+    public Set<UUID> getAddedOrUpdatedTimelineEntries() {
+        return m_addedOrUpdatedTimelineEntries;
+    }
+
+    /**
+     * Returns the IDs of the TimelineEntries removed.
+     * @return the IDs of the TimelineEntries removed.
+     */
+    public Set<UUID> getRemovedTimelineEntries() {
+        return m_removedTimelineEntries;
+    }
+
+    /**
+     * Returns true if this ChangeSet holds no changes.
+     * @return true if this ChangeSet holds no changes.
+     */
+    public boolean isEmpty() {
+        return m_addedEntities.isEmpty() && m_updatedEntities.isEmpty() && m_removedEntities.isEmpty() &&
+               m_addedOrUpdatedTimelineEntries.isEmpty() && m_removedTimelineEntries.isEmpty();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ChangeSet{added=" + m_addedEntities + ", updated=" + m_updatedEntities + ", removed=" +
+               m_removedEntities + ", timelineAddedOrUpdated=" + m_addedOrUpdatedTimelineEntries +
+               ", timelineRemoved=" + m_removedTimelineEntries + "}";
+    }
+
+    /** Records changes as they are made, coalescing repeated changes to the same ID. */
+    static final class Builder {
+
+        private final Set<UUID> m_addedEntities = new HashSet<>();
+        private final Set<UUID> m_updatedEntities = new HashSet<>();
+        private final Set<UUID> m_removedEntities = new HashSet<>();
+        private final Set<UUID> m_addedOrUpdatedTimelineEntries = new HashSet<>();
+        private final Set<UUID> m_removedTimelineEntries = new HashSet<>();
+
+        /**
+         * Records the addition of an Entity.
+         * @param id the ID of the added Entity.
+         */
+        void entityAdded(UUID id) {
+            // Removed and then added again within the batch, so from the outside it was only updated.
+            if (m_removedEntities.remove(id)) {
+                m_updatedEntities.add(id);
+            } else {
+                m_addedEntities.add(id);
+            }
+        }
+
+        /**
+         * Records the update of an Entity.
+         * @param id the ID of the updated Entity.
+         */
+        void entityUpdated(UUID id) {
+            if (!m_addedEntities.contains(id)) {
+                m_updatedEntities.add(id);
+            }
+        }
+
+        /**
+         * Records the removal of an Entity.
+         * @param id the ID of the removed Entity.
+         */
+        void entityRemoved(UUID id) {
+            // Added and then removed within the batch, so from the outside nothing happened.
+            if (!m_addedEntities.remove(id)) {
+                m_updatedEntities.remove(id);
+                m_removedEntities.add(id);
+            }
+        }
+
+        /**
+         * Records the addition or update of a TimelineEntry.
+         * @param id the ID of the added or updated TimelineEntry.
+         */
+        void timelineEntryAddedOrUpdated(UUID id) {
+            m_removedTimelineEntries.remove(id);
+            m_addedOrUpdatedTimelineEntries.add(id);
+        }
+
+        /**
+         * Records the removal of a TimelineEntry.
+         * @param id the ID of the removed TimelineEntry.
+         */
+        void timelineEntryRemoved(UUID id) {
+            m_addedOrUpdatedTimelineEntries.remove(id);
+            m_removedTimelineEntries.add(id);
+        }
+
+        /**
+         * Returns a ChangeSet holding the changes recorded so far.
+         * @return a ChangeSet holding the changes recorded so far.
+         */
+        ChangeSet build() {
+            return new ChangeSet(this);
+        }
+    }
+}
@@ -15,18 +15,29 @@ public class ComparisonTools {
      * @return a trimmed string for comparison that only uses the parts of the string that matter for sorting.
      */
     public static String trimForSort(String toTrim) {
-        if (toTrim.toLowerCase().startsWith("the ")) {
+        if (startsWithIgnoreCase(toTrim, "the ")) {
             toTrim = toTrim.substring(4);
         }
-        if (toTrim.toLowerCase().startsWith("king ")) {
+        if (startsWithIgnoreCase(toTrim, "king ")) {
             toTrim = toTrim.substring(5);
         }
-        if (toTrim.toLowerCase().startsWith("lord ")) {
+        if (startsWithIgnoreCase(toTrim, "lord ")) {
             toTrim = toTrim.substring(5);
         }
-        if (toTrim.toLowerCase().startsWith("lady ")) {
+        if (startsWithIgnoreCase(toTrim, "lady ")) {
             toTrim = toTrim.substring(5);
         }
         return toTrim;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns true if the supplied String starts with the supplied prefix, ignoring case.  Unlike lower-casing the
+     * String first, this does not allocate.
+     * @param str the String to check.
+     * @param prefix the prefix to look for.
+     * @return true if the supplied String starts with the supplied prefix, ignoring case, false otherwise.
+     */
+    private static boolean startsWithIgnoreCase(String str, String prefix) {
+        return str.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+}
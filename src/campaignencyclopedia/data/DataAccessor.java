@@ -20,8 +20,8 @@ public interface DataAccessor {
     public Entity getEntity(UUID id);
 
     /**
-     * Returns all Entities available to the data accessor.
-     * @return all Entities available to the data accessor.
+     * Returns all Entities available to the data accessor, in sorted order.
+     * @return an unmodifiable, sorted List of all Entities available to the data accessor.
      */
     public List<Entity> getAllEntities();
 
@@ -56,6 +56,37 @@ public interface DataAccessor {
      */
     public Set<TimelineEntry> getTimelineData();
 
+    /**
+     * Returns the TimelineEntries dated between the supplied months, inclusive, in chronological order: by year, then
+     * month, then title.  Integer.MIN_VALUE and Integer.MAX_VALUE may be passed to leave either end of the range open.
+     * @param fromYear the year of the earliest entries to return.
+     * @param fromMonth the index of the month of the earliest entries to return.
+     * @param toYear the year of the latest entries to return.
+     * @param toMonth the index of the month of the latest entries to return.
+     * @return an unmodifiable, chronologically ordered List of the TimelineEntries in the range, never null.
+     */
+    public List<TimelineEntry> getTimelineEntries(int fromYear, int fromMonth, int toYear, int toMonth);
+
+    /**
+     * Returns the TimelineEntries associated with the Entity with the supplied ID.
+     * @param entity the ID of the Entity to get TimelineEntries for.
+     * @return the TimelineEntries associated with the Entity, never null.
+     */
+    public Set<TimelineEntry> getTimelineEntriesFor(UUID entity);
+
+    /**
+     * Makes every TimelineEntry associated with the Entity with the supplied ID secret or public, as one change.
+     * @param entity the ID of the Entity whose TimelineEntries should be updated.
+     * @param secret true to make the TimelineEntries secret, false to make them public.
+     */
+    public void setTimelineEntrySecrecy(UUID entity, boolean secret);
+
+    /**
+     * Removes every TimelineEntry associated with the Entity with the supplied ID, as one change.
+     * @param entity the ID of the Entity whose TimelineEntries should be removed.
+     */
+    public void removeTimelineEntriesFor(UUID entity);
+
     /**
      * Returns the configured Campaign Calendar.
      * @return the configured Campaign Calendar.
@@ -89,4 +120,31 @@ public interface DataAccessor {
      * @return all of the Relationships for the Entity with the supplied ID.
      */
     public RelationshipManager getRelationshipsForEntity(UUID entity);
+
+    /**
+     * Returns the Relationships owned by any Entity that point at the Entity with the supplied ID.
+     * @param entity the ID of the Entity to get inbound Relationships for.
+     * @return all of the Relationships that point at the Entity with the supplied ID, never null.
+     */
+    public Set<Relationship> getRelationshipsPointingTo(UUID entity);
+
+    /**
+     * Returns the Relationship graph of the campaign as it is now, for traversals over primitive arrays.  The graph is
+     * immutable; later changes produce a new one.
+     * @return the Relationship graph of the campaign.
+     */
+    public RelationshipGraph getRelationshipGraph();
+
+    /**
+     * Returns the index of the tags of all Entities, kept up to date as Entities change.
+     * @return the index of the tags of all Entities.
+     */
+    public TagIndex getTagIndex();
+
+    /**
+     * Returns the current counts of the contents of the campaign.  The counts are kept up to date as the data changes,
+     * so this is cheap to call.
+     * @return the current counts of the contents of the campaign.
+     */
+    public CampaignStatistics getStatistics();
 }
@@ -0,0 +1,14 @@
+package campaignencyclopedia.data;
+
+/**
+ * A group of mutations to be applied to a CampaignDataManager as a single batch.
+ * @author adam
+ */
+public interface DataBatch {
+
+    /**
+     * Applies this batch's mutations to the supplied DataAccessor.
+     * @param accessor the DataAccessor to mutate.
+     */
+    public void apply(DataAccessor accessor);
+}
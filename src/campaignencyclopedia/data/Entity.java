@@ -19,6 +19,12 @@ public class Entity implements Comparable<Entity>, ColoredDisplayable {
     private final EntityData m_secretData;
     private final boolean m_isSecret;
 
+    /** The source the EntityData of this Entity is loaded from when needed, or null if this Entity holds it. */
+    private final EntityDataSource m_dataSource;
+
+    /** The name of this Entity as trimmed for sorting, computed once so comparisons never allocate. */
+    private final String m_sortKey;
+
     /**
      * Constructs a new Entity.
      * @param id the ID of the Entity.
@@ -35,6 +41,31 @@ public class Entity implements Comparable<Entity>, ColoredDisplayable {
         m_publicData = publicData;
         m_secretData = secretData;
         m_isSecret = isSecret;
+        m_dataSource = null;
+        m_sortKey = name == null ? "" : ComparisonTools.trimForSort(name);
+    }
+
+    /**
+     * Constructs a new Entity whose public and secret data are not held by it, but loaded from the supplied source
+     * each time they are asked for.  This lets very large campaigns be opened without holding every description.
+     * @param id the ID of the Entity.
+     * @param name the name of the Entity.
+     * @param type the EntityType of this Entity.
+     * @param isSecret true if this Entity is a secret, false otherwise.
+     * @param dataSource the source of the Entity's public and secret data.
+     */
+    public Entity(UUID id, String name, EntityType type, boolean isSecret, EntityDataSource dataSource) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Parameter 'dataSource' must not be null.");
+        }
+        m_id = id;
+        m_name = name;
+        m_type = type;
+        m_publicData = null;
+        m_secretData = null;
+        m_isSecret = isSecret;
+        m_dataSource = dataSource;
+        m_sortKey = name == null ? "" : ComparisonTools.trimForSort(name);
     }
 
     public UUID getId() {
@@ -46,11 +77,20 @@ public class Entity implements Comparable<Entity>, ColoredDisplayable {
     }
 
     public EntityData getSecretData() {
-        return m_secretData;
+        return m_dataSource == null ? m_secretData : m_dataSource.getSecretData(m_id);
     }
 
     public EntityData getPublicData() {
-        return m_publicData;
+        return m_dataSource == null ? m_publicData : m_dataSource.getPublicData(m_id);
+    }
+
+    /**
+     * Returns true if the EntityData of this Entity is loaded from the supplied source rather than held by it.
+     * @param dataSource the source to check.
+     * @return true if this Entity's data is loaded from the supplied source.
+     */
+    public boolean isLoadedFrom(EntityDataSource dataSource) {
+        return dataSource != null && m_dataSource == dataSource;
     }
 
     /**
@@ -69,15 +109,23 @@ public class Entity implements Comparable<Entity>, ColoredDisplayable {
         return m_name;
     }
 
+    /**
+     * Returns the key this Entity is sorted by, its name with any leading article or title removed.
+     * @return the key this Entity is sorted by.
+     */
+    public String getSortKey() {
+        return m_sortKey;
+    }
+
     /** {@inheritDoc} */
     @Override
     public int hashCode() {
+        // The public and secret data are left out: hashing them would mean hashing every description, and loading it
+        // if the Entity does not hold it.
         int hash = 5;
         hash = 29 * hash + Objects.hashCode(this.m_id);
         hash = 29 * hash + Objects.hashCode(this.m_type);
         hash = 29 * hash + Objects.hashCode(this.m_name);
-        hash = 29 * hash + Objects.hashCode(this.m_publicData);
-        hash = 29 * hash + Objects.hashCode(this.m_secretData);
         hash = 29 * hash + (this.m_isSecret ? 1 : 0);
         return hash;
     }
@@ -101,10 +149,10 @@ public class Entity implements Comparable<Entity>, ColoredDisplayable {
         if (!Objects.equals(this.m_name, other.m_name)) {
             return false;
         }
-        if (!Objects.equals(this.m_publicData, other.m_publicData)) {
+        if (!Objects.equals(getPublicData(), other.getPublicData())) {
             return false;
         }
-        if (!Objects.equals(this.m_secretData, other.m_secretData)) {
+        if (!Objects.equals(getSecretData(), other.getSecretData())) {
             return false;
         }
         if (this.m_isSecret != other.m_isSecret) {
@@ -116,9 +164,7 @@ public class Entity implements Comparable<Entity>, ColoredDisplayable {
     /** {@inheritDoc} */
     @Override
     public int compareTo(Entity t) {
-        String first = ComparisonTools.trimForSort(this.getName());
-        String second = ComparisonTools.trimForSort(t.getName());
-        return first.compareTo(second);
+        return m_sortKey.compareTo(t.m_sortKey);
     }
 
     /** {@inheritDoc} */
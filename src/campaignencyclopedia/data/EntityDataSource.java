@@ -0,0 +1,25 @@
+package campaignencyclopedia.data;
+
+import java.util.UUID;
+
+/**
+ * A source of the public and secret data of Entities which do not hold it themselves, such as those of a campaign file
+ * whose descriptions are only read when they are needed.
+ * @author adam
+ */
+public interface EntityDataSource {
+
+    /**
+     * Returns the public data of the Entity with the supplied ID.
+     * @param entity the ID of the Entity.
+     * @return the public data of the Entity.
+     */
+    public EntityData getPublicData(UUID entity);
+
+    /**
+     * Returns the secret data of the Entity with the supplied ID.
+     * @param entity the ID of the Entity.
+     * @return the secret data of the Entity.
+     */
+    public EntityData getSecretData(UUID entity);
+}
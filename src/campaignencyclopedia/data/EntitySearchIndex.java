@@ -0,0 +1,527 @@
+package campaignencyclopedia.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * An in-memory inverted index over the searchable text of Entities, kept up to date incrementally as a listener on the
+ * CampaignDataManager.
+ *
+ * The short fields of an Entity (its name, the display string of its type and each of its tags) are indexed by every
+ * normalized 1, 2 and 3 character n-gram, so that they can be searched by substring.  Descriptions are indexed by
+ * normalized word, and are searched by word prefix.  Public and secret text are indexed separately, so that searches
+ * may leave out the secret text.
+ *
+ * Each indexed Entity is given a dense int slot, and postings are lists of slots, so that each posting costs an int
+ * and searches combine postings as bit sets.
+ *
+ * The index is only built when it is first searched, and again after new data is set, rather than as soon as the
+ * Entities are available: indexing reads every tag and description, which for a campaign whose data is read from its
+ * file as needed means reading the whole file.  Until the index is built, changes are not indexed, as building it
+ * indexes the Entities as they are by then.
+ *
+ * The index synchronizes on itself, so a caller holding its lock may search and then read the version the results are
+ * of, knowing that no change was indexed between the two.
+ *
+ * @author adam
+ */
+public class EntitySearchIndex implements CampaignDataManagerListener {
+
+    /** The longest n-gram indexed. */
+    private static final int MAX_GRAM_LENGTH = 3;
+
+    /** The accessor to fetch Entities from when told of batched changes. */
+    private final DataAccessor m_accessor;
+
+    /** The slot of each indexed Entity, by ID. */
+    private final Map<UUID, Integer> m_slots;
+
+    /** The indexed text of the Entity in each slot, or null if the slot is free. */
+    private final List<IndexedEntity> m_entities;
+
+    /** The free slots, to be reused before new ones are added. */
+    private final List<Integer> m_freeSlots;
+
+    /** The slots of the Entities whose public short fields contain each n-gram. */
+    private final Map<Long, SlotList> m_publicGrams;
+
+    /** The slots of the Entities whose secret short fields contain each n-gram. */
+    private final Map<Long, SlotList> m_secretGrams;
+
+    /** The slots of the Entities whose public description contains each word, sorted for prefix searches. */
+    private final TreeMap<String, SlotList> m_publicWords;
+
+    /** The slots of the Entities whose secret description contains each word, sorted for prefix searches. */
+    private final TreeMap<String, SlotList> m_secretWords;
+
+    /** Incremented on every change to the index. */
+    private long m_version;
+
+    /** True if the Entities have been indexed since the index was created or last cleared. */
+    private boolean m_built;
+
+    /**
+     * Creates a new EntitySearchIndex of the Entities available from the supplied accessor, which are indexed when it
+     * is first searched.  The index must be added as a listener on the data manager to be kept up to date.
+     * @param accessor the accessor to index the Entities of.
+     */
+    public EntitySearchIndex(DataAccessor accessor) {
+        if (accessor == null) {
+            throw new IllegalArgumentException("Parameter 'accessor' must not be null.");
+        }
+        m_accessor = accessor;
+        m_slots = new HashMap<>();
+        m_entities = new ArrayList<>();
+        m_freeSlots = new ArrayList<>();
+        m_publicGrams = new HashMap<>();
+        m_secretGrams = new HashMap<>();
+        m_publicWords = new TreeMap<>();
+        m_secretWords = new TreeMap<>();
+    }
+
+    /**
+     * Returns the IDs of the Entities whose text contains the supplied search string.  The name, type and tags of an
+     * Entity match if they contain the search string; its description matches if each word of the search string is
+     * the start of a word in the description.  An empty search string matches every Entity, and is answered without
+     * building the index.
+     * @param searchString the text to search for.
+     * @param includeSecret true if the secret tags and description of Entities should be searched too.
+     * @return the IDs of the matching Entities.
+     */
+    public synchronized Set<UUID> search(String searchString, boolean includeSecret) {
+        String query = normalize(searchString);
+        if (query.isEmpty()) {
+            Set<UUID> ids = new HashSet<>();
+            for (Entity entity : m_accessor.getAllEntities()) {
+                ids.add(entity.getId());
+            }
+            return ids;
+        }
+        if (!m_built) {
+            // Listeners are told of changes after they are made, so the Entities read here include every change
+            // ignored while the index was not built.  Changes told of from now on are indexed again, which is harmless.
+            for (Entity entity : m_accessor.getAllEntities()) {
+                index(entity);
+            }
+            m_built = true;
+        }
+        BitSet matches = new BitSet(m_entities.size());
+        searchShortFields(query, false, matches);
+        searchWords(query, m_publicWords, matches);
+        if (includeSecret) {
+            searchShortFields(query, true, matches);
+            searchWords(query, m_secretWords, matches);
+        }
+
+        Set<UUID> ids = new HashSet<>();
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            ids.add(m_entities.get(slot).id);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns a number which changes every time the index changes, so that search results may be cached.
+     * @return the current version of the index.
+     */
+    public synchronized long getVersion() {
+        return m_version;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void dataRemoved(UUID id) {
+        if (m_built) {
+            unindex(id);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void dataAddedOrUpdated(Entity entity) {
+        if (m_built && entity != null) {
+            index(entity);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void timelineEntryAddedOrUpdated(TimelineEntry tle) {
+        // ignored
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void timelineEntryRemoved(UUID id) {
+        // ignored
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void clearAllData() {
+        m_slots.clear();
+        m_entities.clear();
+        m_freeSlots.clear();
+        m_publicGrams.clear();
+        m_secretGrams.clear();
+        m_publicWords.clear();
+        m_secretWords.clear();
+        m_built = false;
+        m_version++;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void dataChanged(ChangeSet changes) {
+        if (!m_built) {
+            return;
+        }
+        for (UUID id : changes.getRemovedEntities()) {
+            unindex(id);
+        }
+        for (UUID id : changes.getAddedEntities()) {
+            dataAddedOrUpdated(m_accessor.getEntity(id));
+        }
+        for (UUID id : changes.getUpdatedEntities()) {
+            dataAddedOrUpdated(m_accessor.getEntity(id));
+        }
+    }
+
+    /**
+     * Adds the supplied Entity to the index, replacing any earlier version of it.
+     * @param entity the Entity to index.
+     */
+    private void index(Entity entity) {
+        unindex(entity.getId());
+
+        List<String> publicFields = new ArrayList<>();
+        publicFields.add(normalize(entity.getName()));
+        publicFields.add(normalize(entity.getType().getDisplayString()));
+        for (String tag : entity.getPublicData().getTags()) {
+            publicFields.add(normalize(tag));
+        }
+        List<String> secretFields = new ArrayList<>();
+        for (String tag : entity.getSecretData().getTags()) {
+            secretFields.add(normalize(tag));
+        }
+
+        IndexedEntity indexed = new IndexedEntity(entity.getId(),
+                                                  publicFields.toArray(new String[publicFields.size()]),
+                                                  secretFields.toArray(new String[secretFields.size()]),
+                                                  words(entity.getPublicData().getDescription()),
+                                                  words(entity.getSecretData().getDescription()));
+        int slot;
+        if (m_freeSlots.isEmpty()) {
+            slot = m_entities.size();
+            m_entities.add(indexed);
+        } else {
+            slot = m_freeSlots.remove(m_freeSlots.size() - 1);
+            m_entities.set(slot, indexed);
+        }
+        m_slots.put(entity.getId(), slot);
+        for (long gram : grams(indexed.publicFields)) {
+            addPosting(m_publicGrams, gram, slot);
+        }
+        for (long gram : grams(indexed.secretFields)) {
+            addPosting(m_secretGrams, gram, slot);
+        }
+        for (String word : indexed.publicWords) {
+            addPosting(m_publicWords, word, slot);
+        }
+        for (String word : indexed.secretWords) {
+            addPosting(m_secretWords, word, slot);
+        }
+        m_version++;
+    }
+
+    /**
+     * Removes the Entity with the supplied ID from the index, if present.
+     * @param id the ID of the Entity to remove.
+     */
+    private void unindex(UUID id) {
+        Integer slot = m_slots.remove(id);
+        if (slot != null) {
+            IndexedEntity indexed = m_entities.get(slot);
+            for (long gram : grams(indexed.publicFields)) {
+                removePosting(m_publicGrams, gram, slot);
+            }
+            for (long gram : grams(indexed.secretFields)) {
+                removePosting(m_secretGrams, gram, slot);
+            }
+            for (String word : indexed.publicWords) {
+                removePosting(m_publicWords, word, slot);
+            }
+            for (String word : indexed.secretWords) {
+                removePosting(m_secretWords, word, slot);
+            }
+            m_entities.set(slot, null);
+            m_freeSlots.add(slot);
+            m_version++;
+        }
+    }
+
+    /**
+     * Sets the slots of Entities whose public or secret short fields contain the supplied query in the supplied bits.
+     * @param query the normalized, non-empty query.
+     * @param secret true to search the secret short fields, false to search the public ones.
+     * @param matches the bits to set.
+     */
+    private void searchShortFields(String query, boolean secret, BitSet matches) {
+        Map<Long, SlotList> grams = secret ? m_secretGrams : m_publicGrams;
+
+        // Queries no longer than an indexed n-gram are answered by its postings alone.
+        if (query.length() <= MAX_GRAM_LENGTH) {
+            SlotList postings = grams.get(encode(query, 0, query.length()));
+            if (postings != null) {
+                postings.setAll(matches);
+            }
+            return;
+        }
+
+        // Otherwise only Entities holding every trigram of the query can match, so check those holding the rarest.
+        SlotList candidates = null;
+        for (int i = 0; i + MAX_GRAM_LENGTH <= query.length(); i++) {
+            SlotList postings = grams.get(encode(query, i, i + MAX_GRAM_LENGTH));
+            if (postings == null) {
+                return;
+            }
+            if (candidates == null || postings.size < candidates.size) {
+                candidates = postings;
+            }
+        }
+        for (int i = 0; i < candidates.size; i++) {
+            int slot = candidates.slots[i];
+            IndexedEntity indexed = m_entities.get(slot);
+            for (String field : secret ? indexed.secretFields : indexed.publicFields) {
+                if (field.contains(query)) {
+                    matches.set(slot);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the slots of Entities with a description word starting with each word of the supplied query in the
+     * supplied bits.
+     * @param query the normalized, non-empty query.
+     * @param words the word postings to search.
+     * @param matches the bits to set.
+     */
+    private static void searchWords(String query, TreeMap<String, SlotList> words, BitSet matches) {
+        BitSet result = null;
+        for (String prefix : words(query)) {
+            BitSet prefixMatches = new BitSet();
+            for (SlotList postings : words.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                postings.setAll(prefixMatches);
+            }
+            if (result == null) {
+                result = prefixMatches;
+            } else {
+                result.and(prefixMatches);
+            }
+            if (result.isEmpty()) {
+                return;
+            }
+        }
+        if (result != null) {
+            matches.or(result);
+        }
+    }
+
+    /**
+     * Returns the distinct encoded n-grams, of every indexed length, of the supplied fields.
+     * @param fields the normalized fields.
+     * @return the distinct encoded n-grams of the supplied fields.
+     */
+    private static long[] grams(String[] fields) {
+        int count = 0;
+        for (String field : fields) {
+            count += field.length() * MAX_GRAM_LENGTH;
+        }
+        long[] grams = new long[count];
+        count = 0;
+        for (String field : fields) {
+            for (int start = 0; start < field.length(); start++) {
+                for (int end = start + 1; end <= Math.min(field.length(), start + MAX_GRAM_LENGTH); end++) {
+                    grams[count++] = encode(field, start, end);
+                }
+            }
+        }
+
+        // Sort to drop the duplicates.
+        Arrays.sort(grams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || grams[distinct - 1] != grams[i]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * Returns the distinct normalized words of the supplied text.
+     * @param text the text to split into words.
+     * @return the distinct normalized words of the supplied text.
+     */
+    private static String[] words(String text) {
+        Set<String> words = new HashSet<>();
+        String normalized = normalize(text);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /**
+     * Encodes the n-gram of the supplied text between the supplied indices, which must be at most MAX_GRAM_LENGTH
+     * apart, as a long.
+     * @param text the text.
+     * @param start the index of the first character of the n-gram.
+     * @param end the index after the last character of the n-gram.
+     * @return the encoded n-gram.
+     */
+    private static long encode(String text, int start, int end) {
+        long code = end - start;
+        for (int i = start; i < end; i++) {
+            code = (code << 16) | text.charAt(i);
+        }
+        return code;
+    }
+
+    /**
+     * Returns the supplied text trimmed and in lower case, or an empty String if it is null.
+     * @param text the text to normalize.
+     * @return the normalized text.
+     */
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase();
+    }
+
+    /**
+     * Adds the supplied slot to the postings of the supplied key.
+     * @param postings the postings to update.
+     * @param key the key to add the slot under.
+     * @param slot the slot to add.
+     */
+    private static <K> void addPosting(Map<K, SlotList> postings, K key, int slot) {
+        SlotList slots = postings.get(key);
+        if (slots == null) {
+            slots = new SlotList();
+            postings.put(key, slots);
+        }
+        slots.add(slot);
+    }
+
+    /**
+     * Removes the supplied slot from the postings of the supplied key.
+     * @param postings the postings to update.
+     * @param key the key to remove the slot from.
+     * @param slot the slot to remove.
+     */
+    private static <K> void removePosting(Map<K, SlotList> postings, K key, int slot) {
+        SlotList slots = postings.get(key);
+        if (slots != null) {
+            slots.remove(slot);
+            if (slots.size == 0) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    /** An unordered, growable list of slots. */
+    private static final class SlotList {
+
+        /** The slots; only the first size are in use. */
+        private int[] slots = new int[2];
+
+        /** The number of slots in the list. */
+        private int size;
+
+        /**
+         * Adds the supplied slot to the list.
+         * @param slot the slot to add.
+         */
+        private void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        /**
+         * Removes the supplied slot from the list, by moving the last slot into its place.
+         * @param slot the slot to remove.
+         */
+        private void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Sets the bit of each slot in the list.
+         * @param bits the bits to set.
+         */
+        private void setAll(BitSet bits) {
+            for (int i = 0; i < size; i++) {
+                bits.set(slots[i]);
+            }
+        }
+    }
+
+    /** The indexed text of a single Entity, kept so that it can be verified against and later removed. */
+    private static final class IndexedEntity {
+
+        /** The ID of the Entity. */
+        private final UUID id;
+
+        /** The normalized public short fields. */
+        private final String[] publicFields;
+
+        /** The normalized secret short fields. */
+        private final String[] secretFields;
+
+        /** The words of the public description. */
+        private final String[] publicWords;
+
+        /** The words of the secret description. */
+        private final String[] secretWords;
+
+        /**
+         * Creates a new IndexedEntity.
+         * @param id the ID of the Entity.
+         * @param publicFields the normalized public short fields.
+         * @param secretFields the normalized secret short fields.
+         * @param publicWords the words of the public description.
+         * @param secretWords the words of the secret description.
+         */
+        private IndexedEntity(UUID id, String[] publicFields, String[] secretFields, String[] publicWords,
+                              String[] secretWords) {
+            this.id = id;
+            this.publicFields = publicFields;
+            this.secretFields = secretFields;
+            this.publicWords = publicWords;
+            this.secretWords = secretWords;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package campaignencyclopedia.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable, persistent hash map implemented as a hash array mapped trie.  Adding or removing a mapping returns a
+ * new map which shares all unchanged structure with the original, so both operations are O(log32 n) and old versions
+ * of the map remain valid (and unchanged) forever.  This makes it cheap to hand out point-in-time snapshots of data
+ * which continues to be edited.
+ *
+ * Neither null keys nor null values are supported.
+ *
+ * @author adam
+ * @param <K> the key type.
+ * @param <V> the value type.
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    /** The number of hash bits consumed by each level of the trie. */
+    private static final int BITS = 5;
+
+    /** A mask for the hash bits consumed by each level of the trie. */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** The deepest a trie can nest:  seven bitmap levels, a collision node, and some headroom. */
+    private static final int MAX_DEPTH = 10;
+
+    /** A sentinel returned from lookups which find nothing. */
+    private static final Object NOT_FOUND = new Object();
+
+    /** The empty map. */
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap<>(0, BitmapNode.EMPTY);
+
+    /** The number of mappings in this map. */
+    private final int m_size;
+
+    /** The root node of the trie. */
+    private final Node m_root;
+
+    /**
+     * Creates a new PersistentHashMap.
+     * @param size the number of mappings in the trie.
+     * @param root the root node of the trie.
+     */
+    private PersistentHashMap(int size, Node root) {
+        m_size = size;
+        m_root = root;
+    }
+
+    /**
+     * Returns the empty map.
+     * @param <K> the key type.
+     * @param <V> the value type.
+     * @return the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the number of mappings in this map.
+     * @return the number of mappings in this map.
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * Returns true if this map has no mappings, false otherwise.
+     * @return true if this map has no mappings, false otherwise.
+     */
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    /**
+     * Returns the value mapped to the supplied key, or null if there is none.
+     * @param key the key to look up.
+     * @return the value mapped to the supplied key, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        Object value = m_root.find(0, hash(key), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+
+    /**
+     * Returns true if this map contains a mapping for the supplied key.
+     * @param key the key to look for.
+     * @return true if this map contains a mapping for the supplied key, false otherwise.
+     */
+    public boolean containsKey(Object key) {
+        return key != null && m_root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+    /**
+     * Returns a map with the supplied mapping added to (or replaced in) this one.  This map is not modified.
+     * @param key the key, must not be null.
+     * @param value the value, must not be null.
+     * @return a map with the supplied mapping, which may be this map if the mapping was already present.
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Parameter 'key' must not be null.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Parameter 'value' must not be null.");
+        }
+        boolean[] added = new boolean[1];
+        Node root = m_root.assoc(0, hash(key), key, value, added);
+        if (root == m_root) {
+            return this;
+        }
+        return new PersistentHashMap<>(added[0] ? m_size + 1 : m_size, root);
+    }
+
+    /**
+     * Returns a map with the mapping for the supplied key removed from this one.  This map is not modified.
+     * @param key the key to remove.
+     * @return a map without a mapping for the supplied key, which may be this map if there was no such mapping.
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (key == null) {
+            return this;
+        }
+        Node root = m_root.without(0, hash(key), key);
+        if (root == m_root) {
+            return this;
+        }
+        if (root == null) {
+            return empty();
+        }
+        return new PersistentHashMap<>(m_size - 1, root);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(m_root);
+    }
+
+    /**
+     * Returns an unmodifiable java.util.Map view of this map.  As this map never changes, neither does the view.
+     * @return an unmodifiable Map view of this map.
+     */
+    public Map<K, V> asMap() {
+        return new AbstractMap<K, V>() {
+            @Override
+            public V get(Object key) {
+                return PersistentHashMap.this.get(key);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return PersistentHashMap.this.containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return m_size;
+            }
+
+            @Override
+            public Set<Map.Entry<K, V>> entrySet() {
+                return new AbstractSet<Map.Entry<K, V>>() {
+                    @Override
+                    public Iterator<Map.Entry<K, V>> iterator() {
+                        return PersistentHashMap.this.iterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return m_size;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns the spread hash code of the supplied key.
+     * @param key the key to hash.
+     * @return the spread hash code of the supplied key.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the bit which represents the supplied hash at the supplied level of the trie.
+     * @param hash the hash.
+     * @param shift the shift of the trie level.
+     * @return the bit which represents the supplied hash at that level.
+     */
+    private static int bitFor(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * A node of the trie.  Every node stores its content as a flat array of key/value pairs, where a null key marks a
+     * value slot that holds a child Node.
+     */
+    private abstract static class Node {
+
+        /**
+         * Returns the key/value pair array of this node.
+         * @return the key/value pair array of this node.
+         */
+        abstract Object[] pairs();
+
+        /**
+         * Returns the value mapped to the supplied key under this node or NOT_FOUND.
+         * @param shift the shift of this node's level.
+         * @param hash the hash of the key.
+         * @param key the key.
+         * @return the value mapped to the key or NOT_FOUND.
+         */
+        abstract Object find(int shift, int hash, Object key);
+
+        /**
+         * Returns a node which contains the supplied mapping, or this node if it already did.
+         * @param shift the shift of this node's level.
+         * @param hash the hash of the key.
+         * @param key the key.
+         * @param value the value.
+         * @param added set to true if a new key was added (as opposed to a value being replaced).
+         * @return a node which contains the supplied mapping.
+         */
+        abstract Node assoc(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * Returns a node without a mapping for the supplied key, this node if there was no such mapping, or null if
+         * the resulting node would be empty.
+         * @param shift the shift of this node's level.
+         * @param hash the hash of the key.
+         * @param key the key.
+         * @return a node without a mapping for the supplied key, this node, or null.
+         */
+        abstract Node without(int shift, int hash, Object key);
+    }
+
+    /** A trie node which uses a 32-bit bitmap to record which of its 32 possible slots are populated. */
+    private static final class BitmapNode extends Node {
+
+        /** The empty node. */
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        /** The populated slots of this node. */
+        private final int m_bitmap;
+
+        /** The key/value pairs of the populated slots, in slot order. */
+        private final Object[] m_pairs;
+
+        /**
+         * Creates a new BitmapNode.
+         * @param bitmap the populated slots.
+         * @param pairs the key/value pairs of the populated slots.
+         */
+        private BitmapNode(int bitmap, Object[] pairs) {
+            m_bitmap = bitmap;
+            m_pairs = pairs;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Object[] pairs() {
+            return m_pairs;
+        }
+
+        /**
+         * Returns the index into the pair array of the supplied slot bit.
+         * @param bit the slot bit.
+         * @return the index of the key of that slot in the pair array.
+         */
+        private int indexOf(int bit) {
+            return 2 * Integer.bitCount(m_bitmap & (bit - 1));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bitFor(hash, shift);
+            if ((m_bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int idx = indexOf(bit);
+            Object k = m_pairs[idx];
+            Object v = m_pairs[idx + 1];
+            if (k == null) {
+                return ((Node) v).find(shift + BITS, hash, key);
+            }
+            return key.equals(k) ? v : NOT_FOUND;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bitFor(hash, shift);
+            int idx = indexOf(bit);
+            if ((m_bitmap & bit) == 0) {
+                Object[] pairs = new Object[m_pairs.length + 2];
+                System.arraycopy(m_pairs, 0, pairs, 0, idx);
+                pairs[idx] = key;
+                pairs[idx + 1] = value;
+                System.arraycopy(m_pairs, idx, pairs, idx + 2, m_pairs.length - idx);
+                added[0] = true;
+                return new BitmapNode(m_bitmap | bit, pairs);
+            }
+            Object k = m_pairs[idx];
+            Object v = m_pairs[idx + 1];
+            if (k == null) {
+                Node child = ((Node) v).assoc(shift + BITS, hash, key, value, added);
+                return child == v ? this : withPair(idx, null, child);
+            }
+            if (key.equals(k)) {
+                return v == value ? this : withPair(idx, k, value);
+            }
+            added[0] = true;
+            return withPair(idx, null, createNode(shift + BITS, k, v, hash, key, value));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int bit = bitFor(hash, shift);
+            if ((m_bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = indexOf(bit);
+            Object k = m_pairs[idx];
+            Object v = m_pairs[idx + 1];
+            if (k == null) {
+                Node child = ((Node) v).without(shift + BITS, hash, key);
+                if (child == v) {
+                    return this;
+                }
+                if (child != null) {
+                    return withPair(idx, null, child);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            // Remove the slot entirely.
+            if (m_bitmap == bit) {
+                return null;
+            }
+            Object[] pairs = new Object[m_pairs.length - 2];
+            System.arraycopy(m_pairs, 0, pairs, 0, idx);
+            System.arraycopy(m_pairs, idx + 2, pairs, idx, m_pairs.length - idx - 2);
+            return new BitmapNode(m_bitmap ^ bit, pairs);
+        }
+
+        /**
+         * Returns a copy of this node with the pair at the supplied index replaced.
+         * @param idx the index of the pair's key.
+         * @param key the new key, or null if value is a child Node.
+         * @param value the new value.
+         * @return a copy of this node with the pair replaced.
+         */
+        private BitmapNode withPair(int idx, Object key, Object value) {
+            Object[] pairs = m_pairs.clone();
+            pairs[idx] = key;
+            pairs[idx + 1] = value;
+            return new BitmapNode(m_bitmap, pairs);
+        }
+
+        /**
+         * Creates a node holding two mappings whose keys collided at the level above.
+         * @param shift the shift of the new node's level.
+         * @param key1 the first key.
+         * @param value1 the first value.
+         * @param hash2 the hash of the second key.
+         * @param key2 the second key.
+         * @param value2 the second value.
+         * @return a node holding both mappings.
+         */
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.assoc(shift, hash1, key1, value1, added).assoc(shift, hash2, key2, value2, added);
+        }
+    }
+
+    /** A trie node holding mappings whose keys have identical hashes. */
+    private static final class CollisionNode extends Node {
+
+        /** The hash shared by every key in this node. */
+        private final int m_hash;
+
+        /** The key/value pairs of this node. */
+        private final Object[] m_pairs;
+
+        /**
+         * Creates a new CollisionNode.
+         * @param hash the hash shared by every key in this node.
+         * @param pairs the key/value pairs of this node.
+         */
+        private CollisionNode(int hash, Object[] pairs) {
+            m_hash = hash;
+            m_pairs = pairs;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Object[] pairs() {
+            return m_pairs;
+        }
+
+        /**
+         * Returns the index of the supplied key in the pair array, or -1 if absent.
+         * @param key the key to look for.
+         * @return the index of the supplied key, or -1.
+         */
+        private int indexOf(Object key) {
+            for (int i = 0; i < m_pairs.length; i += 2) {
+                if (key.equals(m_pairs[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int idx = indexOf(key);
+            return idx < 0 ? NOT_FOUND : m_pairs[idx + 1];
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Node assoc(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != m_hash) {
+                // Nest this node beneath a bitmap node so the new key can branch away from it.
+                BitmapNode parent = new BitmapNode(bitFor(m_hash, shift), new Object[] {null, this});
+                return parent.assoc(shift, hash, key, value, added);
+            }
+            int idx = indexOf(key);
+            if (idx >= 0) {
+                if (m_pairs[idx + 1] == value) {
+                    return this;
+                }
+                Object[] pairs = m_pairs.clone();
+                pairs[idx + 1] = value;
+                return new CollisionNode(m_hash, pairs);
+            }
+            Object[] pairs = new Object[m_pairs.length + 2];
+            System.arraycopy(m_pairs, 0, pairs, 0, m_pairs.length);
+            pairs[m_pairs.length] = key;
+            pairs[m_pairs.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(m_hash, pairs);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int idx = indexOf(key);
+            if (idx < 0) {
+                return this;
+            }
+            if (m_pairs.length == 2) {
+                return null;
+            }
+            Object[] pairs = new Object[m_pairs.length - 2];
+            System.arraycopy(m_pairs, 0, pairs, 0, idx);
+            System.arraycopy(m_pairs, idx + 2, pairs, idx, m_pairs.length - idx - 2);
+            return new CollisionNode(m_hash, pairs);
+        }
+    }
+
+    /**
+     * A depth-first iterator over the mappings of a trie.
+     * @param <K> the key type.
+     * @param <V> the value type.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        /** The pair arrays of the nodes currently being walked, from the root down. */
+        private final Object[][] m_stack = new Object[MAX_DEPTH][];
+
+        /** The position within each pair array of m_stack. */
+        private final int[] m_positions = new int[MAX_DEPTH];
+
+        /** The index of the deepest node in m_stack, or -1 when iteration is complete. */
+        private int m_depth;
+
+        /** The next entry to return, or null if there are no more. */
+        private Map.Entry<K, V> m_next;
+
+        /**
+         * Creates a new EntryIterator.
+         * @param root the root of the trie to iterate.
+         */
+        private EntryIterator(Node root) {
+            m_stack[0] = root.pairs();
+            m_depth = 0;
+            advance();
+        }
+
+        /** Moves m_next on to the next entry of the trie. */
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            m_next = null;
+            while (m_depth >= 0) {
+                Object[] pairs = m_stack[m_depth];
+                int pos = m_positions[m_depth];
+                if (pos >= pairs.length) {
+                    m_stack[m_depth] = null;
+                    m_positions[m_depth] = 0;
+                    m_depth--;
+                    continue;
+                }
+                m_positions[m_depth] = pos + 2;
+                Object key = pairs[pos];
+                Object value = pairs[pos + 1];
+                if (key == null) {
+                    m_depth++;
+                    m_stack[m_depth] = ((Node) value).pairs();
+                } else {
+                    m_next = new AbstractMap.SimpleImmutableEntry<>((K) key, (V) value);
+                    return;
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasNext() {
+            return m_next != null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Map.Entry<K, V> next() {
+            if (m_next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> next = m_next;
+            advance();
+            return next;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("PersistentHashMap is immutable.");
+        }
+    }
+}
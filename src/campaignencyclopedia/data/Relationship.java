@@ -12,7 +12,11 @@ import java.util.UUID;
  */
 public class Relationship implements Comparable<Relationship> {
 
+    /** The text of this Relationship; always the instance shared through RelationshipLabels. */
     private final String m_relationship;
+
+    /** The RelationshipLabels code of the text of this Relationship. */
+    private final int m_relationshipCode;
     /** The ID of the Entity this Relationship is TO.*/
     private final UUID m_idOfRelatedEntity;
     /** The ID of the Entity that owns this relationship. */
@@ -41,7 +45,23 @@ public class Relationship implements Comparable<Relationship> {
         if (relationship.isEmpty()) {
             throw new IllegalArgumentException("Parameter 'relationship' cannot be empty.");
         }
-        m_relationship = relationship;
+        m_relationshipCode = RelationshipLabels.intern(relationship);
+        m_relationship = RelationshipLabels.getLabel(m_relationshipCode);
+        m_idOfRelatedEntity = relation;
+        m_idOfEntity = entity;
+        m_isSecret = isSecret;
+    }
+
+    /**
+     * Creates a Relationship whose type has already been interned, as RelationshipGraph does.
+     * @param entity the UUID of the entity that this Entity is FROM.
+     * @param relation the UUID of the Entity that this relationship is TO.
+     * @param relationshipCode the RelationshipLabels code of the type of this Relationship.
+     * @param isSecret true if this relationship is a secret one.
+     */
+    Relationship(UUID entity, UUID relation, int relationshipCode, boolean isSecret) {
+        m_relationshipCode = relationshipCode;
+        m_relationship = RelationshipLabels.getLabel(relationshipCode);
         m_idOfRelatedEntity = relation;
         m_idOfEntity = entity;
         m_isSecret = isSecret;
@@ -55,6 +75,14 @@ public class Relationship implements Comparable<Relationship> {
         return m_relationship;
     }
 
+    /**
+     * Returns the RelationshipLabels code of the type of this Relationship.
+     * @return the RelationshipLabels code of the type of this Relationship.
+     */
+    public int getRelationshipCode() {
+        return m_relationshipCode;
+    }
+
     /**
      * Returns the UUID of the Entity that is related to the owner.
      * @return the UUID of the Entity that is related to the owner.
@@ -83,7 +111,7 @@ public class Relationship implements Comparable<Relationship> {
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 79 * hash + Objects.hashCode(this.m_relationship);
+        hash = 79 * hash + this.m_relationshipCode;
         hash = 79 * hash + Objects.hashCode(this.m_idOfRelatedEntity);
         hash = 79 * hash + Objects.hashCode(this.m_idOfEntity);
         hash = 79 * hash + (this.m_isSecret ? 1 : 0);
@@ -100,7 +128,7 @@ public class Relationship implements Comparable<Relationship> {
             return false;
         }
         final Relationship other = (Relationship) obj;
-        if (!Objects.equals(this.m_relationship, other.m_relationship)) {
+        if (this.m_relationshipCode != other.m_relationshipCode) {
             return false;
         }
         if (!Objects.equals(this.m_idOfRelatedEntity, other.m_idOfRelatedEntity)) {
@@ -118,7 +146,10 @@ public class Relationship implements Comparable<Relationship> {
     /** {@inheritDoc} */
     @Override
     public int compareTo(Relationship t) {
-        return m_relationship.compareTo(t.getRelationshipText());
+        if (m_relationshipCode == t.m_relationshipCode) {
+            return 0;
+        }
+        return m_relationship.compareTo(t.m_relationship);
     }
 
     /** {@inheritDoc} */
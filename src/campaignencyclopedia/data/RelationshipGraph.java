@@ -0,0 +1,899 @@
+package campaignencyclopedia.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The Relationships of a campaign, held as an immutable graph of primitive arrays.  Each Entity which owns or is the
+ * target of Relationships is assigned a dense int node.  A node holds its outbound Relationships as a row of ints, the
+ * node each points to followed by its RelationshipLabels code, secret Relationships first; and its inbound adjacency as
+ * a sorted row of the nodes which hold Relationships pointing at it.  A Relationship therefore costs three ints, rather
+ * than a Relationship object, an array slot and the UUIDs it holds.
+ *
+ * The nodes are held in a persistent trie, so a change copies only the rows it touches and the paths of the trie which
+ * lead to them, and shares everything else with the graph it was made from.  This is how the CampaignDataManager stores
+ * Relationships: each change, made under its write lock, derives a new graph from the current one, and readers
+ * traverse whichever graph they read without locking.  RelationshipManagers are only created, read-only, on request.
+ *
+ * Relationships are stored under the Entity that owns them, which is the owner of each Relationship created from the
+ * graph.  The node of an Entity which neither owns a RelationshipManager nor is pointed at is released, leaving a gap
+ * in the node numbers until the graph is next built from scratch; getId() returns null for such a node.
+ *
+ * @author adam
+ */
+public final class RelationshipGraph {
+
+    /** A graph with no nodes. */
+    static final RelationshipGraph EMPTY = new RelationshipGraph(PersistentHashMap.<UUID, Integer>empty(),
+                                                                 NodeTable.EMPTY, 0, 0, 0);
+
+    /** The row of a node with no outbound or inbound Relationships. */
+    private static final int[] NO_EDGES = new int[0];
+
+    /** The (read-only, so shareable) RelationshipManager of nodes which own no Relationships. */
+    private static final RelationshipManager NO_RELATIONSHIPS =
+            RelationshipManager.readOnlyOf(new Relationship[0], 0);
+
+    /** The node of each ID. */
+    private final PersistentHashMap<UUID, Integer> m_nodes;
+
+    /** The data of each node, which is null for released nodes. */
+    private final NodeTable m_table;
+
+    /** The number of nodes which own a RelationshipManager, even an empty one. */
+    private final int m_ownerCount;
+
+    /** The number of Relationships. */
+    private final int m_edgeCount;
+
+    /** The number of secret Relationships. */
+    private final int m_secretEdgeCount;
+
+    /**
+     * Creates a new RelationshipGraph.
+     * @param nodes the node of each ID.
+     * @param table the data of each node.
+     * @param ownerCount the number of nodes which own a RelationshipManager.
+     * @param edgeCount the number of Relationships.
+     * @param secretEdgeCount the number of secret Relationships.
+     */
+    private RelationshipGraph(PersistentHashMap<UUID, Integer> nodes, NodeTable table, int ownerCount, int edgeCount,
+                              int secretEdgeCount) {
+        m_nodes = nodes;
+        m_table = table;
+        m_ownerCount = ownerCount;
+        m_edgeCount = edgeCount;
+        m_secretEdgeCount = secretEdgeCount;
+    }
+
+    /**
+     * Builds a RelationshipGraph from scratch, with consecutive node numbers.
+     * @param owners the IDs of the Entities which own a RelationshipManager, even if they have no Relationships.
+     * @param relationships the RelationshipManagers of the Entities, keyed by Entity ID.
+     * @return a new RelationshipGraph holding the supplied Relationships.
+     */
+    static RelationshipGraph build(Collection<UUID> owners, Map<UUID, RelationshipManager> relationships) {
+        // Assign the nodes, and convert each RelationshipManager to a row.
+        Map<UUID, Integer> nodes = new HashMap<>();
+        List<UUID> ids = new ArrayList<>();
+        Map<Integer, int[]> rows = new HashMap<>();
+        Map<Integer, Integer> secretCounts = new HashMap<>();
+        for (UUID owner : owners) {
+            rows.put(nodeOf(nodes, ids, owner), NO_EDGES);
+        }
+        int edgeCount = 0;
+        int secretEdgeCount = 0;
+        for (Map.Entry<UUID, RelationshipManager> entry : relationships.entrySet()) {
+            int owner = nodeOf(nodes, ids, entry.getKey());
+            Relationship[] rels = toArray(entry.getKey(), entry.getValue());
+            int[] row = new int[rels.length * 2];
+            int secretCount = 0;
+            for (int i = 0; i < rels.length; i++) {
+                row[2 * i] = nodeOf(nodes, ids, rels[i].getRelatedEntity());
+                row[2 * i + 1] = rels[i].getRelationshipCode();
+                if (rels[i].isSecret()) {
+                    secretCount++;
+                }
+            }
+            rows.put(owner, row);
+            secretCounts.put(owner, secretCount);
+            edgeCount += rels.length;
+            secretEdgeCount += secretCount;
+        }
+
+        // Count the distinct owners pointing at each node, then fill in the inbound rows in node order, so that each
+        // is sorted.
+        int nodeCount = ids.size();
+        int[][] targetsOf = new int[nodeCount][];
+        int[] inDegrees = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            targetsOf[node] = distinctTargets(rows.get(node));
+            for (int target : targetsOf[node]) {
+                inDegrees[target]++;
+            }
+        }
+        int[][] sources = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            sources[node] = inDegrees[node] == 0 ? NO_EDGES : new int[inDegrees[node]];
+            inDegrees[node] = 0;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            for (int target : targetsOf[node]) {
+                sources[target][inDegrees[target]++] = node;
+            }
+        }
+
+        Node[] data = new Node[nodeCount];
+        PersistentHashMap<UUID, Integer> index = PersistentHashMap.empty();
+        for (int node = 0; node < nodeCount; node++) {
+            Integer secretCount = secretCounts.get(node);
+            data[node] = new Node(ids.get(node), rows.get(node), secretCount == null ? 0 : secretCount, sources[node]);
+            index = index.plus(ids.get(node), node);
+        }
+        return new RelationshipGraph(index, NodeTable.of(data), rows.size(), edgeCount, secretEdgeCount);
+    }
+
+    /**
+     * Returns the number of node numbers in use, including those of released nodes.  All nodes are less than this.
+     * @return the number of node numbers in use.
+     */
+    public int getNodeCount() {
+        return m_table.size;
+    }
+
+    /**
+     * Returns the number of Relationships in the graph.
+     * @return the number of Relationships in the graph.
+     */
+    public int getEdgeCount() {
+        return m_edgeCount;
+    }
+
+    /**
+     * Returns the number of secret Relationships in the graph.
+     * @return the number of secret Relationships in the graph.
+     */
+    public int getSecretEdgeCount() {
+        return m_secretEdgeCount;
+    }
+
+    /**
+     * Returns the node of the Entity with the supplied ID, or -1 if it is not in the graph.
+     * @param id the ID of the Entity.
+     * @return the node of the Entity, or -1.
+     */
+    public int indexOf(UUID id) {
+        Integer node = id == null ? null : m_nodes.get(id);
+        return node == null ? -1 : node;
+    }
+
+    /**
+     * Returns the ID of the Entity of the supplied node, or null if the node has been released.
+     * @param node the node.
+     * @return the ID of the Entity of the supplied node, or null.
+     */
+    public UUID getId(int node) {
+        Node data = m_table.get(node);
+        return data == null ? null : data.id;
+    }
+
+    /**
+     * Returns the number of Relationships the supplied node owns.
+     * @param node the node.
+     * @return the number of Relationships the supplied node owns.
+     */
+    public int getOutDegree(int node) {
+        Node data = m_table.get(node);
+        return data == null || data.out == null ? 0 : data.out.length / 2;
+    }
+
+    /**
+     * Returns the node pointed at by the supplied Relationship of the supplied node.
+     * @param node the node.
+     * @param edge the index of the Relationship, less than getOutDegree(node).
+     * @return the node pointed at by the Relationship.
+     */
+    public int getTarget(int node, int edge) {
+        return m_table.get(node).out[2 * edge];
+    }
+
+    /**
+     * Returns the RelationshipLabels code of the type of the supplied Relationship of the supplied node.
+     * @param node the node.
+     * @param edge the index of the Relationship, less than getOutDegree(node).
+     * @return the RelationshipLabels code of the type of the Relationship.
+     */
+    public int getType(int node, int edge) {
+        return m_table.get(node).out[2 * edge + 1];
+    }
+
+    /**
+     * Returns true if the supplied Relationship of the supplied node is secret.
+     * @param node the node.
+     * @param edge the index of the Relationship, less than getOutDegree(node).
+     * @return true if the Relationship is secret.
+     */
+    public boolean isSecret(int node, int edge) {
+        return edge < m_table.get(node).secretCount;
+    }
+
+    /**
+     * Returns the number of distinct nodes which own Relationships pointing at the supplied node.
+     * @param node the node.
+     * @return the number of nodes with Relationships pointing at the supplied node.
+     */
+    public int getSourceCount(int node) {
+        Node data = m_table.get(node);
+        return data == null ? 0 : data.sources.length;
+    }
+
+    /**
+     * Returns one of the nodes which own Relationships pointing at the supplied node, in ascending order.
+     * @param node the node.
+     * @param index the index of the source, less than getSourceCount(node).
+     * @return the source node.
+     */
+    public int getSource(int node, int index) {
+        return m_table.get(node).sources[index];
+    }
+
+    /**
+     * Returns true if the Entity with the supplied ID owns a RelationshipManager, even an empty one.
+     * @param owner the ID of the Entity.
+     * @return true if the Entity owns a RelationshipManager.
+     */
+    public boolean isOwner(UUID owner) {
+        int node = indexOf(owner);
+        return node >= 0 && m_table.get(node).out != null;
+    }
+
+    /**
+     * Returns a new, read-only RelationshipManager holding the Relationships of the Entity with the supplied ID.
+     * @param owner the ID of the Entity.
+     * @return the Relationships of the Entity, or null if it owns no RelationshipManager.
+     */
+    public RelationshipManager getRelationships(UUID owner) {
+        int node = indexOf(owner);
+        return node < 0 ? null : managerOf(m_table.get(node));
+    }
+
+    /**
+     * Returns the Relationships owned by any Entity that point at the Entity with the supplied ID.
+     * @param target the ID of the Entity.
+     * @return the Relationships pointing at the Entity, never null.
+     */
+    public Set<Relationship> getRelationshipsPointingTo(UUID target) {
+        Set<Relationship> inbound = new HashSet<>();
+        int node = indexOf(target);
+        if (node >= 0) {
+            for (int source : m_table.get(node).sources) {
+                Node owner = m_table.get(source);
+                for (int edge = 0; edge < owner.out.length / 2; edge++) {
+                    if (owner.out[2 * edge] == node) {
+                        inbound.add(new Relationship(owner.id, target, owner.out[2 * edge + 1],
+                                                     edge < owner.secretCount));
+                    }
+                }
+            }
+        }
+        return inbound;
+    }
+
+    /**
+     * Returns an unmodifiable Map view of the RelationshipManagers of this graph, keyed by the ID of their owners.
+     * Each RelationshipManager is created, read-only, as it is read.
+     * @return a Map view of the RelationshipManagers of this graph.
+     */
+    public Map<UUID, RelationshipManager> asMap() {
+        return new AbstractMap<UUID, RelationshipManager>() {
+            @Override
+            public RelationshipManager get(Object key) {
+                return key instanceof UUID ? getRelationships((UUID) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof UUID && isOwner((UUID) key);
+            }
+
+            @Override
+            public int size() {
+                return m_ownerCount;
+            }
+
+            @Override
+            public Set<Map.Entry<UUID, RelationshipManager>> entrySet() {
+                return new AbstractSet<Map.Entry<UUID, RelationshipManager>>() {
+                    @Override
+                    public Iterator<Map.Entry<UUID, RelationshipManager>> iterator() {
+                        return new OwnerIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return m_ownerCount;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns a graph in which the Entity with the supplied ID owns the Relationships in the supplied manager, in place
+     * of any it owned before.
+     * @param owner the ID of the Entity.
+     * @param relMgr the Relationships of the Entity, or null to remove its RelationshipManager.
+     * @return the updated graph.
+     */
+    RelationshipGraph withRelationships(UUID owner, RelationshipManager relMgr) {
+        Editor editor = new Editor();
+        int node = editor.nodeOf(owner);
+        if (relMgr == null) {
+            editor.setRow(node, null, 0);
+        } else {
+            Relationship[] rels = toArray(owner, relMgr);
+            int[] row = new int[rels.length * 2];
+            int secretCount = 0;
+            for (int i = 0; i < rels.length; i++) {
+                row[2 * i] = editor.nodeOf(rels[i].getRelatedEntity());
+                row[2 * i + 1] = rels[i].getRelationshipCode();
+                if (rels[i].isSecret()) {
+                    secretCount++;
+                }
+            }
+            editor.setRow(node, row, secretCount);
+        }
+        return editor.build();
+    }
+
+    /**
+     * Returns a graph in which the Entity with the supplied ID also owns the supplied Relationship.  The Entity is
+     * given a RelationshipManager if it had none, even if the Relationship is null.
+     * @param owner the ID of the Entity.
+     * @param rel the Relationship to add, or null to add none.
+     * @return the updated graph, which is this graph if nothing changed.
+     */
+    RelationshipGraph withRelationship(UUID owner, Relationship rel) {
+        Editor editor = new Editor();
+        int node = editor.nodeOf(owner);
+        Node data = editor.get(node);
+        int[] row = data.out == null ? NO_EDGES : data.out;
+        if (rel == null) {
+            if (data.out != null) {
+                return this;
+            }
+        } else {
+            int target = editor.nodeOf(rel.getRelatedEntity());
+            if (find(data, target, rel.getRelationshipCode(), rel.isSecret()) >= 0) {
+                return this;
+            }
+            // Secret Relationships go at the end of the secret block, public ones at the end of the row.
+            int index = rel.isSecret() ? 2 * data.secretCount : row.length;
+            int[] updated = new int[row.length + 2];
+            System.arraycopy(row, 0, updated, 0, index);
+            updated[index] = target;
+            updated[index + 1] = rel.getRelationshipCode();
+            System.arraycopy(row, index, updated, index + 2, row.length - index);
+            row = updated;
+        }
+        editor.setRow(node, row, data.secretCount + (rel != null && rel.isSecret() ? 1 : 0));
+        return editor.build();
+    }
+
+    /**
+     * Returns a graph in which the Entity with the supplied ID no longer owns the supplied Relationship.
+     * @param owner the ID of the Entity.
+     * @param rel the Relationship to remove.
+     * @return the updated graph, which is this graph if the Entity did not own the Relationship.
+     */
+    RelationshipGraph withoutRelationship(UUID owner, Relationship rel) {
+        int node = indexOf(owner);
+        int target = rel == null ? -1 : indexOf(rel.getRelatedEntity());
+        if (node < 0 || target < 0) {
+            return this;
+        }
+        Node data = m_table.get(node);
+        int edge = find(data, target, rel.getRelationshipCode(), rel.isSecret());
+        if (edge < 0) {
+            return this;
+        }
+        int[] updated = new int[data.out.length - 2];
+        System.arraycopy(data.out, 0, updated, 0, 2 * edge);
+        System.arraycopy(data.out, 2 * edge + 2, updated, 2 * edge, updated.length - 2 * edge);
+        Editor editor = new Editor();
+        editor.setRow(node, updated, data.secretCount - (rel.isSecret() ? 1 : 0));
+        return editor.build();
+    }
+
+    /**
+     * Returns a graph without the RelationshipManager of the Entity with the supplied ID, and without any
+     * Relationships pointing at it.  The other owners of those Relationships are found through the inbound row of the
+     * Entity, so this takes time proportional to the Relationships it removes.
+     * @param id the ID of the Entity.
+     * @return the updated graph.
+     */
+    RelationshipGraph withoutEntity(UUID id) {
+        int node = indexOf(id);
+        if (node < 0) {
+            return this;
+        }
+        Editor editor = new Editor();
+        for (int source : m_table.get(node).sources) {
+            if (source != node) {
+                Node owner = editor.get(source);
+                int[] row = new int[owner.out.length];
+                int length = 0;
+                int secretCount = 0;
+                for (int edge = 0; edge < owner.out.length / 2; edge++) {
+                    if (owner.out[2 * edge] != node) {
+                        row[length++] = owner.out[2 * edge];
+                        row[length++] = owner.out[2 * edge + 1];
+                        if (edge < owner.secretCount) {
+                            secretCount++;
+                        }
+                    }
+                }
+                editor.setRow(source, Arrays.copyOf(row, length), secretCount);
+            }
+        }
+        // The node is released as soon as it is neither an owner nor pointed at, which may already be the case.
+        if (editor.get(node) != null) {
+            editor.setRow(node, null, 0);
+        }
+        return editor.build();
+    }
+
+    /**
+     * Returns a new, read-only RelationshipManager holding the Relationships of the supplied node.
+     * @param data the node.
+     * @return the Relationships of the node, or null if it owns no RelationshipManager.
+     */
+    private RelationshipManager managerOf(Node data) {
+        if (data.out == null) {
+            return null;
+        }
+        if (data.out.length == 0) {
+            return NO_RELATIONSHIPS;
+        }
+        Relationship[] items = new Relationship[data.out.length / 2];
+        for (int edge = 0; edge < items.length; edge++) {
+            items[edge] = new Relationship(data.id, m_table.get(data.out[2 * edge]).id, data.out[2 * edge + 1],
+                                           edge < data.secretCount);
+        }
+        return RelationshipManager.readOnlyOf(items, data.secretCount);
+    }
+
+    /**
+     * Returns the index of the supplied Relationship in the row of the supplied node, searching only the secret or
+     * public block it would be held in.
+     * @param data the node.
+     * @param target the node the Relationship points at.
+     * @param type the RelationshipLabels code of the type of the Relationship.
+     * @param secret true if the Relationship is secret.
+     * @return the index of the Relationship, or -1 if the node does not own it.
+     */
+    private static int find(Node data, int target, int type, boolean secret) {
+        if (data.out == null) {
+            return -1;
+        }
+        int end = secret ? data.secretCount : data.out.length / 2;
+        for (int edge = secret ? 0 : data.secretCount; edge < end; edge++) {
+            if (data.out[2 * edge] == target && data.out[2 * edge + 1] == type) {
+                return edge;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the Relationships of the supplied manager, secret ones first, leaving out any which differ only in their
+     * owner from one before them, as they are the same Relationship once stored under the supplied owner.
+     * @param owner the ID of the Entity the Relationships are stored under.
+     * @param relMgr the RelationshipManager, or null.
+     * @return the Relationships of the manager.
+     */
+    private static Relationship[] toArray(UUID owner, RelationshipManager relMgr) {
+        if (relMgr == null) {
+            return new Relationship[0];
+        }
+        Relationship[] rels = relMgr.getAllRelationships().toArray(new Relationship[0]);
+        Set<Relationship> stored = null;
+        int length = 0;
+        for (Relationship rel : rels) {
+            if (!owner.equals(rel.getEntityId())) {
+                if (stored == null) {
+                    stored = new HashSet<>();
+                    for (int i = 0; i < length; i++) {
+                        stored.add(rels[i]);
+                    }
+                }
+                rel = new Relationship(owner, rel.getRelatedEntity(), rel.getRelationshipCode(), rel.isSecret());
+            }
+            if (stored == null || stored.add(rel)) {
+                rels[length++] = rel;
+            }
+        }
+        return length == rels.length ? rels : Arrays.copyOf(rels, length);
+    }
+
+    /**
+     * Returns the distinct nodes pointed at by the supplied row, in ascending order.
+     * @param row the row, or null.
+     * @return the distinct nodes pointed at by the row.
+     */
+    private static int[] distinctTargets(int[] row) {
+        if (row == null || row.length == 0) {
+            return NO_EDGES;
+        }
+        int[] targets = new int[row.length / 2];
+        for (int edge = 0; edge < targets.length; edge++) {
+            targets[edge] = row[2 * edge];
+        }
+        Arrays.sort(targets);
+        int length = 1;
+        for (int i = 1; i < targets.length; i++) {
+            if (targets[i] != targets[length - 1]) {
+                targets[length++] = targets[i];
+            }
+        }
+        return length == targets.length ? targets : Arrays.copyOf(targets, length);
+    }
+
+    /**
+     * Returns the node of the supplied ID while building a graph, assigning it the next one if it has none.
+     * @param nodes the node of each ID.
+     * @param ids the ID of each node.
+     * @param id the ID.
+     * @return the node of the ID.
+     */
+    private static int nodeOf(Map<UUID, Integer> nodes, List<UUID> ids, UUID id) {
+        Integer node = nodes.get(id);
+        if (node == null) {
+            node = ids.size();
+            nodes.put(id, node);
+            ids.add(id);
+        }
+        return node;
+    }
+
+    /** The data of a node; never modified. */
+    private static final class Node {
+
+        /** The ID of the Entity of the node. */
+        private final UUID id;
+
+        /**
+         * The Relationships owned by the node, as the node each points at followed by its RelationshipLabels code,
+         * secret ones first; or null if the node owns no RelationshipManager.
+         */
+        private final int[] out;
+
+        /** The number of secret Relationships, which occupy the start of out. */
+        private final int secretCount;
+
+        /** The distinct nodes which own Relationships pointing at this one, in ascending order. */
+        private final int[] sources;
+
+        /**
+         * Creates a new Node.
+         * @param id the ID of the Entity of the node.
+         * @param out the Relationships owned by the node, or null.
+         * @param secretCount the number of secret Relationships.
+         * @param sources the nodes which own Relationships pointing at this one.
+         */
+        private Node(UUID id, int[] out, int secretCount, int[] sources) {
+            this.id = id;
+            this.out = out;
+            this.secretCount = secretCount;
+            this.sources = sources;
+        }
+    }
+
+    /**
+     * Derives a new graph from this one through a series of changes to the rows of its nodes, keeping the inbound rows
+     * and counts in step.  Used by a single thread, then discarded.
+     */
+    private final class Editor {
+
+        /** The node of each ID. */
+        private PersistentHashMap<UUID, Integer> m_editedNodes = m_nodes;
+
+        /** The data of each node. */
+        private NodeTable m_editedTable = m_table;
+
+        /** The number of nodes which own a RelationshipManager. */
+        private int m_editedOwnerCount = m_ownerCount;
+
+        /** The number of Relationships. */
+        private int m_editedEdgeCount = m_edgeCount;
+
+        /** The number of secret Relationships. */
+        private int m_editedSecretEdgeCount = m_secretEdgeCount;
+
+        /**
+         * Returns the data of the supplied node as edited so far.
+         * @param node the node.
+         * @return the data of the node.
+         */
+        private Node get(int node) {
+            return m_editedTable.get(node);
+        }
+
+        /**
+         * Returns the node of the supplied ID, assigning it a new one if it has none.
+         * @param id the ID.
+         * @return the node of the ID.
+         */
+        private int nodeOf(UUID id) {
+            Integer node = m_editedNodes.get(id);
+            if (node == null) {
+                node = m_editedTable.size;
+                m_editedTable = m_editedTable.append(new Node(id, null, 0, NO_EDGES));
+                m_editedNodes = m_editedNodes.plus(id, node);
+            }
+            return node;
+        }
+
+        /**
+         * Replaces the row of the supplied node, adding it to the inbound rows of the nodes it now points at and
+         * removing it from those of the nodes it no longer does.
+         * @param node the node.
+         * @param out the new row, or null if the node no longer owns a RelationshipManager.
+         * @param secretCount the number of secret Relationships in the new row.
+         */
+        private void setRow(int node, int[] out, int secretCount) {
+            Node old = get(node);
+            int[] oldTargets = distinctTargets(old.out);
+            int[] newTargets = distinctTargets(out);
+            m_editedOwnerCount += (out == null ? 0 : 1) - (old.out == null ? 0 : 1);
+            m_editedEdgeCount += (out == null ? 0 : out.length / 2) - (old.out == null ? 0 : old.out.length / 2);
+            m_editedSecretEdgeCount += secretCount - old.secretCount;
+            m_editedTable = m_editedTable.set(node, new Node(old.id, out, secretCount, old.sources));
+
+            // Walk the two sorted target lists together.
+            int i = 0;
+            int j = 0;
+            while (i < oldTargets.length || j < newTargets.length) {
+                if (j == newTargets.length || (i < oldTargets.length && oldTargets[i] < newTargets[j])) {
+                    removeSource(oldTargets[i++], node);
+                } else if (i == oldTargets.length || newTargets[j] < oldTargets[i]) {
+                    addSource(newTargets[j++], node);
+                } else {
+                    i++;
+                    j++;
+                }
+            }
+            releaseIfUnused(node);
+        }
+
+        /**
+         * Adds the supplied source to the inbound row of the supplied node.
+         * @param node the node.
+         * @param source the node which now owns Relationships pointing at it.
+         */
+        private void addSource(int node, int source) {
+            Node data = get(node);
+            int index = -Arrays.binarySearch(data.sources, source) - 1;
+            int[] sources = new int[data.sources.length + 1];
+            System.arraycopy(data.sources, 0, sources, 0, index);
+            sources[index] = source;
+            System.arraycopy(data.sources, index, sources, index + 1, data.sources.length - index);
+            m_editedTable = m_editedTable.set(node, new Node(data.id, data.out, data.secretCount, sources));
+        }
+
+        /**
+         * Removes the supplied source from the inbound row of the supplied node, releasing the node if it is no longer
+         * used.
+         * @param node the node.
+         * @param source the node which no longer owns Relationships pointing at it.
+         */
+        private void removeSource(int node, int source) {
+            Node data = get(node);
+            int index = Arrays.binarySearch(data.sources, source);
+            int[] sources = data.sources.length == 1 ? NO_EDGES : new int[data.sources.length - 1];
+            System.arraycopy(data.sources, 0, sources, 0, index);
+            System.arraycopy(data.sources, index + 1, sources, index, sources.length - index);
+            m_editedTable = m_editedTable.set(node, new Node(data.id, data.out, data.secretCount, sources));
+            releaseIfUnused(node);
+        }
+
+        /**
+         * Releases the supplied node if it neither owns a RelationshipManager nor is pointed at.
+         * @param node the node.
+         */
+        private void releaseIfUnused(int node) {
+            Node data = get(node);
+            if (data != null && data.out == null && data.sources.length == 0) {
+                m_editedTable = m_editedTable.set(node, null);
+                m_editedNodes = m_editedNodes.minus(data.id);
+            }
+        }
+
+        /**
+         * Returns the graph as edited.
+         * @return the graph as edited.
+         */
+        private RelationshipGraph build() {
+            return new RelationshipGraph(m_editedNodes, m_editedTable, m_editedOwnerCount, m_editedEdgeCount,
+                                         m_editedSecretEdgeCount);
+        }
+    }
+
+    /** An iterator over the owners of RelationshipManagers in this graph, in node order. */
+    private final class OwnerIterator implements Iterator<Map.Entry<UUID, RelationshipManager>> {
+
+        /** The next node to return, or the node count if there are no more. */
+        private int m_next = advance(0);
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasNext() {
+            return m_next < m_table.size;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Map.Entry<UUID, RelationshipManager> next() {
+            if (m_next >= m_table.size) {
+                throw new NoSuchElementException();
+            }
+            Node data = m_table.get(m_next);
+            m_next = advance(m_next + 1);
+            return new AbstractMap.SimpleImmutableEntry<>(data.id, managerOf(data));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Relationship graphs are unmodifiable.");
+        }
+
+        /**
+         * Returns the first node from the supplied one which owns a RelationshipManager.
+         * @param node the node to start from.
+         * @return the first owner from the supplied node, or the node count if there is none.
+         */
+        private int advance(int node) {
+            while (node < m_table.size && (m_table.get(node) == null || m_table.get(node).out == null)) {
+                node++;
+            }
+            return node;
+        }
+    }
+
+    /**
+     * A persistent array of Nodes, held as a trie of 32-way branches.  Setting or appending a Node copies only the path
+     * from the root to its leaf.
+     */
+    private static final class NodeTable {
+
+        /** The number of bits of an index consumed at each level of the trie. */
+        private static final int BITS = 5;
+
+        /** The number of branches of each array of the trie. */
+        private static final int WIDTH = 1 << BITS;
+
+        /** The mask of the bits of an index consumed at each level. */
+        private static final int MASK = WIDTH - 1;
+
+        /** An empty table. */
+        private static final NodeTable EMPTY = new NodeTable(new Object[WIDTH], 0, 0);
+
+        /** The root of the trie; its leaves hold Nodes and the arrays above them hold the arrays below. */
+        private final Object[] root;
+
+        /** The number of index bits below the root; 0 if the root is a leaf. */
+        private final int shift;
+
+        /** The number of slots in the table. */
+        private final int size;
+
+        /**
+         * Creates a new NodeTable.
+         * @param root the root of the trie.
+         * @param shift the number of index bits below the root.
+         * @param size the number of slots in the table.
+         */
+        private NodeTable(Object[] root, int shift, int size) {
+            this.root = root;
+            this.shift = shift;
+            this.size = size;
+        }
+
+        /**
+         * Returns a table holding the supplied Nodes, built from the leaves up.
+         * @param nodes the Nodes.
+         * @return a table holding the supplied Nodes.
+         */
+        private static NodeTable of(Node[] nodes) {
+            if (nodes.length == 0) {
+                return EMPTY;
+            }
+            Object[][] level = new Object[(nodes.length + MASK) >>> BITS][];
+            for (int i = 0; i < level.length; i++) {
+                level[i] = new Object[WIDTH];
+                System.arraycopy(nodes, i << BITS, level[i], 0, Math.min(WIDTH, nodes.length - (i << BITS)));
+            }
+            int shift = 0;
+            while (level.length > 1) {
+                Object[][] parents = new Object[(level.length + MASK) >>> BITS][];
+                for (int i = 0; i < parents.length; i++) {
+                    parents[i] = new Object[WIDTH];
+                    System.arraycopy(level, i << BITS, parents[i], 0, Math.min(WIDTH, level.length - (i << BITS)));
+                }
+                level = parents;
+                shift += BITS;
+            }
+            return new NodeTable(level[0], shift, nodes.length);
+        }
+
+        /**
+         * Returns the Node in the supplied slot.
+         * @param index the slot, less than the size of the table.
+         * @return the Node in the slot, or null if it has been released.
+         */
+        private Node get(int index) {
+            Object[] array = root;
+            for (int level = shift; level > 0; level -= BITS) {
+                array = (Object[]) array[(index >>> level) & MASK];
+            }
+            return (Node) array[index & MASK];
+        }
+
+        /**
+         * Returns a copy of this table with the supplied Node in the supplied slot.
+         * @param index the slot, less than the size of the table.
+         * @param node the Node, or null to release the slot.
+         * @return the updated table.
+         */
+        private NodeTable set(int index, Node node) {
+            return new NodeTable(set(root, shift, index, node), shift, size);
+        }
+
+        /**
+         * Returns a copy of this table with the supplied Node appended.
+         * @param node the Node.
+         * @return the updated table.
+         */
+        private NodeTable append(Node node) {
+            if (size == 1 << (shift + BITS)) {
+                // The trie is full, so grow it by a level.
+                Object[] grown = new Object[WIDTH];
+                grown[0] = root;
+                return new NodeTable(set(grown, shift + BITS, size, node), shift + BITS, size + 1);
+            }
+            return new NodeTable(set(root, shift, size, node), shift, size + 1);
+        }
+
+        /**
+         * Returns a copy of the supplied array of the trie with the supplied Node in the supplied slot below it,
+         * creating any arrays missing from the path.
+         * @param array the array, or null if it does not exist yet.
+         * @param level the number of index bits below the array.
+         * @param index the slot.
+         * @param node the Node.
+         * @return the copied array.
+         */
+        private static Object[] set(Object[] array, int level, int index, Node node) {
+            Object[] copy = array == null ? new Object[WIDTH] : array.clone();
+            int slot = (index >>> level) & MASK;
+            if (level == 0) {
+                copy[slot] = node;
+            } else {
+                copy[slot] = set((Object[]) copy[slot], level - BITS, index, node);
+            }
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package campaignencyclopedia.data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A dictionary which interns Relationship labels (the text of a Relationship, such as "Friends with") to small integer
+ * codes.  Each distinct label is stored once and Relationships hold its code, so that they compare and hash by int.
+ * Codes are assigned in order of first use and are only meaningful within the running application; save files carry
+ * their own label list.  The labels of the RelationshipTypes are always interned first.
+ *
+ * @author adam
+ */
+public final class RelationshipLabels {
+
+    /** The code of each interned label. */
+    private static final Map<String, Integer> CODES = new ConcurrentHashMap<>();
+
+    /** The label of each code.  Labels are few and rarely added, so copying on write is cheap. */
+    private static final List<String> LABELS = new CopyOnWriteArrayList<>();
+
+    // Intern the default labels so that they have the lowest codes.
+    static {
+        for (RelationshipType rt : RelationshipType.values()) {
+            intern(rt.getDisplayString());
+        }
+    }
+
+    /** Not to be instantiated. */
+    private RelationshipLabels() {
+    }
+
+    /**
+     * Returns the code of the supplied label, interning it if it is not already known.
+     * @param label the label to intern.
+     * @return the code of the supplied label.
+     */
+    public static int intern(String label) {
+        if (label == null) {
+            throw new IllegalArgumentException("Parameter 'label' must not be null.");
+        }
+        Integer code = CODES.get(label);
+        if (code != null) {
+            return code;
+        }
+        synchronized (CODES) {
+            code = CODES.get(label);
+            if (code == null) {
+                // Publish the label before its code, so that any thread holding the code can read the label.
+                code = LABELS.size();
+                LABELS.add(label);
+                CODES.put(label, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Returns the single shared instance of the supplied label, interning it if it is not already known.
+     * @param label the label to canonicalize.
+     * @return the shared instance of the supplied label.
+     */
+    public static String canonicalize(String label) {
+        return getLabel(intern(label));
+    }
+
+    /**
+     * Returns the label of the supplied code.
+     * @param code the code, as returned by intern().
+     * @return the label of the supplied code.
+     */
+    public static String getLabel(int code) {
+        if (code < 0 || code >= LABELS.size()) {
+            throw new IllegalArgumentException("Unknown relationship label code:  " + code);
+        }
+        return LABELS.get(code);
+    }
+
+    /**
+     * Returns the number of interned labels; all codes are less than this.
+     * @return the number of interned labels.
+     */
+    public static int size() {
+        return LABELS.size();
+    }
+}
@@ -1,23 +1,100 @@
 package campaignencyclopedia.data;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
- * A manager for relationship data.
+ * A manager for relationship data.  Relationships are held in a single immutable array, secret ones first, which is
+ * replaced (never modified) on each change.  The views returned by this manager are live and allocate nothing beyond an
+ * iterator, and each iteration sees a consistent snapshot even if another thread modifies the manager meanwhile.
+ * Copies share the array until one of them is changed.  Read-only copies, which throw UnsupportedOperationException
+ * from every mutator, may be made with readOnlyCopy(); these are what the CampaignDataManager hands out.
+ *
+ * Each addition copies the array, and looks for the Relationship in the secret or public block first, so managers
+ * holding many Relationships should be filled with a Builder or addAllRelationships(), which order and copy them once.
  * @author adam
  */
-public class RelationshipManager {
+public class RelationshipManager implements Iterable<Relationship> {
 
-    private final Set<Relationship> m_secret;
+    /** The Relationships of an empty manager. */
+    private static final Relationship[] NO_RELATIONSHIPS = new Relationship[0];
+
+    /** All of the Relationships in this manager; the secret ones occupy the first m_secretCount slots. */
+    private volatile Storage m_storage;
+
+    /** True if this manager may be modified, false if it is a read-only copy. */
+    private final boolean m_modifiable;
+
+    /** The public Relationships in this manager. */
     private final Set<Relationship> m_public;
 
+    /** The secret Relationships in this manager. */
+    private final Set<Relationship> m_secret;
+
+    /** All of the Relationships in this manager. */
+    private final Set<Relationship> m_all;
+
     /** Creates a new RelationshipManager. */
     public RelationshipManager() {
-        m_secret = new HashSet<>();
-        m_public = new HashSet<>();
+        this(new Storage(NO_RELATIONSHIPS, 0), true);
+    }
+
+    /**
+     * Creates a new, modifiable RelationshipManager holding a copy of the Relationships in the supplied one.
+     * @param toCopy the RelationshipManager to copy.
+     */
+    public RelationshipManager(RelationshipManager toCopy) {
+        this(toCopy.m_storage, true);
+    }
+
+    /**
+     * Creates a new RelationshipManager.
+     * @param storage the Relationships of the manager.
+     * @param modifiable true if the manager may be modified.
+     */
+    private RelationshipManager(Storage storage, boolean modifiable) {
+        m_storage = storage;
+        m_modifiable = modifiable;
+        m_public = new View(false, true);
+        m_secret = new View(true, false);
+        m_all = new View(true, true);
+    }
+
+    /**
+     * Returns a read-only copy of the supplied RelationshipManager.  If the supplied manager is already read-only it is
+     * returned as is, since it can never change.
+     * @param toCopy the RelationshipManager to copy.
+     * @return a read-only copy of the supplied RelationshipManager.
+     */
+    public static RelationshipManager readOnlyCopy(RelationshipManager toCopy) {
+        if (!toCopy.m_modifiable) {
+            return toCopy;
+        }
+        return new RelationshipManager(toCopy.m_storage, false);
+    }
+
+    /**
+     * Returns a read-only RelationshipManager holding the supplied Relationships, which are held rather than copied.
+     * @param items the distinct Relationships, secret ones first; never modified after this call.
+     * @param secretCount the number of secret Relationships.
+     * @return a read-only RelationshipManager holding the supplied Relationships.
+     */
+    static RelationshipManager readOnlyOf(Relationship[] items, int secretCount) {
+        return new RelationshipManager(new Storage(items, secretCount), false);
+    }
+
+    /**
+     * Returns true if this manager may be modified, false if it is a read-only copy.
+     * @return true if this manager may be modified.
+     */
+    public boolean isModifiable() {
+        return m_modifiable;
     }
 
     /**
@@ -25,22 +102,38 @@ public class RelationshipManager {
      * @param rel the Relationship to add.
      */
     public void addRelationship(Relationship rel) {
+        checkModifiable();
         if (rel != null) {
-            if (rel.isSecret()) {
-                m_secret.add(rel);
-            } else {
-                m_public.add(rel);
+            synchronized (this) {
+                Storage storage = m_storage;
+                if (storage.indexOf(rel) < 0) {
+                    Relationship[] items = storage.items;
+                    Relationship[] updated = new Relationship[items.length + 1];
+                    // Secret Relationships go at the end of the secret block, public ones at the end of the array.
+                    int index = rel.isSecret() ? storage.secretCount : items.length;
+                    System.arraycopy(items, 0, updated, 0, index);
+                    updated[index] = rel;
+                    System.arraycopy(items, index, updated, index + 1, items.length - index);
+                    m_storage = new Storage(updated, storage.secretCount + (rel.isSecret() ? 1 : 0));
+                }
             }
         }
     }
 
     /**
-     * Adds all of the Relationships supplied to the manager.
+     * Adds all of the Relationships supplied to the manager, copying the Relationships held only once.
      * @param rels the Relationships to add.
      */
     public void addAllRelationships(Collection<Relationship> rels) {
-        for (Relationship r : rels) {
-            addRelationship(r);
+        checkModifiable();
+        synchronized (this) {
+            Set<Relationship> all = new LinkedHashSet<>(m_all);
+            for (Relationship r : rels) {
+                if (r != null) {
+                    all.add(r);
+                }
+            }
+            m_storage = Storage.of(all);
         }
     }
 
@@ -49,59 +142,313 @@ public class RelationshipManager {
      * @param rel the Relationship to remove.
      */
     public void remove(Relationship rel) {
-        m_secret.remove(rel);
-        m_public.remove(rel);
+        checkModifiable();
+        synchronized (this) {
+            Storage storage = m_storage;
+            int index = storage.indexOf(rel);
+            if (index >= 0) {
+                Relationship[] items = storage.items;
+                Relationship[] updated = new Relationship[items.length - 1];
+                System.arraycopy(items, 0, updated, 0, index);
+                System.arraycopy(items, index + 1, updated, index, items.length - index - 1);
+                m_storage = new Storage(updated, storage.secretCount - (index < storage.secretCount ? 1 : 0));
+            }
+        }
     }
 
     /**
-     * Removes all of the relationships in the supplied collection.
+     * Removes all of the relationships in the supplied collection, copying the Relationships held only once.
      * @param rels the relationships to remove.
      */
     public void removeAll(Collection<Relationship> rels) {
-        for (Relationship r : rels) {
-            remove(r);
+        checkModifiable();
+        synchronized (this) {
+            Set<Relationship> all = new LinkedHashSet<>(m_all);
+            all.removeAll(new HashSet<>(rels));
+            m_storage = Storage.of(all);
         }
     }
 
     /**
-     * Returns the public relationships in the manager.
+     * Returns the public relationships in the manager.  The returned Set is a live, unmodifiable view.
      * @return the public relationships in the manager.
      */
     public Set<Relationship> getPublicRelationships() {
-        return Collections.unmodifiableSet(m_public);
+        return m_public;
     }
 
     /**
-     * Returns the private relationships in the manager.
+     * Returns the private relationships in the manager.  The returned Set is a live, unmodifiable view.
      * @return the private relationships in the manager.
      */
     public Set<Relationship> getSecretRelationships() {
-        return Collections.unmodifiableSet(m_secret);
+        return m_secret;
     }
 
     /**
-     * Returns all the Relationships in the manager.
+     * Returns all the Relationships in the manager.  The returned Set is a live, unmodifiable view.
      * @return all the Relationships in this manager.
      */
     public Set<Relationship> getAllRelationships() {
-        Set<Relationship> all = new HashSet<>(m_public);
-        all.addAll(m_secret);
-        return Collections.unmodifiableSet(all);
+        return m_all;
+    }
+
+    /**
+     * Returns an iterator over all of the Relationships in the manager.
+     * @return an iterator over all of the Relationships in the manager.
+     */
+    @Override
+    public Iterator<Relationship> iterator() {
+        return m_all.iterator();
+    }
+
+    /**
+     * Returns the number of Relationships in the manager.
+     * @return the number of Relationships in the manager.
+     */
+    public int size() {
+        return m_storage.items.length;
+    }
+
+    /**
+     * Returns true if the manager holds no Relationships.
+     * @return true if the manager holds no Relationships.
+     */
+    public boolean isEmpty() {
+        return m_storage.items.length == 0;
+    }
+
+    /**
+     * Returns the number of public Relationships in the manager.
+     * @return the number of public Relationships in the manager.
+     */
+    public int getPublicCount() {
+        Storage storage = m_storage;
+        return storage.items.length - storage.secretCount;
+    }
+
+    /**
+     * Returns the number of secret Relationships in the manager.
+     * @return the number of secret Relationships in the manager.
+     */
+    public int getSecretCount() {
+        return m_storage.secretCount;
+    }
+
+    /**
+     * Returns true if the manager holds the supplied Relationship.
+     * @param rel the Relationship to look for.
+     * @return true if the manager holds the supplied Relationship.
+     */
+    public boolean contains(Relationship rel) {
+        return m_storage.indexOf(rel) >= 0;
     }
 
     /** Clears all of the data from this manager. */
-    public void clear() {
-        m_public.clear();
-        m_secret.clear();
+    public synchronized void clear() {
+        checkModifiable();
+        m_storage = new Storage(NO_RELATIONSHIPS, 0);
     }
     
     /** Clears all of the public data from this manager. */
-    public void clearPublicRelationships() {
-        m_public.clear();
+    public synchronized void clearPublicRelationships() {
+        checkModifiable();
+        Storage storage = m_storage;
+        m_storage = new Storage(Arrays.copyOf(storage.items, storage.secretCount), storage.secretCount);
     }
     
     /** Clears all of the secret from this manager. */
-    public void clearSecretRelationships() {
-        m_secret.clear();
+    public synchronized void clearSecretRelationships() {
+        checkModifiable();
+        Storage storage = m_storage;
+        m_storage = new Storage(Arrays.copyOfRange(storage.items, storage.secretCount, storage.items.length), 0);
+    }
+
+    /** Throws an UnsupportedOperationException if this manager is read-only. */
+    private void checkModifiable() {
+        if (!m_modifiable) {
+            throw new UnsupportedOperationException("This RelationshipManager is read-only.");
+        }
+    }
+
+    /**
+     * A builder of RelationshipManagers, for filling a manager with many Relationships at once.  Duplicates are
+     * dropped as they are added, and the Relationships are ordered, secret ones first, and copied into the manager
+     * once, when it is built, rather than once per Relationship.
+     */
+    public static final class Builder {
+
+        /** The distinct Relationships added, in the order they were first added. */
+        private final Set<Relationship> m_relationships;
+
+        /** Creates a new Builder of an empty RelationshipManager. */
+        public Builder() {
+            m_relationships = new LinkedHashSet<>();
+        }
+
+        /**
+         * Adds the supplied Relationship, unless it has already been added.
+         * @param rel the Relationship to add.
+         * @return this Builder.
+         */
+        public Builder add(Relationship rel) {
+            if (rel != null) {
+                m_relationships.add(rel);
+            }
+            return this;
+        }
+
+        /**
+         * Returns a new, modifiable RelationshipManager holding the Relationships added, each in the same place as if
+         * they had been added to the manager one by one.
+         * @return a new RelationshipManager holding the Relationships added.
+         */
+        public RelationshipManager build() {
+            return new RelationshipManager(Storage.of(m_relationships), true);
+        }
+    }
+
+    /** An immutable array of Relationships, secret ones first. */
+    private static final class Storage {
+
+        /** The Relationships; never modified. */
+        private final Relationship[] items;
+
+        /** The number of secret Relationships, which occupy the start of items. */
+        private final int secretCount;
+
+        /**
+         * Creates a new Storage.
+         * @param items the Relationships, secret ones first.
+         * @param secretCount the number of secret Relationships.
+         */
+        private Storage(Relationship[] items, int secretCount) {
+            this.items = items;
+            this.secretCount = secretCount;
+        }
+
+        /**
+         * Returns a new Storage holding the supplied distinct Relationships, secret ones first, each in the order
+         * supplied.
+         * @param rels the distinct Relationships.
+         * @return a new Storage holding the Relationships.
+         */
+        private static Storage of(Collection<Relationship> rels) {
+            Relationship[] items = new Relationship[rels.size()];
+            int secretCount = 0;
+            for (Relationship rel : rels) {
+                if (rel.isSecret()) {
+                    secretCount++;
+                }
+            }
+            int secret = 0;
+            int open = secretCount;
+            for (Relationship rel : rels) {
+                items[rel.isSecret() ? secret++ : open++] = rel;
+            }
+            return new Storage(items, secretCount);
+        }
+
+        /**
+         * Returns the index of the supplied Relationship, or -1 if it is not held.
+         * @param rel the Relationship to look for.
+         * @return the index of the supplied Relationship, or -1.
+         */
+        private int indexOf(Object rel) {
+            if (!(rel instanceof Relationship)) {
+                return -1;
+            }
+            // Only search the block the Relationship would be held in.
+            boolean secret = ((Relationship) rel).isSecret();
+            int end = secret ? secretCount : items.length;
+            for (int i = secret ? 0 : secretCount; i < end; i++) {
+                if (items[i].equals(rel)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /** A live, unmodifiable view of the secret and/or public Relationships of this manager. */
+    private final class View extends AbstractSet<Relationship> {
+
+        /** True if this view includes secret Relationships. */
+        private final boolean m_includeSecret;
+
+        /** True if this view includes public Relationships. */
+        private final boolean m_includePublic;
+
+        /**
+         * Creates a new View.
+         * @param includeSecret true if the view includes secret Relationships.
+         * @param includePublic true if the view includes public Relationships.
+         */
+        private View(boolean includeSecret, boolean includePublic) {
+            m_includeSecret = includeSecret;
+            m_includePublic = includePublic;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            Storage storage = m_storage;
+            return end(storage) - start(storage);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean contains(Object o) {
+            Storage storage = m_storage;
+            int index = storage.indexOf(o);
+            return index >= start(storage) && index < end(storage);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Iterator<Relationship> iterator() {
+            final Storage storage = m_storage;
+            final int end = end(storage);
+            final int start = start(storage);
+            return new Iterator<Relationship>() {
+                private int m_next = start;
+
+                @Override
+                public boolean hasNext() {
+                    return m_next < end;
+                }
+
+                @Override
+                public Relationship next() {
+                    if (m_next >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    return storage.items[m_next++];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("Relationship views are unmodifiable.");
+                }
+            };
+        }
+
+        /**
+         * Returns the index of the first Relationship of this view in the supplied storage.
+         * @param storage the storage.
+         * @return the index of the first Relationship of this view.
+         */
+        private int start(Storage storage) {
+            return m_includeSecret ? 0 : storage.secretCount;
+        }
+
+        /**
+         * Returns the index after the last Relationship of this view in the supplied storage.
+         * @param storage the storage.
+         * @return the index after the last Relationship of this view.
+         */
+        private int end(Storage storage) {
+            return m_includePublic ? storage.items.length : storage.secretCount;
+        }
     }
-}
\ No newline at end of file
+}
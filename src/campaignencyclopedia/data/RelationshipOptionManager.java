@@ -42,6 +42,7 @@ public class RelationshipOptionManager {
             writeRelationshipFile();
         }
         Collections.sort(RELATIONSHIPS);
+        internAll(RELATIONSHIPS);
     }
 
     /**
@@ -50,7 +51,7 @@ public class RelationshipOptionManager {
      */
     public static void addRelationship(String relationship) {
         if (!RELATIONSHIPS.contains(relationship) && relationship != null && !relationship.isEmpty()) {
-            RELATIONSHIPS.add(relationship);
+            RELATIONSHIPS.add(RelationshipLabels.canonicalize(relationship));
             writeRelationshipFile();
         }
     }
@@ -65,7 +66,7 @@ public class RelationshipOptionManager {
         // Add any valid previously unknown relationships.
         for (String rel : relationships) {
             if (!RELATIONSHIPS.contains(rel) && rel != null && !rel.isEmpty()) {
-                RELATIONSHIPS.add(rel);
+                RELATIONSHIPS.add(RelationshipLabels.canonicalize(rel));
                 changeMade = true;
             }
         }
@@ -100,9 +101,23 @@ public class RelationshipOptionManager {
     public static void replaceAllRelationships(List<String> newRelationships) {
         RELATIONSHIPS.clear();
         RELATIONSHIPS.addAll(newRelationships);
+        internAll(RELATIONSHIPS);
         writeRelationshipFile();
     }
 
+    /**
+     * Replaces each of the supplied relationships with its shared instance from the RelationshipLabels dictionary.
+     * @param relationships the relationships to intern.
+     */
+    private static void internAll(List<String> relationships) {
+        for (int i = 0; i < relationships.size(); i++) {
+            String rel = relationships.get(i);
+            if (rel != null) {
+                relationships.set(i, RelationshipLabels.canonicalize(rel));
+            }
+        }
+    }
+
     /** Writes the current relationships to the relationship file. */
     private static void writeRelationshipFile() {
         try {
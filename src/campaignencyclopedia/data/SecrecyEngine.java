@@ -0,0 +1,99 @@
+package campaignencyclopedia.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Cascades the secrecy of an Entity to the data which refers to it.  Once an Entity is secret, the Relationships other
+ * Entities hold with it, and the TimelineEntries associated with it, must be secret too.
+ *
+ * The data affected is found through the data manager's inbound Relationship and Entity timeline indexes, so the work
+ * done is proportional to the number of Relationships and TimelineEntries referring to the Entity, not to the size of
+ * the campaign.  Only those which are still public are rewritten, and all of them in a single batch.
+ *
+ * @author adam
+ */
+public class SecrecyEngine {
+
+    /** The data manager whose data is updated. */
+    private final CampaignDataManager m_cdm;
+
+    /**
+     * Creates a new SecrecyEngine which updates the data of the supplied data manager.
+     * @param cdm the data manager to update.
+     */
+    public SecrecyEngine(CampaignDataManager cdm) {
+        if (cdm == null) {
+            throw new IllegalArgumentException("Parameter 'cdm' must not be null.");
+        }
+        m_cdm = cdm;
+    }
+
+    /**
+     * Makes secret any public Relationships pointing at, and any public TimelineEntries associated with, the Entity
+     * with the supplied ID, if that Entity is secret.  The changes are applied as one batch; if called from within a
+     * batch, they join it.
+     * @param entity the ID of the Entity to cascade the secrecy of.
+     * @return the changes made: the owners of the Relationships made secret are reported as updated Entities, and the
+     * TimelineEntries made secret as updated TimelineEntries.  Empty if the Entity is not secret or nothing needed to
+     * change.
+     */
+    public ChangeSet propagate(final UUID entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("Parameter 'entity' must not be null.");
+        }
+        final ChangeSet.Builder changes = new ChangeSet.Builder();
+        m_cdm.runBatch(new DataBatch() {
+            @Override
+            public void apply(DataAccessor accessor) {
+                // Checked within the batch, so that the Entity cannot change between the check and the cascade.
+                Entity secret = accessor.getEntity(entity);
+                if (secret == null || !secret.isSecret()) {
+                    return;
+                }
+
+                // Group the public Relationships pointing at the Entity by their owners.
+                Map<UUID, Set<Relationship>> toFlip = new HashMap<>();
+                for (Relationship rel : accessor.getRelationshipsPointingTo(entity)) {
+                    if (!rel.isSecret()) {
+                        Set<Relationship> owned = toFlip.get(rel.getEntityId());
+                        if (owned == null) {
+                            owned = new HashSet<>();
+                            toFlip.put(rel.getEntityId(), owned);
+                        }
+                        owned.add(rel);
+                    }
+                }
+
+                // Rewrite each owner's Relationships once.  The data manager's RelationshipManagers are read-only, so
+                // a copy is updated.
+                for (Map.Entry<UUID, Set<Relationship>> owned : toFlip.entrySet()) {
+                    RelationshipManager relMgr = new RelationshipManager(accessor.getRelationshipsForEntity(owned.getKey()));
+                    relMgr.removeAll(owned.getValue());
+                    List<Relationship> flipped = new ArrayList<>(owned.getValue().size());
+                    for (Relationship rel : owned.getValue()) {
+                        flipped.add(new Relationship(rel.getEntityId(), rel.getRelatedEntity(),
+                                                     rel.getRelationshipText(), true));
+                    }
+                    relMgr.addAllRelationships(flipped);
+                    accessor.addOrUpdateAllRelationships(owned.getKey(), relMgr);
+                    changes.entityUpdated(owned.getKey());
+                }
+
+                // Make the public TimelineEntries associated with the Entity secret, reporting those it changes.
+                for (TimelineEntry tle : accessor.getTimelineEntriesFor(entity)) {
+                    if (!tle.isSecret()) {
+                        changes.timelineEntryAddedOrUpdated(tle.getId());
+                    }
+                }
+                accessor.setTimelineEntrySecrecy(entity, true);
+            }
+        });
+        return changes.build();
+    }
+}
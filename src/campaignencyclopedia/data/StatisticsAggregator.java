@@ -0,0 +1,286 @@
+package campaignencyclopedia.data;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps running counts of the contents of a campaign, updated by the CampaignDataManager with the old and new value of
+ * everything it changes.  Description words are counted only when a description changes; the counts of each Entity's
+ * descriptions and tags are kept so that they can be subtracted again.
+ *
+ * The tags and description words of the Entities are only counted when they are first asked for, as counting them
+ * reads the data of every Entity, and so the whole file of a campaign whose data is read as needed.  Until then, only
+ * the Entities themselves, their Relationships and the TimelineEntries are counted.  The aggregator must be told of each
+ * change to an Entity after the accessor's Entities show it, so that counting them never misses a change it was told
+ * of before they were counted.
+ *
+ * @author adam
+ */
+final class StatisticsAggregator {
+
+    /** The accessor whose Entities' tags and descriptions are counted. */
+    private final DataAccessor m_accessor;
+
+    /** The tag and description word counts of each Entity, by Entity ID, once they have been counted. */
+    private final Map<UUID, ContentCounts> m_content;
+
+    /** The number of Entities of each type. */
+    private final Map<EntityType, Integer> m_entitiesByType;
+
+    /** True if the tags and description words of the Entities have been counted. */
+    private boolean m_contentCounted;
+
+    /** The number of Entities. */
+    private int m_entities;
+
+    /** The number of secret Entities. */
+    private int m_secretEntities;
+
+    /** The number of words in all descriptions, public and secret. */
+    private int m_descriptionWords;
+
+    /** The number of words in secret descriptions. */
+    private int m_secretDescriptionWords;
+
+    /** The number of tags, public and secret. */
+    private int m_tags;
+
+    /** The number of secret tags. */
+    private int m_secretTags;
+
+    /** The number of Relationships. */
+    private int m_relationships;
+
+    /** The number of secret Relationships. */
+    private int m_secretRelationships;
+
+    /** The number of TimelineEntries. */
+    private int m_timelineEntries;
+
+    /** The number of secret TimelineEntries. */
+    private int m_secretTimelineEntries;
+
+    /**
+     * Creates a new StatisticsAggregator for an empty campaign.
+     * @param accessor the accessor whose Entities' tags and descriptions are counted when they are first asked for.
+     */
+    StatisticsAggregator(DataAccessor accessor) {
+        if (accessor == null) {
+            throw new IllegalArgumentException("Parameter 'accessor' must not be null.");
+        }
+        m_accessor = accessor;
+        m_content = new HashMap<>();
+        m_entitiesByType = new EnumMap<>(EntityType.class);
+    }
+
+    /**
+     * Accounts for an Entity being added, updated or removed.
+     * @param old the Entity before the change, or null if it was added.
+     * @param updated the Entity after the change, or null if it was removed.
+     */
+    synchronized void entityChanged(Entity old, Entity updated) {
+        if (old != null) {
+            count(old, -1);
+        }
+        if (updated != null) {
+            count(updated, 1);
+        }
+        if (m_contentCounted) {
+            // Subtract the counts kept for the Entity rather than counting the old Entity again, as they are the ones
+            // which were added, whether the old Entity was told of or read from the accessor.
+            UUID id = old != null ? old.getId() : updated.getId();
+            ContentCounts previous = subtractContent(id);
+            if (updated != null) {
+                addContent(updated, previous);
+            }
+        }
+    }
+
+    /**
+     * Accounts for Relationships being added or removed.
+     * @param relationships the change in the number of Relationships.
+     * @param secretRelationships the change in the number of secret Relationships.
+     */
+    synchronized void relationshipsChanged(int relationships, int secretRelationships) {
+        m_relationships += relationships;
+        m_secretRelationships += secretRelationships;
+    }
+
+    /**
+     * Accounts for a TimelineEntry being added, updated or removed.
+     * @param old the TimelineEntry before the change, or null if it was added.
+     * @param updated the TimelineEntry after the change, or null if it was removed.
+     */
+    synchronized void timelineEntryChanged(TimelineEntry old, TimelineEntry updated) {
+        if (old != null) {
+            m_timelineEntries--;
+            if (old.isSecret()) {
+                m_secretTimelineEntries--;
+            }
+        }
+        if (updated != null) {
+            m_timelineEntries++;
+            if (updated.isSecret()) {
+                m_secretTimelineEntries++;
+            }
+        }
+    }
+
+    /**
+     * Replaces all counts with those of the supplied aggregator, in one step, so that they are never seen part way
+     * through being counted.  The tags and description words are left to be counted again when next asked for.
+     * @param counts the aggregator whose counts to take, which must not be used afterwards.
+     */
+    synchronized void replaceWith(StatisticsAggregator counts) {
+        if (counts == null) {
+            throw new IllegalArgumentException("Parameter 'counts' must not be null.");
+        }
+        synchronized (counts) {
+            m_content.clear();
+            m_contentCounted = false;
+            m_entitiesByType.clear();
+            m_entitiesByType.putAll(counts.m_entitiesByType);
+            m_entities = counts.m_entities;
+            m_secretEntities = counts.m_secretEntities;
+            m_descriptionWords = 0;
+            m_secretDescriptionWords = 0;
+            m_tags = 0;
+            m_secretTags = 0;
+            m_relationships = counts.m_relationships;
+            m_secretRelationships = counts.m_secretRelationships;
+            m_timelineEntries = counts.m_timelineEntries;
+            m_secretTimelineEntries = counts.m_secretTimelineEntries;
+        }
+    }
+
+    /**
+     * Returns true if the tags and description words of the Entities have been counted.
+     * @return true if the tags and description words have been counted.
+     */
+    synchronized boolean isContentCounted() {
+        return m_contentCounted;
+    }
+
+    /**
+     * Returns the current counts, first counting the tags and description words of the Entities if they have not been
+     * counted yet.
+     * @param configuredMonths the number of months in the campaign calendar.
+     * @return the current counts.
+     */
+    synchronized CampaignStatistics getStatistics(int configuredMonths) {
+        if (!m_contentCounted) {
+            m_contentCounted = true;
+            for (Entity entity : m_accessor.getAllEntities()) {
+                addContent(entity, null);
+            }
+        }
+        return new CampaignStatistics(m_entities, m_secretEntities, m_entitiesByType,
+                                      m_descriptionWords, m_secretDescriptionWords, m_tags, m_secretTags,
+                                      m_relationships, m_secretRelationships, m_timelineEntries,
+                                      m_secretTimelineEntries, configuredMonths);
+    }
+
+    /**
+     * Adds or subtracts the Entity and type counts of the supplied Entity.
+     * @param entity the Entity to count.
+     * @param sign 1 to add the Entity's counts, -1 to subtract them.
+     */
+    private void count(Entity entity, int sign) {
+        m_entities += sign;
+        if (entity.isSecret()) {
+            m_secretEntities += sign;
+        }
+        Integer ofType = m_entitiesByType.get(entity.getType());
+        m_entitiesByType.put(entity.getType(), (ofType == null ? 0 : ofType) + sign);
+    }
+
+    /**
+     * Counts the tags and description words of the supplied Entity, and keeps them so that they can be subtracted.
+     * @param entity the Entity to count.
+     * @param previous the counts of the Entity's previous data, whose word counts are reused for descriptions which
+     * have not changed, or null.
+     */
+    private void addContent(Entity entity, ContentCounts previous) {
+        ContentCounts counts = new ContentCounts(entity.getPublicData(), entity.getSecretData(), previous);
+        m_content.put(entity.getId(), counts);
+        m_descriptionWords += counts.publicWords + counts.secretWords;
+        m_secretDescriptionWords += counts.secretWords;
+        m_tags += counts.publicTags + counts.secretTags;
+        m_secretTags += counts.secretTags;
+    }
+
+    /**
+     * Subtracts the tag and description word counts kept for the supplied Entity, if any, and forgets them.
+     * @param id the ID of the Entity.
+     * @return the counts subtracted, or null if none were kept.
+     */
+    private ContentCounts subtractContent(UUID id) {
+        ContentCounts counts = m_content.remove(id);
+        if (counts != null) {
+            m_descriptionWords -= counts.publicWords + counts.secretWords;
+            m_secretDescriptionWords -= counts.secretWords;
+            m_tags -= counts.publicTags + counts.secretTags;
+            m_secretTags -= counts.secretTags;
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of words in the supplied description: the number of space separated parts of its trimmed text,
+     * or zero if it is blank.
+     * @param description the description to count the words of.
+     * @return the number of words in the description.
+     */
+    private static int countWords(String description) {
+        String trimmed = description.trim();
+        return trimmed.isEmpty() ? 0 : trimmed.split(" ").length;
+    }
+
+    /** The descriptions of an Entity, their word counts and the number of its tags. */
+    private static final class ContentCounts {
+
+        /** The public description counted. */
+        private final String publicDescription;
+
+        /** The number of words in the public description. */
+        private final int publicWords;
+
+        /** The secret description counted. */
+        private final String secretDescription;
+
+        /** The number of words in the secret description. */
+        private final int secretWords;
+
+        /** The number of public tags. */
+        private final int publicTags;
+
+        /** The number of secret tags. */
+        private final int secretTags;
+
+        /**
+         * Creates the counts of the supplied data, reusing the word counts of the previous descriptions if they are
+         * unchanged.
+         * @param publicData the public data.
+         * @param secretData the secret data.
+         * @param previous the previously counted data of the same Entity, or null.
+         */
+        private ContentCounts(EntityData publicData, EntityData secretData, ContentCounts previous) {
+            this.publicDescription = publicData.getDescription();
+            this.secretDescription = secretData.getDescription();
+            if (previous != null && previous.publicDescription.equals(publicDescription)) {
+                publicWords = previous.publicWords;
+            } else {
+                publicWords = countWords(publicDescription);
+            }
+            if (previous != null && previous.secretDescription.equals(secretDescription)) {
+                secretWords = previous.secretWords;
+            } else {
+                secretWords = countWords(secretDescription);
+            }
+            publicTags = publicData.getTags().size();
+            secretTags = secretData.getTags().size();
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package campaignencyclopedia.data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An index of the tags of all Entities, mapping each tag to the Entities tagged with it, with public and secret tags
+ * kept apart.  The tags are also held in a prefix trie, each node of which keeps the most used tag below it, counting
+ * public uses only and counting all uses, so that the most used tags beginning with some text are found by visiting
+ * only the nodes leading to them.
+ *
+ * Tags are matched without regard to case or surrounding whitespace; the spelling first indexed is the one reported.
+ * Blank tags are not indexed.
+ *
+ * The index is only built from the Entities of its accessor when it is first used, and again after it is reset, as
+ * building it reads the tags of every Entity, and so the whole file of a campaign whose data is read as needed.
+ * Until then, changes are not indexed.  The index must be told of each change after the accessor's Entities show it,
+ * so that building it never misses a change it was not told of.
+ *
+ * @author adam
+ */
+public class TagIndex {
+
+    /** Orders completions by descending number of tagged Entities, then alphabetically. */
+    private static final Comparator<Completion> BY_FREQUENCY = new Comparator<Completion>() {
+        @Override
+        public int compare(Completion c1, Completion c2) {
+            if (c1.count != c2.count) {
+                return c1.count > c2.count ? -1 : 1;
+            }
+            return c1.tag.label.compareToIgnoreCase(c2.tag.label);
+        }
+    };
+
+    /** The indexed tags, by normalized tag. */
+    private Map<String, Tag> m_tags;
+
+    /** The root of the prefix trie of normalized tags. */
+    private TrieNode m_root;
+
+    /** The accessor whose Entities are indexed. */
+    private final DataAccessor m_accessor;
+
+    /** True if the Entities have been indexed since the index was created or last reset. */
+    private boolean m_built;
+
+    /**
+     * Creates a new TagIndex of the Entities of the supplied accessor, which are indexed when it is first used.
+     * @param accessor the accessor whose Entities are indexed.
+     */
+    public TagIndex(DataAccessor accessor) {
+        if (accessor == null) {
+            throw new IllegalArgumentException("Parameter 'accessor' must not be null.");
+        }
+        m_accessor = accessor;
+        m_tags = new HashMap<>();
+        m_root = new TrieNode();
+    }
+
+    /**
+     * Returns the tags beginning with the supplied prefix, most used first.
+     * @param prefix the text the tags must begin with.
+     * @param includeSecret true if secret tags should be included, and secret uses counted.
+     * @param limit the most tags to return.
+     * @return the tags beginning with the supplied prefix, never null.
+     */
+    public synchronized List<String> getTagsStartingWith(String prefix, boolean includeSecret, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Parameter 'limit' must not be negative.");
+        }
+        build();
+        List<String> tags = new ArrayList<>();
+        TrieNode node = prefix == null ? null : find(normalize(prefix));
+        Tag best = node == null ? null : node.best(includeSecret);
+        if (best == null || limit == 0) {
+            return tags;
+        }
+
+        // Each subtree is queued by the most used tag within it, so it is only expanded once that tag is next, and
+        // the tags are reached in order by expanding at most one node per tag returned.
+        PriorityQueue<Completion> pending = new PriorityQueue<>(11, BY_FREQUENCY);
+        pending.add(new Completion(best, node, includeSecret));
+        while (!pending.isEmpty() && tags.size() < limit) {
+            Completion next = pending.poll();
+            if (next.node == null) {
+                tags.add(next.tag.label);
+                continue;
+            }
+            Tag own = next.node.tag;
+            if (own != null && own.count(includeSecret) > 0) {
+                pending.add(new Completion(own, null, includeSecret));
+            }
+            if (next.node.children != null) {
+                for (TrieNode child : next.node.children.values()) {
+                    Tag childBest = child.best(includeSecret);
+                    if (childBest != null) {
+                        pending.add(new Completion(childBest, child, includeSecret));
+                    }
+                }
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Adds the tags of the supplied Entity to the index, if it has been built.
+     * @param entity the Entity to index.
+     */
+    synchronized void add(Entity entity) {
+        if (!m_built) {
+            return;
+        }
+        for (String tag : entity.getPublicData().getTags()) {
+            if (!tag.trim().isEmpty()) {
+                Tag indexed = tagFor(tag);
+                if (indexed.publicEntities.add(entity.getId())) {
+                    updateBest(indexed.key);
+                }
+            }
+        }
+        for (String tag : entity.getSecretData().getTags()) {
+            if (!tag.trim().isEmpty()) {
+                Tag indexed = tagFor(tag);
+                if (indexed.secretEntities.add(entity.getId())) {
+                    updateBest(indexed.key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the tags of the supplied Entity from the index, if it has been built.
+     * @param entity the Entity to remove, as it was when added.
+     */
+    synchronized void remove(Entity entity) {
+        if (!m_built) {
+            return;
+        }
+        for (String tag : entity.getPublicData().getTags()) {
+            Tag indexed = m_tags.get(normalize(tag));
+            if (indexed != null && indexed.publicEntities.remove(entity.getId())) {
+                prune(indexed);
+                updateBest(indexed.key);
+            }
+        }
+        for (String tag : entity.getSecretData().getTags()) {
+            Tag indexed = m_tags.get(normalize(tag));
+            if (indexed != null && indexed.secretEntities.remove(entity.getId())) {
+                prune(indexed);
+                updateBest(indexed.key);
+            }
+        }
+    }
+
+    /** Empties the index, to be built again from the Entities of its accessor when it is next used. */
+    synchronized void reset() {
+        m_tags = new HashMap<>();
+        m_root = new TrieNode();
+        m_built = false;
+    }
+
+    /** Indexes the Entities of the accessor, unless they have been indexed since the index was created or reset. */
+    private void build() {
+        if (!m_built) {
+            m_built = true;
+            for (Entity entity : m_accessor.getAllEntities()) {
+                add(entity);
+            }
+        }
+    }
+
+    /**
+     * Returns the indexed Tag for the supplied tag, creating it if needed.
+     * @param tag the tag.
+     * @return the indexed Tag for the supplied tag.
+     */
+    private Tag tagFor(String tag) {
+        String key = normalize(tag);
+        Tag indexed = m_tags.get(key);
+        if (indexed == null) {
+            indexed = new Tag(key, tag.trim());
+            m_tags.put(key, indexed);
+            TrieNode node = m_root;
+            for (int i = 0; i < key.length(); i++) {
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+                TrieNode child = node.children.get(key.charAt(i));
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(key.charAt(i), child);
+                }
+                node = child;
+            }
+            node.tag = indexed;
+        }
+        return indexed;
+    }
+
+    /**
+     * Removes the supplied Tag from the index if no Entity is tagged with it any longer.
+     * @param indexed the Tag to check.
+     */
+    private void prune(Tag indexed) {
+        if (!indexed.publicEntities.isEmpty() || !indexed.secretEntities.isEmpty()) {
+            return;
+        }
+        m_tags.remove(indexed.key);
+
+        // Walk down to the tag's node, remembering the deepest node which must be kept, then cut below it.
+        TrieNode keep = m_root;
+        char cut = indexed.key.charAt(0);
+        TrieNode node = m_root;
+        for (int i = 0; i < indexed.key.length(); i++) {
+            if (node.tag != null || node.children.size() > 1) {
+                keep = node;
+                cut = indexed.key.charAt(i);
+            }
+            node = node.children.get(indexed.key.charAt(i));
+        }
+        node.tag = null;
+        if (node.children == null || node.children.isEmpty()) {
+            keep.children.remove(cut);
+        }
+    }
+
+    /**
+     * Recomputes the most used tags kept by the trie nodes on the path to the supplied normalized tag, deepest first,
+     * after the number of Entities tagged with it has changed.  The path stops where the trie does, if the tag was
+     * pruned.
+     * @param key the normalized tag.
+     */
+    private void updateBest(String key) {
+        List<TrieNode> path = new ArrayList<>(key.length() + 1);
+        TrieNode node = m_root;
+        for (int i = 0; node != null; i++) {
+            path.add(node);
+            node = i == key.length() || node.children == null ? null : node.children.get(key.charAt(i));
+        }
+        for (int i = path.size() - 1; i >= 0; i--) {
+            path.get(i).updateBest();
+        }
+    }
+
+    /**
+     * Returns the trie node for the supplied normalized prefix, or null if no tag begins with it.
+     * @param prefix the normalized prefix.
+     * @return the trie node for the supplied prefix, or null.
+     */
+    private TrieNode find(String prefix) {
+        TrieNode node = m_root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children == null ? null : node.children.get(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * Returns the supplied tag trimmed and in lower case.
+     * @param tag the tag to normalize.
+     * @return the normalized tag.
+     */
+    private static String normalize(String tag) {
+        return tag.trim().toLowerCase();
+    }
+
+    /** A single indexed tag and the Entities tagged with it. */
+    private static final class Tag {
+
+        /** The normalized tag. */
+        private final String key;
+
+        /** The tag as first indexed. */
+        private final String label;
+
+        /** The IDs of the Entities with this tag as a public tag. */
+        private final Set<UUID> publicEntities;
+
+        /** The IDs of the Entities with this tag as a secret tag. */
+        private final Set<UUID> secretEntities;
+
+        /**
+         * Creates a new Tag.
+         * @param key the normalized tag.
+         * @param label the tag as first indexed.
+         */
+        private Tag(String key, String label) {
+            this.key = key;
+            this.label = label;
+            publicEntities = new HashSet<>();
+            secretEntities = new HashSet<>();
+        }
+
+        /**
+         * Returns the number of Entities tagged with this tag.
+         * @param includeSecret true if Entities with it as a secret tag should be counted.
+         * @return the number of Entities tagged with this tag.
+         */
+        private int count(boolean includeSecret) {
+            return publicEntities.size() + (includeSecret ? secretEntities.size() : 0);
+        }
+
+        /**
+         * Returns true if this tag is used more than the supplied one, or as much and first alphabetically.
+         * @param other the tag to compare with, or null if there is none, which any used tag is better than.
+         * @param includeSecret true if secret uses should be counted.
+         * @return true if this tag is better than the supplied one.
+         */
+        private boolean isBetterThan(Tag other, boolean includeSecret) {
+            int count = count(includeSecret);
+            if (count == 0) {
+                return false;
+            }
+            if (other == null) {
+                return true;
+            }
+            int otherCount = other.count(includeSecret);
+            if (count != otherCount) {
+                return count > otherCount;
+            }
+            return label.compareToIgnoreCase(other.label) < 0;
+        }
+    }
+
+    /** A node of the prefix trie, one per distinct prefix of the indexed tags. */
+    private static final class TrieNode {
+
+        /** The children of this node by next character, or null if it has none yet. */
+        private Map<Character, TrieNode> children;
+
+        /** The tag ending at this node, or null. */
+        private Tag tag;
+
+        /** The most used tag at or below this node counting public uses only, or null if none has any. */
+        private Tag bestPublic;
+
+        /** The most used tag at or below this node counting all uses, or null if there is none. */
+        private Tag bestAll;
+
+        /**
+         * Returns the most used tag at or below this node.
+         * @param includeSecret true if secret uses should be counted.
+         * @return the most used tag at or below this node, or null if there is none.
+         */
+        private Tag best(boolean includeSecret) {
+            return includeSecret ? bestAll : bestPublic;
+        }
+
+        /** Recomputes the most used tags at or below this node, from its own tag and those kept by its children. */
+        private void updateBest() {
+            bestPublic = null;
+            bestAll = null;
+            if (tag != null) {
+                bestPublic = tag.isBetterThan(null, false) ? tag : null;
+                bestAll = tag.isBetterThan(null, true) ? tag : null;
+            }
+            if (children != null) {
+                for (TrieNode child : children.values()) {
+                    if (child.bestPublic != null && child.bestPublic.isBetterThan(bestPublic, false)) {
+                        bestPublic = child.bestPublic;
+                    }
+                    if (child.bestAll != null && child.bestAll.isBetterThan(bestAll, true)) {
+                        bestAll = child.bestAll;
+                    }
+                }
+            }
+        }
+    }
+
+    /** A tag, or the subtree of the trie whose most used tag it is, waiting to be returned as a completion. */
+    private static final class Completion {
+
+        /** The tag. */
+        private final Tag tag;
+
+        /** The trie node to expand, or null if the tag itself is to be returned. */
+        private final TrieNode node;
+
+        /** The number of Entities tagged with the tag, as counted for the completion. */
+        private final int count;
+
+        /**
+         * Creates a new Completion.
+         * @param tag the tag, or the most used tag below the supplied node.
+         * @param node the trie node to expand, or null if the tag itself is to be returned.
+         * @param includeSecret true if secret uses should be counted.
+         */
+        private Completion(Tag tag, TrieNode node, boolean includeSecret) {
+            this.tag = tag;
+            this.node = node;
+            count = tag.count(includeSecret);
+        }
+    }
+}
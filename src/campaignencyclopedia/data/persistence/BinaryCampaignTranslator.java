@@ -0,0 +1,538 @@
+package campaignencyclopedia.data.persistence;
+
+import campaignencyclopedia.data.Campaign;
+import campaignencyclopedia.data.CampaignCalendar;
+import campaignencyclopedia.data.Entity;
+import campaignencyclopedia.data.EntityData;
+import campaignencyclopedia.data.EntityDataBuilder;
+import campaignencyclopedia.data.EntityType;
+import campaignencyclopedia.data.Month;
+import campaignencyclopedia.data.Relationship;
+import campaignencyclopedia.data.RelationshipLabels;
+import campaignencyclopedia.data.RelationshipManager;
+import campaignencyclopedia.data.TimelineEntry;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Translates Campaigns to and from a compact binary save file format, which is much faster to read and write than the
+ * JSON format as it needs no escaping, number or UUID formatting, or parsing of text.  The JSON format remains the
+ * one to use where files are to be compared or edited; the two hold the same data and convert without loss.
+ *
+ * A binary save file is laid out as follows, with all numbers big-endian:
+ * <pre>
+ *   header         magic (int), format version (short)
+ *   string table   count (int), then for each string its UTF-8 length (int) and bytes
+ *   campaign name  string index (int)
+ *   entities       count (int), then for each Entity a record length (int) and record:
+ *                  ID (two longs), name, type (string index, -2 if none), is secret (byte),
+ *                  public data, has secret data (byte), secret data if present
+ *   entity data    description (string index), tag count (int), tags (string indexes)
+ *   timeline       count (int), then for each entry: ID (two longs), title (string index, -2 if none),
+ *                  month name (string index), month index (int), year (int), is secret (byte), associated Entity
+ *   calendar       count (int), then for each Month: name (string index), index (int)
+ *   relationships  count (int), then for each: owning Entity, related Entity, label (string index), is secret (byte)
+ * </pre>
+ * Entities are referred to by their position in the entity section.  A reference to an Entity which is not in the file
+ * is written as -1 followed by its ID, and a missing reference as -2.  Entity records are length-prefixed so that a
+ * reader may skip them, and so that later versions may append fields to them.
+ *
+ * Secret data is left out exactly as it is by the JSON format.
+ *
+ * @author adam
+ */
+public class BinaryCampaignTranslator {
+
+    /** The file extension of binary save files, without the leading dot. */
+    public static final String FILE_EXTENSION = "bcampaign";
+
+    /** The first four bytes of every binary save file: "CEBC". */
+    static final int MAGIC = 0x43454243;
+
+    /** The version of the binary format written. */
+    static final short FORMAT_VERSION = 1;
+
+    /** The Entity reference which is followed by the ID of an Entity not in the file. */
+    static final int EXTERNAL_ENTITY = -1;
+
+    /** The Entity reference, or string index, which stands for nothing. */
+    static final int NONE = -2;
+
+    /**
+     * Returns true if the supplied stream holds a binary save file, without consuming any of it.
+     * @param in the stream to check, which must support mark and reset.
+     * @return true if the supplied stream holds a binary save file, false if it holds anything else, such as JSON.
+     * @throws IOException if an error occurs reading from the stream.
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("Parameter 'in' must support mark and reset.");
+        }
+        in.mark(4);
+        try {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                if (b < 0) {
+                    return false;
+                }
+                magic = (magic << 8) | b;
+            }
+            return magic == MAGIC;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Writes the supplied Campaign to the supplied stream in the binary format.  The stream is flushed, but not closed.
+     *
+     * @param campaign the Campaign to write.
+     * @param includeSecrets true if Secrets should be included in the output.
+     * @param out the stream to write to, ideally buffered.
+     *
+     * @throws IOException if an error occurs writing to the stream.
+     */
+    public static void write(Campaign campaign, boolean includeSecrets, OutputStream out) throws IOException {
+        // ENTITIES
+        // --- Sorted, as in the JSON format, so that the same data always produces the same file.
+        List<Entity> entities = new ArrayList<>(campaign.getEntities());
+        Collections.sort(entities);
+        Set<UUID> secretEntities = new HashSet<>();
+        Iterator<Entity> entityIt = entities.iterator();
+        while (entityIt.hasNext()) {
+            Entity entity = entityIt.next();
+            if (entity.isSecret()) {
+                secretEntities.add(entity.getId());
+                if (!includeSecrets) {
+                    entityIt.remove();
+                }
+            }
+        }
+        Map<UUID, Integer> entityIndices = new HashMap<>();
+        for (int i = 0; i < entities.size(); i++) {
+            entityIndices.put(entities.get(i).getId(), i);
+        }
+
+        // TIMELINE ENTRIES
+        List<TimelineEntry> timeline = new ArrayList<>(campaign.getTimelineEntries());
+        Collections.sort(timeline);
+        Iterator<TimelineEntry> timelineIt = timeline.iterator();
+        while (timelineIt.hasNext()) {
+            UUID associatedEntity = timelineIt.next().getAssociatedId();
+            if (associatedEntity != null && secretEntities.contains(associatedEntity) && !includeSecrets) {
+                timelineIt.remove();
+            }
+        }
+
+        // CALENDAR
+        List<Month> months = new ArrayList<>(campaign.getCalendar().getMonths());
+        Collections.sort(months);
+
+        // RELATIONSHIPS
+        List<Relationship> relationships = new ArrayList<>();
+        for (RelationshipManager rels : campaign.getAllRelationships().values()) {
+            relationships.addAll(rels.getAllRelationships());
+        }
+        Collections.sort(relationships);
+
+        // Gather the string table, in order of first use.
+        StringTable strings = new StringTable();
+        strings.add(campaign.getName());
+        for (Entity entity : entities) {
+            strings.add(entity.getName());
+            if (entity.getType() != null) {
+                strings.add(entity.getType().name());
+            }
+            strings.add(entity.getPublicData());
+            if (includeSecrets) {
+                strings.add(entity.getSecretData());
+            }
+        }
+        for (TimelineEntry entry : timeline) {
+            if (entry.getTitle() != null) {
+                strings.add(entry.getTitle());
+            }
+            strings.add(entry.getMonth().getName());
+        }
+        for (Month month : months) {
+            strings.add(month.getName());
+        }
+        for (Relationship rel : relationships) {
+            strings.add(rel.getRelationshipText());
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(FORMAT_VERSION);
+        data.writeInt(strings.size());
+        for (String string : strings.getStrings()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        data.writeInt(strings.indexOf(campaign.getName()));
+
+        // Each Entity record is built in a reusable buffer so that it can be preceded by its length.
+        data.writeInt(entities.size());
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        for (Entity entity : entities) {
+            recordBytes.reset();
+            writeUuid(record, entity.getId());
+            record.writeInt(strings.indexOf(entity.getName()));
+            record.writeInt(entity.getType() == null ? NONE : strings.indexOf(entity.getType().name()));
+            record.writeBoolean(entity.isSecret());
+            writeEntityData(record, entity.getPublicData(), strings);
+            record.writeBoolean(includeSecrets);
+            if (includeSecrets) {
+                writeEntityData(record, entity.getSecretData(), strings);
+            }
+            record.flush();
+            data.writeInt(recordBytes.size());
+            recordBytes.writeTo(data);
+        }
+
+        data.writeInt(timeline.size());
+        for (TimelineEntry entry : timeline) {
+            writeUuid(data, entry.getId());
+            data.writeInt(entry.getTitle() == null ? NONE : strings.indexOf(entry.getTitle()));
+            data.writeInt(strings.indexOf(entry.getMonth().getName()));
+            data.writeInt(entry.getMonth().getIndex());
+            data.writeInt(entry.getYear());
+            data.writeBoolean(entry.isSecret());
+            writeEntityReference(data, entry.getAssociatedId(), entityIndices);
+        }
+
+        data.writeInt(months.size());
+        for (Month month : months) {
+            data.writeInt(strings.indexOf(month.getName()));
+            data.writeInt(month.getIndex());
+        }
+
+        data.writeInt(relationships.size());
+        for (Relationship rel : relationships) {
+            writeEntityReference(data, rel.getEntityId(), entityIndices);
+            writeEntityReference(data, rel.getRelatedEntity(), entityIndices);
+            data.writeInt(strings.indexOf(rel.getRelationshipText()));
+            data.writeBoolean(rel.isSecret());
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a Campaign in the binary format from the supplied stream.  The stream is not closed.
+     * @param in the stream to read from, ideally buffered.
+     * @return the Campaign read.
+     * @throws IOException if an error occurs reading from the stream, or it does not hold a valid binary save file.
+     */
+    public static Campaign read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a binary campaign file.");
+        }
+        short version = data.readShort();
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Unsupported binary campaign file version " + version + ".");
+        }
+
+        String[] strings = new String[checkCount(data.readInt())];
+        byte[] buffer = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = checkCount(data.readInt());
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            data.readFully(buffer, 0, length);
+            strings[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+        String name = string(strings, data.readInt());
+
+        // ENTITIES
+        int entityCount = checkCount(data.readInt());
+        UUID[] entityIds = new UUID[entityCount];
+        Set<Entity> entities = new HashSet<>();
+        for (int i = 0; i < entityCount; i++) {
+            int length = checkCount(data.readInt());
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            data.readFully(buffer, 0, length);
+            Entity entity = readEntity(ByteBuffer.wrap(buffer, 0, length), strings);
+            entityIds[i] = entity.getId();
+            entities.add(entity);
+        }
+
+        // TIMELINE ENTRIES
+        int timelineCount = checkCount(data.readInt());
+        Set<TimelineEntry> timeline = new HashSet<>();
+        for (int i = 0; i < timelineCount; i++) {
+            UUID id = new UUID(data.readLong(), data.readLong());
+            int title = data.readInt();
+            Month month = new Month(string(strings, data.readInt()), data.readInt());
+            int year = data.readInt();
+            boolean isSecret = data.readBoolean();
+            UUID associatedEntity = readEntityReference(data, entityIds);
+            timeline.add(new TimelineEntry(title == NONE ? null : string(strings, title), month, year, isSecret,
+                                           associatedEntity, id));
+        }
+
+        // CALENDAR
+        int monthCount = checkCount(data.readInt());
+        List<Month> months = new ArrayList<>();
+        for (int i = 0; i < monthCount; i++) {
+            months.add(new Month(string(strings, data.readInt()), data.readInt()));
+        }
+        CampaignCalendar cal = new CampaignCalendar();
+        cal.updateMonths(months);
+
+        // RELATIONSHIPS
+        // --- Each label is canonicalized once, however many Relationships use it.
+        String[] labels = new String[strings.length];
+        int relationshipCount = checkCount(data.readInt());
+        Map<UUID, RelationshipManager.Builder> builders = new HashMap<>();
+        for (int i = 0; i < relationshipCount; i++) {
+            UUID owner = readEntityReference(data, entityIds);
+            UUID related = readEntityReference(data, entityIds);
+            int label = data.readInt();
+            boolean isSecret = data.readBoolean();
+            if (owner == null || related == null) {
+                throw new IOException("Relationship is missing an Entity.");
+            }
+            String text = string(strings, label);
+            if (labels[label] == null) {
+                labels[label] = RelationshipLabels.canonicalize(text);
+            }
+            RelationshipManager.Builder relMgr = builders.get(owner);
+            if (relMgr == null) {
+                relMgr = new RelationshipManager.Builder();
+                builders.put(owner, relMgr);
+            }
+            relMgr.add(new Relationship(owner, related, labels[label], isSecret));
+        }
+        Map<UUID, RelationshipManager> relationships = new HashMap<>();
+        for (Map.Entry<UUID, RelationshipManager.Builder> entry : builders.entrySet()) {
+            relationships.put(entry.getKey(), entry.getValue().build());
+        }
+
+        return new Campaign(name, entities, relationships, timeline, cal);
+    }
+
+    /**
+     * Reads an Entity record.
+     * @param record the bytes of the record.
+     * @param strings the string table.
+     * @return the Entity read.
+     * @throws IOException if the record is invalid.
+     */
+    private static Entity readEntity(ByteBuffer record, String[] strings) throws IOException {
+        try {
+            UUID id = new UUID(record.getLong(), record.getLong());
+            String name = string(strings, record.getInt());
+            int type = record.getInt();
+            boolean isSecret = record.get() != 0;
+            EntityData publicData = readEntityData(record, strings);
+            EntityData secretData;
+            if (record.get() != 0) {
+                secretData = readEntityData(record, strings);
+            } else {
+                secretData = new EntityDataBuilder().build();
+            }
+            try {
+                return new Entity(id, name, type == NONE ? null : EntityType.valueOf(string(strings, type)), publicData,
+                                  secretData, isSecret);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid Entity record.", ex);
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Truncated Entity record.", ex);
+        }
+    }
+
+    /**
+     * Reads the EntityData part of an Entity record.
+     * @param record the bytes of the record, positioned at the EntityData.
+     * @param strings the string table.
+     * @return the EntityData read.
+     * @throws IOException if the record is invalid.
+     */
+    private static EntityData readEntityData(ByteBuffer record, String[] strings) throws IOException {
+        String description = string(strings, record.getInt());
+        int tagCount = checkCount(record.getInt());
+        Set<String> tags = new HashSet<>();
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(string(strings, record.getInt()));
+        }
+        return new EntityData(description, tags);
+    }
+
+    /**
+     * Writes the EntityData part of an Entity record.
+     * @param record the stream to write the record to.
+     * @param data the EntityData to write.
+     * @param strings the string table.
+     * @throws IOException if an error occurs writing.
+     */
+    private static void writeEntityData(DataOutputStream record, EntityData data, StringTable strings) throws IOException {
+        record.writeInt(strings.indexOf(data.getDescription()));
+        List<String> tags = new ArrayList<>(data.getTags());
+        Collections.sort(tags);
+        record.writeInt(tags.size());
+        for (String tag : tags) {
+            record.writeInt(strings.indexOf(tag));
+        }
+    }
+
+    /**
+     * Writes a reference to the Entity with the supplied ID: its position in the file, or its ID if it is not in it.
+     * @param data the stream to write to.
+     * @param id the ID of the Entity, may be null.
+     * @param entityIndices the position in the file of each Entity written.
+     * @throws IOException if an error occurs writing.
+     */
+    private static void writeEntityReference(DataOutputStream data, UUID id, Map<UUID, Integer> entityIndices) throws IOException {
+        if (id == null) {
+            data.writeInt(NONE);
+            return;
+        }
+        Integer index = entityIndices.get(id);
+        if (index != null) {
+            data.writeInt(index);
+        } else {
+            data.writeInt(EXTERNAL_ENTITY);
+            writeUuid(data, id);
+        }
+    }
+
+    /**
+     * Reads a reference to an Entity.
+     * @param data the stream to read from.
+     * @param entityIds the IDs of the Entities in the file, by position.
+     * @return the ID of the Entity referred to, or null if none is.
+     * @throws IOException if an error occurs reading, or the reference is invalid.
+     */
+    private static UUID readEntityReference(DataInputStream data, UUID[] entityIds) throws IOException {
+        int index = data.readInt();
+        if (index == EXTERNAL_ENTITY) {
+            return new UUID(data.readLong(), data.readLong());
+        } else if (index == NONE) {
+            return null;
+        } else if (index < 0 || index >= entityIds.length) {
+            throw new IOException("Invalid Entity reference " + index + ".");
+        }
+        return entityIds[index];
+    }
+
+    /**
+     * Writes the supplied UUID as its 128 bits.
+     * @param data the stream to write to.
+     * @param id the UUID to write.
+     * @throws IOException if an error occurs writing.
+     */
+    private static void writeUuid(DataOutputStream data, UUID id) throws IOException {
+        data.writeLong(id.getMostSignificantBits());
+        data.writeLong(id.getLeastSignificantBits());
+    }
+
+    /**
+     * Returns the string at the supplied index of the string table.
+     * @param strings the string table.
+     * @param index the index of the string.
+     * @return the string at the supplied index.
+     * @throws IOException if the index is not in the string table.
+     */
+    private static String string(String[] strings, int index) throws IOException {
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string index " + index + ".");
+        }
+        return strings[index];
+    }
+
+    /**
+     * Returns the supplied count or length, if it is not negative.
+     * @param count the count to check.
+     * @return the supplied count.
+     * @throws IOException if the count is negative.
+     */
+    private static int checkCount(int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Invalid count " + count + ".");
+        }
+        return count;
+    }
+
+    /** The strings of a binary save file, each stored once and referred to by index. */
+    private static final class StringTable {
+
+        /** The index of each string. */
+        private final Map<String, Integer> m_indices = new HashMap<>();
+
+        /** The strings, by index. */
+        private final List<String> m_strings = new ArrayList<>();
+
+        /**
+         * Adds the supplied string, if it is not already in the table.
+         * @param string the string to add.
+         */
+        private void add(String string) {
+            if (!m_indices.containsKey(string)) {
+                m_indices.put(string, m_strings.size());
+                m_strings.add(string);
+            }
+        }
+
+        /**
+         * Adds the description and tags of the supplied EntityData.
+         * @param data the EntityData whose strings to add.
+         */
+        private void add(EntityData data) {
+            add(data.getDescription());
+            List<String> tags = new ArrayList<>(data.getTags());
+            Collections.sort(tags);
+            for (String tag : tags) {
+                add(tag);
+            }
+        }
+
+        /**
+         * Returns the index of the supplied string, which must have been added.
+         * @param string the string.
+         * @return the index of the supplied string.
+         */
+        private int indexOf(String string) {
+            return m_indices.get(string);
+        }
+
+        /**
+         * Returns the number of strings in the table.
+         * @return the number of strings.
+         */
+        private int size() {
+            return m_strings.size();
+        }
+
+        /**
+         * Returns the strings, by index.
+         * @return the strings.
+         */
+        private List<String> getStrings() {
+            return m_strings;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses and decompresses campaign files as they are written and read, so that a campaign can be saved as a gzip
+ * file (such as "campaign.campaign.gz") in either format.  Campaign JSON repeats its IDs, keys and relationship labels
+ * throughout, so it compresses to a fraction of its size, which makes it much quicker to save to and open from a slow
+ * drive.
+ *
+ * Both directions stream: data is compressed as it is written and decompressed as it is read, a buffer at a time, so
+ * neither the compressed nor the uncompressed form of a campaign is ever held in memory whole.  Compressed files are
+ * recognized by their content rather than their name, so any campaign file may be compressed.
+ *
+ * The compression level, from 0 (none, fastest) to 9 (smallest, slowest), may be set by the 'compression-level'
+ * property in the compression configuration file.
+ *
+ * @author adam
+ */
+public final class CampaignCompression {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(CampaignCompression.class.getName());
+
+    /** The suffix added to the name of a campaign file when it is compressed. */
+    public static final String FILE_EXTENSION = "gz";
+
+    /** The location of the compression configuration file. */
+    private static final String CONFIG_FILE = "./config/compression.properties";
+
+    /** The property of the compression configuration file which sets the compression level. */
+    private static final String LEVEL_PROPERTY = "compression-level";
+
+    /** The first two bytes of every gzip file. */
+    private static final int GZIP_MAGIC = 0x1F8B;
+
+    /** The size of the buffers data is compressed and decompressed through. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The compression level files are written with. */
+    private static final int LEVEL = readLevel();
+
+    /** Prevents instantiation. */
+    private CampaignCompression() {
+    }
+
+    /**
+     * Returns true if the file at the supplied path is written compressed, as its name ends with the compressed file
+     * extension.
+     * @param path the path of the campaign file.
+     * @return true if the file at the path is written compressed.
+     */
+    public static boolean isCompressed(String path) {
+        if (path == null) {
+            throw new IllegalArgumentException("Parameter 'path' must not be null.");
+        }
+        return path.endsWith("." + FILE_EXTENSION);
+    }
+
+    /**
+     * Returns the supplied path without the compressed file extension, whose extension is then that of the format of
+     * the file, or the path itself if it has no compressed file extension.
+     * @param path the path of the campaign file.
+     * @return the path without the compressed file extension.
+     */
+    public static String uncompressedPath(String path) {
+        if (isCompressed(path)) {
+            return path.substring(0, path.length() - FILE_EXTENSION.length() - 1);
+        }
+        return path;
+    }
+
+    /**
+     * Returns a stream which reads the supplied stream decompressed, if it begins with the gzip magic number, or the
+     * supplied stream itself otherwise.  The returned stream supports mark and reset.  Closing a decompressing stream
+     * closes the supplied stream.
+     * @param in the stream to read, which must support mark and reset.
+     * @return a stream reading the content of the supplied stream decompressed, or the supplied stream.
+     * @throws IOException if an error occurs reading the stream.
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("Parameter 'in' must not be null.");
+        }
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("Parameter 'in' must support mark and reset.");
+        }
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if (((first << 8) | second) != GZIP_MAGIC) {
+            return in;
+        }
+        return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a stream which writes to the supplied stream compressed, at the configured compression level.  It must be
+     * finished, or closed, to write the end of the compressed data.
+     * @param out the stream to write to.
+     * @return a stream which compresses what is written to it.
+     * @throws IOException if an error occurs writing the stream.
+     */
+    public static GZIPOutputStream compress(OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("Parameter 'out' must not be null.");
+        }
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(LEVEL);
+            }
+        };
+    }
+
+    /**
+     * Returns the compression level files are written with.
+     * @return the compression level, from 0 to 9, or -1 for the default level.
+     */
+    public static int getLevel() {
+        return LEVEL;
+    }
+
+    /**
+     * Reads the compression level from the compression configuration file, if it exists and sets a valid level.
+     * @return the configured compression level, or the default level.
+     */
+    private static int readLevel() {
+        File configFile = new File(CONFIG_FILE);
+        if (!configFile.exists()) {
+            LOGGER.config("No compression configuration file detected, using the default compression level.");
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        Properties config = new Properties();
+        try (InputStream in = new FileInputStream(configFile)) {
+            config.load(in);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to read '" + CONFIG_FILE + "', using the default compression level.", ex);
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        String level = config.getProperty(LEVEL_PROPERTY);
+        if (level == null) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        try {
+            int parsed = Integer.parseInt(level.trim());
+            if (parsed >= Deflater.NO_COMPRESSION && parsed <= Deflater.BEST_COMPRESSION) {
+                return parsed;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below.
+        }
+        LOGGER.log(Level.WARNING, "Invalid compression level ''{0}'' in ''{1}'', using the default compression level.",
+                   new Object[] {level, CONFIG_FILE});
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+}
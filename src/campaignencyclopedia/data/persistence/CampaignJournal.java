@@ -0,0 +1,964 @@
+package campaignencyclopedia.data.persistence;
+
+import campaignencyclopedia.data.Campaign;
+import campaignencyclopedia.data.CampaignCalendar;
+import campaignencyclopedia.data.CampaignChangeLog;
+import campaignencyclopedia.data.CampaignDataManager;
+import campaignencyclopedia.data.DataAccessor;
+import campaignencyclopedia.data.DataBatch;
+import campaignencyclopedia.data.Entity;
+import campaignencyclopedia.data.EntityData;
+import campaignencyclopedia.data.EntityType;
+import campaignencyclopedia.data.Month;
+import campaignencyclopedia.data.Relationship;
+import campaignencyclopedia.data.RelationshipLabels;
+import campaignencyclopedia.data.RelationshipManager;
+import campaignencyclopedia.data.TimelineEntry;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the changes made to a campaign since it was last saved in full.  The full save (the
+ * snapshot) is the campaign's save file; the journal is kept beside it, and the campaign is opened by replaying the
+ * journal over the snapshot.  Saving the changes made since the last save therefore only appends a few small records,
+ * however large the campaign is.  Once the journal grows as large as the snapshot it is compacted: a new snapshot is
+ * written and the journal emptied.
+ *
+ * The journal is told of changes as the CampaignChangeLog of a CampaignDataManager, and only holds them in memory until
+ * flush() appends those of all completed mutations to the file, followed by a commit record, with a single sync.  Only
+ * the records of committed groups are replayed, so a mutation is never replayed in part.  Each record is the value of
+ * one Entity, one Entity's Relationships, one TimelineEntry or the calendar, as it was stored or removed, so replaying
+ * a record any number of times has the same effect as replaying it once.  A snapshot written before the journal could
+ * be emptied is therefore still correct with the old journal replayed over it.
+ *
+ * A campaign with no save file is journaled without a snapshot: rewrite() compacts the journal into records which
+ * start the campaign anew and store all of its data, so recover() rebuilds the campaign from the journal alone.
+ *
+ * While a journal is open it holds a lock on its file, so another instance of the application cannot open it too.
+ *
+ * The file begins with a magic number and format version, then holds the records, each written as its length, its
+ * content and a CRC-32 checksum of its content.  A record cut short by a crash, anything after it and the uncommitted
+ * records before it are ignored.
+ *
+ * @author adam
+ */
+public final class CampaignJournal implements CampaignChangeLog {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(CampaignJournal.class.getName());
+
+    /** The suffix added to the path of a save file to name its journal. */
+    public static final String FILE_EXTENSION = "journal";
+
+    /** The magic number which begins every journal, "CEJL". */
+    static final int MAGIC = 0x43454A4C;
+
+    /** The version of the journal format written. */
+    static final short FORMAT_VERSION = 1;
+
+    /** The size of the magic number and format version. */
+    private static final int HEADER_SIZE = 4 + 2;
+
+    /** The smallest size a journal may reach before it is compacted, however small the snapshot is. */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    /** The record type of an Entity stored. */
+    private static final byte ENTITY_STORED = 1;
+    /** The record type of an Entity removed. */
+    private static final byte ENTITY_REMOVED = 2;
+    /** The record type of the Relationships of an Entity stored. */
+    private static final byte RELATIONSHIPS_STORED = 3;
+    /** The record type of the Relationships of an Entity removed. */
+    private static final byte RELATIONSHIPS_REMOVED = 4;
+    /** The record type of a TimelineEntry stored. */
+    private static final byte TIMELINE_ENTRY_STORED = 5;
+    /** The record type of a TimelineEntry removed. */
+    private static final byte TIMELINE_ENTRY_REMOVED = 6;
+    /** The record type of the calendar stored. */
+    private static final byte CALENDAR_STORED = 7;
+    /** The record type which ends each group of records appended together. */
+    private static final byte COMMIT = 8;
+    /** The record type which starts the campaign anew, with its name and no data. */
+    private static final byte CAMPAIGN_STARTED = 9;
+
+    /** The position of the byte locked while a journal is open, beyond any data so that it never blocks reading. */
+    private static final long LOCK_POSITION = Long.MAX_VALUE - 1;
+
+    /** The suffix added to the path of a journal to name the temporary file it is rewritten to. */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /** The journal file. */
+    private final File m_file;
+
+    /** The lock held while writing the journal file. */
+    private final Object m_fileLock = new Object();
+
+    /** The channel the journal is appended through, which holds the lock on the file.  Guarded by m_fileLock. */
+    private FileChannel m_channel;
+
+    /** The size of the journal file. */
+    private long m_size;
+
+    /** The size the journal file may reach before it should be compacted. */
+    private long m_compactionSize;
+
+    /** The changes not yet appended to the file, oldest first.  Guarded by this. */
+    private List<Change> m_pending;
+
+    /** The number of the pending changes made by completed mutations.  Guarded by this. */
+    private int m_complete;
+
+    /** True if the campaign has been replaced since the last snapshot, so a new one is needed.  Guarded by this. */
+    private boolean m_replaced;
+
+    /**
+     * Returns the journal file of the save file at the supplied path.
+     * @param savePath the path of the save file.
+     * @return the journal file of the save file.
+     */
+    public static File fileFor(String savePath) {
+        if (savePath == null) {
+            throw new IllegalArgumentException("Parameter 'savePath' must not be null.");
+        }
+        return new File(savePath + "." + FILE_EXTENSION);
+    }
+
+    /**
+     * Returns the supplied snapshot with the changes in the supplied journal file applied to it.  If the file does not
+     * exist, the snapshot is returned as it is.  Replay stops at the first record which is incomplete or corrupt.
+     * @param snapshot the campaign as it was last saved in full.
+     * @param file the journal file.
+     * @return the campaign with the changes in the journal applied.
+     * @throws IOException if an error occurs reading the journal, or it is not a journal.
+     */
+    public static Campaign replay(Campaign snapshot, File file) throws IOException {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Parameter 'snapshot' must not be null.");
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("Parameter 'file' must not be null.");
+        }
+        if (!file.exists()) {
+            return snapshot;
+        }
+        Replay replay = new Replay(snapshot);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            readRecords(new DataInputStream(in), file.length(), replay);
+        }
+        if (replay.m_records > 0) {
+            LOGGER.log(Level.INFO, "Replayed {0} change(s) from ''{1}''.", new Object[] {replay.m_records, file.getName()});
+        }
+        return replay.toCampaign();
+    }
+
+    /**
+     * Returns the campaign held by the supplied journal file, which has been rewritten since the campaign was started.
+     * Replay stops at the first record which is incomplete or corrupt.
+     * @param file the journal file.
+     * @return the campaign held by the journal, or null if it holds none.
+     * @throws IOException if an error occurs reading the journal, or it is not a journal.
+     */
+    public static Campaign recover(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Parameter 'file' must not be null.");
+        }
+        Replay replay = new Replay(null);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            readRecords(new DataInputStream(in), file.length(), replay);
+        }
+        if (replay.m_name == null) {
+            return null;
+        }
+        LOGGER.log(Level.INFO, "Recovered the campaign ''{0}'' from {1} change(s) in ''{2}''.",
+                   new Object[] {replay.m_name, replay.m_records, file.getName()});
+        return replay.toCampaign();
+    }
+
+    /**
+     * Opens the supplied journal file for appending, creating it if it does not exist.  Any incomplete or corrupt
+     * records at its end are removed.
+     * @param file the journal file.
+     * @param snapshotSize the size of the snapshot the journal applies to, which it may grow to before compaction.
+     * @return the opened journal.
+     * @throws IOException if an error occurs opening the journal, the file is not a journal, or the journal is open
+     * elsewhere.
+     */
+    public static CampaignJournal open(File file, long snapshotSize) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Parameter 'file' must not be null.");
+        }
+        long end = HEADER_SIZE;
+        if (file.length() > 0) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                end = readRecords(new DataInputStream(in), file.length(), new Replay(null));
+            }
+        }
+        FileChannel channel = openLocked(file);
+        try {
+            if (channel.size() == 0) {
+                writeHeader(channel);
+            } else if (channel.size() > end) {
+                LOGGER.log(Level.WARNING, "Removing {0} byte(s) of incomplete changes from the end of ''{1}''.",
+                           new Object[] {channel.size() - end, file.getName()});
+                channel.truncate(end);
+                channel.force(false);
+            }
+            return new CampaignJournal(file, channel, snapshotSize);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Creates a new CampaignJournal.
+     * @param file the journal file.
+     * @param channel the channel to append to the file through.
+     * @param snapshotSize the size of the snapshot the journal applies to.
+     * @throws IOException if an error occurs reading the size of the file.
+     */
+    private CampaignJournal(File file, FileChannel channel, long snapshotSize) throws IOException {
+        m_file = file;
+        m_channel = channel;
+        m_size = channel.size();
+        m_compactionSize = Math.max(MIN_COMPACTION_SIZE, snapshotSize);
+        m_pending = new ArrayList<>();
+    }
+
+    /**
+     * Opens a channel to the supplied journal file, creating it if it does not exist, and locks the file.
+     * @param file the journal file.
+     * @return the channel, which holds the lock on the file until it is closed.
+     * @throws IOException if an error occurs opening the file, or it is locked already.
+     */
+    private static FileChannel openLocked(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock(LOCK_POSITION, 1, false);
+        } catch (IOException | OverlappingFileLockException ex) {
+            channel.close();
+            throw new IOException("Unable to lock '" + file.getName() + "'.", ex);
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("'" + file.getName() + "' is open in another instance of the application.");
+        }
+        return channel;
+    }
+
+    /**
+     * Returns the journal file.
+     * @return the journal file.
+     */
+    public File getFile() {
+        return m_file;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void entityStored(Entity entity) {
+        m_pending.add(new Change(ENTITY_STORED, entity.getId(), entity));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void entityRemoved(UUID id) {
+        m_pending.add(new Change(ENTITY_REMOVED, id, null));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void relationshipsStored(UUID entity, RelationshipManager relationships) {
+        m_pending.add(new Change(RELATIONSHIPS_STORED, entity, relationships));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void relationshipsRemoved(UUID entity) {
+        m_pending.add(new Change(RELATIONSHIPS_REMOVED, entity, null));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void timelineEntryStored(TimelineEntry entry) {
+        m_pending.add(new Change(TIMELINE_ENTRY_STORED, entry.getId(), entry));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void timelineEntryRemoved(UUID id) {
+        m_pending.add(new Change(TIMELINE_ENTRY_REMOVED, id, null));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void calendarStored(CampaignCalendar calendar) {
+        m_pending.add(new Change(CALENDAR_STORED, null, calendar));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The changes to the new data are still journaled, but the campaign needs a new snapshot.
+     */
+    @Override
+    public synchronized void campaignReplaced() {
+        m_replaced = true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void changesComplete() {
+        m_complete = m_pending.size();
+    }
+
+    /**
+     * Returns true if the journal should be compacted into a new snapshot, because it has grown too large or the
+     * campaign has been replaced.
+     * @return true if the journal should be compacted.
+     */
+    public synchronized boolean needsCompaction() {
+        return m_replaced || m_size >= m_compactionSize;
+    }
+
+    /**
+     * Appends the changes made by all mutations completed so far to the journal file and syncs it.
+     * @return the number of changes appended.
+     * @throws IOException if an error occurs writing the journal.
+     */
+    public int flush() throws IOException {
+        return append(takePending());
+    }
+
+    /**
+     * Returns true if the journal holds no changes, in its file or pending, and the campaign has not been replaced
+     * since the last snapshot, so the snapshot is up to date.
+     * @return true if the snapshot is up to date.
+     */
+    public boolean isEmpty() {
+        synchronized (this) {
+            if (m_replaced || !m_pending.isEmpty()) {
+                return false;
+            }
+        }
+        synchronized (m_fileLock) {
+            return m_size == HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Begins compaction, returning the campaign of the supplied data manager, whose change log this journal must be.
+     * The changes made before the campaign was taken are appended to the journal file first, so none is lost if the
+     * snapshot cannot be written.  Once the returned campaign has been saved in full, snapshotWritten() empties the
+     * journal; if it cannot be, snapshotFailed() should be called.
+     * @param cdm the data manager whose changes this journal is told of.
+     * @return the campaign to save in full, or null if the data manager's change log is no longer this journal, as it
+     * has been given another campaign, in which case nothing is done.
+     */
+    public Campaign beginSnapshot(final CampaignDataManager cdm) {
+        // Take the campaign and the changes it includes together, while no other change can be made.
+        final Campaign[] campaign = new Campaign[1];
+        final List<List<Change>> included = new ArrayList<>();
+        cdm.runBatch(new DataBatch() {
+            @Override
+            public void apply(DataAccessor accessor) {
+                if (!cdm.hasChangeLog(CampaignJournal.this)) {
+                    return;
+                }
+                campaign[0] = cdm.getData();
+                synchronized (CampaignJournal.this) {
+                    // Nothing else can be changing the campaign while the batch runs.
+                    m_complete = m_pending.size();
+                    included.add(takePending());
+                    m_replaced = false;
+                }
+            }
+        });
+        if (campaign[0] == null) {
+            return null;
+        }
+        try {
+            append(included.get(0));
+        } catch (IOException ex) {
+            // The snapshot includes them, so they are only lost if it cannot be written either.
+            LOGGER.log(Level.WARNING, "Failed to append changes to '" + m_file.getName() + "'.", ex);
+        }
+        return campaign[0];
+    }
+
+    /**
+     * Empties the journal, as the campaign returned by beginSnapshot() has been saved in full.  Changes made since
+     * beginSnapshot() are still pending, and are appended by the next flush.
+     * @param snapshotSize the size of the snapshot written.
+     * @throws IOException if an error occurs writing the journal.
+     */
+    public void snapshotWritten(long snapshotSize) throws IOException {
+        synchronized (m_fileLock) {
+            m_channel.truncate(HEADER_SIZE);
+            m_channel.force(false);
+            m_size = HEADER_SIZE;
+            m_compactionSize = Math.max(MIN_COMPACTION_SIZE, snapshotSize);
+        }
+    }
+
+    /** Records that the campaign returned by beginSnapshot() could not be saved, so a snapshot is still needed. */
+    public synchronized void snapshotFailed() {
+        m_replaced = true;
+    }
+
+    /**
+     * Compacts the journal into a single group of records which start the campaign of the supplied data manager anew
+     * and store all of its data, replacing any pending changes.  The data manager's change log must be this journal.
+     * The records are written to a temporary file, which is synced and then renamed over the journal file, so a crash
+     * part way through leaves the journal as it was.  If the journal cannot be rewritten, it needs compaction still.
+     * @param cdm the data manager whose changes this journal is told of.
+     * @throws IOException if an error occurs writing the journal.
+     */
+    public void rewrite(final CampaignDataManager cdm) throws IOException {
+        // Take the campaign while no other change can be made, so the changes pending are exactly those it includes.
+        final Campaign[] campaign = new Campaign[1];
+        cdm.runBatch(new DataBatch() {
+            @Override
+            public void apply(DataAccessor accessor) {
+                campaign[0] = cdm.getData();
+                synchronized (CampaignJournal.this) {
+                    m_pending = new ArrayList<>();
+                    m_complete = 0;
+                    m_replaced = false;
+                }
+            }
+        });
+        try {
+            byte[] records = encode(snapshotChanges(campaign[0]));
+            Path target = m_file.getAbsoluteFile().toPath();
+            Path temp = new File(m_file.getAbsolutePath() + TEMP_EXTENSION).toPath();
+            synchronized (m_fileLock) {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                                                            StandardOpenOption.TRUNCATE_EXISTING,
+                                                            StandardOpenOption.WRITE)) {
+                    writeHeader(channel);
+                    write(channel, HEADER_SIZE, records);
+                }
+                // The journal must be closed, releasing its lock, before another file can replace it everywhere.
+                m_channel.close();
+                try {
+                    try {
+                        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (AtomicMoveNotSupportedException ex) {
+                        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } finally {
+                    m_channel = openLocked(m_file);
+                }
+                m_size = m_channel.size();
+                m_compactionSize = Math.max(MIN_COMPACTION_SIZE, 2 * m_size);
+            }
+        } catch (IOException | RuntimeException ex) {
+            snapshotFailed();
+            throw ex;
+        }
+    }
+
+    /**
+     * Closes the journal file, releasing its lock.  Changes not yet appended by flush() are discarded.
+     * @throws IOException if an error occurs closing the journal.
+     */
+    public void close() throws IOException {
+        synchronized (m_fileLock) {
+            m_channel.close();
+        }
+    }
+
+    /**
+     * Returns the changes made by the mutations completed since they were last taken, leaving those of any mutation
+     * still being made.
+     * @return the changes made by the mutations completed since they were last taken, oldest first.
+     */
+    private synchronized List<Change> takePending() {
+        List<Change> complete = m_pending;
+        if (m_complete == m_pending.size()) {
+            m_pending = new ArrayList<>();
+        } else {
+            complete = new ArrayList<>(m_pending.subList(0, m_complete));
+            m_pending = new ArrayList<>(m_pending.subList(m_complete, m_pending.size()));
+        }
+        m_complete = 0;
+        return complete;
+    }
+
+    /**
+     * Appends the supplied changes to the journal file, as a group ended by a commit record, and syncs it.
+     * @param changes the changes to append.
+     * @return the number of changes appended.
+     * @throws IOException if an error occurs writing the journal.
+     */
+    private int append(List<Change> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        byte[] records = encode(changes);
+        synchronized (m_fileLock) {
+            write(m_channel, m_size, records);
+            m_size += records.length;
+        }
+        return changes.size();
+    }
+
+    /**
+     * Returns the records of the supplied changes, as a group ended by a commit record.
+     * @param changes the changes to encode.
+     * @return the records of the changes.
+     * @throws IOException if an error occurs encoding a change.
+     */
+    private static byte[] encode(List<Change> changes) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(record);
+        CRC32 crc = new CRC32();
+        List<Change> group = new ArrayList<>(changes);
+        group.add(new Change(COMMIT, null, null));
+        for (Change change : group) {
+            record.reset();
+            writeChange(recordOut, change);
+            crc.reset();
+            crc.update(record.toByteArray(), 0, record.size());
+            out.writeInt(record.size());
+            record.writeTo(out);
+            out.writeInt((int)crc.getValue());
+        }
+        return records.toByteArray();
+    }
+
+    /**
+     * Writes the supplied bytes to the supplied channel at the supplied position, all in one write, and syncs it.
+     * @param channel the channel to write to.
+     * @param position the position to write at.
+     * @param bytes the bytes to write.
+     * @throws IOException if an error occurs writing.
+     */
+    private static void write(FileChannel channel, long position, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Returns the changes which start the supplied campaign anew and store all of its data.
+     * @param campaign the campaign.
+     * @return the changes which rebuild the campaign.
+     */
+    private static List<Change> snapshotChanges(Campaign campaign) {
+        List<Change> changes = new ArrayList<>();
+        changes.add(new Change(CAMPAIGN_STARTED, null, campaign.getName()));
+        changes.add(new Change(CALENDAR_STORED, null, campaign.getCalendar()));
+        for (Entity entity : campaign.getEntities()) {
+            changes.add(new Change(ENTITY_STORED, entity.getId(), entity));
+        }
+        for (Map.Entry<UUID, RelationshipManager> entry : campaign.getAllRelationships().entrySet()) {
+            changes.add(new Change(RELATIONSHIPS_STORED, entry.getKey(), entry.getValue()));
+        }
+        for (TimelineEntry entry : campaign.getTimelineEntries()) {
+            changes.add(new Change(TIMELINE_ENTRY_STORED, entry.getId(), entry));
+        }
+        return changes;
+    }
+
+    /**
+     * Writes the header of a new journal file.
+     * @param channel the channel to the empty journal file.
+     * @throws IOException if an error occurs writing.
+     */
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(FORMAT_VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Reads the header and records of a journal, applying each committed group of records to the supplied replay.
+     * Reading stops at the end of the journal or at the first incomplete or corrupt record.
+     * @param in the journal.
+     * @param length the length of the journal.
+     * @param replay the replay to apply the records to.
+     * @return the length of the committed part of the journal.
+     * @throws IOException if an error occurs reading, or the journal does not begin with a valid header.
+     */
+    private static long readRecords(DataInputStream in, long length, Replay replay) throws IOException {
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a campaign journal.");
+            }
+            short version = in.readShort();
+            if (version > FORMAT_VERSION) {
+                throw new IOException("Unsupported campaign journal version " + version + ".");
+            }
+        } catch (EOFException ex) {
+            throw new IOException("Not a campaign journal.", ex);
+        }
+        long position = HEADER_SIZE;
+        long read = HEADER_SIZE;
+        List<byte[]> group = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        try {
+            while (read < length) {
+                int size = in.readInt();
+                if (size <= 0 || size > length - read - 8) {
+                    break;
+                }
+                byte[] record = new byte[size];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record, 0, size);
+                if (in.readInt() != (int)crc.getValue()) {
+                    break;
+                }
+                read += size + 8;
+                if (record[0] != COMMIT) {
+                    group.add(record);
+                } else {
+                    for (byte[] committed : group) {
+                        replay.apply(new DataInputStream(new ByteArrayInputStream(committed)));
+                    }
+                    group.clear();
+                    position = read;
+                }
+            }
+        } catch (EOFException | IllegalArgumentException ex) {
+            // Reported below.
+        }
+        if (position < length) {
+            LOGGER.log(Level.WARNING, "Ignoring incomplete or corrupt changes at byte {0} of a campaign journal.", position);
+        }
+        return position;
+    }
+
+    /**
+     * Writes the content of a record of the supplied change.
+     * @param out the stream to write to.
+     * @param change the change to write.
+     * @throws IOException if an error occurs writing.
+     */
+    private static void writeChange(DataOutputStream out, Change change) throws IOException {
+        out.writeByte(change.m_type);
+        switch (change.m_type) {
+            case ENTITY_STORED:
+                Entity entity = (Entity)change.m_value;
+                writeId(out, entity.getId());
+                writeString(out, entity.getName());
+                writeString(out, entity.getType() == null ? null : entity.getType().name());
+                out.writeBoolean(entity.isSecret());
+                writeEntityData(out, entity.getPublicData());
+                writeEntityData(out, entity.getSecretData());
+                break;
+            case RELATIONSHIPS_STORED:
+                writeId(out, change.m_id);
+                Set<Relationship> relationships = ((RelationshipManager)change.m_value).getAllRelationships();
+                out.writeInt(relationships.size());
+                for (Relationship rel : relationships) {
+                    writeId(out, rel.getRelatedEntity());
+                    writeString(out, rel.getRelationshipText());
+                    out.writeBoolean(rel.isSecret());
+                }
+                break;
+            case TIMELINE_ENTRY_STORED:
+                TimelineEntry entry = (TimelineEntry)change.m_value;
+                writeId(out, entry.getId());
+                writeString(out, entry.getTitle());
+                writeString(out, entry.getMonth().getName());
+                out.writeInt(entry.getMonth().getIndex());
+                out.writeInt(entry.getYear());
+                out.writeBoolean(entry.isSecret());
+                writeId(out, entry.getAssociatedId());
+                break;
+            case CALENDAR_STORED:
+                List<Month> months = ((CampaignCalendar)change.m_value).getMonths();
+                out.writeInt(months.size());
+                for (Month month : months) {
+                    writeString(out, month.getName());
+                    out.writeInt(month.getIndex());
+                }
+                break;
+            case CAMPAIGN_STARTED:
+                writeString(out, (String)change.m_value);
+                break;
+            case COMMIT:
+                break;
+            default:
+                // The removals, identified by ID alone.
+                writeId(out, change.m_id);
+        }
+    }
+
+    /**
+     * Writes EntityData.
+     * @param out the stream to write to.
+     * @param data the EntityData to write.
+     * @throws IOException if an error occurs writing.
+     */
+    private static void writeEntityData(DataOutputStream out, EntityData data) throws IOException {
+        writeString(out, data.getDescription());
+        Set<String> tags = data.getTags();
+        out.writeInt(tags.size());
+        for (String tag : tags) {
+            writeString(out, tag);
+        }
+    }
+
+    /**
+     * Writes an ID.
+     * @param out the stream to write to.
+     * @param id the ID to write.
+     * @throws IOException if an error occurs writing.
+     */
+    private static void writeId(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    /**
+     * Writes a string, which may be null, as its length in UTF-8 and its UTF-8 bytes.
+     * @param out the stream to write to.
+     * @param string the string to write, or null.
+     * @throws IOException if an error occurs writing.
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads an ID.
+     * @param in the stream to read from.
+     * @return the ID read.
+     * @throws IOException if an error occurs reading.
+     */
+    private static UUID readId(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    /**
+     * Reads a string written by writeString().
+     * @param in the stream to read from.
+     * @return the string read, or null.
+     * @throws IOException if an error occurs reading.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new EOFException();
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads EntityData.
+     * @param in the stream to read from.
+     * @return the EntityData read.
+     * @throws IOException if an error occurs reading.
+     */
+    private static EntityData readEntityData(DataInputStream in) throws IOException {
+        String description = readString(in);
+        int tagCount = in.readInt();
+        Set<String> tags = new HashSet<>();
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(readString(in));
+        }
+        return new EntityData(description, tags);
+    }
+
+    /** A change not yet appended to the journal file. */
+    private static final class Change {
+
+        /** The record type of the change. */
+        private final byte m_type;
+
+        /** The ID of the data changed, or null for the calendar and the campaign. */
+        private final UUID m_id;
+
+        /** The data stored, or null if it was removed. */
+        private final Object m_value;
+
+        /**
+         * Creates a new Change.
+         * @param type the record type of the change.
+         * @param id the ID of the data changed, or null for the calendar and the campaign.
+         * @param value the data stored, or null if it was removed.
+         */
+        private Change(byte type, UUID id, Object value) {
+            m_type = type;
+            m_id = id;
+            m_value = value;
+        }
+    }
+
+    /** The data of a campaign being rebuilt from a snapshot and the records of a journal. */
+    private static final class Replay {
+
+        /** The Entities, by ID. */
+        private final Map<UUID, Entity> m_entities;
+
+        /** The Relationships of each Entity, by the ID of the Entity. */
+        private final Map<UUID, RelationshipManager> m_relationships;
+
+        /** The TimelineEntries, by ID. */
+        private final Map<UUID, TimelineEntry> m_timeline;
+
+        /** The calendar. */
+        private CampaignCalendar m_calendar;
+
+        /** The name of the campaign, or null if it is not known. */
+        private String m_name;
+
+        /** The number of records applied. */
+        private int m_records;
+
+        /**
+         * Creates a new Replay.
+         * @param snapshot the campaign to apply records to, or null to apply them to an empty one.
+         */
+        private Replay(Campaign snapshot) {
+            m_entities = new HashMap<>();
+            m_relationships = new HashMap<>();
+            m_timeline = new HashMap<>();
+            m_calendar = new CampaignCalendar();
+            if (snapshot != null) {
+                for (Entity entity : snapshot.getEntities()) {
+                    m_entities.put(entity.getId(), entity);
+                }
+                m_relationships.putAll(snapshot.getAllRelationships());
+                for (TimelineEntry entry : snapshot.getTimelineEntries()) {
+                    m_timeline.put(entry.getId(), entry);
+                }
+                m_calendar = snapshot.getCalendar();
+                m_name = snapshot.getName();
+            }
+        }
+
+        /**
+         * Applies the record with the supplied content.
+         * @param in the content of the record.
+         * @throws IOException if the record is incomplete.
+         * @throws IllegalArgumentException if the record holds an invalid value.
+         */
+        private void apply(DataInputStream in) throws IOException {
+            byte type = in.readByte();
+            switch (type) {
+                case ENTITY_STORED:
+                    UUID id = readId(in);
+                    String name = readString(in);
+                    String entityType = readString(in);
+                    boolean isSecret = in.readBoolean();
+                    EntityData publicData = readEntityData(in);
+                    EntityData secretData = readEntityData(in);
+                    m_entities.put(id, new Entity(id, name, entityType == null ? null : EntityType.valueOf(entityType),
+                                                  publicData, secretData, isSecret));
+                    break;
+                case ENTITY_REMOVED:
+                    m_entities.remove(readId(in));
+                    break;
+                case RELATIONSHIPS_STORED:
+                    UUID owner = readId(in);
+                    int count = in.readInt();
+                    RelationshipManager.Builder relMgr = new RelationshipManager.Builder();
+                    for (int i = 0; i < count; i++) {
+                        UUID related = readId(in);
+                        String label = RelationshipLabels.canonicalize(readString(in));
+                        relMgr.add(new Relationship(owner, related, label, in.readBoolean()));
+                    }
+                    m_relationships.put(owner, relMgr.build());
+                    break;
+                case RELATIONSHIPS_REMOVED:
+                    m_relationships.remove(readId(in));
+                    break;
+                case TIMELINE_ENTRY_STORED:
+                    UUID entryId = readId(in);
+                    String title = readString(in);
+                    Month month = new Month(readString(in), in.readInt());
+                    int year = in.readInt();
+                    boolean isSecretEntry = in.readBoolean();
+                    m_timeline.put(entryId, new TimelineEntry(title, month, year, isSecretEntry, readId(in), entryId));
+                    break;
+                case TIMELINE_ENTRY_REMOVED:
+                    m_timeline.remove(readId(in));
+                    break;
+                case CALENDAR_STORED:
+                    int monthCount = in.readInt();
+                    List<Month> months = new ArrayList<>();
+                    for (int i = 0; i < monthCount; i++) {
+                        months.add(new Month(readString(in), in.readInt()));
+                    }
+                    m_calendar = new CampaignCalendar();
+                    m_calendar.updateMonths(months);
+                    break;
+                case CAMPAIGN_STARTED:
+                    m_name = readString(in);
+                    m_entities.clear();
+                    m_relationships.clear();
+                    m_timeline.clear();
+                    m_calendar = new CampaignCalendar();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown journal record type " + type + ".");
+            }
+            m_records++;
+        }
+
+        /**
+         * Returns a Campaign holding the data rebuilt.
+         * @return a Campaign holding the data rebuilt.
+         */
+        private Campaign toCampaign() {
+            return new Campaign(m_name, new HashSet<>(m_entities.values()), m_relationships,
+                                new HashSet<>(m_timeline.values()), m_calendar);
+        }
+    }
+}
@@ -6,17 +6,28 @@ import campaignencyclopedia.data.DataAccessor;
 import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.Month;
 import campaignencyclopedia.data.Relationship;
+import campaignencyclopedia.data.RelationshipLabels;
 import campaignencyclopedia.data.RelationshipManager;
 import campaignencyclopedia.data.TimelineEntry;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import toolbox.file.persistence.json.JsonArray;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import toolbox.file.persistence.json.JsonException;
 import toolbox.file.persistence.json.JsonObject;
 
@@ -36,10 +47,24 @@ public class CampaignTranslator {
     private static final String CAMPAIGN_CALENDAR = "calendar";
     /** The JSON key for the relationships. */
     private static final String RELATIONSHIPS = "relationships";
+    /** The JSON key for the list of relationship labels referred to by the relationships. */
+    private static final String RELATIONSHIP_LABELS = "relationship-labels";
     /** The JSON key for the version this file was created with. */
     private static final String VERSION_TAG = "version";
     /** The version value. */
-    private static final String VERSION = "1.2.0";
+    static final String VERSION = "1.3.0";
+    /**
+     * The top-level keys in the order they are written: the order a JsonObject holding them iterates in, which
+     * earlier versions wrote them in, so that save files are unchanged byte for byte.
+     */
+    private static final String[] MEMBER_ORDER = {CAMPAIGN_CALENDAR, RELATIONSHIP_LABELS, RELATIONSHIPS, NAME, ENTITIES,
+                                                  TIMELINE_ENTRIES, VERSION_TAG};
+    /** The number of spaces each level of pretty-printed output is indented by. */
+    private static final int INDENT_FACTOR = 4;
+    /** The number of array elements decoded together by each task when loading. */
+    private static final int CHUNK_SIZE = 256;
+    /** The number of chunks per worker thread which may be waiting to be decoded when loading. */
+    private static final int CHUNKS_PER_THREAD = 4;
 
 
     /**
@@ -54,53 +79,65 @@ public class CampaignTranslator {
      * @throws JsonException if an error occurs during translation.
      */
     public static String toJson(Campaign campaign, DataAccessor da, boolean includeSecrets) throws JsonException {
-        JsonObject json = new JsonObject();
-        json.put(NAME, campaign.getName());
-        
-        json.put(VERSION_TAG, VERSION);
+        StringWriter writer = new StringWriter();
+        try {
+            writeJson(campaign, da, includeSecrets, false, writer);
+        } catch (IOException ex) {
+            // Never thrown by a StringWriter.
+            throw new JsonException(ex);
+        }
+        return writer.toString();
+    }
 
-        // Collect the secret entities for use later during translation.
-        Set<UUID> secretEntities = new HashSet<>();
+    /**
+     * Translates the supplied Campaign to JSON, writing it to the supplied Writer as it goes rather than building the
+     * whole document in memory first.  Only one Entity, TimelineEntry, Month or Relationship is held in JSON form at a
+     * time.  The pretty-printed output is identical to that of toJson().  The writer is flushed, but not closed.
+     *
+     * @param campaign the Campaign to translate.
+     * @param da a DataAccessor for accessing any required data.
+     * @param includeSecrets true if Secrets should be included in the output.
+     * @param compact true to write the JSON without any whitespace, false to pretty-print it.
+     * @param writer the Writer to write the JSON to.
+     *
+     * @throws IOException if an error occurs writing to the writer.
+     * @throws JsonException if an error occurs during translation.
+     */
+    public static void writeJson(Campaign campaign, final DataAccessor da, final boolean includeSecrets, boolean compact,
+                                 Writer writer) throws IOException, JsonException {
+        int indentFactor = compact ? 0 : INDENT_FACTOR;
 
         // ENTITIES
-        // Translate and store Entities in sorted order.
-        // --- Sort them to ensure a consistent output order (useful for diffs)
-        List<Entity> allEntities = new ArrayList<>(campaign.getEntities());
-        Collections.sort(allEntities);
-        // --- Translate and add them to JSON structure.
-        List<JsonObject> entities = new ArrayList<>();
-        for (Entity entity : allEntities) {
+        // --- Sort them to ensure a consistent output order (useful for diffs), and collect the secret entities for
+        //     use later during translation.
+        List<Entity> entities = new ArrayList<>(campaign.getEntities());
+        Collections.sort(entities);
+        Set<UUID> secretEntities = new HashSet<>();
+        Iterator<Entity> entityIt = entities.iterator();
+        while (entityIt.hasNext()) {
+            Entity entity = entityIt.next();
             if (entity.isSecret()) {
                 secretEntities.add(entity.getId());
                 if (!includeSecrets) {
-                    continue;
+                    entityIt.remove();
                 }
             }
-            entities.add(EntityTranslator.toJsonObject(entity, da, includeSecrets));
         }
-        json.put(ENTITIES, entities);
 
         // TIMELINE ENTRIES
         List<TimelineEntry> timeline = new ArrayList<>(campaign.getTimelineEntries());
         Collections.sort(timeline);
-        List<JsonObject> timelineEntries = new ArrayList<>();
-        for (TimelineEntry te : timeline) {
-            UUID associatedEntity = te.getAssociatedId();
+        Iterator<TimelineEntry> timelineIt = timeline.iterator();
+        while (timelineIt.hasNext()) {
+            UUID associatedEntity = timelineIt.next().getAssociatedId();
             if (associatedEntity != null && secretEntities.contains(associatedEntity) && !includeSecrets) {
-                continue;
+                timelineIt.remove();
             }
-            timelineEntries.add(TimelineEntryTranslator.toJsonObject(te));
         }
-        json.put(TIMELINE_ENTRIES, timelineEntries);
 
         // CALENDAR
         List<Month> months = new ArrayList<>(campaign.getCalendar().getMonths());
         Collections.sort(months);
-        List<JsonObject> calendarMonths = new ArrayList<>();
-        for (Month month : months) {
-            calendarMonths.add(MonthTranslator.toJson(month));
-        }
-        json.put(CAMPAIGN_CALENDAR, calendarMonths);
 
         // RELATIONSHIPS
         List<Relationship> relationships = new ArrayList<>();
@@ -108,15 +145,157 @@ public class CampaignTranslator {
             relationships.addAll(rels.getAllRelationships());
         }
         Collections.sort(relationships);
-        List<JsonObject> jsonRels = new ArrayList<>();
+        // --- Store each distinct relationship label once, in sorted order, and refer to it by index.
+        final List<String> labels = new ArrayList<>();
+        final int[] labelIndices = new int[RelationshipLabels.size()];
+        int previousCode = -1;
         for (Relationship rel : relationships) {
-            jsonRels.add(RelationshipTranslator.toJson(rel));
+            int code = rel.getRelationshipCode();
+            if (code != previousCode) {
+                labelIndices[code] = labels.size();
+                labels.add(rel.getRelationshipText());
+                previousCode = code;
+            }
         }
-        json.put(RELATIONSHIPS, jsonRels);
 
-        return json.toString(4);
+        writer.write('{');
+        boolean first = true;
+        for (String key : MEMBER_ORDER) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            newLine(writer, indentFactor, indentFactor);
+            writer.write(JsonObject.quote(key));
+            writer.write(indentFactor > 0 ? ": " : ":");
+            switch (key) {
+                case NAME:
+                    writer.write(JsonObject.quote(campaign.getName()));
+                    break;
+                case VERSION_TAG:
+                    writer.write(JsonObject.quote(VERSION));
+                    break;
+                case ENTITIES:
+                    writeArray(writer, entities, new ElementTranslator<Entity>() {
+                        @Override
+                        Object toJson(Entity entity) throws JsonException {
+                            return EntityTranslator.toJsonObject(entity, da, includeSecrets);
+                        }
+                    }, indentFactor, indentFactor);
+                    break;
+                case TIMELINE_ENTRIES:
+                    writeArray(writer, timeline, new ElementTranslator<TimelineEntry>() {
+                        @Override
+                        Object toJson(TimelineEntry entry) throws JsonException {
+                            return TimelineEntryTranslator.toJsonObject(entry);
+                        }
+                    }, indentFactor, indentFactor);
+                    break;
+                case CAMPAIGN_CALENDAR:
+                    writeArray(writer, months, new ElementTranslator<Month>() {
+                        @Override
+                        Object toJson(Month month) throws JsonException {
+                            return MonthTranslator.toJson(month);
+                        }
+                    }, indentFactor, indentFactor);
+                    break;
+                case RELATIONSHIP_LABELS:
+                    writeArray(writer, labels, new ElementTranslator<String>() {
+                        @Override
+                        Object toJson(String label) {
+                            return label;
+                        }
+                    }, indentFactor, indentFactor);
+                    break;
+                case RELATIONSHIPS:
+                    writeArray(writer, relationships, new ElementTranslator<Relationship>() {
+                        @Override
+                        Object toJson(Relationship rel) throws JsonException {
+                            return RelationshipTranslator.toJson(rel, labelIndices[rel.getRelationshipCode()]);
+                        }
+                    }, indentFactor, indentFactor);
+                    break;
+            }
+        }
+        newLine(writer, indentFactor, 0);
+        writer.write('}');
+        writer.flush();
     }
 
+    /**
+     * Writes the supplied items as a JSON array, translating one at a time, laid out as a JsonArray would be.
+     * @param writer the Writer to write to.
+     * @param items the items to write.
+     * @param translator the translator of the items to JsonObjects or Strings.
+     * @param indentFactor the number of spaces to indent each level by, zero for compact output.
+     * @param indent the indentation of the array itself.
+     * @throws IOException if an error occurs writing to the writer.
+     * @throws JsonException if an error occurs during translation.
+     */
+    private static <T> void writeArray(Writer writer, List<T> items, ElementTranslator<T> translator, int indentFactor,
+                                       int indent) throws IOException, JsonException {
+        writer.write('[');
+        if (items.size() == 1) {
+            // A lone element is written on the same line as the brackets.
+            writeValue(writer, translator.toJson(items.get(0)), indentFactor, indent);
+        } else if (!items.isEmpty()) {
+            boolean first = true;
+            for (T item : items) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                newLine(writer, indentFactor, indent + indentFactor);
+                writeValue(writer, translator.toJson(item), indentFactor, indent + indentFactor);
+            }
+            newLine(writer, indentFactor, indent);
+        }
+        writer.write(']');
+    }
+
+    /**
+     * Writes the supplied JsonObject or String value at the supplied indentation.
+     * @param writer the Writer to write to.
+     * @param value the JsonObject or String to write.
+     * @param indentFactor the number of spaces to indent each level by, zero for compact output.
+     * @param indent the indentation of the value.
+     * @throws IOException if an error occurs writing to the writer.
+     * @throws JsonException if an error occurs during translation.
+     */
+    private static void writeValue(Writer writer, Object value, int indentFactor, int indent) throws IOException, JsonException {
+        if (value instanceof JsonObject) {
+            // Only structure introduces line breaks (they are escaped within strings), so indenting the object is a
+            // matter of indenting each of its lines.
+            String json = ((JsonObject)value).toString(indentFactor);
+            int start = 0;
+            int lineEnd = json.indexOf('\n');
+            while (lineEnd >= 0) {
+                writer.write(json, start, lineEnd - start);
+                newLine(writer, indentFactor, indent);
+                start = lineEnd + 1;
+                lineEnd = json.indexOf('\n', start);
+            }
+            writer.write(json, start, json.length() - start);
+        } else {
+            writer.write(JsonObject.quote(String.valueOf(value)));
+        }
+    }
+
+    /**
+     * Starts a new line indented by the supplied number of spaces, unless writing compact output.
+     * @param writer the Writer to write to.
+     * @param indentFactor the number of spaces to indent each level by, zero for compact output.
+     * @param indent the number of spaces to indent the new line by.
+     * @throws IOException if an error occurs writing to the writer.
+     */
+    private static void newLine(Writer writer, int indentFactor, int indent) throws IOException {
+        if (indentFactor > 0) {
+            writer.write('\n');
+            for (int i = 0; i < indent; i++) {
+                writer.write(' ');
+            }
+        }
+    }
 
     /**
      * Translates the JSON String that represents a Campaign into the associated Campaign object.
@@ -126,54 +305,286 @@ public class CampaignTranslator {
      * @throws JsonException if an error occurs translating the Campaign.
      */
     public static Campaign fromJson(String jsonString) throws JsonException {
-        JsonObject json = new JsonObject(jsonString);
-
-        // Name
-        String name = "unnamed campaign";
-        if (json.has(NAME)) {
-            name = json.getString(NAME);
+        try {
+            return fromJson(new StringReader(jsonString));
+        } catch (IOException ex) {
+            // Never thrown by a StringReader.
+            throw new JsonException(ex);
         }
+    }
 
-        // Entities
-        Set<Entity> entitySet = new HashSet<>();
-        JsonArray entities = json.getJsonArray(ENTITIES);
-        for (int i = 0; i < entities.length(); i++) {
-            entitySet.add(EntityTranslator.fromJson(entities.get(i).toString()));
+    /**
+     * Reads the JSON that represents a Campaign from the supplied Reader and translates it into the associated Campaign
+     * object.  The JSON is read once, front to back, while the Entities, TimelineEntries and Relationships read are
+     * decoded in parallel on a pool with a thread for each processor, if there is more than one.  The reader is not
+     * closed.
+     * @param reader the Reader to read the Campaign JSON from.
+     * @return the Campaign object translated from the JSON.
+     *
+     * @throws IOException if an error occurs reading from the reader.
+     * @throws JsonException if an error occurs translating the Campaign.
+     */
+    public static Campaign fromJson(Reader reader) throws IOException, JsonException {
+        // Separating the elements into chunks costs more than it saves without another processor to decode them on.
+        if (Runtime.getRuntime().availableProcessors() < 2) {
+            return fromJson(new JsonPullParser(reader), null);
         }
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return fromJson(new JsonPullParser(reader), pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-        // Timeline Entries
+    /**
+     * Translates the campaign read by the supplied parser.  The campaign is parsed in a single pass; the elements of
+     * its Entity, timeline and relationship arrays are only separated into chunks as they are read, and the chunks are
+     * decoded on the supplied pool, if any, while reading continues.  The decoded chunks are merged in the order they were read,
+     * so the result, and the first error reported, do not depend on the order the chunks finish in.
+     * @param parser the parser to read the campaign from.
+     * @param pool the pool to decode chunks of elements on, or null to decode them as they are read.
+     * @return the Campaign read.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the JSON is not a valid campaign.
+     */
+    private static Campaign fromJson(JsonPullParser parser, ForkJoinPool pool) throws IOException, JsonException {
+        String name = "unnamed campaign";
+        Set<Entity> entitySet = null;
         Set<TimelineEntry> timelineData = new HashSet<>();
-        if (json.has(TIMELINE_ENTRIES)) {
-            JsonArray teArray = json.getJsonArray(TIMELINE_ENTRIES);
-            for (int i = 0; i < teArray.length(); i++) {
-                timelineData.add(TimelineEntryTranslator.fromJson(teArray.get(i).toString()));
+        CampaignCalendar cal = new CampaignCalendar();
+        Map<UUID, RelationshipManager.Builder> relationships = new HashMap<>();
+        List<String> labels = null;
+        // Relationships which refer to labels read before the labels themselves.
+        List<RelationshipTranslator.RelationshipRecord> unresolved = new ArrayList<>();
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case NAME:
+                    name = parser.nextString();
+                    break;
+                case ENTITIES:
+                    entitySet = new HashSet<>();
+                    readArray(parser, pool, entitySet, new ElementReader<Entity>() {
+                        @Override
+                        Entity fromJson(JsonPullParser elementParser) throws IOException, JsonException {
+                            return EntityTranslator.fromJson(elementParser);
+                        }
+                    });
+                    break;
+                case TIMELINE_ENTRIES:
+                    readArray(parser, pool, timelineData, new ElementReader<TimelineEntry>() {
+                        @Override
+                        TimelineEntry fromJson(JsonPullParser elementParser) throws IOException, JsonException {
+                            return TimelineEntryTranslator.fromJson(elementParser);
+                        }
+                    });
+                    break;
+                case CAMPAIGN_CALENDAR:
+                    List<Month> translated = new ArrayList<>();
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        translated.add(MonthTranslator.fromJson(parser));
+                    }
+                    cal.updateMonths(translated);
+                    break;
+                case RELATIONSHIP_LABELS:
+                    labels = new ArrayList<>();
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        labels.add(RelationshipLabels.canonicalize(parser.nextString()));
+                    }
+                    break;
+                case RELATIONSHIPS:
+                    List<RelationshipTranslator.RelationshipRecord> records = new ArrayList<>();
+                    readArray(parser, pool, records, new ElementReader<RelationshipTranslator.RelationshipRecord>() {
+                        @Override
+                        RelationshipTranslator.RelationshipRecord fromJson(JsonPullParser elementParser) throws IOException, JsonException {
+                            return RelationshipTranslator.fromJson(elementParser);
+                        }
+                    });
+                    if (labels != null) {
+                        for (RelationshipTranslator.RelationshipRecord record : records) {
+                            addRelationship(relationships, record.toRelationship(labels));
+                        }
+                    } else {
+                        unresolved.addAll(records);
+                    }
+                    break;
+                default:
+                    parser.skipValue();
             }
         }
 
-        // Campaign Calendar
-        CampaignCalendar cal = new CampaignCalendar();
-        if (json.has(CAMPAIGN_CALENDAR)) {
-            JsonArray months = json.getJsonArray(CAMPAIGN_CALENDAR);
-            List<Month> translated = new ArrayList<>();
-            for (int i = 0; i < months.length(); i++) {
-                translated.add(MonthTranslator.fromJson(months.getJSONObject(i)));
+        if (entitySet == null) {
+            throw new JsonException("Campaign has no '" + ENTITIES + "'.");
+        }
+        if (labels == null) {
+            labels = new ArrayList<>();
+        }
+        for (RelationshipTranslator.RelationshipRecord record : unresolved) {
+            addRelationship(relationships, record.toRelationship(labels));
+        }
+        Map<UUID, RelationshipManager> relationshipManagers = new HashMap<>();
+        for (Map.Entry<UUID, RelationshipManager.Builder> entry : relationships.entrySet()) {
+            relationshipManagers.put(entry.getKey(), entry.getValue().build());
+        }
+
+        return new Campaign(name, entitySet, relationshipManagers, timelineData, cal);
+    }
+
+    /**
+     * Reads the array which is the next value of the supplied parser, decoding its elements on the supplied pool and
+     * adding them to the supplied collection in the order they appear.  Only a bounded number of chunks are left
+     * waiting to be decoded, so that reading does not get far ahead of decoding.
+     * @param <T> the type of the elements.
+     * @param parser the parser to read the array from.
+     * @param pool the pool to decode chunks of elements on, or null to decode them as they are read.
+     * @param elements the collection to add the decoded elements to.
+     * @param elementReader the reader to decode each element with.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the array or any of its elements is invalid.
+     */
+    private static <T> void readArray(JsonPullParser parser, ForkJoinPool pool, Collection<T> elements,
+                                      ElementReader<T> elementReader) throws IOException, JsonException {
+        parser.beginArray();
+        if (pool == null) {
+            while (parser.hasNext()) {
+                elements.add(elementReader.fromJson(parser));
             }
-            cal.updateMonths(translated);
+            return;
+        }
+        Deque<ChunkDecoder<T>> pending = new ArrayDeque<>();
+        boolean hasMore = true;
+        while (hasMore) {
+            // Each chunk is decoded as an array of its own, positioned so that errors report where they are in the file.
+            long offset = parser.getPosition() - 1;
+            StringBuilder chunk = new StringBuilder().append('[');
+            hasMore = parser.copyElements(chunk, CHUNK_SIZE);
+            chunk.append(']');
+            ChunkDecoder<T> decoder = new ChunkDecoder<>(chunk.toString(), offset, elementReader);
+            pool.execute(decoder);
+            pending.add(decoder);
+            if (pending.size() >= pool.getParallelism() * CHUNKS_PER_THREAD) {
+                elements.addAll(pending.remove().getElements());
+            }
+        }
+        while (!pending.isEmpty()) {
+            elements.addAll(pending.remove().getElements());
+        }
+    }
+
+    /**
+     * Adds the supplied Relationship to the builder of the RelationshipManager of its owning Entity, creating the
+     * builder if needed.
+     * @param relationships the builders of the RelationshipManagers by owning Entity ID.
+     * @param rel the Relationship to add.
+     */
+    private static void addRelationship(Map<UUID, RelationshipManager.Builder> relationships, Relationship rel) {
+        RelationshipManager.Builder relMgr = relationships.get(rel.getEntityId());
+        if (relMgr == null) {
+            relMgr = new RelationshipManager.Builder();
+            relationships.put(rel.getEntityId(), relMgr);
         }
+        relMgr.add(rel);
+    }
+
+    /**
+     * Translates the elements of a JSON array one at a time.
+     * @param <T> the type of the elements.
+     */
+    private abstract static class ElementTranslator<T> {
+
+        /**
+         * Returns the JsonObject or String representing the supplied element.
+         * @param element the element to translate.
+         * @return the JsonObject or String representing the element.
+         * @throws JsonException if an error occurs during translation.
+         */
+        abstract Object toJson(T element) throws JsonException;
+    }
 
-        // Relationships
-        Map<UUID, RelationshipManager> relationships = new HashMap<>();
-        if (json.has(RELATIONSHIPS)) {
-            JsonArray rels = json.getJsonArray(RELATIONSHIPS);
-            for (int i = 0; i <rels.length(); i++) {
-                Relationship rel = RelationshipTranslator.fromJson(rels.getJSONObject(i).toString());
-                if (relationships.get(rel.getEntityId()) == null) {
-                    relationships.put(rel.getEntityId(), new RelationshipManager());
+    /**
+     * Decodes an element of a campaign from the JSON read by a parser.
+     * @param <T> the type of the element.
+     */
+    private abstract static class ElementReader<T> {
+
+        /**
+         * Reads the next element from the supplied parser.
+         * @param parser the parser to read the element from.
+         * @return the element read.
+         * @throws IOException if an error occurs reading.
+         * @throws JsonException if the element is invalid.
+         */
+        abstract T fromJson(JsonPullParser parser) throws IOException, JsonException;
+    }
+
+    /**
+     * A task which decodes a chunk of the elements of an array.  Failures are kept rather than thrown, so that the
+     * exception originally thrown is reported to the loading thread unchanged.
+     * @param <T> the type of the elements.
+     */
+    private static final class ChunkDecoder<T> extends RecursiveTask<List<T>> {
+
+        /** Tasks are never serialized, but are Serializable as every ForkJoinTask is. */
+        private static final long serialVersionUID = 1L;
+
+        /** The JSON text of the chunk, as an array. */
+        private final String m_chunk;
+
+        /** The position of the chunk within the file. */
+        private final long m_offset;
+
+        /** The reader to decode each element with, which is not Serializable. */
+        private final transient ElementReader<T> m_elementReader;
+
+        /** The exception thrown decoding the chunk, or null if it was decoded. */
+        private RuntimeException m_failure;
+
+        /**
+         * Creates a new ChunkDecoder.
+         * @param chunk the JSON text of the chunk, as an array.
+         * @param offset the position of the chunk within the file.
+         * @param elementReader the reader to decode each element with.
+         */
+        private ChunkDecoder(String chunk, long offset, ElementReader<T> elementReader) {
+            m_chunk = chunk;
+            m_offset = offset;
+            m_elementReader = elementReader;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected List<T> compute() {
+            List<T> elements = new ArrayList<>();
+            try {
+                JsonPullParser parser = new JsonPullParser(new StringReader(m_chunk), m_offset);
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    elements.add(m_elementReader.fromJson(parser));
                 }
-                relationships.get(rel.getEntityId()).addRelationship(rel);
+            } catch (IOException ex) {
+                m_failure = new JsonException(ex);
+            } catch (RuntimeException ex) {
+                m_failure = ex;
             }
+            return elements;
         }
 
-        return new Campaign(name, entitySet, relationships, timelineData, cal);
+        /**
+         * Waits for the chunk to be decoded and returns its elements.
+         * @return the elements of the chunk, in order.
+         * @throws JsonException if the chunk is invalid.
+         * @throws IllegalArgumentException if an element holds an invalid value.
+         */
+        private List<T> getElements() throws JsonException {
+            List<T> elements = join();
+            if (m_failure != null) {
+                throw m_failure;
+            }
+            return elements;
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,8 @@ package campaignencyclopedia.data.persistence;
 import campaignencyclopedia.data.DataAccessor;
 import campaignencyclopedia.data.EntityData;
 import campaignencyclopedia.data.Relationship;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -68,23 +70,41 @@ public class EntityDataTranslator {
      * @throws JsonException if an error occurs during translation.
      */
     public static EntityData fromJson(String jsonString) throws JsonException {
-        JsonObject json = new JsonObject(jsonString);
-
-        // Tags
-        Set<String> tags = new HashSet<>();
-        if (json.has(TAGS)) {
-            JsonArray jsonTags = json.getJsonArray(TAGS);
-            for (int i = 0; i < jsonTags.length(); i++) {
-                tags.add(jsonTags.getString(i));
-            }
+        try {
+            return fromJson(new JsonPullParser(new StringReader(jsonString)));
+        } catch (IOException ex) {
+            // Never thrown by a StringReader.
+            throw new JsonException(ex);
         }
+    }
 
-        // Description
+    /**
+     * Reads the next EntityData object from the supplied parser.
+     * @param parser the parser to read from.
+     * @return the EntityData object read.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if an error occurs during translation.
+     */
+    static EntityData fromJson(JsonPullParser parser) throws IOException, JsonException {
+        Set<String> tags = new HashSet<>();
         String description = "";
-        if (json.has(DESCRIPTION)) {
-            description = json.getString(DESCRIPTION);
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case TAGS:
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        tags.add(parser.nextString());
+                    }
+                    break;
+                case DESCRIPTION:
+                    description = parser.nextString();
+                    break;
+                default:
+                    parser.skipValue();
+            }
         }
 
         return new EntityData(description, tags);
     }
-}
\ No newline at end of file
+}
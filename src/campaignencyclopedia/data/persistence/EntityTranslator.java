@@ -5,6 +5,8 @@ import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.EntityData;
 import campaignencyclopedia.data.EntityDataBuilder;
 import campaignencyclopedia.data.EntityType;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.UUID;
 import toolbox.file.persistence.json.JsonException;
 import toolbox.file.persistence.json.JsonObject;
@@ -62,35 +64,62 @@ public class EntityTranslator {
      * @throws JsonException if an error occurs during translation.
      */
     public static Entity fromJson(String jsonString) throws JsonException {
-        JsonObject json = new JsonObject(jsonString);
-
-        EntityType type = null;
-        if (json.has(TYPE)) {
-            type = EntityType.valueOf(json.getString(TYPE));
+        try {
+            return fromJson(new JsonPullParser(new StringReader(jsonString)));
+        } catch (IOException ex) {
+            // Never thrown by a StringReader.
+            throw new JsonException(ex);
         }
+    }
 
+    /**
+     * Reads the next Entity from the supplied parser.
+     * @param parser the parser to read from.
+     * @return the Entity read.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if an error occurs during translation.
+     */
+    static Entity fromJson(JsonPullParser parser) throws IOException, JsonException {
+        EntityType type = null;
         UUID id = null;
-        if (json.has(ID)) {
-            id = UUID.fromString(json.getString(ID));
-        }
-
         EntityData pd = null;
-        if (json.has(PUBLIC_DATA)) {
-            pd = EntityDataTranslator.fromJson(json.getJsonObject(PUBLIC_DATA).toString());
+        EntityData sd = null;
+        boolean isSecret = false;
+        String name = null;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case TYPE:
+                    type = EntityType.valueOf(parser.nextString());
+                    break;
+                case ID:
+                    id = UUID.fromString(parser.nextString());
+                    break;
+                case PUBLIC_DATA:
+                    pd = EntityDataTranslator.fromJson(parser);
+                    break;
+                case SECRET_DATA:
+                    sd = EntityDataTranslator.fromJson(parser);
+                    break;
+                case IS_SECRET:
+                    isSecret = parser.nextBoolean();
+                    break;
+                case NAME:
+                    name = parser.nextString();
+                    break;
+                default:
+                    parser.skipValue();
+            }
         }
 
-        EntityData sd = new EntityDataBuilder().build();
-        if (json.has(SECRET_DATA)) {
-            sd = EntityDataTranslator.fromJson(json.getJsonObject(SECRET_DATA).toString());
+        if (name == null) {
+            throw new JsonException("Entity has no '" + NAME + "'.");
         }
-
-        boolean isSecret = false;
-        if (json.has(IS_SECRET)) {
-            isSecret = json.getBoolean(IS_SECRET);
+        if (sd == null) {
+            sd = new EntityDataBuilder().build();
         }
 
-        String name = json.getString(NAME);
-
         return new Entity(id, name, type, pd, sd, isSecret);
     }
-}
\ No newline at end of file
+}
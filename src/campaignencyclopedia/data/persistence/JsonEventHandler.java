@@ -0,0 +1,21 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.IOException;
+import toolbox.file.persistence.json.JsonException;
+
+/**
+ * Receives a JSON document as a stream of events, in the order they appear in the document, so that the document can
+ * be transformed or written without ever being held in memory whole.
+ * @author adam
+ */
+interface JsonEventHandler {
+
+    /**
+     * Called for each event of the document.
+     * @param token the kind of event.
+     * @param text the name or value of a NAME, STRING or LITERAL event, or null for any other event.
+     * @throws IOException if an error occurs handling the event.
+     * @throws JsonException if the event is not valid where it appears in the document.
+     */
+    public void event(JsonToken token, String text) throws IOException, JsonException;
+}
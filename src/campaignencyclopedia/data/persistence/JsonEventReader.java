@@ -0,0 +1,119 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.IOException;
+import java.io.Reader;
+import toolbox.file.persistence.json.JsonException;
+
+/**
+ * Reads a JSON document from a Reader as a stream of events, one token at a time, so that it can be transformed
+ * without being held in memory.  Only the nesting of the objects and arrays currently open is kept.
+ * @author adam
+ */
+final class JsonEventReader {
+
+    /** The parser to read the document with. */
+    private final JsonPullParser m_parser;
+
+    /** Whether each object or array currently open is an object, innermost last. */
+    private boolean[] m_objects;
+
+    /** The number of objects and arrays currently open. */
+    private int m_depth;
+
+    /** True if the last event read was a NAME, so the next event is its value. */
+    private boolean m_afterName;
+
+    /** True once the whole of the document's value has been read. */
+    private boolean m_done;
+
+    /** The text of the last event read. */
+    private String m_text;
+
+    /**
+     * Creates a new JsonEventReader which reads the document from the supplied Reader.  The Reader is buffered
+     * internally.
+     * @param reader the Reader to read the document from.
+     */
+    JsonEventReader(Reader reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException("Parameter 'reader' must not be null.");
+        }
+        m_parser = new JsonPullParser(reader);
+        m_objects = new boolean[16];
+    }
+
+    /**
+     * Reads the next event of the document.
+     * @return the kind of the next event, or null once the whole document has been read.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the JSON is malformed.
+     */
+    JsonToken next() throws IOException, JsonException {
+        m_text = null;
+        if (m_done) {
+            return null;
+        }
+        if (m_depth > 0 && !m_afterName) {
+            if (!m_parser.hasNext()) {
+                m_depth--;
+                m_done = m_depth == 0;
+                return m_objects[m_depth] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+            }
+            if (m_objects[m_depth - 1]) {
+                m_text = m_parser.nextName();
+                m_afterName = true;
+                return JsonToken.NAME;
+            }
+        }
+        m_afterName = false;
+        char c = m_parser.peek();
+        if (c == '{' || c == '[') {
+            if (c == '{') {
+                m_parser.beginObject();
+            } else {
+                m_parser.beginArray();
+            }
+            if (m_depth == m_objects.length) {
+                boolean[] objects = new boolean[m_depth * 2];
+                System.arraycopy(m_objects, 0, objects, 0, m_depth);
+                m_objects = objects;
+            }
+            m_objects[m_depth++] = c == '{';
+            return c == '{' ? JsonToken.BEGIN_OBJECT : JsonToken.BEGIN_ARRAY;
+        }
+        m_done = m_depth == 0;
+        m_text = m_parser.nextString();
+        if (c == '"' || c == '\'') {
+            return JsonToken.STRING;
+        }
+        if (m_text == null) {
+            m_text = "null";
+        }
+        return JsonToken.LITERAL;
+    }
+
+    /**
+     * Returns the text of the last event read.
+     * @return the name or value of the last event read if it was a NAME, STRING or LITERAL, otherwise null.
+     */
+    String getText() {
+        return m_text;
+    }
+
+    /**
+     * Reads the rest of the document, passing each of its events to the supplied handler.
+     * @param handler the handler to pass the events to.
+     * @throws IOException if an error occurs reading or handling the events.
+     * @throws JsonException if the JSON is malformed, or the handler rejects an event.
+     */
+    void readTo(JsonEventHandler handler) throws IOException, JsonException {
+        if (handler == null) {
+            throw new IllegalArgumentException("Parameter 'handler' must not be null.");
+        }
+        JsonToken token = next();
+        while (token != null) {
+            handler.event(token, m_text);
+            token = next();
+        }
+    }
+}
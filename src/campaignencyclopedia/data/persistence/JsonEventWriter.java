@@ -0,0 +1,127 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.IOException;
+import java.io.Writer;
+import toolbox.file.persistence.json.JsonException;
+import toolbox.file.persistence.json.JsonObject;
+
+/**
+ * Writes the events it is passed to a Writer as a JSON document, laid out as a JsonObject would be, so that a document
+ * can be transformed as a stream of events and written as it goes.  Only the nesting of the objects and arrays
+ * currently open is kept.  The Writer is not flushed or closed.
+ * @author adam
+ */
+final class JsonEventWriter implements JsonEventHandler {
+
+    /** The Writer to write the document to. */
+    private final Writer m_writer;
+
+    /** The number of spaces each level is indented by, zero for compact output. */
+    private final int m_indentFactor;
+
+    /** Whether each object or array currently open has had a member written yet, innermost last. */
+    private boolean[] m_started;
+
+    /** The number of objects and arrays currently open. */
+    private int m_depth;
+
+    /** True if the last event written was a NAME, so the next event is its value. */
+    private boolean m_afterName;
+
+    /**
+     * Creates a new JsonEventWriter.
+     * @param writer the Writer to write the document to.
+     * @param indentFactor the number of spaces to indent each level by, zero for compact output.
+     */
+    JsonEventWriter(Writer writer, int indentFactor) {
+        if (writer == null) {
+            throw new IllegalArgumentException("Parameter 'writer' must not be null.");
+        }
+        if (indentFactor < 0) {
+            throw new IllegalArgumentException("Parameter 'indentFactor' must not be negative.");
+        }
+        m_writer = writer;
+        m_indentFactor = indentFactor;
+        m_started = new boolean[16];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void event(JsonToken token, String text) throws IOException, JsonException {
+        if (token == null) {
+            throw new IllegalArgumentException("Parameter 'token' must not be null.");
+        }
+        switch (token) {
+            case END_OBJECT:
+            case END_ARRAY:
+                if (m_depth == 0 || m_afterName) {
+                    throw new JsonException("Unexpected " + token + ".");
+                }
+                m_depth--;
+                if (m_started[m_depth]) {
+                    newLine(m_depth);
+                }
+                m_writer.write(token == JsonToken.END_OBJECT ? '}' : ']');
+                return;
+            case NAME:
+                if (m_depth == 0 || m_afterName) {
+                    throw new JsonException("Unexpected name '" + text + "'.");
+                }
+                separate();
+                m_writer.write(JsonObject.quote(text));
+                m_writer.write(m_indentFactor > 0 ? ": " : ":");
+                m_afterName = true;
+                return;
+            default:
+                if (m_afterName) {
+                    m_afterName = false;
+                } else if (m_depth > 0) {
+                    separate();
+                }
+        }
+        switch (token) {
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                m_writer.write(token == JsonToken.BEGIN_OBJECT ? '{' : '[');
+                if (m_depth == m_started.length) {
+                    boolean[] started = new boolean[m_depth * 2];
+                    System.arraycopy(m_started, 0, started, 0, m_depth);
+                    m_started = started;
+                }
+                m_started[m_depth++] = false;
+                break;
+            case STRING:
+                m_writer.write(JsonObject.quote(text));
+                break;
+            case LITERAL:
+                m_writer.write(text);
+                break;
+        }
+    }
+
+    /**
+     * Writes the separator before a member of the innermost object or array, and starts its line.
+     * @throws IOException if an error occurs writing to the writer.
+     */
+    private void separate() throws IOException {
+        if (m_started[m_depth - 1]) {
+            m_writer.write(',');
+        }
+        m_started[m_depth - 1] = true;
+        newLine(m_depth);
+    }
+
+    /**
+     * Starts a new line indented by the supplied number of levels, unless writing compact output.
+     * @param levels the number of levels to indent the new line by.
+     * @throws IOException if an error occurs writing to the writer.
+     */
+    private void newLine(int levels) throws IOException {
+        if (m_indentFactor > 0) {
+            m_writer.write('\n');
+            for (int i = levels * m_indentFactor; i > 0; i--) {
+                m_writer.write(' ');
+            }
+        }
+    }
+}
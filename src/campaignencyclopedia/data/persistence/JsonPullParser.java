@@ -0,0 +1,476 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.IOException;
+import java.io.Reader;
+import toolbox.file.persistence.json.JsonException;
+
+/**
+ * Reads JSON from a Reader one token at a time, so that the translators can build data objects directly from a save
+ * file without building, printing and re-parsing a JsonObject for every record in it.
+ *
+ * Objects are read with beginObject(), then nextName() and a value for as long as hasNext() returns true; arrays are
+ * read with beginArray(), then a value for as long as hasNext() returns true.  hasNext() consumes the closing bracket
+ * once there are no more members.  Like JsonObject, the parser accepts numbers and booleans where text is expected,
+ * and quoted numbers and booleans where those are expected.
+ *
+ * @author adam
+ */
+final class JsonPullParser {
+
+    /** The characters, besides whitespace, that end an unquoted value. */
+    private static final String VALUE_TERMINATORS = ",:]}/\\\"[{;=#";
+
+    /** The Reader to read JSON from. */
+    private final Reader m_reader;
+
+    /** The buffer of characters read but not yet parsed. */
+    private final char[] m_buffer;
+
+    /** The position of the next character to parse in the buffer. */
+    private int m_position;
+
+    /** The number of characters in the buffer. */
+    private int m_limit;
+
+    /** The number of characters read before those in the buffer, for error messages. */
+    private long m_offset;
+
+    /** The closing brackets of the objects and arrays currently open, innermost last. */
+    private char[] m_scopes;
+
+    /** The number of objects and arrays currently open. */
+    private int m_depth;
+
+    /** A reusable builder for text which spans buffers or contains escapes. */
+    private final StringBuilder m_text;
+
+    /**
+     * Creates a new JsonPullParser which reads from the supplied Reader.  The Reader is buffered internally.
+     * @param reader the Reader to read JSON from.
+     */
+    JsonPullParser(Reader reader) {
+        this(reader, 0);
+    }
+
+    /**
+     * Creates a new JsonPullParser which reads from the supplied Reader, whose text begins part way through a larger
+     * document.  Positions in error messages are reported within the larger document.
+     * @param reader the Reader to read JSON from.
+     * @param offset the position of the text of the reader within the larger document.
+     */
+    JsonPullParser(Reader reader, long offset) {
+        if (reader == null) {
+            throw new IllegalArgumentException("Parameter 'reader' must not be null.");
+        }
+        m_reader = reader;
+        m_offset = offset;
+        m_buffer = new char[8192];
+        m_scopes = new char[16];
+        m_text = new StringBuilder();
+    }
+
+    /**
+     * Consumes the opening brace of an object.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the next value is not an object.
+     */
+    void beginObject() throws IOException, JsonException {
+        expect('{');
+        open('}');
+    }
+
+    /**
+     * Consumes the opening bracket of an array.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the next value is not an array.
+     */
+    void beginArray() throws IOException, JsonException {
+        expect('[');
+        open(']');
+    }
+
+    /**
+     * Returns true if the current object or array has another member, consuming the separating comma.  If it does not,
+     * its closing bracket is consumed instead.
+     * @return true if the current object or array has another member.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the JSON is malformed.
+     */
+    boolean hasNext() throws IOException, JsonException {
+        if (m_depth == 0) {
+            throw syntaxError("Not within an object or array");
+        }
+        char c = nextClean();
+        if (c == ',') {
+            return true;
+        }
+        if (c == '}' || c == ']') {
+            if (c != m_scopes[m_depth - 1]) {
+                m_position--;
+                throw syntaxError("Expected '" + m_scopes[m_depth - 1] + "'");
+            }
+            m_depth--;
+            return false;
+        }
+        m_position--;
+        return true;
+    }
+
+    /**
+     * Returns the first character of the next value, without consuming it, so that its kind can be told before it is
+     * read: '{' for an object, '[' for an array, a quote for text, or the first character of a number, boolean or null.
+     * @return the first character of the next value.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the input ends first.
+     */
+    char peek() throws IOException, JsonException {
+        char c = nextClean();
+        m_position--;
+        return c;
+    }
+
+    /**
+     * Reads the name of the next member of an object, and the separator following it.
+     * @return the name of the next member.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the JSON is malformed.
+     */
+    String nextName() throws IOException, JsonException {
+        char c = nextClean();
+        if (c != '"' && c != '\'') {
+            throw syntaxError("A name must begin with a quote");
+        }
+        String name = readQuoted(c);
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Reads the next value as text.
+     * @return the text of the next value, or null if it is null.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the next value is an object or array.
+     */
+    String nextString() throws IOException, JsonException {
+        char c = nextClean();
+        if (c == '"' || c == '\'') {
+            return readQuoted(c);
+        }
+        m_position--;
+        String literal = readLiteral();
+        return "null".equals(literal) ? null : literal;
+    }
+
+    /**
+     * Reads the next value as an int.  Fractions are truncated, as JsonObject does.
+     * @return the next value as an int.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the next value is not a number.
+     */
+    int nextInt() throws IOException, JsonException {
+        String text = nextString();
+        if (text != null) {
+            try {
+                return Integer.parseInt(text);
+            } catch (NumberFormatException ex) {
+                try {
+                    return (int)Double.parseDouble(text);
+                } catch (NumberFormatException ex2) {
+                    // Reported below.
+                }
+            }
+        }
+        throw syntaxError("Expected a number but found '" + text + "'");
+    }
+
+    /**
+     * Reads the next value as a boolean.
+     * @return the next value as a boolean.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the next value is not a boolean.
+     */
+    boolean nextBoolean() throws IOException, JsonException {
+        String text = nextString();
+        if ("true".equalsIgnoreCase(text)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(text)) {
+            return false;
+        }
+        throw syntaxError("Expected a boolean but found '" + text + "'");
+    }
+
+    /**
+     * Reads past the next value, including any objects and arrays nested within it.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the JSON is malformed.
+     */
+    void skipValue() throws IOException, JsonException {
+        char c = nextClean();
+        m_position--;
+        if (c == '{' || c == '[') {
+            int depth = m_depth;
+            if (c == '{') {
+                beginObject();
+            } else {
+                beginArray();
+            }
+            while (m_depth > depth) {
+                if (hasNext()) {
+                    if (m_scopes[m_depth - 1] == '}') {
+                        nextName();
+                    }
+                    skipValue();
+                }
+            }
+        } else {
+            nextString();
+        }
+    }
+
+    /**
+     * Copies the text of up to the supplied number of the remaining elements of the current array to the supplied
+     * builder, without parsing them, so that they can be parsed elsewhere.  The text is copied exactly as it is,
+     * including the separators between the elements, so that it can be parsed as the content of an array by a parser
+     * given its position.  Only strings and brackets are recognized, so this is much cheaper than parsing; any syntax
+     * errors within the elements are left to be found when they are parsed.  The closing bracket of the array is
+     * consumed, and not copied, if it is reached.
+     * @param into the builder to append the text to.
+     * @param count the most elements to copy.
+     * @return true if the array has more elements, false if its closing bracket was reached.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the input ends first.
+     */
+    boolean copyElements(StringBuilder into, int count) throws IOException, JsonException {
+        if (m_depth == 0 || m_scopes[m_depth - 1] != ']') {
+            throw syntaxError("Not within an array");
+        }
+        int depth = 0;
+        int copied = 0;
+        // The quote of the string being copied, or zero outside strings.
+        char quote = 0;
+        boolean escaped = false;
+        while (true) {
+            if (m_position == m_limit && !fill()) {
+                throw syntaxError("Unexpected end of input");
+            }
+            int start = m_position;
+            while (m_position < m_limit) {
+                char c = m_buffer[m_position++];
+                if (quote != 0) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (depth == 0) {
+                        if (c != ']') {
+                            m_position--;
+                            throw syntaxError("Expected ']'");
+                        }
+                        into.append(m_buffer, start, m_position - 1 - start);
+                        m_depth--;
+                        return false;
+                    }
+                    depth--;
+                } else if (c == ',' && depth == 0 && ++copied == count) {
+                    into.append(m_buffer, start, m_position - 1 - start);
+                    return true;
+                }
+            }
+            into.append(m_buffer, start, m_position - start);
+        }
+    }
+
+    /**
+     * Returns the position of the next character to be parsed within the document.
+     * @return the position of the next character to be parsed.
+     */
+    long getPosition() {
+        return m_offset + m_position;
+    }
+
+    /**
+     * Records that an object or array has been opened.
+     * @param closer the bracket which will close it.
+     */
+    private void open(char closer) {
+        if (m_depth == m_scopes.length) {
+            char[] scopes = new char[m_depth * 2];
+            System.arraycopy(m_scopes, 0, scopes, 0, m_depth);
+            m_scopes = scopes;
+        }
+        m_scopes[m_depth++] = closer;
+    }
+
+    /**
+     * Consumes the supplied character, skipping any whitespace before it.
+     * @param expected the character expected.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if a different character is found.
+     */
+    private void expect(char expected) throws IOException, JsonException {
+        if (nextClean() != expected) {
+            m_position--;
+            throw syntaxError("Expected '" + expected + "'");
+        }
+    }
+
+    /**
+     * Returns the next character which is not whitespace.
+     * @return the next character which is not whitespace.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the input ends first.
+     */
+    private char nextClean() throws IOException, JsonException {
+        while (true) {
+            if (m_position == m_limit && !fill()) {
+                throw syntaxError("Unexpected end of input");
+            }
+            char c = m_buffer[m_position++];
+            if (c > ' ') {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * Reads the rest of a quoted string whose opening quote has been consumed.
+     * @param quote the quote character which closes the string.
+     * @return the string.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the string is malformed.
+     */
+    private String readQuoted(char quote) throws IOException, JsonException {
+        // Most strings lie within the buffer and contain no escapes, so can be taken from it directly.
+        for (int i = m_position; i < m_limit; i++) {
+            char c = m_buffer[i];
+            if (c == quote) {
+                String text = new String(m_buffer, m_position, i - m_position);
+                m_position = i + 1;
+                return text;
+            } else if (c == '\\' || c == '\n' || c == '\r') {
+                break;
+            }
+        }
+
+        m_text.setLength(0);
+        while (true) {
+            if (m_position == m_limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            char c = m_buffer[m_position++];
+            if (c == quote) {
+                return m_text.toString();
+            } else if (c == '\n' || c == '\r') {
+                throw syntaxError("Unterminated string");
+            } else if (c == '\\') {
+                m_text.append(readEscape());
+            } else {
+                m_text.append(c);
+            }
+        }
+    }
+
+    /**
+     * Reads the rest of an escape sequence whose backslash has been consumed.
+     * @return the character the escape sequence represents.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the escape sequence is malformed.
+     */
+    private char readEscape() throws IOException, JsonException {
+        if (m_position == m_limit && !fill()) {
+            throw syntaxError("Unterminated string");
+        }
+        char c = m_buffer[m_position++];
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (m_position == m_limit && !fill()) {
+                        throw syntaxError("Unterminated string");
+                    }
+                    int digit = Character.digit(m_buffer[m_position++], 16);
+                    if (digit < 0) {
+                        throw syntaxError("Illegal escape");
+                    }
+                    value = (value << 4) + digit;
+                }
+                return (char)value;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Illegal escape");
+        }
+    }
+
+    /**
+     * Reads an unquoted value: a number, boolean or null.
+     * @return the text of the value.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if there is no value.
+     */
+    private String readLiteral() throws IOException, JsonException {
+        m_text.setLength(0);
+        while (m_position < m_limit || fill()) {
+            char c = m_buffer[m_position];
+            if (c <= ' ' || VALUE_TERMINATORS.indexOf(c) >= 0) {
+                break;
+            }
+            m_text.append(c);
+            m_position++;
+        }
+        if (m_text.length() == 0) {
+            throw syntaxError("Missing value");
+        }
+        return m_text.toString();
+    }
+
+    /**
+     * Refills the buffer from the Reader.
+     * @return true if any characters were read, false at the end of the input.
+     * @throws IOException if an error occurs reading.
+     */
+    private boolean fill() throws IOException {
+        m_offset += m_limit;
+        m_position = 0;
+        m_limit = 0;
+        int read = m_reader.read(m_buffer, 0, m_buffer.length);
+        while (read == 0) {
+            read = m_reader.read(m_buffer, 0, m_buffer.length);
+        }
+        if (read < 0) {
+            return false;
+        }
+        m_limit = read;
+        return true;
+    }
+
+    /**
+     * Returns a JsonException describing a syntax error at the current position.
+     * @param message the description of the error.
+     * @return a JsonException describing the error.
+     */
+    private JsonException syntaxError(String message) {
+        return new JsonException(message + " at character " + (m_offset + m_position));
+    }
+}
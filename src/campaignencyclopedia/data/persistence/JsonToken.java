@@ -0,0 +1,23 @@
+package campaignencyclopedia.data.persistence;
+
+/**
+ * An enumeration of the kinds of event a JSON document is read and written as by a JsonEventReader and
+ * JsonEventWriter.
+ * @author adam
+ */
+enum JsonToken {
+    /** The opening brace of an object. */
+    BEGIN_OBJECT,
+    /** The closing brace of an object. */
+    END_OBJECT,
+    /** The opening bracket of an array. */
+    BEGIN_ARRAY,
+    /** The closing bracket of an array. */
+    END_ARRAY,
+    /** The name of a member of an object, whose text is the name. */
+    NAME,
+    /** A quoted value, whose text is the unescaped text of the value. */
+    STRING,
+    /** An unquoted value (a number, boolean or null), whose text is the value exactly as it appears. */
+    LITERAL;
+}
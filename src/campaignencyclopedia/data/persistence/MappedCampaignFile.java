@@ -0,0 +1,838 @@
+package campaignencyclopedia.data.persistence;
+
+import campaignencyclopedia.data.Campaign;
+import campaignencyclopedia.data.CampaignCalendar;
+import campaignencyclopedia.data.Entity;
+import campaignencyclopedia.data.EntityData;
+import campaignencyclopedia.data.EntityDataBuilder;
+import campaignencyclopedia.data.EntityDataSource;
+import campaignencyclopedia.data.EntityType;
+import campaignencyclopedia.data.Month;
+import campaignencyclopedia.data.Relationship;
+import campaignencyclopedia.data.RelationshipLabels;
+import campaignencyclopedia.data.RelationshipManager;
+import campaignencyclopedia.data.TimelineEntry;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A binary save file opened by memory-mapping it rather than reading it.  Only the directory of Entities (their IDs,
+ * names, types and secrecy) and the small timeline, calendar and relationship sections are read when the file is
+ * opened.  The descriptions and tags of each Entity are left in the file and decoded when first asked for; the most
+ * recently used are kept in a bounded cache, so the heap needed does not grow with the size of the descriptions.
+ * Files too large for a single buffer are mapped as several segments.
+ *
+ * The Entities of the Campaign returned load their data from this file, which must therefore only be replaced with
+ * replace().  Not every platform lets a mapped file be replaced, so that releases the mapping first, and then maps the
+ * new file in its place for the Entities to load their data from.
+ *
+ * @author adam
+ */
+public final class MappedCampaignFile implements EntityDataSource {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(MappedCampaignFile.class.getName());
+
+    /** The number of Entities whose data is kept decoded. */
+    private static final int CACHE_SIZE = 1024;
+
+    /** The number of bits of an offset within a mapped segment, so that each segment is at most 1 GB. */
+    private static final int SEGMENT_BITS = 30;
+
+    /** The length of the start of each Entity record, read when the file is mapped: its ID, name, type and secrecy. */
+    private static final int RECORD_HEAD_LENGTH = 16 + 4 + 4 + 1;
+
+    /** The files which are mapped, by the real path of the file.  Guarded by the class. */
+    private static final Map<Path, List<WeakReference<MappedCampaignFile>>> MAPPED_FILES = new HashMap<>();
+
+    /** The path of the file. */
+    private final Path m_path;
+
+    /** The number of bits of an offset within a mapped segment of the file. */
+    private final int m_segmentBits;
+
+    /** The contents of the file, or null while they are not mapped.  Guarded by this. */
+    private Contents m_contents;
+
+    /** The offset of each string of the string table, by index.  Guarded by this. */
+    private long[] m_stringOffsets;
+
+    /** The offset of the record of each Entity, by Entity ID.  Guarded by this. */
+    private Map<UUID, Long> m_records;
+
+    /** The public and secret data of the Entities whose data is no longer in the file, by ID.  Guarded by this. */
+    private final Map<UUID, EntityData[]> m_detached;
+
+    /** True while the file is being replaced, and its contents are not mapped.  Guarded by this. */
+    private boolean m_replacing;
+
+    /** The decoded public and secret data of the most recently used Entities, least recently used first. */
+    private final Map<UUID, EntityData[]> m_cache;
+
+    /** A reusable buffer for the bytes of strings being decoded. */
+    private byte[] m_bytes;
+
+    /** The Campaign held by the file. */
+    private final Campaign m_campaign;
+
+    /**
+     * Opens the supplied binary save file.
+     * @param file the file to open.
+     * @return the opened file.
+     * @throws IOException if an error occurs reading the file, or it is not a valid binary save file.
+     */
+    public static MappedCampaignFile open(File file) throws IOException {
+        return open(file, SEGMENT_BITS);
+    }
+
+    /**
+     * Opens the supplied binary save file, mapping it in segments of the supplied size.
+     * @param file the file to open.
+     * @param segmentBits the number of bits of an offset within a segment, from 1 to 30.
+     * @return the opened file.
+     * @throws IOException if an error occurs reading the file, or it is not a valid binary save file.
+     */
+    static MappedCampaignFile open(File file, int segmentBits) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Parameter 'file' must not be null.");
+        }
+        if (segmentBits < 1 || segmentBits > SEGMENT_BITS) {
+            throw new IllegalArgumentException("Parameter 'segmentBits' must be from 1 to " + SEGMENT_BITS + ".");
+        }
+        Path path = file.toPath().toRealPath();
+        Contents contents = Contents.map(path, segmentBits);
+        boolean opened = false;
+        try {
+            MappedCampaignFile mapped = new MappedCampaignFile(path, segmentBits, contents);
+            register(mapped);
+            opened = true;
+            return mapped;
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("File '" + file.getName() + "' is truncated or corrupt.", ex);
+        } finally {
+            if (!opened) {
+                contents.unmap();
+            }
+        }
+    }
+
+    /**
+     * Moves the supplied file over the file at the target path, atomically where the platform allows it.  The
+     * mappings of the target are released first, and the target is mapped again once it has been replaced, so that the
+     * Entities of the files mapping it load their data from the new file.  Those Entities which are not saved in the
+     * new file, as it does not hold them or their current data, have their data decoded before the mapping is released,
+     * and keep it from then on.
+     * @param source the file to move.
+     * @param target the path to move the file to.
+     * @param contents the Campaign the file holds in full, secrets included, in the binary format, or null if it does
+     * not, in which case every Entity of the files mapping the target keeps its data from then on.
+     * @throws IOException if the file could not be moved.
+     */
+    public static void replace(Path source, Path target, Campaign contents) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("Parameter 'source' must not be null.");
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("Parameter 'target' must not be null.");
+        }
+        List<MappedCampaignFile> mapped = Collections.emptyList();
+        if (Files.exists(target)) {
+            mapped = getMappedFiles(target.toRealPath());
+        }
+        List<MappedCampaignFile> unmapped = new ArrayList<>();
+        boolean moved = false;
+        try {
+            for (MappedCampaignFile file : mapped) {
+                unmapped.add(file);
+                file.unmap(contents);
+            }
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            // If the move failed, the target is the file that was mapped before.
+            for (MappedCampaignFile file : unmapped) {
+                file.remap(!moved || contents != null);
+            }
+        }
+    }
+
+    /**
+     * Maps the supplied contents of the supplied binary save file, and reads its directory.
+     * @param path the path of the file.
+     * @param segmentBits the number of bits of an offset within a mapped segment of the file.
+     * @param contents the contents of the file.
+     * @throws IOException if the contents are not a valid binary save file.
+     */
+    private MappedCampaignFile(Path path, int segmentBits, Contents contents) throws IOException {
+        m_path = path;
+        m_segmentBits = segmentBits;
+        m_contents = contents;
+        m_detached = new HashMap<>();
+        m_bytes = new byte[256];
+        m_cache = new LinkedHashMap<UUID, EntityData[]>(CACHE_SIZE * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, EntityData[]> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+        Cursor in = new Cursor(contents, 0);
+        m_stringOffsets = readStringTable(in);
+        // Types, month names and labels are each shared by many records, so are decoded once.
+        Map<Integer, String> shared = new HashMap<>();
+        String name = string(in.getInt());
+
+        // ENTITIES
+        // --- Only the start of each record is read; the rest is read when the Entity's data is asked for.
+        List<UUID> ids = new ArrayList<>();
+        m_records = readRecords(in, ids);
+        UUID[] entityIds = ids.toArray(new UUID[ids.size()]);
+        Set<Entity> entities = new HashSet<>();
+        for (UUID id : entityIds) {
+            Cursor head = new Cursor(contents, m_records.get(id) + 16);
+            String entityName = string(head.getInt());
+            int type = head.getInt();
+            boolean isSecret = head.get() != 0;
+            EntityType entityType = null;
+            if (type != BinaryCampaignTranslator.NONE) {
+                try {
+                    entityType = EntityType.valueOf(sharedString(shared, type));
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException("Invalid Entity type.", ex);
+                }
+            }
+            entities.add(new Entity(id, entityName, entityType, isSecret, this));
+        }
+        // TIMELINE ENTRIES
+        int timelineCount = checkCount(in.getInt());
+        Set<TimelineEntry> timeline = new HashSet<>();
+        for (int i = 0; i < timelineCount; i++) {
+            UUID id = new UUID(in.getLong(), in.getLong());
+            int title = in.getInt();
+            Month month = new Month(sharedString(shared, in.getInt()), in.getInt());
+            int year = in.getInt();
+            boolean isSecret = in.get() != 0;
+            UUID associatedEntity = readEntityReference(in, entityIds);
+            timeline.add(new TimelineEntry(title == BinaryCampaignTranslator.NONE ? null : string(title), month, year,
+                                           isSecret, associatedEntity, id));
+        }
+
+        // CALENDAR
+        int monthCount = checkCount(in.getInt());
+        List<Month> months = new ArrayList<>();
+        for (int i = 0; i < monthCount; i++) {
+            months.add(new Month(sharedString(shared, in.getInt()), in.getInt()));
+        }
+        CampaignCalendar cal = new CampaignCalendar();
+        cal.updateMonths(months);
+
+        // RELATIONSHIPS
+        int relationshipCount = checkCount(in.getInt());
+        Map<UUID, RelationshipManager.Builder> builders = new HashMap<>();
+        for (int i = 0; i < relationshipCount; i++) {
+            UUID owner = readEntityReference(in, entityIds);
+            UUID related = readEntityReference(in, entityIds);
+            String label = sharedString(shared, in.getInt());
+            boolean isSecret = in.get() != 0;
+            if (owner == null || related == null) {
+                throw new IOException("Relationship is missing an Entity.");
+            }
+            RelationshipManager.Builder relMgr = builders.get(owner);
+            if (relMgr == null) {
+                relMgr = new RelationshipManager.Builder();
+                builders.put(owner, relMgr);
+            }
+            relMgr.add(new Relationship(owner, related, RelationshipLabels.canonicalize(label), isSecret));
+        }
+        Map<UUID, RelationshipManager> relationships = new HashMap<>();
+        for (Map.Entry<UUID, RelationshipManager.Builder> entry : builders.entrySet()) {
+            relationships.put(entry.getKey(), entry.getValue().build());
+        }
+
+        m_campaign = new Campaign(name, entities, relationships, timeline, cal);
+    }
+
+    /**
+     * Returns the Campaign held by the file, whose Entities load their data from it.
+     * @return the Campaign held by the file.
+     */
+    public Campaign getCampaign() {
+        return m_campaign;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityData getPublicData(UUID entity) {
+        return load(entity)[0];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EntityData getSecretData(UUID entity) {
+        return load(entity)[1];
+    }
+
+    /**
+     * Returns the public and secret data of the Entity with the supplied ID, decoding it if it is not cached.  Waits
+     * while the file is being replaced.
+     * @param entity the ID of the Entity.
+     * @return the public and secret data of the Entity.
+     * @throws IllegalStateException if the Entity's record is corrupt, or the file could not be mapped again.
+     */
+    private synchronized EntityData[] load(UUID entity) {
+        boolean interrupted = false;
+        while (m_replacing) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        EntityData[] data = m_detached.get(entity);
+        if (data == null) {
+            data = m_cache.get(entity);
+            if (data == null) {
+                data = decode(entity);
+                m_cache.put(entity, data);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Decodes the public and secret data of the Entity with the supplied ID from its record.
+     * @param entity the ID of the Entity.
+     * @return the public and secret data of the Entity.
+     * @throws IllegalStateException if the Entity's record is corrupt, or the file could not be mapped again.
+     */
+    private EntityData[] decode(UUID entity) {
+        Long record = m_records.get(entity);
+        if (record == null) {
+            throw new IllegalArgumentException("Entity '" + entity + "' is not in this file.");
+        }
+        if (m_contents == null) {
+            throw new IllegalStateException("The data of Entity '" + entity + "' is no longer mapped.");
+        }
+        // Skip the ID, name, type and secrecy read when the file was opened.
+        Cursor in = new Cursor(m_contents, record + RECORD_HEAD_LENGTH);
+        try {
+            EntityData[] data = new EntityData[2];
+            data[0] = readEntityData(in);
+            data[1] = in.get() != 0 ? readEntityData(in) : new EntityDataBuilder().build();
+            return data;
+        } catch (IOException | BufferUnderflowException ex) {
+            throw new IllegalStateException("The record of Entity '" + entity + "' is corrupt.", ex);
+        }
+    }
+
+    /**
+     * Releases the mapping of the file so that it can be replaced, first decoding the data of the Entities which the
+     * new file will not hold, and makes the Entities wait for their data until remap() is called.
+     * @param contents the Campaign the new file holds in full, or null if it does not.
+     */
+    private synchronized void unmap(Campaign contents) {
+        m_replacing = true;
+        if (m_contents == null) {
+            return;
+        }
+        Set<UUID> saved = new HashSet<>();
+        if (contents != null) {
+            for (Entity entity : contents.getEntities()) {
+                if (entity.isLoadedFrom(this)) {
+                    saved.add(entity.getId());
+                }
+            }
+        }
+        for (UUID id : m_records.keySet()) {
+            if (!saved.contains(id) && !m_detached.containsKey(id)) {
+                EntityData[] data = m_cache.get(id);
+                try {
+                    m_detached.put(id, data != null ? data : decode(id));
+                } catch (IllegalStateException ex) {
+                    LOGGER.log(Level.WARNING, "Unable to keep the data of Entity '" + id + "'.", ex);
+                }
+            }
+        }
+        m_contents.unmap();
+        m_contents = null;
+    }
+
+    /**
+     * Maps the file again once it has been replaced, or failed to be, and wakes the Entities waiting for their data.
+     * @param map true if the file holds the data of the Entities which did not keep theirs, false if it does not.
+     */
+    private synchronized void remap(boolean map) {
+        try {
+            if (map) {
+                Contents contents = Contents.map(m_path, m_segmentBits);
+                try {
+                    Cursor in = new Cursor(contents, 0);
+                    long[] stringOffsets = readStringTable(in);
+                    // Skip the name of the campaign.
+                    in.getInt();
+                    m_records = readRecords(in, null);
+                    m_stringOffsets = stringOffsets;
+                    m_contents = contents;
+                } finally {
+                    if (m_contents != contents) {
+                        contents.unmap();
+                    }
+                }
+            } else {
+                m_records = Collections.emptyMap();
+                m_stringOffsets = new long[0];
+            }
+        } catch (IOException | BufferUnderflowException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to map '" + m_path + "' again; the data of its Entities is lost.", ex);
+        } finally {
+            m_replacing = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Reads EntityData from an Entity record.
+     * @param in the contents of the file, positioned at the EntityData.
+     * @return the EntityData read.
+     * @throws IOException if the EntityData is invalid.
+     */
+    private EntityData readEntityData(Cursor in) throws IOException {
+        String description = string(in.getInt());
+        int tagCount = checkCount(in.getInt());
+        Set<String> tags = new HashSet<>();
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(string(in.getInt()));
+        }
+        return new EntityData(description, tags);
+    }
+
+    /**
+     * Reads a reference to an Entity.
+     * @param in the contents of the file, positioned at the reference.
+     * @param entityIds the IDs of the Entities in the file, by position.
+     * @return the ID of the Entity referred to, or null if none is.
+     * @throws IOException if the reference is invalid.
+     */
+    private static UUID readEntityReference(Cursor in, UUID[] entityIds) throws IOException {
+        int index = in.getInt();
+        if (index == BinaryCampaignTranslator.EXTERNAL_ENTITY) {
+            return new UUID(in.getLong(), in.getLong());
+        } else if (index == BinaryCampaignTranslator.NONE) {
+            return null;
+        } else if (index < 0 || index >= entityIds.length) {
+            throw new IOException("Invalid Entity reference " + index + ".");
+        }
+        return entityIds[index];
+    }
+
+    /**
+     * Returns the string at the supplied index of the string table, decoding it only the first time it is asked for.
+     * @param shared the strings already decoded, by index.
+     * @param index the index of the string.
+     * @return the string at the supplied index.
+     * @throws IOException if the index is not in the string table.
+     */
+    private String sharedString(Map<Integer, String> shared, int index) throws IOException {
+        String string = shared.get(index);
+        if (string == null) {
+            string = string(index);
+            shared.put(index, string);
+        }
+        return string;
+    }
+
+    /**
+     * Decodes the string at the supplied index of the string table.
+     * @param index the index of the string.
+     * @return the string at the supplied index.
+     * @throws IOException if the index is not in the string table.
+     */
+    private synchronized String string(int index) throws IOException {
+        if (index < 0 || index >= m_stringOffsets.length) {
+            throw new IOException("Invalid string index " + index + ".");
+        }
+        long offset = m_stringOffsets[index];
+        int length = m_contents.getInt(offset);
+        if (length > m_bytes.length) {
+            m_bytes = new byte[Math.max(length, m_bytes.length * 2)];
+        }
+        m_contents.get(offset + 4, m_bytes, length);
+        return new String(m_bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the supplied count or length, if it is not negative.
+     * @param count the count to check.
+     * @return the supplied count.
+     * @throws IOException if the count is negative.
+     */
+    private static int checkCount(int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Invalid count " + count + ".");
+        }
+        return count;
+    }
+
+    /**
+     * Reads the header and string table of a binary save file, noting where each string is.
+     * @param in the contents of the file, positioned at its start, which is left positioned after the string table.
+     * @return the offset of each string of the string table, by index.
+     * @throws IOException if the contents are not a valid binary save file.
+     */
+    private static long[] readStringTable(Cursor in) throws IOException {
+        if (in.getInt() != BinaryCampaignTranslator.MAGIC) {
+            throw new IOException("Not a binary campaign file.");
+        }
+        short version = in.getShort();
+        if (version > BinaryCampaignTranslator.FORMAT_VERSION) {
+            throw new IOException("Unsupported binary campaign file version " + version + ".");
+        }
+        long[] offsets = new long[checkCount(in.getInt())];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = in.position();
+            in.skip(checkCount(in.getInt()));
+        }
+        return offsets;
+    }
+
+    /**
+     * Reads where the record of each Entity is, skipping over the rest of the records.
+     * @param in the contents of the file, positioned at the Entity records, which is left positioned after them.
+     * @param ids the list to add the IDs of the Entities to, in the order of their records, or null.
+     * @return the offset of the record of each Entity, by Entity ID.
+     * @throws IOException if the records are invalid.
+     */
+    private static Map<UUID, Long> readRecords(Cursor in, List<UUID> ids) throws IOException {
+        int entityCount = checkCount(in.getInt());
+        Map<UUID, Long> records = new HashMap<>();
+        for (int i = 0; i < entityCount; i++) {
+            int length = checkCount(in.getInt());
+            if (length < RECORD_HEAD_LENGTH) {
+                throw new IOException("Invalid Entity record length " + length + ".");
+            }
+            long record = in.position();
+            UUID id = new UUID(in.getLong(), in.getLong());
+            in.skip(length - 16);
+            records.put(id, record);
+            if (ids != null) {
+                ids.add(id);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Registers the supplied file as mapping its path, and forgets the files which are no longer in use.
+     * @param file the file to register.
+     */
+    private static synchronized void register(MappedCampaignFile file) {
+        Iterator<List<WeakReference<MappedCampaignFile>>> lists = MAPPED_FILES.values().iterator();
+        while (lists.hasNext()) {
+            List<WeakReference<MappedCampaignFile>> references = lists.next();
+            Iterator<WeakReference<MappedCampaignFile>> iterator = references.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().get() == null) {
+                    iterator.remove();
+                }
+            }
+            if (references.isEmpty()) {
+                lists.remove();
+            }
+        }
+        List<WeakReference<MappedCampaignFile>> references = MAPPED_FILES.get(file.m_path);
+        if (references == null) {
+            references = new ArrayList<>();
+            MAPPED_FILES.put(file.m_path, references);
+        }
+        references.add(new WeakReference<>(file));
+    }
+
+    /**
+     * Returns the files which map the file at the supplied path, and are still in use.
+     * @param path the real path of the file.
+     * @return the files mapping it.
+     */
+    private static synchronized List<MappedCampaignFile> getMappedFiles(Path path) {
+        List<MappedCampaignFile> files = new ArrayList<>();
+        List<WeakReference<MappedCampaignFile>> references = MAPPED_FILES.get(path);
+        if (references != null) {
+            for (WeakReference<MappedCampaignFile> reference : references) {
+                MappedCampaignFile file = reference.get();
+                if (file != null) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Releases the supplied mapping now, rather than when the buffer is garbage collected, so that the file can be
+     * replaced on platforms which do not allow a mapped file to be.  The buffer must not be used afterwards.  There is
+     * no public means of releasing it, so its cleaner is run by reflection; if that fails, the mapping is left to be
+     * released when the buffer is garbage collected.
+     * @param buffer the mapping to release.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            try {
+                // Java 9 onwards.
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException ex) {
+                // Java 7 and 8.
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOGGER.log(Level.FINE, "Unable to release a mapping; it is released once garbage collected.", ex);
+        }
+    }
+
+    /** The contents of a mapped file, mapped as consecutive segments of equal size but for the last. */
+    private static final class Contents {
+
+        /** The mapped segments of the file. */
+        private final MappedByteBuffer[] m_segments;
+
+        /** The number of bits of an offset within a segment. */
+        private final int m_segmentBits;
+
+        /** The size of the file. */
+        private final long m_size;
+
+        /**
+         * Maps the file at the supplied path.
+         * @param path the path of the file.
+         * @param segmentBits the number of bits of an offset within a segment.
+         * @return the mapped contents of the file.
+         * @throws IOException if an error occurs mapping the file.
+         */
+        private static Contents map(Path path, int segmentBits) throws IOException {
+            // The mappings remain valid once the channel is closed.
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                long segmentSize = 1L << segmentBits;
+                MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) >>> segmentBits)];
+                int mapped = 0;
+                try {
+                    for (; mapped < segments.length; mapped++) {
+                        long start = mapped * segmentSize;
+                        segments[mapped] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                                       Math.min(segmentSize, size - start));
+                    }
+                } finally {
+                    if (mapped < segments.length) {
+                        for (int i = 0; i < mapped; i++) {
+                            MappedCampaignFile.unmap(segments[i]);
+                        }
+                    }
+                }
+                return new Contents(segments, segmentBits, size);
+            }
+        }
+
+        /**
+         * Creates new Contents.
+         * @param segments the mapped segments of the file.
+         * @param segmentBits the number of bits of an offset within a segment.
+         * @param size the size of the file.
+         */
+        private Contents(MappedByteBuffer[] segments, int segmentBits, long size) {
+            m_segments = segments;
+            m_segmentBits = segmentBits;
+            m_size = size;
+        }
+
+        /**
+         * Returns the byte at the supplied offset.
+         * @param offset the offset of the byte.
+         * @return the byte at the offset.
+         * @throws BufferUnderflowException if the offset is not within the file.
+         */
+        private byte get(long offset) {
+            check(offset, 1);
+            return m_segments[(int) (offset >>> m_segmentBits)].get(offsetInSegment(offset));
+        }
+
+        /**
+         * Returns the big-endian int at the supplied offset, which may span two segments.
+         * @param offset the offset of the int.
+         * @return the int at the offset.
+         * @throws BufferUnderflowException if the int is not within the file.
+         */
+        private int getInt(long offset) {
+            check(offset, 4);
+            MappedByteBuffer segment = m_segments[(int) (offset >>> m_segmentBits)];
+            int position = offsetInSegment(offset);
+            if (position + 4 <= segment.limit()) {
+                return segment.getInt(position);
+            }
+            return (get(offset) & 0xFF) << 24 | (get(offset + 1) & 0xFF) << 16 | (get(offset + 2) & 0xFF) << 8
+                   | get(offset + 3) & 0xFF;
+        }
+
+        /**
+         * Copies the supplied number of bytes from the supplied offset, which may span several segments.
+         * @param offset the offset of the bytes.
+         * @param bytes the array to copy the bytes to, from its start.
+         * @param length the number of bytes to copy.
+         * @throws BufferUnderflowException if the bytes are not within the file.
+         */
+        private void get(long offset, byte[] bytes, int length) {
+            check(offset, length);
+            int copied = 0;
+            while (copied < length) {
+                long at = offset + copied;
+                ByteBuffer segment = m_segments[(int) (at >>> m_segmentBits)].duplicate();
+                segment.position(offsetInSegment(at));
+                int count = Math.min(length - copied, segment.remaining());
+                segment.get(bytes, copied, count);
+                copied += count;
+            }
+        }
+
+        /**
+         * Returns the offset within its segment of the supplied offset within the file.
+         * @param offset the offset within the file.
+         * @return the offset within its segment.
+         */
+        private int offsetInSegment(long offset) {
+            return (int) (offset & ((1L << m_segmentBits) - 1));
+        }
+
+        /**
+         * Checks that the supplied number of bytes from the supplied offset are within the file.
+         * @param offset the offset of the bytes.
+         * @param length the number of bytes.
+         * @throws BufferUnderflowException if they are not.
+         */
+        private void check(long offset, int length) {
+            if (offset < 0 || length < 0 || offset > m_size - length) {
+                throw new BufferUnderflowException();
+            }
+        }
+
+        /** Releases the mappings of the segments, which must not be used afterwards. */
+        private void unmap() {
+            for (MappedByteBuffer segment : m_segments) {
+                MappedCampaignFile.unmap(segment);
+            }
+        }
+    }
+
+    /** A position in the contents of a mapped file, which moves on past each value read from it. */
+    private static final class Cursor {
+
+        /** The contents read from. */
+        private final Contents m_contents;
+
+        /** The offset of the next value to read. */
+        private long m_position;
+
+        /**
+         * Creates a new Cursor.
+         * @param contents the contents to read from.
+         * @param position the offset of the first value to read.
+         */
+        private Cursor(Contents contents, long position) {
+            m_contents = contents;
+            m_position = position;
+        }
+
+        /**
+         * Returns the offset of the next value to read.
+         * @return the offset of the next value to read.
+         */
+        private long position() {
+            return m_position;
+        }
+
+        /**
+         * Skips the supplied number of bytes.
+         * @param length the number of bytes to skip.
+         */
+        private void skip(long length) {
+            m_position += length;
+        }
+
+        /**
+         * Reads a byte.
+         * @return the byte read.
+         */
+        private byte get() {
+            byte value = m_contents.get(m_position);
+            m_position++;
+            return value;
+        }
+
+        /**
+         * Reads a short.
+         * @return the short read.
+         */
+        private short getShort() {
+            short value = (short) ((m_contents.get(m_position) & 0xFF) << 8 | m_contents.get(m_position + 1) & 0xFF);
+            m_position += 2;
+            return value;
+        }
+
+        /**
+         * Reads an int.
+         * @return the int read.
+         */
+        private int getInt() {
+            int value = m_contents.getInt(m_position);
+            m_position += 4;
+            return value;
+        }
+
+        /**
+         * Reads a long.
+         * @return the long read.
+         */
+        private long getLong() {
+            long value = (long) m_contents.getInt(m_position) << 32 | m_contents.getInt(m_position + 4) & 0xFFFFFFFFL;
+            m_position += 8;
+            return value;
+        }
+    }
+}
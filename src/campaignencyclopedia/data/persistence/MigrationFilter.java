@@ -0,0 +1,171 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import toolbox.file.persistence.json.JsonException;
+
+/**
+ * The filter a MigrationStep migrates the events of a save file through.  It keeps track of where each event is in
+ * the save file, passes every event on unchanged by default, and replaces the save file's version with the target
+ * version of the step, written as the first member of the campaign so that it is found without reading the rest of the
+ * save file.  Subclasses change the events they need to by overriding filter(), and add members to the end of the
+ * campaign by overriding finish().
+ *
+ * The depth of an event is the number of objects and arrays it is within: the campaign object itself begins and ends
+ * at depth 0, its members are at depth 1, the elements of its arrays begin and end at depth 1, and so on.
+ *
+ * @author adam
+ */
+abstract class MigrationFilter implements JsonEventHandler, Closeable {
+
+    /** The JSON key for the version of the save file. */
+    private static final String VERSION_TAG = "version";
+
+    /** The handler to pass the migrated events to. */
+    private final JsonEventHandler m_out;
+
+    /** The version the save file is migrated to. */
+    private final String m_targetVersion;
+
+    /** The name of the member each open object is currently within, indexed by the depth of its members. */
+    private String[] m_names;
+
+    /** The number of objects and arrays currently open. */
+    private int m_depth;
+
+    /** True if the next event is the value of the save file's version, which is dropped. */
+    private boolean m_versionValue;
+
+    /**
+     * Creates a new MigrationFilter.
+     * @param out the handler to pass the migrated events to.
+     * @param targetVersion the version the save file is migrated to.
+     */
+    protected MigrationFilter(JsonEventHandler out, String targetVersion) {
+        if (out == null) {
+            throw new IllegalArgumentException("Parameter 'out' must not be null.");
+        }
+        if (targetVersion == null) {
+            throw new IllegalArgumentException("Parameter 'targetVersion' must not be null.");
+        }
+        m_out = out;
+        m_targetVersion = targetVersion;
+        m_names = new String[16];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public final void event(JsonToken token, String text) throws IOException, JsonException {
+        switch (token) {
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                if (m_depth == 0 && token != JsonToken.BEGIN_OBJECT) {
+                    throw new JsonException("A campaign must be a JSON object.");
+                }
+                if (m_versionValue) {
+                    throw new JsonException("The '" + VERSION_TAG + "' of a campaign must be text.");
+                }
+                filter(token, text);
+                if (m_depth == 0) {
+                    emit(JsonToken.NAME, VERSION_TAG);
+                    emit(JsonToken.STRING, m_targetVersion);
+                }
+                m_depth++;
+                if (m_depth == m_names.length) {
+                    String[] names = new String[m_depth * 2];
+                    System.arraycopy(m_names, 0, names, 0, m_depth);
+                    m_names = names;
+                }
+                m_names[m_depth] = null;
+                return;
+            case END_OBJECT:
+            case END_ARRAY:
+                m_depth--;
+                if (m_depth == 0) {
+                    finish();
+                    emit(token, text);
+                } else {
+                    filter(token, text);
+                }
+                return;
+            case NAME:
+                if (m_depth == 1 && VERSION_TAG.equals(text)) {
+                    m_versionValue = true;
+                    return;
+                }
+                m_names[m_depth] = text;
+                filter(token, text);
+                return;
+            default:
+                if (m_depth == 0) {
+                    throw new JsonException("A campaign must be a JSON object.");
+                }
+                if (m_versionValue) {
+                    m_versionValue = false;
+                    return;
+                }
+                filter(token, text);
+        }
+    }
+
+    /**
+     * Migrates an event of the save file, other than the end of the campaign object and its version, by passing
+     * on the events it is migrated to with emit().  By default, the event is passed on unchanged.
+     * @param token the kind of event.
+     * @param text the name or value of a NAME, STRING or LITERAL event, or null for any other event.
+     * @throws IOException if an error occurs handling the event.
+     * @throws JsonException if the event is not valid where it appears in the save file.
+     */
+    protected void filter(JsonToken token, String text) throws IOException, JsonException {
+        emit(token, text);
+    }
+
+    /**
+     * Called before the end of the campaign object is passed on, so that members can be added to the end of it.  By
+     * default, nothing is added.
+     * @throws IOException if an error occurs handling the events.
+     * @throws JsonException if the save file is not valid.
+     */
+    protected void finish() throws IOException, JsonException {
+    }
+
+    /**
+     * Passes an event of the migrated save file on.
+     * @param token the kind of event.
+     * @param text the name or value of a NAME, STRING or LITERAL event, or null for any other event.
+     * @throws IOException if an error occurs handling the event.
+     * @throws JsonException if the event is not valid where it appears in the save file.
+     */
+    protected final void emit(JsonToken token, String text) throws IOException, JsonException {
+        m_out.event(token, text);
+    }
+
+    /**
+     * Returns the depth of the event being filtered.
+     * @return the number of objects and arrays the event is within.
+     */
+    protected final int getDepth() {
+        return m_depth;
+    }
+
+    /**
+     * Returns the name of the member that the event being filtered is within at the supplied depth.  The name of the
+     * member of the campaign object the event is within is at depth 1.
+     * @param depth the depth of the member, no greater than the depth of the event.
+     * @return the name of the member at the supplied depth, or null if the event is within an array at that depth.
+     */
+    protected final String getName(int depth) {
+        if (depth < 1 || depth > m_depth) {
+            throw new IllegalArgumentException("Parameter 'depth' must be from 1 to " + m_depth + ".");
+        }
+        return m_names[depth];
+    }
+
+    /**
+     * Releases any resources held by the migration, whether or not it finished.  By default, there are none.
+     * @throws IOException if an error occurs releasing them.
+     */
+    @Override
+    public void close() throws IOException {
+    }
+}
@@ -0,0 +1,33 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.IOException;
+
+/**
+ * A migration of save files from one version of the save file format to the next.  Steps are registered with
+ * SaveFileMigrations, which chains them to upgrade a save file of any earlier version to the current version in a
+ * single pass.
+ * @author adam
+ */
+interface MigrationStep {
+
+    /**
+     * Returns the version of the save files this step migrates.
+     * @return the version migrated from.
+     */
+    public String getSourceVersion();
+
+    /**
+     * Returns the version of the save files this step produces.
+     * @return the version migrated to.
+     */
+    public String getTargetVersion();
+
+    /**
+     * Returns a new filter which receives the events of a save file of the source version and passes the events of the
+     * same save file in the target version to the supplied handler.
+     * @param out the handler to pass the migrated events to.
+     * @return the filter to pass the events of the save file to.
+     * @throws IOException if an error occurs preparing the migration.
+     */
+    public MigrationFilter migrate(JsonEventHandler out) throws IOException;
+}
@@ -1,6 +1,8 @@
 package campaignencyclopedia.data.persistence;
 
 import campaignencyclopedia.data.Month;
+import java.io.IOException;
+import toolbox.file.persistence.json.JsonException;
 import toolbox.file.persistence.json.JsonObject;
 
 /**
@@ -24,4 +26,33 @@ public class MonthTranslator {
         int index = json.getInt(INDEX);
         return new Month(name, index);
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads the next Month from the supplied parser.
+     * @param parser the parser to read from.
+     * @return the Month read.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if an error occurs during translation.
+     */
+    static Month fromJson(JsonPullParser parser) throws IOException, JsonException {
+        String name = null;
+        Integer index = null;
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case NAME:
+                    name = parser.nextString();
+                    break;
+                case INDEX:
+                    index = parser.nextInt();
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        if (name == null || index == null) {
+            throw new JsonException("Month must have a '" + NAME + "' and an '" + INDEX + "'.");
+        }
+        return new Month(name, index);
+    }
+}
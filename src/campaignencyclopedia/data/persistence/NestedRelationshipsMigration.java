@@ -0,0 +1,234 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import toolbox.file.persistence.json.JsonException;
+
+/**
+ * Migrates v1.1.0 save files, which have no version, to v1.2.0.  In v1.1.0 the Relationships of each Entity are kept
+ * within its public or secret data, as a list of the related Entity IDs and relationship types, and are secret if kept
+ * within its secret data.  In v1.2.0 they are kept in a list of their own at the end of the campaign.
+ *
+ * So that the migration never holds more than one Entity's Relationships in memory, each Entity's Relationships are
+ * spooled to a temporary file once it ends, and copied from it into the list at the end of the campaign.
+ *
+ * @author adam
+ */
+final class NestedRelationshipsMigration implements MigrationStep {
+
+    /** The JSON key for the Entities in the campaign. */
+    private static final String ENTITIES = "entities";
+    /** The JSON key for the relationships. */
+    private static final String RELATIONSHIPS = "relationships";
+    /** The JSON key for the unique identifier of an Entity, and of the related Entity of a v1.1.0 Relationship. */
+    private static final String ID = "id";
+    /** The JSON key for the secret data of an Entity. */
+    private static final String SECRET_DATA = "secret-data";
+    /** The JSON key for the public data of an Entity. */
+    private static final String PUBLIC_DATA = "public-data";
+    /** The JSON key for the relationship type. */
+    private static final String RELATIONSHIP_TYPE = "relationship-type";
+    /** The JSON key for the ID of the related Entity of a v1.2.0 Relationship. */
+    private static final String RELATION_ID = "relation-id";
+    /** The JSON key for the ID of the Entity which owns a v1.2.0 Relationship. */
+    private static final String ENTITY_ID = "entity-id";
+    /** The JSON key for whether or not a Relationship is secret. */
+    private static final String IS_SECRET = "is-secret";
+
+    /** {@inheritDoc} */
+    @Override
+    public String getSourceVersion() {
+        return SaveFileMigrations.ORIGINAL_VERSION;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getTargetVersion() {
+        return "1.2.0";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MigrationFilter migrate(JsonEventHandler out) {
+        return new Filter(out, getTargetVersion());
+    }
+
+    /** The filter which lifts the Relationships of each Entity out to the end of the campaign. */
+    private static final class Filter extends MigrationFilter {
+
+        /** The ID of the Entity being read, or null if it has not been read yet. */
+        private String m_entityId;
+
+        /** The Relationships of the Entity being read, as the related Entity ID, type and secrecy of each. */
+        private final List<String[]> m_pending;
+
+        /** True while the Relationships within the data of an Entity are being read. */
+        private boolean m_collecting;
+
+        /** True if the Relationships being read are within the secret data of their Entity. */
+        private boolean m_secret;
+
+        /** The related Entity ID of the Relationship being read. */
+        private String m_relation;
+
+        /** The type of the Relationship being read. */
+        private String m_type;
+
+        /** The temporary file the Relationships are spooled to, or null if there have been none yet. */
+        private File m_spoolFile;
+
+        /** The writer of the Relationships spooled to the temporary file. */
+        private Writer m_spoolWriter;
+
+        /** The event writer of the Relationships spooled to the temporary file. */
+        private JsonEventWriter m_spool;
+
+        /**
+         * Creates a new Filter.
+         * @param out the handler to pass the migrated events to.
+         * @param targetVersion the version the save file is migrated to.
+         */
+        private Filter(JsonEventHandler out, String targetVersion) {
+            super(out, targetVersion);
+            m_pending = new ArrayList<>();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void filter(JsonToken token, String text) throws IOException, JsonException {
+            if (m_collecting) {
+                collect(token, text);
+                return;
+            }
+            int depth = getDepth();
+            if (depth >= 2 && ENTITIES.equals(getName(1))) {
+                if (depth == 2 && token == JsonToken.BEGIN_OBJECT) {
+                    m_entityId = null;
+                    m_pending.clear();
+                } else if (depth == 2 && token == JsonToken.END_OBJECT) {
+                    emit(token, text);
+                    spoolPending();
+                    return;
+                } else if (depth == 3 && token == JsonToken.STRING && ID.equals(getName(3))) {
+                    m_entityId = text;
+                } else if (depth == 4 && token == JsonToken.NAME && RELATIONSHIPS.equals(text) &&
+                           (PUBLIC_DATA.equals(getName(3)) || SECRET_DATA.equals(getName(3)))) {
+                    m_collecting = true;
+                    m_secret = SECRET_DATA.equals(getName(3));
+                    return;
+                }
+            }
+            emit(token, text);
+        }
+
+        /**
+         * Reads an event of the Relationships within the data of an Entity, which are not passed on.
+         * @param token the kind of event.
+         * @param text the name or value of a NAME, STRING or LITERAL event, or null for any other event.
+         * @throws JsonException if a Relationship has no related Entity ID or type.
+         */
+        private void collect(JsonToken token, String text) throws JsonException {
+            int depth = getDepth();
+            if (depth == 4) {
+                // The list itself, or a value in place of it.
+                if (token == JsonToken.BEGIN_OBJECT) {
+                    throw new JsonException("The '" + RELATIONSHIPS + "' of an Entity must be a list.");
+                }
+                m_collecting = token == JsonToken.BEGIN_ARRAY;
+            } else if (depth == 5 && token == JsonToken.BEGIN_OBJECT) {
+                m_relation = null;
+                m_type = null;
+            } else if (depth == 5 && token == JsonToken.END_OBJECT) {
+                if (m_relation == null || m_type == null) {
+                    throw new JsonException("Relationship must have an '" + ID + "' and a '" + RELATIONSHIP_TYPE + "'.");
+                }
+                m_pending.add(new String[] {m_relation, m_type, String.valueOf(m_secret)});
+            } else if (depth == 6 && (token == JsonToken.STRING || token == JsonToken.LITERAL)) {
+                if (ID.equals(getName(depth))) {
+                    m_relation = text;
+                } else if (RELATIONSHIP_TYPE.equals(getName(depth))) {
+                    m_type = text;
+                }
+            }
+        }
+
+        /**
+         * Spools the Relationships of the Entity just read to the temporary file, with the ID of the Entity.
+         * @throws IOException if an error occurs writing the temporary file.
+         * @throws JsonException if the Entity has Relationships but no ID.
+         */
+        private void spoolPending() throws IOException, JsonException {
+            if (m_pending.isEmpty()) {
+                return;
+            }
+            if (m_entityId == null) {
+                throw new JsonException("Entity with '" + RELATIONSHIPS + "' has no '" + ID + "'.");
+            }
+            if (m_spool == null) {
+                m_spoolFile = File.createTempFile("relationships", ".json");
+                m_spoolWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_spoolFile),
+                                                                          StandardCharsets.UTF_8));
+                m_spool = new JsonEventWriter(m_spoolWriter, 0);
+                m_spool.event(JsonToken.BEGIN_ARRAY, null);
+            }
+            for (String[] rel : m_pending) {
+                m_spool.event(JsonToken.BEGIN_OBJECT, null);
+                m_spool.event(JsonToken.NAME, RELATION_ID);
+                m_spool.event(JsonToken.STRING, rel[0]);
+                m_spool.event(JsonToken.NAME, ENTITY_ID);
+                m_spool.event(JsonToken.STRING, m_entityId);
+                m_spool.event(JsonToken.NAME, RELATIONSHIP_TYPE);
+                m_spool.event(JsonToken.STRING, rel[1]);
+                m_spool.event(JsonToken.NAME, IS_SECRET);
+                m_spool.event(JsonToken.LITERAL, rel[2]);
+                m_spool.event(JsonToken.END_OBJECT, null);
+            }
+            m_pending.clear();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void finish() throws IOException, JsonException {
+            emit(JsonToken.NAME, RELATIONSHIPS);
+            if (m_spool == null) {
+                emit(JsonToken.BEGIN_ARRAY, null);
+                emit(JsonToken.END_ARRAY, null);
+                return;
+            }
+            m_spool.event(JsonToken.END_ARRAY, null);
+            m_spoolWriter.close();
+            try (Reader reader = new InputStreamReader(new FileInputStream(m_spoolFile), StandardCharsets.UTF_8)) {
+                JsonEventReader spooled = new JsonEventReader(reader);
+                JsonToken token = spooled.next();
+                while (token != null) {
+                    emit(token, spooled.getText());
+                    token = spooled.next();
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException {
+            if (m_spoolFile != null) {
+                try {
+                    m_spoolWriter.close();
+                } finally {
+                    Files.deleteIfExists(m_spoolFile.toPath());
+                    m_spoolFile = null;
+                }
+            }
+        }
+    }
+}
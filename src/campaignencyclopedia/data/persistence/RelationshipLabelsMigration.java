@@ -0,0 +1,104 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import toolbox.file.persistence.json.JsonException;
+
+/**
+ * Migrates v1.2.0 save files to v1.3.0.  In v1.2.0 each Relationship holds its type as text; in v1.3.0 each distinct
+ * type is held once, in the list of relationship labels, and each Relationship holds the index of its type in that
+ * list.  Only the distinct types are held in memory, and the list of them is added after the Relationships, which the
+ * v1.3.0 reader allows.
+ * @author adam
+ */
+final class RelationshipLabelsMigration implements MigrationStep {
+
+    /** The JSON key for the relationships. */
+    private static final String RELATIONSHIPS = "relationships";
+    /** The JSON key for the list of relationship labels referred to by the relationships. */
+    private static final String RELATIONSHIP_LABELS = "relationship-labels";
+    /** The JSON key for the relationship type as text. */
+    private static final String RELATIONSHIP_TYPE = "relationship-type";
+    /** The JSON key for the relationship type as an index into the relationship labels. */
+    private static final String RELATIONSHIP_LABEL = "relationship-label";
+
+    /** {@inheritDoc} */
+    @Override
+    public String getSourceVersion() {
+        return "1.2.0";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getTargetVersion() {
+        return "1.3.0";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MigrationFilter migrate(JsonEventHandler out) {
+        return new Filter(out, getTargetVersion());
+    }
+
+    /** The filter which replaces the type of each Relationship with the index of its label. */
+    private static final class Filter extends MigrationFilter {
+
+        /** The distinct relationship types read, in the order they were first read. */
+        private final List<String> m_labels;
+
+        /** The index of each distinct relationship type read in the list of labels. */
+        private final Map<String, Integer> m_indices;
+
+        /**
+         * Creates a new Filter.
+         * @param out the handler to pass the migrated events to.
+         * @param targetVersion the version the save file is migrated to.
+         */
+        private Filter(JsonEventHandler out, String targetVersion) {
+            super(out, targetVersion);
+            m_labels = new ArrayList<>();
+            m_indices = new HashMap<>();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void filter(JsonToken token, String text) throws IOException, JsonException {
+            if (getDepth() == 3 && RELATIONSHIPS.equals(getName(1))) {
+                if (token == JsonToken.NAME && RELATIONSHIP_TYPE.equals(text)) {
+                    emit(token, RELATIONSHIP_LABEL);
+                    return;
+                }
+                if (RELATIONSHIP_TYPE.equals(getName(3)) && (token == JsonToken.STRING || token == JsonToken.LITERAL)) {
+                    if (token == JsonToken.LITERAL && "null".equals(text)) {
+                        throw new JsonException("Relationship has no '" + RELATIONSHIP_TYPE + "'.");
+                    }
+                    Integer index = m_indices.get(text);
+                    if (index == null) {
+                        index = m_labels.size();
+                        m_labels.add(text);
+                        m_indices.put(text, index);
+                    }
+                    emit(JsonToken.LITERAL, index.toString());
+                    return;
+                }
+            } else if (getDepth() == 1 && token == JsonToken.NAME && RELATIONSHIP_LABELS.equals(text)) {
+                throw new JsonException("A v1.2.0 campaign must not have '" + RELATIONSHIP_LABELS + "'.");
+            }
+            emit(token, text);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void finish() throws IOException, JsonException {
+            emit(JsonToken.NAME, RELATIONSHIP_LABELS);
+            emit(JsonToken.BEGIN_ARRAY, null);
+            for (String label : m_labels) {
+                emit(JsonToken.STRING, label);
+            }
+            emit(JsonToken.END_ARRAY, null);
+        }
+    }
+}
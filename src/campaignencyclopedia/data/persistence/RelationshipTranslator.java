@@ -1,7 +1,10 @@
 package campaignencyclopedia.data.persistence;
 
 import campaignencyclopedia.data.Relationship;
+import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
+import toolbox.file.persistence.json.JsonException;
 import toolbox.file.persistence.json.JsonObject;
 
 /**
@@ -13,6 +16,9 @@ public class RelationshipTranslator {
     /** The JSON Key for the relationship type. */
     private static final String RELATIONSHIP_TYPE = "relationship-type";
 
+    /** The JSON Key for the index of the relationship type in the save file's relationship label list. */
+    private static final String RELATIONSHIP_LABEL = "relationship-label";
+
     /** The JSON Key for the UUID of the Entity that the owning Entity is related to. */
     private static final String RELATION_ID = "relation-id";
 
@@ -23,32 +29,99 @@ public class RelationshipTranslator {
     private static final String IS_SECRET = "is-secret";
 
     /**
-     * Translates the supplied relationship to the JSON String that represents it.
+     * Translates the supplied relationship to the JSON Object that represents it, storing its type as an index into
+     * the save file's relationship label list rather than as text.
      * @param rel the Relationship to translate.
+     * @param labelIndex the index of the Relationship's type in the save file's relationship label list.
      * @return the JSON Object that represents the supplied Relationship.
      */
-    public static JsonObject toJson(Relationship rel) {
+    public static JsonObject toJson(Relationship rel, int labelIndex) {
         JsonObject json = new JsonObject();
         json.put(RELATION_ID, rel.getRelatedEntity().toString());
         json.put(ENTITY_ID, rel.getEntityId().toString());
-        json.put(RELATIONSHIP_TYPE, rel.getRelationshipText());
+        json.put(RELATIONSHIP_LABEL, labelIndex);
         json.put(IS_SECRET, rel.isSecret());
 
         return json;
     }
 
     /**
-     * Returns the Relationship represented by the supplied JSON String.
-     * @param jsonString the JSON string to translate to a Relationship.
-     * @return the Relationship represented by the supplied JSON String.
+     * Reads the next Relationship from the supplied parser.  As the save file's relationship label list may not have
+     * been read yet, the label index is kept unresolved; the Relationship is made from the returned record once the
+     * labels are known.
+     * @param parser the parser to read from.
+     * @return the record of the Relationship read.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if an error occurs during translation.
      */
-    public static Relationship fromJson(String jsonString) {
-        JsonObject json = new JsonObject(jsonString);
-        UUID entity = UUID.fromString(json.getString(ENTITY_ID));
-        UUID relation = UUID.fromString(json.getString(RELATION_ID));
-        String relType = json.getString(RELATIONSHIP_TYPE);
-        boolean isSecret = json.getBoolean(IS_SECRET);
-
-        return new Relationship(entity, relation, relType, isSecret);
+    static RelationshipRecord fromJson(JsonPullParser parser) throws IOException, JsonException {
+        RelationshipRecord record = new RelationshipRecord();
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case ENTITY_ID:
+                    record.entity = UUID.fromString(parser.nextString());
+                    break;
+                case RELATION_ID:
+                    record.relation = UUID.fromString(parser.nextString());
+                    break;
+                case RELATIONSHIP_TYPE:
+                    record.type = parser.nextString();
+                    break;
+                case RELATIONSHIP_LABEL:
+                    record.label = parser.nextInt();
+                    break;
+                case IS_SECRET:
+                    record.isSecret = parser.nextBoolean();
+                    record.hasSecret = true;
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        if (record.entity == null || record.relation == null || !record.hasSecret) {
+            throw new JsonException("Relationship must have an '" + ENTITY_ID + "', '" + RELATION_ID + "' and '" +
+                                    IS_SECRET + "'.");
+        }
+        return record;
+    }
+
+    /** A Relationship as read from a save file, whose type may be an unresolved index into the label list. */
+    static final class RelationshipRecord {
+
+        /** The UUID of the Entity that owns the Relationship. */
+        private UUID entity;
+
+        /** The UUID of the Entity that the owning Entity is related to. */
+        private UUID relation;
+
+        /** The type of the Relationship as text, or null if it is stored as a label index. */
+        private String type;
+
+        /** The index of the type of the Relationship in the label list, or -1 if it is stored as text. */
+        private int label = -1;
+
+        /** Whether or not the Relationship is secret. */
+        private boolean isSecret;
+
+        /** Whether or not the secrecy of the Relationship was read. */
+        private boolean hasSecret;
+
+        /**
+         * Returns the Relationship this record represents.
+         * @param labels the save file's relationship label list.
+         * @return the Relationship this record represents.
+         * @throws JsonException if the record has no type, or its label index is not in the label list.
+         */
+        Relationship toRelationship(List<String> labels) throws JsonException {
+            String relType = type;
+            if (label >= 0 && label < labels.size()) {
+                relType = labels.get(label);
+            } else if (label >= 0 || relType == null) {
+                throw new JsonException("Relationship has no valid '" + RELATIONSHIP_LABEL + "' or '" +
+                                        RELATIONSHIP_TYPE + "'.");
+            }
+            return new Relationship(entity, relation, relType, isSecret);
+        }
     }
-}
\ No newline at end of file
+}
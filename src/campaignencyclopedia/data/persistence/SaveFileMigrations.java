@@ -0,0 +1,159 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import toolbox.file.persistence.json.JsonException;
+
+/**
+ * The registry of the migrations between the versions of the JSON save file format.  Each MigrationStep upgrades save
+ * files of one version to the next; a save file of any earlier version is upgraded to the current version by chaining
+ * the steps from its version on, so that the events of the save file flow through every step as it is read, and the
+ * upgraded save file is written in the same single pass.  Only the nesting of the JSON being read, and whatever little
+ * each step must keep to finish the campaign, is held in memory, so save files of any size can be upgraded.
+ *
+ * Save files written before versions were recorded in them are of version 1.1.0.
+ *
+ * @author adam
+ */
+public final class SaveFileMigrations {
+
+    /** The version of save files which have no version. */
+    public static final String ORIGINAL_VERSION = "1.1.0";
+
+    /** The JSON key for the version of the save file. */
+    private static final String VERSION_TAG = "version";
+
+    /** The number of spaces each level of upgraded save files is indented by. */
+    private static final int INDENT_FACTOR = 4;
+
+    /** The registered steps, by the version they migrate from. */
+    private static final Map<String, MigrationStep> STEPS = new HashMap<>();
+
+    static {
+        register(new NestedRelationshipsMigration());
+        register(new RelationshipLabelsMigration());
+    }
+
+    /** Prevents instantiation. */
+    private SaveFileMigrations() {
+    }
+
+    /**
+     * Registers the supplied step, as the migration from its source version.
+     * @param step the step to register.
+     */
+    static synchronized void register(MigrationStep step) {
+        if (step == null) {
+            throw new IllegalArgumentException("Parameter 'step' must not be null.");
+        }
+        if (STEPS.containsKey(step.getSourceVersion())) {
+            throw new IllegalArgumentException("A migration from v" + step.getSourceVersion() + " is already registered.");
+        }
+        STEPS.put(step.getSourceVersion(), step);
+    }
+
+    /**
+     * Returns the version of the save files written by this version of the application.
+     * @return the current save file version.
+     */
+    public static String getCurrentVersion() {
+        return CampaignTranslator.VERSION;
+    }
+
+    /**
+     * Reads the version of the JSON save file read by the supplied Reader.  The members of the campaign are read only
+     * until its version is found, which is near the start of every save file that has one.  The reader is not closed.
+     * @param reader the Reader to read the save file from.
+     * @return the version of the save file.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the save file is not valid JSON.
+     */
+    public static String readVersion(Reader reader) throws IOException, JsonException {
+        JsonPullParser parser = new JsonPullParser(reader);
+        parser.beginObject();
+        while (parser.hasNext()) {
+            if (VERSION_TAG.equals(parser.nextName())) {
+                String version = parser.nextString();
+                return version == null ? ORIGINAL_VERSION : version;
+            }
+            parser.skipValue();
+        }
+        return ORIGINAL_VERSION;
+    }
+
+    /**
+     * Returns true if save files of the supplied version are older than the current version, so need upgrading.
+     * @param version the version of the save file.
+     * @return true if the save file needs upgrading.
+     */
+    public static boolean needsUpgrade(String version) {
+        if (version == null) {
+            throw new IllegalArgumentException("Parameter 'version' must not be null.");
+        }
+        return !getCurrentVersion().equals(version);
+    }
+
+    /**
+     * Reads the JSON save file of the supplied version from the supplied Reader and writes it, upgraded to the current
+     * version, to the supplied Writer, in a single pass.  Neither is closed; the Writer is flushed.
+     * @param reader the Reader to read the save file from.
+     * @param version the version of the save file, as read by readVersion().
+     * @param writer the Writer to write the upgraded save file to.
+     * @throws IOException if an error occurs reading or writing.
+     * @throws JsonException if there is no migration from the version, or the save file is not valid for its version.
+     */
+    public static void upgrade(Reader reader, String version, Writer writer) throws IOException, JsonException {
+        if (reader == null) {
+            throw new IllegalArgumentException("Parameter 'reader' must not be null.");
+        }
+        if (writer == null) {
+            throw new IllegalArgumentException("Parameter 'writer' must not be null.");
+        }
+        List<MigrationStep> steps = getSteps(version);
+        List<MigrationFilter> filters = new ArrayList<>();
+        try {
+            // Chain the filters from the last step back, so that each passes its events to the next.
+            JsonEventHandler handler = new JsonEventWriter(writer, INDENT_FACTOR);
+            for (int i = steps.size() - 1; i >= 0; i--) {
+                MigrationFilter filter = steps.get(i).migrate(handler);
+                filters.add(filter);
+                handler = filter;
+            }
+            new JsonEventReader(reader).readTo(handler);
+            writer.flush();
+        } finally {
+            for (MigrationFilter filter : filters) {
+                filter.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the steps which upgrade save files of the supplied version to the current version, in the order they
+     * apply.
+     * @param version the version of the save file.
+     * @return the steps to upgrade the save file with, which are none if it is already of the current version.
+     * @throws JsonException if there is no migration from the version to the current version.
+     */
+    private static synchronized List<MigrationStep> getSteps(String version) throws JsonException {
+        if (version == null) {
+            throw new IllegalArgumentException("Parameter 'version' must not be null.");
+        }
+        List<MigrationStep> steps = new ArrayList<>();
+        String current = version;
+        while (needsUpgrade(current)) {
+            MigrationStep step = STEPS.get(current);
+            if (step == null || steps.size() == STEPS.size()) {
+                throw new JsonException("Unable to upgrade save files of v" + version + " to v" + getCurrentVersion() + ".");
+            }
+            steps.add(step);
+            current = step.getTargetVersion();
+        }
+        return steps;
+    }
+}
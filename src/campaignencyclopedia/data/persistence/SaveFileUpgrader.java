@@ -1,272 +1,261 @@
 package campaignencyclopedia.data.persistence;
 
-import campaignencyclopedia.data.Campaign;
-import campaignencyclopedia.data.CampaignCalendar;
-import campaignencyclopedia.data.CampaignDataManager;
-import campaignencyclopedia.data.Entity;
-import campaignencyclopedia.data.EntityData;
-import campaignencyclopedia.data.EntityDataBuilder;
-import campaignencyclopedia.data.EntityType;
-import campaignencyclopedia.data.Month;
-import campaignencyclopedia.data.Relationship;
-import campaignencyclopedia.data.RelationshipManager;
-import campaignencyclopedia.data.TimelineEntry;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 import javax.swing.JFileChooser;
-import toolbox.file.FileTools;
-import toolbox.file.persistence.json.JsonArray;
 import toolbox.file.persistence.json.JsonException;
-import toolbox.file.persistence.json.JsonObject;
 
 /**
- * A class to upgrade old save files from v1.1.0 to the new format, currently as defined in the 1.2.0 release.
+ * A tool to upgrade old JSON save files, of v1.1.0 onwards, to the current format.  Save files are upgraded by the
+ * migrations registered with SaveFileMigrations, in a single streaming pass, and written beside the original with the
+ * extension ".upgraded" (and ".gz" after it if the original is compressed).  The original is left as it is.
+ *
+ * Run with no arguments, a save file to upgrade is chosen with a file chooser.  Run with the paths of save files or
+ * directories, it upgrades them without a display: every JSON save file in each directory that is older than the
+ * current version is upgraded, several at a time, and the outcome for each is printed.
+ *
  * @author adam
  */
 public class SaveFileUpgrader {
 
-    /** The JSON tag for the name of the campaign. */
-    private static final String CAMPAGN_NAME = "campaign-name";
-    /** The JSON tag for the Entities in the campaign. */
-    private static final String ENTITIES = "entities";
-    /** The JSON tag for the time line data. */
-    private static final String TIMELINE_ENTRIES = "timeline-entries";
-    /** The JSON tag for the Campaign Calendar. */
-    private static final String CAMPAIGN_CALENDAR = "calendar";
-    /** The JSON key for the relationships. */
-    private static final String RELATIONSHIPS = "relationships";
-    /** The JSON tag for the name of the entity. */
-    private static final String NAME = "name";
-    /** The JSON tag for the Type of Entity. */
-    private static final String TYPE = "type";
-    /** The JSON tag for the unique identifier of the Entity. */
-    private static final String ID = "id";
-    /** The JSON tag for the secret data of the entity. */
-    private static final String SECRET_DATA = "secret-data";
-    /** The JSON tag for the public data of the entity. */
-    private static final String PUBLIC_DATA = "public-data";
-    /** The JSON tag for the is or is not secret state of this Entity. */
-    private static final String IS_SECRET = "is-secret";
-    private static final String TITLE = "title";
-    private static final String MONTH = "month";
-    private static final String YEAR = "year";
-    private static final String ASSOCIATED_ENTITY = "associated-entity";
-    private static final String SECRET = "is-secret";
-    private static final String INDEX = "index";
-    /** The JSON key for the tags. */
-    private static final String TAGS = "tags";
-    /** The JSON key for the description. */
-    private static final String DESCRIPTION = "description";
-    /** The JSON Key for the relationship type. */
-    private static final String RELATIONSHIP_TYPE = "relationship-type";
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(SaveFileUpgrader.class.getName());
 
+    /** The file name suffix of JSON save files. */
+    private static final String CAMPAIGN_EXTENSION = ".campaign";
 
-    private static Campaign upgrade(String jsonString) {
-        Map<UUID, RelationshipManager> relationships = new HashMap<>();
+    /** The file name suffix added to upgraded save files. */
+    private static final String UPGRADED_EXTENSION = ".upgraded";
 
-        JsonObject json = new JsonObject(jsonString);
-        String name = "unnamed campaign";
-        if (json.has(CAMPAGN_NAME)) {
-            name = json.getString(CAMPAGN_NAME);
-        }
-
-        Set<Entity> entitySet = new HashSet<>();
-        JsonArray entities = json.getJsonArray(ENTITIES);
-        for (int i = 0; i < entities.length(); i++) {
-            entitySet.add(entityFromJson(entities.get(i).toString(), relationships));
-        }
-
-        Set<TimelineEntry> timelineData = new HashSet<>();
-        if (json.has(TIMELINE_ENTRIES)) {
-            JsonArray teArray = json.getJsonArray(TIMELINE_ENTRIES);
-            for (int i = 0; i < teArray.length(); i++) {
-                timelineData.add(timelineEvenFromJson(teArray.get(i).toString()));
-            }
-        }
-
-        CampaignCalendar cal = new CampaignCalendar();
-        if (json.has(CAMPAIGN_CALENDAR)) {
-            JsonArray months = json.getJsonArray(CAMPAIGN_CALENDAR);
-            List<Month> translated = new ArrayList<>();
-            for (int i = 0; i < months.length(); i++) {
-                translated.add(monthFromJson(months.getJSONObject(i)));
-            }
-            cal.updateMonths(translated);
-        }
+    /** The file name suffix of the temporary file an upgraded save file is written to before replacing its target. */
+    private static final String TEMP_EXTENSION = ".tmp";
 
-        return new Campaign(name, entitySet, relationships, timelineData, cal);
+    /** Prevents instantiation. */
+    private SaveFileUpgrader() {
     }
 
     /**
-     * Returns the Entity represented by the JSON String supplied.
-     * @param jsonString the JSON String to translate.
-     * @return the Entity that is represented by the supplied JSON String.
-     * @throws JsonException if an error occurs during translation.
+     * Reads the version of the supplied JSON save file.
+     * @param file the save file, which may be compressed.
+     * @return the version of the save file.
+     * @throws IOException if an error occurs reading the file.
+     * @throws JsonException if the file is not a JSON save file.
      */
-    private static Entity entityFromJson(String jsonString, Map<UUID, RelationshipManager> relationshipMap) throws JsonException {
-        JsonObject json = new JsonObject(jsonString);
-
-        EntityType type = null;
-        if (json.has(TYPE)) {
-            type = EntityType.valueOf(json.getString(TYPE));
-        }
-
-        // Entity ID
-        UUID entityId = null;
-        if (json.has(ID)) {
-            entityId = UUID.fromString(json.getString(ID));
-        }
-
-        // Public Data
-        EntityData pd = null;
-        if (json.has(PUBLIC_DATA)) {
-            pd = entityDataFromJson(json.getJsonObject(PUBLIC_DATA).toString(), relationshipMap, entityId, false);
+    public static String readVersion(File file) throws IOException, JsonException {
+        try (Reader reader = openReader(file)) {
+            return SaveFileMigrations.readVersion(reader);
         }
+    }
 
-        // Secret Data
-        EntityData sd = new EntityDataBuilder().build();
-        if (json.has(SECRET_DATA)) {
-            sd = entityDataFromJson(json.getJsonObject(SECRET_DATA).toString(), relationshipMap, entityId, true);
+    /**
+     * Returns the file the supplied save file is upgraded to.
+     * @param file the save file.
+     * @return the file the save file is upgraded to, which is compressed if the save file is.
+     */
+    public static File getUpgradedFile(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("Parameter 'file' must not be null.");
         }
-
-        // Is Secret
-        boolean isSecret = false;
-        if (json.has(IS_SECRET)) {
-            isSecret = json.getBoolean(IS_SECRET);
+        String path = file.getPath();
+        String upgraded = CampaignCompression.uncompressedPath(path) + UPGRADED_EXTENSION;
+        if (CampaignCompression.isCompressed(path)) {
+            upgraded = upgraded + "." + CampaignCompression.FILE_EXTENSION;
         }
-
-        String name = json.getString(NAME);
-
-        return new Entity(entityId, name, type, pd, sd, isSecret);
+        return new File(upgraded);
     }
 
     /**
-     * Translates the supplied JSON String into an EntityData object.
-     * @param jsonString the string to translate to an EntityData.
-     * @return the EntityData object that is represented by the supplied string.
-     * @throws JsonException if an error occurs during translation.
+     * Upgrades the supplied JSON save file of the supplied version to the current version, writing it to the file
+     * returned by getUpgradedFile().  The upgraded save file is written to a temporary file, which is synced to disk and
+     * then renamed to replace any earlier upgrade, so that a failed upgrade never leaves a partial save file behind.
+     * @param file the save file, which may be compressed.
+     * @param version the version of the save file.
+     * @return the upgraded save file.
+     * @throws IOException if an error occurs reading or writing.
+     * @throws JsonException if the save file cannot be upgraded.
      */
-    private static EntityData entityDataFromJson(String jsonString, Map<UUID, RelationshipManager> relationships, UUID entity, boolean isSecret) throws JsonException {
-        JsonObject json = new JsonObject(jsonString);
-
-        // Tags
-        Set<String> tags = new HashSet<>();
-        if (json.has(TAGS)) {
-            JsonArray jsonTags = json.getJsonArray(TAGS);
-            for (int i = 0; i < jsonTags.length(); i++) {
-                tags.add(jsonTags.getString(i));
+    public static File upgrade(File file, String version) throws IOException, JsonException {
+        File upgraded = getUpgradedFile(file);
+        Path target = upgraded.getAbsoluteFile().toPath();
+        Path temp = new File(upgraded.getPath() + TEMP_EXTENSION).getAbsoluteFile().toPath();
+        boolean moved = false;
+        try {
+            try (Reader reader = openReader(file);
+                 FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                GZIPOutputStream compressed = null;
+                OutputStream stream = out;
+                if (CampaignCompression.isCompressed(upgraded.getPath())) {
+                    compressed = CampaignCompression.compress(out);
+                    stream = compressed;
+                }
+                Writer writer = new BufferedWriter(new OutputStreamWriter(stream));
+                SaveFileMigrations.upgrade(reader, version, writer);
+                if (compressed != null) {
+                    compressed.finish();
+                }
+                out.getFD().sync();
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
             }
         }
+        return upgraded;
+    }
 
-        // Relationships
-        if (json.has(RELATIONSHIPS)) {
-            JsonArray relations = json.getJsonArray(RELATIONSHIPS);
-            for (int i = 0; i < relations.length(); i++) {
-                if (relationships.get(entity) == null) {
-                    relationships.put(entity, new RelationshipManager());
+    /**
+     * Upgrades every JSON save file among the supplied files, and within the supplied directories, that is older than
+     * the current version, several at a time, printing the outcome for each.
+     * @param files the save files and directories of save files to upgrade.
+     * @return the number of save files which could not be upgraded.
+     * @throws InterruptedException if interrupted while waiting for the upgrades.
+     */
+    public static int upgradeAll(List<File> files) throws InterruptedException {
+        if (files == null) {
+            throw new IllegalArgumentException("Parameter 'files' must not be null.");
+        }
+        List<File> saveFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                File[] contents = file.listFiles();
+                if (contents != null) {
+                    Arrays.sort(contents);
+                    for (File content : contents) {
+                        if (content.isFile() && isJsonSaveFile(content)) {
+                            saveFiles.add(content);
+                        }
+                    }
                 }
-                JsonObject rel = relations.getJSONObject(i);
-                relationships.get(entity).addRelationship(relationshipFromJson(rel.toString(), entity, isSecret));
+            } else {
+                saveFiles.add(file);
             }
         }
-
-        // Description
-        String description = "";
-        if (json.has(DESCRIPTION)) {
-            description = json.getString(DESCRIPTION);
+        if (saveFiles.isEmpty()) {
+            System.out.println("No save files to upgrade.");
+            return 0;
         }
 
-        return new EntityData(description, tags);
+        int threads = Math.min(saveFiles.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int failures = 0;
+        try {
+            List<Future<String>> outcomes = new ArrayList<>();
+            for (final File saveFile : saveFiles) {
+                outcomes.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        String version = readVersion(saveFile);
+                        if (!SaveFileMigrations.needsUpgrade(version)) {
+                            return "'" + saveFile + "' is already v" + version + ".";
+                        }
+                        File upgraded = upgrade(saveFile, version);
+                        return "Upgraded '" + saveFile + "' from v" + version + " to '" + upgraded + "'.";
+                    }
+                }));
+            }
+            // Report in the order the files were listed, whatever order they finish in.
+            for (int i = 0; i < saveFiles.size(); i++) {
+                try {
+                    System.out.println(outcomes.get(i).get());
+                } catch (ExecutionException ex) {
+                    failures++;
+                    System.out.println("Failed to upgrade '" + saveFiles.get(i) + "': " + ex.getCause().getMessage());
+                    LOGGER.log(Level.FINE, "Failed to upgrade '" + saveFiles.get(i) + "'.", ex.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return failures;
     }
 
     /**
-     * Returns the Relationship represented by the supplied JSON String.
-     * @param jsonString the JSON string to translate to a Relationship.
-     * @param entity the ID of the entity.
-     * @param isSecret true if the relationship is a secret relationship, false otherwise.
-     * @return the Relationship represented by the supplied JSON String.
+     * Returns true if the supplied file is named as a JSON save file, compressed or not, and not an upgraded one.
+     * @param file the file.
+     * @return true if the file is named as a JSON save file.
      */
-    private static Relationship relationshipFromJson(String jsonString, UUID entity, boolean isSecret) {
-        JsonObject json = new JsonObject(jsonString);
-        UUID id = UUID.fromString(json.getString(ID));
-        String relType = json.getString(RELATIONSHIP_TYPE);
-
-        return new Relationship(entity, id, relType, isSecret);
+    private static boolean isJsonSaveFile(File file) {
+        return CampaignCompression.uncompressedPath(file.getName()).endsWith(CAMPAIGN_EXTENSION);
     }
 
     /**
-     * Translates the a JSON string that represents a TimelineEvent.
-     * @param jsonString the JSON String.
-     * @return the TimelineEvent object translated from the JSON String.
+     * Opens a Reader of the supplied save file, decompressing it if it is compressed.
+     * @param file the save file.
+     * @return a Reader of the content of the save file.
+     * @throws IOException if an error occurs opening the file.
      */
-    private static TimelineEntry timelineEvenFromJson(String jsonString) {
-        JsonObject json = new JsonObject(jsonString);
-
-        // Title
-        String title = null;
-        if (json.has(TITLE)) {
-            title = json.getString(TITLE);
-        }
-
-        // Month
-        JsonObject jsonMonth = null;
-        if (json.has(MONTH)) {
-            jsonMonth = json.getJsonObject(MONTH);
-        }
-
-        // Secret
-        boolean isSecret = false;
-        if (json.has(SECRET)) {
-            isSecret = json.getBoolean(SECRET);
+    private static Reader openReader(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return new InputStreamReader(CampaignCompression.decompress(new BufferedInputStream(in)));
+        } catch (IOException | RuntimeException ex) {
+            in.close();
+            throw ex;
         }
-
-        Month month = MonthTranslator.fromJson(jsonMonth);
-        int year = json.getInt(YEAR);
-        UUID id = UUID.fromString(json.getString(ID));
-        UUID associatedEntity = UUID.fromString(json.getString(ASSOCIATED_ENTITY));
-
-        return new TimelineEntry(title, month, year, isSecret, associatedEntity, id);
     }
 
     /**
-     * Translates a month from the JSON string.
-     * @param json the string containing the month object.
-     * @return The Month object translated from the JSON String.
+     * Upgrades old save files to the current format.  With no arguments, the save file to upgrade is chosen with a
+     * file chooser.  Otherwise each argument is the path of a save file, or of a directory of save files, to upgrade
+     * without a display; the exit status is non-zero if any could not be upgraded.
+     * @param args the paths of the save files and directories to upgrade, if any.
+     * @throws IOException if an error occurs upgrading the chosen save file.
+     * @throws InterruptedException if interrupted while upgrading save files.
      */
-    private static Month monthFromJson(JsonObject json) {
-        String name = json.getString(NAME);
-        int index = json.getInt(INDEX);
-        return new Month(name, index);
-    }
-
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0) {
+            List<File> files = new ArrayList<>();
+            for (String arg : args) {
+                files.add(new File(arg));
+            }
+            if (upgradeAll(files) > 0) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (GraphicsEnvironment.isHeadless()) {
+            System.out.println("Usage: SaveFileUpgrader <save file or directory>...");
+            System.exit(2);
+        }
 
-    /**
-     * Converts a v1.1.0-style sav file to a v1.2.0+ style save file.
-     * @param args
-     */
-    public static void main(String[] args) throws IOException {
         JFileChooser chooser = new JFileChooser("./campaigns");
         int option = chooser.showOpenDialog(null);
         if (option == JFileChooser.APPROVE_OPTION) {
             File toConvert = chooser.getSelectedFile();
-
-            // Convert
-            String oldCampaign = FileTools.readFile(toConvert.getAbsolutePath());
-            Campaign converted = upgrade(oldCampaign);
-
-            // Create a data accessor.
-            CampaignDataManager cdm = new CampaignDataManager();
-            cdm.setData(converted);
-
-            // Write out translated file.
-            FileTools.writeFile(toConvert.getAbsolutePath() + ".upgraded", CampaignTranslator.toJson(converted, cdm, true));
+            String version = readVersion(toConvert);
+            File upgraded = upgrade(toConvert, version);
+            LOGGER.log(Level.INFO, "Upgraded ''{0}'' from v{1} to ''{2}''.", new Object[] {toConvert, version, upgraded});
         }
     }
-}
\ No newline at end of file
+}
@@ -2,7 +2,10 @@ package campaignencyclopedia.data.persistence;
 
 import campaignencyclopedia.data.Month;
 import campaignencyclopedia.data.TimelineEntry;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.UUID;
+import toolbox.file.persistence.json.JsonException;
 import toolbox.file.persistence.json.JsonObject;
 
 /**
@@ -48,31 +51,60 @@ public class TimelineEntryTranslator {
     }
 
     public static TimelineEntry fromJson(String jsonString) {
-        JsonObject json = new JsonObject(jsonString);
+        try {
+            return fromJson(new JsonPullParser(new StringReader(jsonString)));
+        } catch (IOException ex) {
+            // Never thrown by a StringReader.
+            throw new JsonException(ex);
+        }
+    }
 
-        // Title
+    /**
+     * Reads the next TimelineEntry from the supplied parser.
+     * @param parser the parser to read from.
+     * @return the TimelineEntry read.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if an error occurs during translation.
+     */
+    static TimelineEntry fromJson(JsonPullParser parser) throws IOException, JsonException {
         String title = null;
-        if (json.has(TITLE)) {
-            title = json.getString(TITLE);
-        }
+        Month month = null;
+        Integer year = null;
+        UUID id = null;
+        UUID associatedEntity = null;
+        boolean isSecret = false;
 
-        // Month
-        JsonObject jsonMonth = null;
-        if (json.has(MONTH)) {
-            jsonMonth = json.getJsonObject(MONTH);
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case TITLE:
+                    title = parser.nextString();
+                    break;
+                case MONTH:
+                    month = MonthTranslator.fromJson(parser);
+                    break;
+                case YEAR:
+                    year = parser.nextInt();
+                    break;
+                case ID:
+                    id = UUID.fromString(parser.nextString());
+                    break;
+                case ASSOCIATED_ENTITY:
+                    associatedEntity = UUID.fromString(parser.nextString());
+                    break;
+                case SECRET:
+                    isSecret = parser.nextBoolean();
+                    break;
+                default:
+                    parser.skipValue();
+            }
         }
-        
-        // Secret
-        boolean isSecret = false;
-        if (json.has(SECRET)) {
-            isSecret = json.getBoolean(SECRET);
+
+        if (month == null || year == null || id == null || associatedEntity == null) {
+            throw new JsonException("Timeline entry must have a '" + MONTH + "', '" + YEAR + "', '" + ID + "' and '" +
+                                    ASSOCIATED_ENTITY + "'.");
         }
-        
-        Month month = MonthTranslator.fromJson(jsonMonth);
-        int year = json.getInt(YEAR);
-        UUID id = UUID.fromString(json.getString(ID));
-        UUID associatedEntity = UUID.fromString(json.getString(ASSOCIATED_ENTITY));
 
         return new TimelineEntry(title, month, year, isSecret, associatedEntity, id);
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,10 @@
 package campaignencyclopedia.display;
 
 import campaignencyclopedia.data.Entity;
+import campaignencyclopedia.data.EntitySearchIndex;
 import campaignencyclopedia.data.EntityType;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * A display filter for Entity data.
@@ -19,6 +20,15 @@ public class EntityDisplayFilter implements DataFilter<Entity> {
     
     /** The accepted EntityType for this filter. */
     private final EntityType m_entityType;
+
+    /** The index to search, or null if each Entity's text should be scanned instead. */
+    private final EntitySearchIndex m_index;
+
+    /** The IDs of the Entities matching the search string, as of m_matchesVersion of the index. */
+    private Set<UUID> m_matches;
+
+    /** The version of the index m_matches was computed at. */
+    private long m_matchesVersion;
     
     /**
      * Creates a new instance of EntityDisplayFilter.
@@ -29,12 +39,27 @@ public class EntityDisplayFilter implements DataFilter<Entity> {
      * @param includeSecret true if secret Entities should be returned for display.
      */
     public EntityDisplayFilter(String searchString, EntityType typeAllowed, boolean includeSecret) {
+        this(searchString, typeAllowed, includeSecret, null);
+    }
+
+    /**
+     * Creates a new instance of EntityDisplayFilter which answers searches from the supplied index.
+     * 
+     * @param searchString the text to search for, must not be null.  This string searches the Entity name, type, tags
+     * and descriptions, as described by EntitySearchIndex.search().
+     * @param typeAllowed the EntityType that is accepted by this filter.  Perhaps odd to some, if this value is null, all types 
+     * are accepted by this filter.
+     * @param includeSecret true if secret Entities should be returned for display.
+     * @param index the index to search, or null to scan the name, type and tags of each Entity instead.
+     */
+    public EntityDisplayFilter(String searchString, EntityType typeAllowed, boolean includeSecret, EntitySearchIndex index) {
         if (searchString == null) {
             throw new IllegalArgumentException("Parameter 'searchString' must not be null.");
         }
         m_includeSecretData = includeSecret;
         m_entityType = typeAllowed;
         m_searchString = searchString.trim().toLowerCase();
+        m_index = index;
     }
     
     /**
@@ -60,23 +85,43 @@ public class EntityDisplayFilter implements DataFilter<Entity> {
             return false;
         }
 
+        // An empty search string matches every Entity, without consulting (and so building) the index.
+        if (m_searchString.isEmpty()) {
+            return true;
+        }
+
+        // If an index is available, the search results are looked up rather than scanned for.  They are recomputed
+        // only when the index has changed since they were last computed.  The version is read after searching, as the
+        // first search builds the index, and under the index's lock, so that no change falls between the two.
+        if (m_index != null) {
+            if (m_matches == null || m_matchesVersion != m_index.getVersion()) {
+                synchronized (m_index) {
+                    m_matches = m_index.search(m_searchString, m_includeSecretData);
+                    m_matchesVersion = m_index.getVersion();
+                }
+            }
+            return m_matches.contains(entity.getId());
+        }
+
         // If the search string is contained in the name, accepted
         if (entity.getName().trim().toLowerCase().contains(m_searchString)) {
             return true;
         }
         
         // If the search string is contained in the tags, accept it.
-        Set<String> allTags = new HashSet<>();
-        allTags.addAll(entity.getPublicData().getTags());
-        // If secret data is to be included, include searching the secret tags
-        if (m_includeSecretData) {
-            allTags.addAll(entity.getSecretData().getTags());
-        }
-        for (String tag : allTags) {
+        for (String tag : entity.getPublicData().getTags()) {
             if (tag.trim().toLowerCase().contains(m_searchString)) {
                 return true;
             }
         }
+        // If secret data is to be included, include searching the secret tags
+        if (m_includeSecretData) {
+            for (String tag : entity.getSecretData().getTags()) {
+                if (tag.trim().toLowerCase().contains(m_searchString)) {
+                    return true;
+                }
+            }
+        }
         
         // If the user-displayable Entity type string contains the search string, accept the Entity.
         if (entity.getType().getDisplayString().toLowerCase().contains(m_searchString)) {
@@ -1,19 +1,13 @@
 package campaignencyclopedia.display.swing;
 
-import campaignencyclopedia.data.Campaign;
 import campaignencyclopedia.data.CampaignDataManager;
-import campaignencyclopedia.data.Entity;
-import campaignencyclopedia.data.Relationship;
-import campaignencyclopedia.data.RelationshipManager;
-import campaignencyclopedia.data.TimelineEntry;
+import campaignencyclopedia.data.CampaignStatistics;
+import campaignencyclopedia.data.EntityType;
 import java.awt.Component;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.text.DecimalFormat;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.UUID;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import toolbox.display.EditListener;
@@ -40,7 +34,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
             throw new IllegalArgumentException("Parameter 'cdm' cannot be null.");
         }
         m_cdm = cdm;
-        m_stats = processData();
+        m_stats = cdm.getStatistics();
         initialize();
 
     }
@@ -94,7 +88,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Entity Count:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.entities), gbc);
+        m_content.add(buildValueLabel(m_stats.getEntities()), gbc);
 
         // Row One - Secret Entities
         gbc.gridx = 0;
@@ -102,7 +96,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Secret Entities:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.secretEntities), gbc);
+        m_content.add(buildValueLabel(m_stats.getSecretEntities()), gbc);
 
         // Row Two - PC Entities
         gbc.gridx = 0;
@@ -110,7 +104,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("PCs:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.pcs), gbc);
+        m_content.add(buildValueLabel(m_stats.getEntities(EntityType.PLAYER_CHARACTER)), gbc);
 
         // Row Three - NPC Entities
         gbc.gridx = 0;
@@ -118,7 +112,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("NPCs:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.npcs), gbc);
+        m_content.add(buildValueLabel(m_stats.getEntities(EntityType.NON_PLAYER_CHARACTER)), gbc);
 
         // Row Four - Place Entities
         gbc.gridx = 0;
@@ -126,7 +120,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Places:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.places), gbc);
+        m_content.add(buildValueLabel(m_stats.getEntities(EntityType.PLACE)), gbc);
 
         // Row Five - Event Entities
         gbc.gridx = 0;
@@ -134,7 +128,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Events:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.events), gbc);
+        m_content.add(buildValueLabel(m_stats.getEntities(EntityType.EVENT)), gbc);
 
         // Row Six - Event Entities
         gbc.gridx = 0;
@@ -142,7 +136,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Organizations:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.organizations), gbc);
+        m_content.add(buildValueLabel(m_stats.getEntities(EntityType.ORGANIZATION)), gbc);
 
         // Row Seven - Event Entities
         gbc.gridx = 0;
@@ -150,7 +144,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Items:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.items), gbc);
+        m_content.add(buildValueLabel(m_stats.getEntities(EntityType.ITEM)), gbc);
 
         // Row Eight - Description Words
         gbc.gridx = 0;
@@ -158,7 +152,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Total Descriptive Words:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.descriptionWords), gbc);
+        m_content.add(buildValueLabel(m_stats.getDescriptionWords()), gbc);
 
         // Row Nine - Secret Description Words
         gbc.gridx = 0;
@@ -166,7 +160,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Secret Descriptive Words:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.secretDescriptionWords), gbc);
+        m_content.add(buildValueLabel(m_stats.getSecretDescriptionWords()), gbc);
 
         // Row Ten - Description Words / Entity
         gbc.gridx = 0;
@@ -174,7 +168,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Descriptive Words / Entity:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.getDescriptionWordsPerEntity()), gbc);
+        m_content.add(buildValueLabel(perEntity(m_stats.getDescriptionWords())), gbc);
 
         // Row 11 - Secret Description Words / Entity
         gbc.gridx = 0;
@@ -182,7 +176,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Secret Descriptive Words / Entity:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.getSecretDescriptionWordsPerEntity()), gbc);
+        m_content.add(buildValueLabel(perEntity(m_stats.getSecretDescriptionWords())), gbc);
 
         // Row 12 - Tags
         gbc.gridx = 0;
@@ -190,7 +184,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Total Tags:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.tags), gbc);
+        m_content.add(buildValueLabel(m_stats.getTags()), gbc);
 
         // Row 13 - Secret Tags
         gbc.gridx = 0;
@@ -198,7 +192,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Secret Tags:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.secretTags), gbc);
+        m_content.add(buildValueLabel(m_stats.getSecretTags()), gbc);
 
         // Row 14 - Tags / Entity
         gbc.gridx = 0;
@@ -206,7 +200,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Total Tags / Entity:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.getTagsPerEntity()), gbc);
+        m_content.add(buildValueLabel(perEntity(m_stats.getTags())), gbc);
 
         // Row 15 - Tags / Entity
         gbc.gridx = 0;
@@ -214,7 +208,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Secret Tags / Entity:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.getSecretTagsPerEntity()), gbc);
+        m_content.add(buildValueLabel(perEntity(m_stats.getSecretTags())), gbc);
 
         // Row 16 - Relationships
         gbc.gridx = 0;
@@ -222,7 +216,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Total Relationships:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.relationships), gbc);
+        m_content.add(buildValueLabel(m_stats.getRelationships()), gbc);
 
         // Row 17 - Secret Relationships
         gbc.gridx = 0;
@@ -230,7 +224,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Secret Relationships:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.secretRelationships), gbc);
+        m_content.add(buildValueLabel(m_stats.getSecretRelationships()), gbc);
 
         // Row 18 - Timeline Entries
         gbc.gridx = 0;
@@ -238,7 +232,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Timeline Entries:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.timelineEntries), gbc);
+        m_content.add(buildValueLabel(m_stats.getTimelineEntries()), gbc);
 
         // Row 19 - Timeline Entries Linking to Secret Entities
         gbc.gridx = 0;
@@ -246,7 +240,7 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Secret Timeline Entries:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.secretTimelineEntries), gbc);
+        m_content.add(buildValueLabel(m_stats.getSecretTimelineEntries()), gbc);
 
         // Row 20 - Configured Months
         gbc.gridx = 0;
@@ -254,139 +248,18 @@ public class CampaignStatisticsDialogContent implements DialogContent {
         m_content.add(buildLabel("Months in Calendar:"), gbc);
 
         gbc.gridx = 1;
-        m_content.add(buildValueLabel(m_stats.configuredMonths), gbc);
+        m_content.add(buildValueLabel(m_stats.getConfiguredMonths()), gbc);
     }
 
-    private CampaignStatistics processData() {
-        CampaignStatistics cs = new CampaignStatistics();
-        Campaign campaign = m_cdm.getData();
-
-        for (Entity entity : campaign.getEntities()) {
-            // Entities
-            cs.entities += 1;
-            if (entity.isSecret()) {
-                cs.secretEntities += 1;
-            }
-
-            // Entity Types
-            switch(entity.getType()) {
-                case EVENT:
-                    cs.events += 1;
-                    break;
-                case ITEM:
-                    cs.items += 1;
-                    break;
-                case NON_PLAYER_CHARACTER:
-                    cs.npcs += 1;
-                    break;
-                case ORGANIZATION:
-                    cs.organizations += 1;
-                    break;
-                case PLACE:
-                    cs.places += 1;
-                    break;
-                case PLAYER_CHARACTER:
-                    cs.pcs += 1;
-                    break;
-            }
-
-            // Description
-            String description = entity.getPublicData().getDescription().trim();
-            String secretDescription = entity.getSecretData().getDescription().trim();
-            if (!secretDescription.isEmpty()) {
-                cs.secretDescriptionWords += secretDescription.split(" ").length;
-                cs.descriptionWords += secretDescription.split(" ").length;
-            }
-            if (!description.isEmpty()) {
-                cs.descriptionWords += description.split(" ").length;
-            }
-
-
-            // Tags
-            int secretTags = entity.getSecretData().getTags().size();
-            cs.secretTags += secretTags;
-            cs.tags += (entity.getPublicData().getTags().size() + secretTags);
-        }
-
-        // Relationships
-        for (RelationshipManager relationshipManager : campaign.getAllRelationships().values()) {
-            for (Relationship rel : relationshipManager.getAllRelationships()) {
-                if (rel.isSecret()) {
-                    cs.secretRelationships++;
-                }
-                cs.relationships++;
-            }
-        }
-
-        // Timeline Entries
-        Set<TimelineEntry> timelineEntries = campaign.getTimelineEntries();
-        cs.timelineEntries = timelineEntries.size();
-        for (TimelineEntry tle : timelineEntries) {
-            if (tle.isSecret()) {
-                cs.secretTimelineEntries += 1;
-            }
-        }
-
-        // Campaign Calendar Configuration
-        cs.configuredMonths = campaign.getCalendar().getMonths().size();
-
-        return cs;
-    }
-
-    private class CampaignStatistics {
-        private int entities = 0;
-        private int secretEntities = 0;
-
-        private int events = 0;
-        private int pcs = 0;
-        private int npcs = 0;
-        private int places = 0;
-        private int organizations = 0;
-        private int items = 0;
-
-        private int descriptionWords = 0;
-        private int secretDescriptionWords = 0;
-
-        private int tags = 0;
-        private int secretTags = 0;
-
-        private int relationships = 0;
-        private int secretRelationships = 0;
-
-        private int timelineEntries = 0;
-        private int secretTimelineEntries = 0;
-
-        private int configuredMonths = 0;
-
-        /** Decimal format for displaying fractional values. */
-        private final DecimalFormat df = new DecimalFormat("0.00");
-
-        private String getDescriptionWordsPerEntity() {
-            if (entities != 0) {
-                return String.valueOf(df.format(descriptionWords / (1.0d * entities)));
-            }
-            return "N/A";
-        }
-
-        private String getSecretDescriptionWordsPerEntity() {
-            if (entities != 0) {
-                return String.valueOf(df.format(secretDescriptionWords / (1.0d * entities)));
-            }
-            return "N/A";
-        }
-
-        private String getTagsPerEntity() {
-            if (entities != 0) {
-                return String.valueOf(df.format(tags / (1.0d * entities)));
-            }
-            return "N/A";
-        }
-
-        private String getSecretTagsPerEntity() {
-            if (entities != 0) {
-                return String.valueOf(df.format(secretTags / (1.0d * entities)));
-            }
-            return "N/A";
+    /**
+     * Returns the supplied count per Entity, formatted for display, or "N/A" if there are no Entities.
+     * @param count the count to divide among the Entities.
+     * @return the formatted count per Entity.
+     */
+    private String perEntity(int count) {
+        if (m_stats.getEntities() != 0) {
+            return String.valueOf(new DecimalFormat("0.00").format(count / (1.0d * m_stats.getEntities())));
         }
+        return "N/A";
     }
-}
\ No newline at end of file
+}
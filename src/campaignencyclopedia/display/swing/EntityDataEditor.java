@@ -1,6 +1,7 @@
 package campaignencyclopedia.display.swing;
 
 import campaignencyclopedia.data.EntityData;
+import campaignencyclopedia.data.TagIndex;
 import toolbox.display.EditListener;
 
 /**
@@ -15,6 +16,9 @@ public class EntityDataEditor {
     /** True if this entity data display is to be for secret data. */
     private final boolean m_isSecret;
 
+    /** The index to complete tags from, or null. */
+    private final TagIndex m_tagIndex;
+
     /** An editor for this entity data's tags. */
     private TagsEditor m_tags;
 
@@ -27,8 +31,19 @@ public class EntityDataEditor {
      * @param isSecret true if the entity data displayed on this instance is secrete entity data.
      */
     public EntityDataEditor(EditListener editListener, boolean isSecret) {
+        this(editListener, isSecret, null);
+    }
+
+    /**
+     * Creates a new EntityDataDisplay whose tags editor completes tags from the supplied index.
+     * @param editListener an edit listener.
+     * @param isSecret true if the entity data displayed on this instance is secrete entity data.
+     * @param tagIndex the index to complete tags from, or null if tags should not be completed.
+     */
+    public EntityDataEditor(EditListener editListener, boolean isSecret, TagIndex tagIndex) {
         m_editListener = editListener;
         m_isSecret = isSecret;
+        m_tagIndex = tagIndex;
         initialize();
     }
 
@@ -74,10 +89,10 @@ public class EntityDataEditor {
         // inti displays
         if (m_isSecret) {
             m_description = new DescriptionEditor("Secret Description", m_editListener);
-            m_tags = new TagsEditor("Secret Tags", m_editListener);
+            m_tags = new TagsEditor("Secret Tags", m_editListener, m_tagIndex, true);
         } else {
             m_description = new DescriptionEditor("Description", m_editListener);
-            m_tags = new TagsEditor("Tags", m_editListener);
+            m_tags = new TagsEditor("Tags", m_editListener, m_tagIndex, false);
         }
     }
 }
@@ -1,6 +1,5 @@
 package campaignencyclopedia.display.swing;
 
-import campaignencyclopedia.data.ComparisonTools;
 import campaignencyclopedia.data.DataAccessor;
 import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.Relationship;
@@ -72,9 +71,9 @@ public class EntityRelationshipEditor {
             @Override
             public int compare(Relationship relationship, Relationship otherRelationship) {
                 if (relationship.compareTo(otherRelationship) == 0) {
-                    String relationshipName = ComparisonTools.trimForSort(m_accessor.getEntity(relationship.getRelatedEntity()).getName());
-                    String otherName = ComparisonTools.trimForSort(m_accessor.getEntity(otherRelationship.getRelatedEntity()).getName());
-                    return (relationshipName.compareTo(otherName));
+                    Entity relatedEntity = m_accessor.getEntity(relationship.getRelatedEntity());
+                    Entity otherEntity = m_accessor.getEntity(otherRelationship.getRelatedEntity());
+                    return relatedEntity.compareTo(otherEntity);
                 } else {
                     return relationship.compareTo(otherRelationship);
                 }
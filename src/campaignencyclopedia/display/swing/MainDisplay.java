@@ -3,12 +3,15 @@ package campaignencyclopedia.display.swing;
 import campaignencyclopedia.data.Campaign;
 import campaignencyclopedia.data.CampaignDataManager;
 import campaignencyclopedia.data.ColoredDisplayable;
+import campaignencyclopedia.data.DataAccessor;
+import campaignencyclopedia.data.DataBatch;
 import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.EntityData;
+import campaignencyclopedia.data.EntitySearchIndex;
 import campaignencyclopedia.data.EntityType;
 import campaignencyclopedia.data.Relationship;
 import campaignencyclopedia.data.RelationshipManager;
-import campaignencyclopedia.data.TimelineEntry;
+import campaignencyclopedia.data.SecrecyEngine;
 import campaignencyclopedia.display.EntityDisplayFilter;
 import campaignencyclopedia.display.UserDisplay;
 import campaignencyclopedia.display.swing.action.SaveHelper;
@@ -32,8 +35,6 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -137,6 +138,12 @@ public class MainDisplay implements EditListener, UserDisplay {
     /** A campaign data manager, which keeps track of the current data. */
     private final CampaignDataManager m_cdm;
 
+    /** The index the entity search box queries; kept up to date as a listener on m_cdm. */
+    private final EntitySearchIndex m_searchIndex;
+
+    /** Cascades the secrecy of committed entities to the data referring to them. */
+    private final SecrecyEngine m_secrecyEngine;
+
     /** The navigation path for this display. */
     private NavigationPath m_navPath;
 
@@ -161,6 +168,9 @@ public class MainDisplay implements EditListener, UserDisplay {
      */
     public MainDisplay(CampaignDataManager cdm) {
         m_cdm = cdm;
+        m_searchIndex = new EntitySearchIndex(cdm);
+        m_cdm.addListener(m_searchIndex);
+        m_secrecyEngine = new SecrecyEngine(cdm);
         initialize();
     }
 
@@ -185,45 +195,20 @@ public class MainDisplay implements EditListener, UserDisplay {
     /** Adds the currently displayed Entity to the CampaignDataManager and clears the display. */
     private void commitDisplayedDataToCdm() {
         // Get shown Entity
-        Entity entity = getDisplayedEntity();
+        final Entity entity = getDisplayedEntity();
         
         // Get Displayed Relationships and add them.
-        RelationshipManager relMgr = new RelationshipManager();
+        RelationshipManager.Builder relationships = new RelationshipManager.Builder();
         for (Relationship rel : m_relationshipEditor.getData()) {
             // If the entity is secret and it has any public relationships, they must now be secret, so update them.
             if (entity.isSecret() && !rel.isSecret()) {
-                relMgr.addRelationship(new Relationship(rel.getEntityId(), rel.getRelatedEntity(), rel.getRelationshipText(), true));
+                relationships.add(new Relationship(rel.getEntityId(), rel.getRelatedEntity(), rel.getRelationshipText(),
+                                                   true));
             } else {
-                relMgr.addRelationship(rel);
-            }
-        }
-
-        // If the entity is secret:
-        //  - relationships owned by other entities pointing to it must be secret, so update them.
-        //  - Timeline events pointing to it must be secret, so update them.
-        if (entity.isSecret()) {
-            for (Entity otherEntity : m_cdm.getAllEntities()) {
-                RelationshipManager otherRelMgr = m_cdm.getRelationshipsForEntity(otherEntity.getId());
-                Set<Relationship> requireUpdate = new HashSet<>();
-                for (Relationship rel : new HashSet<>(otherRelMgr.getPublicRelationships())) {
-                    if (!rel.isSecret() && rel.getRelatedEntity().equals(entity.getId())) {
-                        otherRelMgr.remove(rel);
-                        requireUpdate.add(new Relationship(rel.getEntityId(), rel.getRelatedEntity(), rel.getRelationshipText(), true));
-                    }
-                }
-                // Clear the public data from the relationship manager and add in the newly updated stuff.
-                otherRelMgr.addAllRelationships(requireUpdate);
-                m_cdm.addOrUpdateAllRelationships(otherEntity.getId(), otherRelMgr);
-            }
-
-            // Make secret any Timeline Entries that now must be.
-            for (TimelineEntry tle : m_cdm.getTimelineData()) {
-                if (tle.getAssociatedId().equals(entity.getId())) {
-                    m_cdm.removeTimelineEntry(tle.getId());
-                    m_cdm.addOrUpdateTimelineEntry(new TimelineEntry(tle.getTitle(), tle.getMonth(), tle.getYear(), true, tle.getAssociatedId(), tle.getId()));
-                }
+                relationships.add(rel);
             }
         }
+        final RelationshipManager relMgr = relationships.build();
 
         // Check to see if the Entity is already in our data manager
         // If it is, remove it from the SortedListModel.
@@ -232,12 +217,23 @@ public class MainDisplay implements EditListener, UserDisplay {
             m_entityModel.removeElement(cdmEntity);
         }
 
-        // Add the new or updated Enitty to both the CDM and the SortedListModel
-        m_cdm.addOrUpdateEntity(entity);
+        // Apply all of the changes as one batch, so that listeners are alerted once rather than once per change.
+        m_cdm.runBatch(new DataBatch() {
+            @Override
+            public void apply(DataAccessor accessor) {
+                // Add the new or updated Entity and its Relationships to the CDM
+                accessor.addOrUpdateEntity(entity);
+                accessor.addOrUpdateAllRelationships(entity.getId(), relMgr);
+
+                // If the entity is secret, relationships owned by other entities pointing to it and timeline entries
+                // associated with it must be secret too, so update them.
+                m_secrecyEngine.propagate(entity.getId());
+            }
+        });
+
+        // Add the new or updated Enitty to the SortedListModel
         m_entityModel.addElement(entity);
         m_entityList.setSelectedValue(entity, true);
-        // Add/Update the Relationships
-        m_cdm.addOrUpdateAllRelationships(entity.getId(), relMgr);
         m_displayedEntityId = entity.getId();
 
         // Force Update of display for relationship changes.
@@ -360,6 +356,7 @@ public class MainDisplay implements EditListener, UserDisplay {
         m_searchBox.requestFocus();
         updateNavButtons();
         m_frame.setVisible(true);
+        SaveHelper.recoverUnsavedCampaign(m_frame, this, m_cdm);
     }
 
     /** Initialize this display's components. */
@@ -538,8 +535,8 @@ public class MainDisplay implements EditListener, UserDisplay {
         m_typeSelector.setBorder(BorderFactory.createLineBorder(MetalLookAndFeel.getTextHighlightColor()));
         
 
-        m_public = new EntityDataEditor(this, false);
-        m_secret = new EntityDataEditor(this, true);
+        m_public = new EntityDataEditor(this, false, m_cdm.getTagIndex());
+        m_secret = new EntityDataEditor(this, true, m_cdm.getTagIndex());
         m_relationshipEditor = new EntityRelationshipEditor(m_frame, m_cdm, this, "Relationships", this);
 
         Insets insets = new Insets(3, 3, 3, 3);
@@ -897,9 +894,9 @@ public class MainDisplay implements EditListener, UserDisplay {
         String searchString = m_searchBox.getText().trim();
         Object type = m_entityTypeFilterComboBox.getSelectedItem();
         if (type instanceof EntityType) {
-            m_entityModel.setFilter(new EntityDisplayFilter(searchString, (EntityType)type, !m_filterCheckBox.isSelected()));
+            m_entityModel.setFilter(new EntityDisplayFilter(searchString, (EntityType)type, !m_filterCheckBox.isSelected(), m_searchIndex));
         } else {
-            m_entityModel.setFilter(new EntityDisplayFilter(searchString, null, !m_filterCheckBox.isSelected()));
+            m_entityModel.setFilter(new EntityDisplayFilter(searchString, null, !m_filterCheckBox.isSelected(), m_searchIndex));
         }
     }
 
@@ -1,5 +1,6 @@
 package campaignencyclopedia.display.swing;
 
+import campaignencyclopedia.data.TagIndex;
 import java.awt.Component;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -8,12 +9,14 @@ import java.util.List;
 import java.util.Set;
 import javax.swing.JLabel;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import toolbox.display.EditListener;
 
 /**
- * An editor for the tags associated with an Entity.
+ * An editor for the tags associated with an Entity.  If given a TagIndex, the tag being typed is completed inline with
+ * the most used matching tag; the completed text is left selected so that typing on replaces it.
  * @author adam
  */
 public class TagsEditor {
@@ -26,9 +29,31 @@ public class TagsEditor {
 
     private EditListener m_editListener;
 
+    /** The index to complete tags from, or null if tags are not completed. */
+    private final TagIndex m_tagIndex;
+
+    /** True if secret tags should be offered as completions. */
+    private final boolean m_includeSecret;
+
+    /** True while this editor is changing its own text, which must not be completed. */
+    private boolean m_adjusting;
+
     public TagsEditor(String title, EditListener editListener) {
+        this(title, editListener, null, false);
+    }
+
+    /**
+     * Creates a new TagsEditor which completes tags from the supplied index.
+     * @param title the title of the editor.
+     * @param editListener a listener for edits made in the editor.
+     * @param tagIndex the index to complete tags from, or null if tags should not be completed.
+     * @param includeSecret true if secret tags should be offered as completions.
+     */
+    public TagsEditor(String title, EditListener editListener, TagIndex tagIndex, boolean includeSecret) {
         m_label = new JLabel(title);
         m_editListener = editListener;
+        m_tagIndex = tagIndex;
+        m_includeSecret = includeSecret;
 
         m_tagsArea = new JTextArea(4, 30);
         m_tagsArea.setWrapStyleWord(true);
@@ -37,6 +62,17 @@ public class TagsEditor {
             @Override
             public void insertUpdate(DocumentEvent de) {
                 m_editListener.edited();
+                // Complete only as single characters are typed.  The document may not be changed from within its
+                // own notification, so the completion is made afterward.
+                if (m_tagIndex != null && !m_adjusting && de.getLength() == 1) {
+                    final int caret = de.getOffset() + 1;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            complete(caret);
+                        }
+                    });
+                }
             }
             @Override
             public void removeUpdate(DocumentEvent de) {
@@ -77,7 +113,12 @@ public class TagsEditor {
                 bldr.append(", ");
             }
         }
-        m_tagsArea.setText(bldr.toString());
+        m_adjusting = true;
+        try {
+            m_tagsArea.setText(bldr.toString());
+        } finally {
+            m_adjusting = false;
+        }
     }
 
     public Component getTitle() {
@@ -96,4 +137,38 @@ public class TagsEditor {
         m_tagsArea.setText("");
         m_editListener.edited();
     }
+
+    /**
+     * Completes the tag ending at the supplied caret position with the most used indexed tag that it begins, if the
+     * caret has not moved since and is at the end of a tag.
+     * @param caret the position just after the typed character.
+     */
+    private void complete(int caret) {
+        String text = m_tagsArea.getText();
+        if (caret != m_tagsArea.getCaretPosition() || caret > text.length()) {
+            return;
+        }
+        if (caret < text.length() && text.charAt(caret) != ',') {
+            return;
+        }
+        int start = text.lastIndexOf(',', caret - 1) + 1;
+        while (start < caret && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        String prefix = text.substring(start, caret);
+        if (prefix.trim().isEmpty()) {
+            return;
+        }
+        List<String> tags = m_tagIndex.getTagsStartingWith(prefix, m_includeSecret, 1);
+        if (!tags.isEmpty() && tags.get(0).length() > prefix.length()) {
+            String completion = tags.get(0).substring(prefix.length());
+            m_adjusting = true;
+            try {
+                m_tagsArea.insert(completion, caret);
+            } finally {
+                m_adjusting = false;
+            }
+            m_tagsArea.select(caret, caret + completion.length());
+        }
+    }
 }
@@ -18,8 +18,8 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 import javax.swing.AbstractAction;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -65,7 +65,7 @@ public class TimelineListDisplay {
     /** An edit listener. */
     private EditListener m_ediListener;
 
-    public TimelineListDisplay(Set<TimelineEntry> entries, EntityDisplay display, CampaignDataManager cdm) {
+    public TimelineListDisplay(Collection<TimelineEntry> entries, EntityDisplay display, CampaignDataManager cdm) {
         if (entries == null) {
             throw new IllegalArgumentException("Parameter 'events' cannot be null.");
         }
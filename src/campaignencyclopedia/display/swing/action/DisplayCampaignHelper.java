@@ -1,6 +1,7 @@
 package campaignencyclopedia.display.swing.action;
 
 import campaignencyclopedia.data.Campaign;
+import campaignencyclopedia.data.CampaignChangeLog;
 import campaignencyclopedia.data.CampaignDataManager;
 import campaignencyclopedia.display.UserDisplay;
 
@@ -22,4 +23,18 @@ public class DisplayCampaignHelper {
         cdm.setData(campaign);
         display.displayCampaign(campaign);
     }
+
+    /**
+     * Sets the supplied campaign in the data manager, along with the log to tell of changes to it, and shows it on the
+     * supplied user display.
+     *
+     * @param display the UserDisplay to show the Campaign on.
+     * @param cdm the data manager to update with new campaign data.
+     * @param campaign the Campaign to display.
+     * @param changeLog the log to tell of changes to the campaign, or null to tell none.
+     */
+    static void displayCampaign(UserDisplay display, CampaignDataManager cdm, Campaign campaign, CampaignChangeLog changeLog) {
+        cdm.setData(campaign, changeLog);
+        display.displayCampaign(campaign);
+    }
 }
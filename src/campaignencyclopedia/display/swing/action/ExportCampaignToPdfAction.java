@@ -4,7 +4,6 @@ import campaignencyclopedia.data.Campaign;
 import campaignencyclopedia.data.CampaignDataManager;
 import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.EntityData;
-import campaignencyclopedia.data.Month;
 import campaignencyclopedia.data.TimelineEntry;
 import campaignencyclopedia.display.swing.MainDisplay;
 import java.awt.Frame;
@@ -15,10 +14,7 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFileChooser;
@@ -165,89 +161,36 @@ public class ExportCampaignToPdfAction extends AbstractExtractToPdfAction {
     private void exportTimeline(Pdf pdf) throws IOException {
         pdf.renderLine("Campaign Timeline", PdfFont.HELVETICA_BOLD, SECTION);
         pdf.insertBlankLine(SECTION);
-        Map<TimelineDate, List<TimelineEntry>> timeline = new HashMap<>();
-        for (TimelineEntry tle : m_cdm.getTimelineData()) {
+        // The entries arrive in chronological order, so a new date heading is started whenever the date changes.
+        TimelineEntry previous = null;
+        for (TimelineEntry tle : m_cdm.getTimelineEntries(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE)) {
             // If secret and secrets not permitted, skip it.
             if (tle.isSecret() && !m_includeSecrets) {
                 continue;
             }
-            TimelineDate tld = new TimelineDate(tle.getMonth(), tle.getYear());
-            if (timeline.get(tld) == null) {
-                timeline.put(tld, new ArrayList<TimelineEntry>());
-            }
-            timeline.get(tld).add(tle);
-        }
-        List<TimelineDate> timelineDates = new ArrayList<>(timeline.keySet());
-        Collections.sort(timelineDates);
-        for (TimelineDate date : timelineDates) {
-            pdf.renderLine(date.month.getName() + " " + date.year, PdfFont.HELVETICA_BOLD);
-            List<TimelineEntry> entries = timeline.get(date);
-            Collections.sort(entries);
-            for (TimelineEntry tle : entries) {
-                String msg;
-                if (tle.getTitle() == null || tle.getTitle().isEmpty()) {
-                    msg = m_cdm.getEntity(tle.getAssociatedId()).getName();
-                } else {
-                    msg = tle.getTitle();
-                }
-                if (tle.isSecret()) {
-                    msg += " (secret)";
-                    pdf.renderLine(msg, SECRET_COLOR);
-                } else {
-                    pdf.renderLine(msg);
+            if (previous == null || previous.getYear() != tle.getYear() || !previous.getMonth().equals(tle.getMonth())) {
+                if (previous != null) {
+                    pdf.insertBlankLine(6);
                 }
+                pdf.renderLine(tle.getMonth().getName() + " " + tle.getYear(), PdfFont.HELVETICA_BOLD);
             }
-            pdf.insertBlankLine(6);
-        }
-        pdf.insertPageBreak();
-    }
-
-    /** A Helper class for organizing timeline data for PDF rendering. */
-    private class TimelineDate implements Comparable<TimelineDate> {
-        private final Month month;
-        private final int year;
-
-        private TimelineDate(Month m, int y) {
-            month = m;
-            year = y;
-        }
-
-        @Override
-        public int hashCode() {
-            int hash = 5;
-            hash = 67 * hash + Objects.hashCode(this.month);
-            hash = 67 * hash + this.year;
-            return hash;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            final TimelineDate other = (TimelineDate) obj;
-            if (!Objects.equals(this.month, other.month)) {
-                return false;
+            previous = tle;
+            String msg;
+            if (tle.getTitle() == null || tle.getTitle().isEmpty()) {
+                msg = m_cdm.getEntity(tle.getAssociatedId()).getName();
+            } else {
+                msg = tle.getTitle();
             }
-            if (this.year != other.year) {
-                return false;
+            if (tle.isSecret()) {
+                msg += " (secret)";
+                pdf.renderLine(msg, SECRET_COLOR);
+            } else {
+                pdf.renderLine(msg);
             }
-            return true;
         }
-
-        /** {@Override} */
-        @Override
-        public int compareTo(TimelineDate t) {
-            // Compare by Year
-            if (year > t.year) {
-                return 1;
-            } else if (year < t.year) {
-                return -1;
-            }
-            return (month.compareTo(t.month));
+        if (previous != null) {
+            pdf.insertBlankLine(6);
         }
+        pdf.insertPageBreak();
     }
-}
\ No newline at end of file
+}
@@ -42,8 +42,10 @@ public class NewCampaignAction extends AbstractAction {
             @Override
             public void run() {
                 Campaign campaign = content.getCampaign();
+                SaveHelper.closeCampaign(m_cdm);
                 m_cdm.setFileName(null);
-                DisplayCampaignHelper.displayCampaign(m_display, m_cdm, campaign);
+                DisplayCampaignHelper.displayCampaign(m_display, m_cdm, campaign, null);
+                SaveHelper.startRecoveryLog(m_cdm);
             }
         };
 
@@ -2,19 +2,26 @@ package campaignencyclopedia.display.swing.action;
 
 import campaignencyclopedia.data.Campaign;
 import campaignencyclopedia.data.CampaignDataManager;
+import campaignencyclopedia.data.persistence.BinaryCampaignTranslator;
+import campaignencyclopedia.data.persistence.CampaignCompression;
+import campaignencyclopedia.data.persistence.CampaignJournal;
 import campaignencyclopedia.data.persistence.CampaignTranslator;
+import campaignencyclopedia.data.persistence.MappedCampaignFile;
 import campaignencyclopedia.display.UserDisplay;
 import java.awt.Frame;
 import java.awt.event.ActionEvent;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.AbstractAction;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import toolbox.file.FileTools;
 import toolbox.file.persistence.json.JsonException;
 
 /**
@@ -35,6 +42,9 @@ public class OpenCampaignAction extends AbstractAction {
     /** A Logger. */
     private static final Logger LOGGER = Logger.getLogger(SaveCampaignAction.class.getName());
 
+    /** The size from which binary save files are memory-mapped, their Entities' data read only when needed. */
+    private static final long MAPPED_FILE_SIZE = 64 * 1024 * 1024;
+
     /**
      * Creates an instance of the OpenCampaignAction.
      * @param window a window to center the dialogs launched by this action.
@@ -55,7 +65,8 @@ public class OpenCampaignAction extends AbstractAction {
     @Override
     public void actionPerformed(ActionEvent ae) {
         final JFileChooser chooser = new JFileChooser("./campaigns");
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("Campaign Files", "campaign");
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("Campaign Files", "campaign", BinaryCampaignTranslator.FILE_EXTENSION,
+                                                                     CampaignCompression.FILE_EXTENSION);
         chooser.setFileFilter(filter);
         
         if (chooser.showOpenDialog(m_window) == JFileChooser.APPROVE_OPTION) {
@@ -63,11 +74,25 @@ public class OpenCampaignAction extends AbstractAction {
             new Thread(new Runnable() {
                 @Override
                 public void run() {
-                    try {
-                        String jsonCampaign = FileTools.readFile(selectedFile.getAbsolutePath());
-                        Campaign campaign = CampaignTranslator.fromJson(jsonCampaign);
-                        m_cdm.setFileName(selectedFile.getAbsolutePath());
-                        DisplayCampaignHelper.displayCampaign(m_userDisplay, m_cdm, campaign);
+                    // Save recent edits to the campaign being replaced, and release its journal, before reading the
+                    // file, which may be the same one.
+                    SaveHelper.closeCampaignAndWait(m_cdm);
+                    try (InputStream file = new BufferedInputStream(new FileInputStream(selectedFile));
+                         InputStream in = CampaignCompression.decompress(file)) {
+                        Campaign campaign;
+                        if (!BinaryCampaignTranslator.isBinary(in)) {
+                            campaign = CampaignTranslator.fromJson(new InputStreamReader(in));
+                        } else if (in == file && selectedFile.length() >= MAPPED_FILE_SIZE) {
+                            // Only a file which is not compressed can be mapped.
+                            campaign = MappedCampaignFile.open(selectedFile).getCampaign();
+                        } else {
+                            campaign = BinaryCampaignTranslator.read(in);
+                        }
+                        String path = selectedFile.getAbsolutePath();
+                        campaign = CampaignJournal.replay(campaign, CampaignJournal.fileFor(path));
+                        CampaignJournal journal = SaveHelper.openJournal(path, selectedFile.length(), m_cdm);
+                        m_cdm.setFileName(path);
+                        DisplayCampaignHelper.displayCampaign(m_userDisplay, m_cdm, campaign, journal);
                     } catch (JsonException jex) {
                         String msg = "Error openming file:  " + selectedFile.getName() + ".  Is this a valid campaign file?";
                         JOptionPane.showMessageDialog(m_window, msg, "Unable to Open File", JOptionPane.ERROR_MESSAGE);   
@@ -2,16 +2,19 @@ package campaignencyclopedia.display.swing.action;
 
 import campaignencyclopedia.data.Campaign;
 import campaignencyclopedia.data.CampaignDataManager;
-import campaignencyclopedia.data.persistence.CampaignTranslator;
+import campaignencyclopedia.data.persistence.BinaryCampaignTranslator;
+import campaignencyclopedia.data.persistence.CampaignCompression;
+import campaignencyclopedia.data.persistence.CampaignJournal;
+import campaignencyclopedia.display.UserDisplay;
 import java.awt.Frame;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileFilter;
-import toolbox.file.FileTools;
-import toolbox.file.persistence.json.JsonException;
 
 /**
  * A class that helps to support saving data.
@@ -22,6 +25,15 @@ public class SaveHelper {
     /** Logger. */
     private static final Logger LOGGER = Logger.getLogger(SaveHelper.class.getName());
 
+    /** The file name suffix of binary save files. */
+    private static final String BINARY_EXTENSION = "." + BinaryCampaignTranslator.FILE_EXTENSION;
+
+    /** The file name suffix of compressed save files. */
+    private static final String COMPRESSED_EXTENSION = "." + CampaignCompression.FILE_EXTENSION;
+
+    /** The service which writes all saves. */
+    private static final SaveService SAVE_SERVICE = new SaveService();
+
     /**
      * A helper function to save the campaign.  If a filename has been specified, this method simply uses it,
      * otherwise, 'save' will be called which will prompt the user for a destination file name.
@@ -48,33 +60,50 @@ public class SaveHelper {
                 return "Campaign files";
             }
         });
+        final FileFilter binaryFilter = new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getAbsolutePath().endsWith(BINARY_EXTENSION);
+            }
+
+            @Override
+            public String getDescription() {
+                return "Binary campaign files";
+            }
+        };
+        chooser.addChoosableFileFilter(binaryFilter);
+        final FileFilter compressedFilter = new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getAbsolutePath().endsWith(".campaign" + COMPRESSED_EXTENSION);
+            }
+
+            @Override
+            public String getDescription() {
+                return "Compressed campaign files";
+            }
+        };
+        chooser.addChoosableFileFilter(compressedFilter);
 
         if (chooser.showSaveDialog(parent) == JFileChooser.APPROVE_OPTION) {
-            new Thread(new Runnable(){
-                @Override
-                public void run() {
-                    try {
-                        File selectedFile = chooser.getSelectedFile();
-                        String path = selectedFile.getAbsolutePath().trim();
-                        String campaign = CampaignTranslator.toJson(cdm.getData(), cdm, includeSecrets);
-                        if (!path.endsWith(".campaign")) {
-                            path = path + ".campaign";
-                        }
-                        FileTools.writeFile(path, campaign);
-                        cdm.setFileName(path);
-                    } catch (IOException ex) {
-                        LOGGER.log(Level.SEVERE, "Failed to save the campaign.", ex);
-                    } catch (JsonException jex) {
-                        LOGGER.log(Level.SEVERE, "Failed to translate the campaign.", jex);
-                    }
-                }
-            }).start();
+            File selectedFile = chooser.getSelectedFile();
+            String path = selectedFile.getAbsolutePath().trim();
+            boolean named = path.endsWith(".campaign") || path.endsWith(BINARY_EXTENSION);
+            if (chooser.getFileFilter() == binaryFilter && !path.endsWith(BINARY_EXTENSION)) {
+                path = path + BINARY_EXTENSION;
+            } else if (chooser.getFileFilter() == compressedFilter && !path.endsWith(COMPRESSED_EXTENSION)) {
+                path = (named ? path : path + ".campaign") + COMPRESSED_EXTENSION;
+            } else if (!named && !path.endsWith(COMPRESSED_EXTENSION)) {
+                path = path + ".campaign";
+            }
+            SAVE_SERVICE.save(path, cdm, includeSecrets);
         }
     }
 
     /**
      * A helper function to autosave the campaign.  If a filename has been specified, this method simply uses it,
-     * otherwise, 'save' will be called which will prompt the user for a destination file name.
+     * otherwise, 'save' will be called which will prompt the user for a destination file name.  Autosaves are written
+     * on the save thread shortly afterwards, with bursts of autosaves written once, so this never waits on the disk.
      *
      * @param frame the top-level window to position dialogs launched by this static method when called.
      * @param cdm the CampaignDataManager to get the data to save from.
@@ -83,16 +112,136 @@ public class SaveHelper {
      */
     public static void autosave(Frame frame, CampaignDataManager cdm, boolean includeSecrets) {
         if (cdm.getSaveFileName() != null) {
-            Campaign campaign = cdm.getData();
+            SAVE_SERVICE.requestAutosave(cdm);
+        } else {
+            SaveHelper.save(frame, cdm, includeSecrets);
+        }
+    }
+
+    /**
+     * Closes the campaign of the supplied CampaignDataManager, so that it can be given another campaign without losing
+     * recent edits to the current one: any pending autosave is written, with the campaign and save file name it has
+     * now, and the campaign is saved in full if it has changes in its journal.  Changes made to the campaign afterwards
+     * are not journaled.  This does not wait for the writes.
+     * @param cdm the CampaignDataManager of the campaign to close.
+     */
+    public static void closeCampaign(CampaignDataManager cdm) {
+        SAVE_SERVICE.closeCampaign(cdm);
+    }
+
+    /**
+     * Closes the campaign of the supplied CampaignDataManager as {@link #closeCampaign(CampaignDataManager)} does, and
+     * waits for the writes, so that its save file is up to date and its journal closed when this returns.  Must not be
+     * called on the event dispatch thread.
+     * @param cdm the CampaignDataManager of the campaign to close.
+     */
+    public static void closeCampaignAndWait(CampaignDataManager cdm) {
+        SaveService.await(SAVE_SERVICE.closeCampaign(cdm));
+    }
+
+    /**
+     * Opens the journal of the save file at the supplied path, to be set as the change log of the campaign read from
+     * it, and makes it the journal autosaves append to.  Any journal of the campaign open before is closed first.  The
+     * journal is opened on the save thread, after the saves already requested, and this waits for it.
+     * @param path the path of the save file.
+     * @param snapshotSize the size of the save file.
+     * @param cdm the CampaignDataManager the campaign is set on.
+     * @return the journal, or null if it could not be opened, in which case autosaves save the campaign in full.
+     */
+    public static CampaignJournal openJournal(String path, long snapshotSize, CampaignDataManager cdm) {
+        return SAVE_SERVICE.openJournal(path, snapshotSize, cdm);
+    }
+
+    /**
+     * Starts logging the changes made to the campaign of the supplied CampaignDataManager, which has no save file, to a
+     * recovery log, so that they can be recovered if the application exits before the campaign is saved.  Any journal
+     * or recovery log of the campaign open before is closed.
+     * @param cdm the CampaignDataManager of the campaign.
+     */
+    public static void startRecoveryLog(CampaignDataManager cdm) {
+        SAVE_SERVICE.startRecoveryLog(cdm, null);
+    }
+
+    /**
+     * Offers to recover each campaign left in a recovery log when the application last exited, most recent first,
+     * until one is recovered, and starts logging the changes made to the displayed campaign to a recovery log.  Logs of
+     * campaigns holding nothing, and those the user discards, are deleted; those the user postpones are offered again
+     * at the next launch.  Logs in use by another instance of the application are left alone.
+     *
+     * @param parent the top-level window to position dialogs launched by this static method when called.
+     * @param display the display to show a recovered campaign on.
+     * @param cdm the CampaignDataManager to recover a campaign into, which has no save file.
+     */
+    public static void recoverUnsavedCampaign(Frame parent, UserDisplay display, CampaignDataManager cdm) {
+        for (File file : SaveService.listRecoveryLogs()) {
+            CampaignJournal journal;
+            Campaign campaign;
             try {
-                FileTools.writeFile(cdm.getSaveFileName(), CampaignTranslator.toJson(campaign, cdm, true));
+                journal = CampaignJournal.open(file, 0);
             } catch (IOException ex) {
-                LOGGER.log(Level.SEVERE, "Failed to save campaign.", ex);
-            } catch (JsonException jex) {
-                LOGGER.log(Level.SEVERE, "Failed to translate the campaign.", jex);
+                LOGGER.log(Level.FINE, "Skipping the recovery log '" + file + "'.", ex);
+                continue;
             }
-        } else {
-            SaveHelper.save(frame, cdm, includeSecrets);
+            try {
+                campaign = CampaignJournal.recover(file);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Unable to read the recovery log '" + file + "'.", ex);
+                closeQuietly(journal);
+                continue;
+            }
+            if (campaign == null || (campaign.getEntities().isEmpty() && campaign.getTimelineEntries().isEmpty())) {
+                closeQuietly(journal);
+                delete(file);
+                continue;
+            }
+            Object[] options = {"Recover", "Discard", "Not Now"};
+            int choice = JOptionPane.showOptionDialog(parent,
+                                                      "The campaign '" + campaign.getName() + "' was not saved before\n" +
+                                                      "Campaign Encyclopedia last closed.  It has " +
+                                                      campaign.getEntities().size() + " entities and " +
+                                                      campaign.getTimelineEntries().size() + " timeline entries.\n" +
+                                                      "Do you want to recover it?",
+                                                      "Recover Unsaved Campaign",
+                                                      JOptionPane.YES_NO_CANCEL_OPTION,
+                                                      JOptionPane.QUESTION_MESSAGE,
+                                                      null,
+                                                      options,
+                                                      options[0]);
+            if (choice == 0) {
+                cdm.setFileName(null);
+                DisplayCampaignHelper.displayCampaign(display, cdm, campaign, null);
+                SAVE_SERVICE.startRecoveryLog(cdm, journal);
+                return;
+            }
+            closeQuietly(journal);
+            if (choice == 1) {
+                delete(file);
+            }
+        }
+        SAVE_SERVICE.startRecoveryLog(cdm, null);
+    }
+
+    /**
+     * Closes the supplied recovery log, logging any failure.
+     * @param journal the recovery log to close.
+     */
+    private static void closeQuietly(CampaignJournal journal) {
+        try {
+            journal.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to close '" + journal.getFile() + "'.", ex);
+        }
+    }
+
+    /**
+     * Deletes the supplied recovery log file, logging any failure.
+     * @param file the recovery log file to delete.
+     */
+    private static void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to delete the recovery log '" + file + "'.", ex);
         }
     }
-}
\ No newline at end of file
+}
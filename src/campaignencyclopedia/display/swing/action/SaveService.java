@@ -0,0 +1,895 @@
+package campaignencyclopedia.display.swing.action;
+
+import campaignencyclopedia.data.Campaign;
+import campaignencyclopedia.data.CampaignCalendar;
+import campaignencyclopedia.data.CampaignChangeLog;
+import campaignencyclopedia.data.CampaignDataManager;
+import campaignencyclopedia.data.Entity;
+import campaignencyclopedia.data.RelationshipManager;
+import campaignencyclopedia.data.TimelineEntry;
+import campaignencyclopedia.data.persistence.BinaryCampaignTranslator;
+import campaignencyclopedia.data.persistence.CampaignCompression;
+import campaignencyclopedia.data.persistence.CampaignJournal;
+import campaignencyclopedia.data.persistence.CampaignTranslator;
+import campaignencyclopedia.data.persistence.MappedCampaignFile;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import toolbox.file.persistence.json.JsonException;
+
+/**
+ * Writes campaigns to disk on a single writer thread, so that saves never overlap and the threads asking for them never
+ * wait on the disk.
+ *
+ * Autosaves are debounced: each request postpones the pending autosave a little, up to a limit, and the campaign saved
+ * is whatever the CampaignDataManager holds when the autosave runs, so a burst of edits is saved once.  Each save is
+ * written to a temporary file which is synced to disk and then renamed over the save file, so a crash part way through
+ * leaves the previous save intact.  The time each save takes is logged, as a warning when it is slow, and failures are
+ * logged as errors.  Any pending autosave is written before the application exits.
+ *
+ * While a campaign saved with its secrets is open, the changes made to it are kept in a CampaignJournal beside its save
+ * file, and autosaves only append the changes made since the last one to the journal.  The campaign is only saved in
+ * full, compacting the journal, when it is explicitly saved, the journal grows too large, or the campaign is closed or
+ * the application exits with changes in the journal, so that the save file is up to date for whatever reads it next.
+ *
+ * A campaign with no save file has a recovery log instead: a CampaignJournal in the per-user recovery directory which
+ * holds the whole campaign.  Each change is appended to it as soon as it is made, with the changes made while the
+ * previous ones were being synced appended together, so a crash loses no edits however long the campaign goes unsaved.
+ * The recovery log is deleted once the campaign is saved, or at exit if the campaign is empty; otherwise it is left to
+ * be recovered when the application is next launched.
+ *
+ * @author adam
+ */
+final class SaveService {
+
+    /** Logger. */
+    private static final Logger LOGGER = Logger.getLogger(SaveService.class.getName());
+
+    /** The time in milliseconds an autosave waits for further requests before it is written. */
+    private static final long AUTOSAVE_DELAY_MS = 500;
+
+    /** The longest time in milliseconds an autosave may be postponed by further requests. */
+    private static final long AUTOSAVE_MAX_DELAY_MS = 5000;
+
+    /** The time in milliseconds beyond which a save is reported as slow. */
+    private static final long SLOW_SAVE_MS = 1000;
+
+    /** The time in seconds to wait for pending saves when the application exits. */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /** The file name suffix of binary save files. */
+    private static final String BINARY_EXTENSION = "." + BinaryCampaignTranslator.FILE_EXTENSION;
+
+    /** The suffix added to the path of a save file to name the temporary file it is written to. */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /** The directory recovery logs are kept in. */
+    private static final File RECOVERY_DIRECTORY =
+            new File(System.getProperty("user.home"), ".campaign-encyclopedia" + File.separator + "recovery");
+
+    /** The executor whose single thread writes all saves. */
+    private final ScheduledThreadPoolExecutor m_executor;
+
+    /** The pending autosave, or null if there is none. */
+    private ScheduledFuture<?> m_autosave;
+
+    /** The CampaignDataManager of the pending autosave, or null if there is none. */
+    private CampaignDataManager m_autosaveCdm;
+
+    /** The time, in nanoseconds, of the first request coalesced into the pending autosave. */
+    private long m_firstRequest;
+
+    /** The number of requests coalesced into the pending autosave. */
+    private int m_requests;
+
+    /** The journal of the open campaign, or null if it has none.  Only accessed on the writer thread. */
+    private CampaignJournal m_journal;
+
+    /** The path of the save file of the open campaign's journal.  Only accessed on the writer thread. */
+    private String m_journalPath;
+
+    /** The data manager whose changes the open campaign's journal is told of.  Only accessed on the writer thread. */
+    private CampaignDataManager m_journalCdm;
+
+    /** The recovery log of the open campaign, or null if it has none.  Only accessed on the writer thread. */
+    private RecoveryLog m_recovery;
+
+    /** True once the service has been shut down.  Guarded by this. */
+    private boolean m_shutDown;
+
+    /** Creates a new SaveService, whose pending autosave is written when the application exits. */
+    SaveService() {
+        m_executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Campaign Saver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Postponed autosaves are cancelled often, so should not linger in the queue until they were due.
+        m_executor.setRemoveOnCancelPolicy(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        }, "Campaign Saver Shutdown"));
+    }
+
+    /**
+     * Requests that the campaign of the supplied CampaignDataManager be saved to its save file soon.  Requests made in
+     * quick succession are coalesced into one save.
+     * @param cdm the CampaignDataManager to save the campaign of.
+     */
+    synchronized void requestAutosave(CampaignDataManager cdm) {
+        if (cdm == null) {
+            throw new IllegalArgumentException("Parameter 'cdm' must not be null.");
+        }
+        long now = System.nanoTime();
+        if (m_autosave == null) {
+            m_firstRequest = now;
+            m_requests = 0;
+        } else {
+            // If it has already started, the autosave will find nothing pending and the one scheduled below saves.
+            m_autosave.cancel(false);
+        }
+        m_autosaveCdm = cdm;
+        m_requests++;
+        long waited = TimeUnit.NANOSECONDS.toMillis(now - m_firstRequest);
+        long delay = Math.max(0, Math.min(AUTOSAVE_DELAY_MS, AUTOSAVE_MAX_DELAY_MS - waited));
+        m_autosave = m_executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                CampaignDataManager pending;
+                int requests;
+                synchronized (SaveService.this) {
+                    pending = m_autosaveCdm;
+                    requests = m_requests;
+                    m_autosaveCdm = null;
+                    m_autosave = null;
+                }
+                if (pending != null) {
+                    String path = pending.getSaveFileName();
+                    if (path != null) {
+                        autosave(path, pending, null, requests + " autosave request(s)");
+                    }
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes any pending autosave without waiting any longer for further requests.  The campaign to save and the file
+     * to save it to are taken immediately, so the CampaignDataManager may be given another campaign as soon as this
+     * returns; the write itself still happens on the writer thread.
+     */
+    void flushAutosave() {
+        final CampaignDataManager cdm;
+        final int requests;
+        synchronized (this) {
+            if (m_autosave == null) {
+                return;
+            }
+            m_autosave.cancel(false);
+            cdm = m_autosaveCdm;
+            requests = m_requests;
+            m_autosaveCdm = null;
+            m_autosave = null;
+        }
+        final String path = cdm.getSaveFileName();
+        if (path != null) {
+            final Campaign campaign = cdm.getData();
+            m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    autosave(path, cdm, campaign, requests + " flushed autosave request(s)");
+                }
+            });
+        }
+    }
+
+    /**
+     * Closes the campaign of the supplied CampaignDataManager, before it is given another one.  Any pending autosave is
+     * written, and if the campaign has a journal holding changes, it is saved in full and the journal compacted, so
+     * that its save file is up to date.  The data manager stops telling its change log of changes at once, so that the
+     * campaign saved holds exactly the changes the journal was told of; the writes still happen on the writer thread.
+     * @param cdm the CampaignDataManager of the campaign to close.
+     * @return the Future of the writes, done once the campaign's save file is up to date and its journal closed.
+     */
+    Future<?> closeCampaign(final CampaignDataManager cdm) {
+        if (cdm == null) {
+            throw new IllegalArgumentException("Parameter 'cdm' must not be null.");
+        }
+        flushAutosave();
+        final Campaign campaign = cdm.setChangeLog(null);
+        return m_executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (m_journal != null && cdm == m_journalCdm) {
+                    compactAndCloseJournal(campaign);
+                }
+            }
+        });
+    }
+
+    /**
+     * Saves the campaign of the supplied CampaignDataManager to the file at the supplied path, after any saves already
+     * requested.  The path becomes the CampaignDataManager's save file once the save has succeeded.
+     * @param path the path of the file to save to.
+     * @param cdm the CampaignDataManager to save the campaign of.
+     * @param includeSecrets true if secrets should be included in the file.
+     */
+    void save(final String path, final CampaignDataManager cdm, final boolean includeSecrets) {
+        if (path == null) {
+            throw new IllegalArgumentException("Parameter 'path' must not be null.");
+        }
+        if (cdm == null) {
+            throw new IllegalArgumentException("Parameter 'cdm' must not be null.");
+        }
+        m_executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean saved;
+                if (!includeSecrets) {
+                    // Changes could not be journaled against a save without them.
+                    saved = saveInFull(path, cdm, false);
+                } else if (m_journal != null && path.equals(m_journalPath)) {
+                    saved = compact(path, cdm, "save");
+                } else {
+                    saved = startJournal(path, cdm);
+                }
+                if (saved) {
+                    cdm.setFileName(path);
+                    closeRecoveryLog(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Opens the journal of the save file at the supplied path on the writer thread, once the saves already requested
+     * have been written, and makes it the journal of the open campaign.  The journal or recovery log of the campaign
+     * open before is closed first, releasing its lock on the journal if the same save file is opened again.  Waits for
+     * the journal to be opened.
+     * @param path the path of the save file of the campaign.
+     * @param snapshotSize the size of the save file.
+     * @param cdm the data manager whose changes the journal is told of.
+     * @return the journal, or null if it could not be opened, in which case autosaves save the campaign in full.
+     */
+    CampaignJournal openJournal(final String path, final long snapshotSize, final CampaignDataManager cdm) {
+        if (path == null) {
+            throw new IllegalArgumentException("Parameter 'path' must not be null.");
+        }
+        if (cdm == null) {
+            throw new IllegalArgumentException("Parameter 'cdm' must not be null.");
+        }
+        return await(m_executor.submit(new Callable<CampaignJournal>() {
+            @Override
+            public CampaignJournal call() {
+                closeJournal();
+                closeRecoveryLog(false);
+                try {
+                    m_journal = CampaignJournal.open(CampaignJournal.fileFor(path), snapshotSize);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING,
+                               "Unable to journal changes to '" + path + "'; autosaves will save it in full.", ex);
+                    return null;
+                }
+                m_journalPath = path;
+                m_journalCdm = cdm;
+                return m_journal;
+            }
+        }));
+    }
+
+    /**
+     * Waits for the supplied task of the writer thread to finish, logging any failure.
+     * @param <T> the type of the result of the task.
+     * @param future the Future of the task.
+     * @return the result of the task, or null if it failed or the wait was interrupted.
+     */
+    static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            LOGGER.log(Level.SEVERE, "A task of the writer thread failed.", ex.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * Starts logging the changes made to the campaign of the supplied data manager, which has no save file, to a
+     * recovery log, once the saves already requested have been written.  The journal or recovery log of the campaign
+     * open before is closed.
+     * @param cdm the data manager of the campaign.
+     * @param recovered the recovery log the campaign was recovered from, which is logged to from now on, or null to
+     * create a new recovery log.
+     */
+    void startRecoveryLog(final CampaignDataManager cdm, final CampaignJournal recovered) {
+        if (cdm == null) {
+            throw new IllegalArgumentException("Parameter 'cdm' must not be null.");
+        }
+        m_executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeJournal();
+                closeRecoveryLog(false);
+                CampaignJournal journal = recovered;
+                if (journal == null) {
+                    File file = new File(RECOVERY_DIRECTORY, UUID.randomUUID() + "." + CampaignJournal.FILE_EXTENSION);
+                    try {
+                        Files.createDirectories(RECOVERY_DIRECTORY.toPath());
+                        journal = CampaignJournal.open(file, 0);
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.WARNING, "Unable to create a recovery log in '" + RECOVERY_DIRECTORY + "'.", ex);
+                        return;
+                    }
+                }
+                m_recovery = new RecoveryLog(cdm, journal);
+                cdm.setChangeLog(m_recovery);
+                rewriteRecoveryLog();
+            }
+        });
+    }
+
+    /**
+     * Returns the recovery logs in the recovery directory, most recently modified first.  Logs in use are included.
+     * @return the recovery log files.
+     */
+    static List<File> listRecoveryLogs() {
+        List<File> logs = new ArrayList<>();
+        File[] files = RECOVERY_DIRECTORY.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith("." + CampaignJournal.FILE_EXTENSION)) {
+                    logs.add(file);
+                }
+            }
+        }
+        Collections.sort(logs, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                return Long.compare(second.lastModified(), first.lastModified());
+            }
+        });
+        return logs;
+    }
+
+    /**
+     * Writes any pending autosave and waits, for a limited time, for all saves requested to be written.  Does nothing
+     * once the service has been shut down.
+     */
+    void shutdown() {
+        synchronized (this) {
+            if (m_shutDown) {
+                return;
+            }
+            m_shutDown = true;
+        }
+        flushAutosave();
+        // Changes made without asking for an autosave are still saved.
+        m_executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (m_journal != null && (m_journal.isEmpty() || !compact(m_journalPath, m_journalCdm, "exit"))) {
+                    appendToJournal(m_journalPath, "exit");
+                }
+                if (m_recovery != null) {
+                    Campaign campaign = m_recovery.m_cdm.getData();
+                    closeRecoveryLog(campaign.getEntities().isEmpty() && campaign.getTimelineEntries().isEmpty());
+                }
+            }
+        });
+        m_executor.shutdown();
+        try {
+            if (!m_executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.SEVERE, "Timed out waiting for the campaign to be saved.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Autosaves the campaign of the supplied data manager to the save file at the supplied path, by appending to its
+     * journal if it has one, or by writing it in full.  Only called on the writer thread.
+     * @param path the path of the save file.
+     * @param cdm the data manager to save the campaign of.
+     * @param campaign the campaign to write if there is no journal, or null to take it from the data manager.
+     * @param reason a description of what the save was for, for the log.
+     */
+    private void autosave(String path, CampaignDataManager cdm, Campaign campaign, String reason) {
+        if (m_journal != null && path.equals(m_journalPath)) {
+            if (!appendToJournal(path, reason) || m_journal.needsCompaction()) {
+                compact(path, cdm, reason);
+            }
+        } else {
+            write(path, cdm, campaign == null ? cdm.getData() : campaign, true, reason);
+        }
+    }
+
+    /**
+     * Appends the changes made to the open campaign to its journal, logging how long it took or why it failed.  Only
+     * called on the writer thread.
+     * @param path the path of the save file of the campaign.
+     * @param reason a description of what the save was for, for the log.
+     * @return true if the changes were appended, false if they were not, and the campaign should be saved in full.
+     */
+    private boolean appendToJournal(String path, String reason) {
+        long start = System.nanoTime();
+        int changes;
+        try {
+            changes = m_journal.flush();
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to append to the journal of '" + path + "'.", ex);
+            return false;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Level level = millis >= SLOW_SAVE_MS ? Level.WARNING : Level.FINE;
+        LOGGER.log(level, "Journaled {0} change(s) to ''{1}'' in {2} ms ({3}).",
+                   new Object[] {changes, path, millis, reason});
+        return true;
+    }
+
+    /**
+     * Saves the open campaign in full to its save file, and empties its journal.  Only called on the writer thread.
+     * @param path the path of the save file of the campaign.
+     * @param cdm the data manager to save the campaign of.
+     * @param reason a description of what the save was for, for the log.
+     * @return true if the campaign was saved, false if it was not.
+     */
+    private boolean compact(String path, CampaignDataManager cdm, String reason) {
+        Campaign campaign = m_journal.beginSnapshot(cdm);
+        if (campaign == null) {
+            LOGGER.log(Level.FINE, "Not saving ''{0}'' in full, as it is no longer open ({1}).",
+                       new Object[] {path, reason});
+            return false;
+        }
+        if (!write(path, cdm, campaign, true, "compaction, " + reason)) {
+            m_journal.snapshotFailed();
+            return false;
+        }
+        try {
+            m_journal.snapshotWritten(new File(path).length());
+        } catch (IOException ex) {
+            // Replaying the old journal over the new save does no harm, so it only wastes time when opening.
+            LOGGER.log(Level.WARNING, "Failed to empty the journal of '" + path + "'.", ex);
+        }
+        return true;
+    }
+
+    /**
+     * Saves the campaign of the supplied data manager in full to a new save file, and starts journaling its changes
+     * beside it.  If the save fails, changes continue to be journaled for the save file the campaign had.  Only called
+     * on the writer thread.
+     * @param path the path of the new save file.
+     * @param cdm the data manager to save the campaign of.
+     * @return true if the campaign was saved, false if it was not.
+     */
+    private boolean startJournal(String path, CampaignDataManager cdm) {
+        CampaignJournal journal;
+        try {
+            journal = CampaignJournal.open(CampaignJournal.fileFor(path), 0);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to journal changes to '" + path + "'; autosaves will save it in full.", ex);
+            return saveInFull(path, cdm, true);
+        }
+        Campaign campaign = cdm.setChangeLog(journal);
+        if (!write(path, cdm, campaign, true, "save")) {
+            // The changes made meanwhile were told to the new journal, so the old one needs compacting.
+            closeQuietly(journal);
+            restoreChangeLog(cdm);
+            return false;
+        }
+        closeJournal();
+        try {
+            journal.snapshotWritten(new File(path).length());
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to empty the journal of '" + path + "'.", ex);
+        }
+        m_journal = journal;
+        m_journalPath = path;
+        m_journalCdm = cdm;
+        return true;
+    }
+
+    /**
+     * Saves the campaign of the supplied data manager in full to the file at the supplied path, without a journal.  If
+     * the save fails, changes continue to be logged to the recovery log or journal, if the campaign has one.  If the
+     * file is the save file of the campaign's journal, the journal is discarded once the file is replaced, as replaying
+     * it over the new file would restore the secrets left out of it.  Only called on the writer thread.
+     * @param path the path of the file to save to.
+     * @param cdm the data manager to save the campaign of.
+     * @param includeSecrets true if secrets should be included in the file.
+     * @return true if the campaign was saved, false if it was not.
+     */
+    private boolean saveInFull(String path, CampaignDataManager cdm, boolean includeSecrets) {
+        cdm.setChangeLog(null);
+        boolean replacesJournaled = m_journal != null && path.equals(m_journalPath);
+        if (!replacesJournaled) {
+            closeJournal();
+        }
+        if (!write(path, cdm, cdm.getData(), includeSecrets, "save")) {
+            restoreChangeLog(cdm);
+            return false;
+        }
+        if (replacesJournaled) {
+            discardJournal();
+        }
+        return true;
+    }
+
+    /**
+     * Makes the journal or recovery log of the open campaign the change log of the supplied data manager again, after
+     * changes have been told to another change log or none, and compacts it as it missed them.  Only called on the
+     * writer thread.
+     * @param cdm the data manager of the open campaign.
+     */
+    private void restoreChangeLog(CampaignDataManager cdm) {
+        if (m_journal != null) {
+            cdm.setChangeLog(m_journal);
+            m_journal.snapshotFailed();
+        } else if (m_recovery != null) {
+            cdm.setChangeLog(m_recovery);
+            m_recovery.m_journal.snapshotFailed();
+            flushRecoveryLog();
+        } else {
+            cdm.setChangeLog(null);
+        }
+    }
+
+    /**
+     * Asks for the changes made to the campaign with the supplied recovery log to be appended to it soon.  Requests
+     * made while an append is pending are served by that append.  Called whenever a change to the campaign completes,
+     * while its data manager is locked.
+     * @param log the recovery log.
+     */
+    private synchronized void requestRecoveryFlush(final RecoveryLog log) {
+        // The exit flushes any changes made after shutting down.
+        if (m_shutDown || log.m_flushPending) {
+            return;
+        }
+        log.m_flushPending = true;
+        m_executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SaveService.this) {
+                    log.m_flushPending = false;
+                }
+                if (log == m_recovery) {
+                    flushRecoveryLog();
+                }
+            }
+        });
+    }
+
+    /**
+     * Appends the changes made to the campaign with the recovery log to the log, compacting the log if needed.  Only
+     * called on the writer thread, while the campaign has a recovery log.
+     */
+    private void flushRecoveryLog() {
+        CampaignJournal journal = m_recovery.m_journal;
+        if (!journal.needsCompaction()) {
+            try {
+                journal.flush();
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to write the recovery log '" + journal.getFile() + "'.", ex);
+            }
+        }
+        if (journal.needsCompaction()) {
+            rewriteRecoveryLog();
+        }
+    }
+
+    /**
+     * Rewrites the recovery log as the whole campaign with the log, logging how long it took or why it failed.  Only
+     * called on the writer thread, while the campaign has a recovery log.
+     */
+    private void rewriteRecoveryLog() {
+        CampaignJournal journal = m_recovery.m_journal;
+        long start = System.nanoTime();
+        try {
+            journal.rewrite(m_recovery.m_cdm);
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to write the recovery log '" + journal.getFile() + "'.", ex);
+            return;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Level level = millis >= SLOW_SAVE_MS ? Level.WARNING : Level.FINE;
+        LOGGER.log(level, "Rewrote the recovery log ''{0}'' in {1} ms.", new Object[] {journal.getFile(), millis});
+    }
+
+    /**
+     * Appends the changes made to the campaign with the recovery log to the log and closes it, if the campaign has one.
+     * Only called on the writer thread.
+     * @param delete true if the log should be deleted, as the campaign has been saved or holds nothing to recover.
+     */
+    private void closeRecoveryLog(boolean delete) {
+        if (m_recovery == null) {
+            return;
+        }
+        CampaignJournal journal = m_recovery.m_journal;
+        m_recovery = null;
+        if (!delete) {
+            try {
+                journal.flush();
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to write the recovery log '" + journal.getFile() + "'.", ex);
+            }
+        }
+        closeQuietly(journal);
+        if (delete) {
+            try {
+                Files.deleteIfExists(journal.getFile().toPath());
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Failed to delete the recovery log '" + journal.getFile() + "'.", ex);
+            }
+        }
+    }
+
+    /**
+     * Appends the changes made to the open campaign to its journal and closes it, if it has one.  Only called on the
+     * writer thread.
+     */
+    private void closeJournal() {
+        if (m_journal != null) {
+            appendToJournal(m_journalPath, "close");
+            closeQuietly(m_journal);
+            m_journal = null;
+            m_journalPath = null;
+            m_journalCdm = null;
+        }
+    }
+
+    /**
+     * Empties, closes and deletes the journal of the open campaign, discarding the changes not yet appended to it, as
+     * its save file has been replaced by one it must not be replayed over.  Only called on the writer thread, while the
+     * campaign has a journal.
+     */
+    private void discardJournal() {
+        File file = m_journal.getFile();
+        try {
+            // Emptied first, so that nothing is replayed from it even if it cannot be deleted.
+            m_journal.snapshotWritten(new File(m_journalPath).length());
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to empty the journal of '" + m_journalPath + "'.", ex);
+        }
+        closeQuietly(m_journal);
+        m_journal = null;
+        m_journalPath = null;
+        m_journalCdm = null;
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to delete the journal '" + file + "'.", ex);
+        }
+    }
+
+    /**
+     * Appends the changes made to the open campaign to its journal, saves the supplied campaign in full if the journal
+     * holds any changes, emptying it, and closes it.  If the campaign cannot be saved, the journal is left to be
+     * replayed when the campaign is next opened.  Only called on the writer thread, while the campaign has a journal.
+     * @param campaign the campaign, holding exactly the changes the journal was told of.
+     */
+    private void compactAndCloseJournal(Campaign campaign) {
+        String path = m_journalPath;
+        appendToJournal(path, "close");
+        if (!m_journal.isEmpty() && write(path, m_journalCdm, campaign, true, "compaction, close")) {
+            try {
+                m_journal.snapshotWritten(new File(path).length());
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Failed to empty the journal of '" + path + "'.", ex);
+            }
+        }
+        closeQuietly(m_journal);
+        m_journal = null;
+        m_journalPath = null;
+        m_journalCdm = null;
+    }
+
+    /**
+     * Closes the supplied journal, logging any failure.
+     * @param journal the journal to close.
+     */
+    private static void closeQuietly(CampaignJournal journal) {
+        try {
+            journal.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to close '" + journal.getFile().getName() + "'.", ex);
+        }
+    }
+
+    /**
+     * Writes the supplied campaign to the file at the supplied path, logging how long it took or why it failed.
+     * @param path the path of the file to write.
+     * @param cdm the CampaignDataManager the campaign is from.
+     * @param campaign the campaign to write.
+     * @param includeSecrets true if secrets should be included in the file.
+     * @param reason a description of what the save was for, for the log.
+     * @return true if the campaign was saved, false if it was not.
+     */
+    private boolean write(String path, CampaignDataManager cdm, Campaign campaign, boolean includeSecrets, String reason) {
+        long start = System.nanoTime();
+        try {
+            writeAtomically(path, cdm, campaign, includeSecrets);
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to save the campaign to '" + path + "'.", ex);
+            return false;
+        } catch (JsonException jex) {
+            LOGGER.log(Level.SEVERE, "Failed to translate the campaign.", jex);
+            return false;
+        } catch (RuntimeException ex) {
+            // Otherwise lost in the executor.
+            LOGGER.log(Level.SEVERE, "Failed to save the campaign to '" + path + "'.", ex);
+            return false;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Level level = millis >= SLOW_SAVE_MS ? Level.WARNING : Level.FINE;
+        LOGGER.log(level, "Saved the campaign to ''{0}'' in {1} ms ({2}).", new Object[] {path, millis, reason});
+        return true;
+    }
+
+    /**
+     * Writes the supplied campaign to the file at the supplied path, in the binary format if the path has the binary
+     * file extension, otherwise as JSON, and compressed as it is written if the path has the compressed file extension
+     * after that.  The campaign is written to a temporary file, which is synced to disk and then
+     * renamed to replace the file at the path.  The file being replaced may be memory-mapped by the campaign being
+     * written, so it is replaced by MappedCampaignFile, which releases the mapping first and maps the new file after.
+     * @param path the path of the file to write.
+     * @param cdm the CampaignDataManager the campaign is from.
+     * @param campaign the campaign to write.
+     * @param includeSecrets true if secrets should be included in the file.
+     * @throws IOException if an error occurs writing the file.
+     * @throws JsonException if an error occurs translating the campaign to JSON.
+     */
+    private static void writeAtomically(String path, CampaignDataManager cdm, Campaign campaign, boolean includeSecrets) throws IOException, JsonException {
+        Path target = new File(path).getAbsoluteFile().toPath();
+        Path temp = new File(path + TEMP_EXTENSION).getAbsoluteFile().toPath();
+        boolean moved = false;
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+                GZIPOutputStream compressed = null;
+                OutputStream out = file;
+                if (CampaignCompression.isCompressed(path)) {
+                    compressed = CampaignCompression.compress(file);
+                    out = compressed;
+                }
+                if (CampaignCompression.uncompressedPath(path).endsWith(BINARY_EXTENSION)) {
+                    out = new BufferedOutputStream(out);
+                    BinaryCampaignTranslator.write(campaign, includeSecrets, out);
+                    out.flush();
+                } else {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+                    CampaignTranslator.writeJson(campaign, cdm, includeSecrets, false, writer);
+                    writer.flush();
+                }
+                if (compressed != null) {
+                    compressed.finish();
+                }
+                file.getFD().sync();
+            }
+            // A mapping of the file can only be moved to the new file if it holds the data of every Entity written.
+            boolean mappable = path.endsWith(BINARY_EXTENSION) && includeSecrets;
+            MappedCampaignFile.replace(temp, target, mappable ? campaign : null);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        // Sync the directory so the rename itself survives a crash.  Not every platform can open a directory.
+        try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Unable to sync the directory of '" + path + "'.", ex);
+        }
+    }
+
+    /**
+     * The change log of a campaign with a recovery log, which tells the log of each change and asks for the changes to
+     * be appended to it as soon as they are complete.
+     */
+    private final class RecoveryLog implements CampaignChangeLog {
+
+        /** The data manager of the campaign. */
+        private final CampaignDataManager m_cdm;
+
+        /** The recovery log. */
+        private final CampaignJournal m_journal;
+
+        /** True if an append of the changes to the log is pending.  Guarded by the SaveService. */
+        private boolean m_flushPending;
+
+        /**
+         * Creates a new RecoveryLog.
+         * @param cdm the data manager of the campaign.
+         * @param journal the recovery log.
+         */
+        private RecoveryLog(CampaignDataManager cdm, CampaignJournal journal) {
+            m_cdm = cdm;
+            m_journal = journal;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void entityStored(Entity entity) {
+            m_journal.entityStored(entity);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void entityRemoved(UUID id) {
+            m_journal.entityRemoved(id);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void relationshipsStored(UUID entity, RelationshipManager relationships) {
+            m_journal.relationshipsStored(entity, relationships);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void relationshipsRemoved(UUID entity) {
+            m_journal.relationshipsRemoved(entity);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void timelineEntryStored(TimelineEntry entry) {
+            m_journal.timelineEntryStored(entry);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void timelineEntryRemoved(UUID id) {
+            m_journal.timelineEntryRemoved(id);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void calendarStored(CampaignCalendar calendar) {
+            m_journal.calendarStored(calendar);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void campaignReplaced() {
+            m_journal.campaignReplaced();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void changesComplete() {
+            m_journal.changesComplete();
+            requestRecoveryFlush(this);
+        }
+    }
+}
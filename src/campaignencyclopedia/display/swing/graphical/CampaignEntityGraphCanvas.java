@@ -1,8 +1,10 @@
 package campaignencyclopedia.display.swing.graphical;
 
+import campaignencyclopedia.data.ChangeSet;
 import campaignencyclopedia.data.DataAccessor;
 import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.Relationship;
+import campaignencyclopedia.data.RelationshipGraph;
 import campaignencyclopedia.data.RelationshipManager;
 import campaignencyclopedia.data.TimelineEntry;
 import campaignencyclopedia.display.EntityDisplay;
@@ -197,21 +199,7 @@ public class CampaignEntityGraphCanvas extends JComponent implements CanvasDispl
         //Synchronize access to particle system to avoid conflicts with computation
         synchronized(m_particleSystem) {
             //Relationship Springs: create a spring between entities for every relationship
-            for (Entity e : allEntities) {    
-                // Create a spring between the entity and what it is related to for each relationship.
-                for (Relationship r : m_accessor.getRelationshipsForEntity(e.getId()).getAllRelationships()) {
-
-                    Particle a = m_renderingConfigMap.get(e.getId()).particle;
-                    RenderingConfig otherRc = m_renderingConfigMap.get(r.getRelatedEntity());
-                    if (otherRc == null) {
-                        LOGGER.warning("Found a relationship pointing to a null entity on " + e.getName() +
-                                "(" + e.getId() + ") pointing to:  " + "(" + r.getRelatedEntity().toString() + ")");
-                        continue;
-                    }
-                    Particle b = m_renderingConfigMap.get(r.getRelatedEntity()).particle;
-                    m_particleSystem.makeSpring(a, b, SPRING_STRENGTH, SPRING_DAMPENING, getDotLineLength());
-                }
-            }
+            rebuildSprings();
         }
     }
     
@@ -522,31 +510,7 @@ public class CampaignEntityGraphCanvas extends JComponent implements CanvasDispl
     public void dataAddedOrUpdated(Entity entity) {
         //Synchronize access to particle system to avoid conflicts with computation
         synchronized(m_particleSystem) {
-            if (!m_renderingConfigMap.containsKey(entity.getId())) {
-                //New entity for the display, initialize it
-                LOGGER.info("Data added to graph display: " + entity.getId());
-                //Initialize entity particle and rendering config
-                Particle newParticle = createParticle(m_rand.nextInt(X_RANGE), m_rand.nextInt(Y_RANGE));
-                if (m_onLockdown) {
-                    newParticle.makeFixed();
-                }
-
-                //Create an initial rendering config for the new entity
-                int r = getDotRadius();
-                RenderingConfig rc = new RenderingConfig();
-                rc.particle = newParticle;
-                m_renderingConfigMap.put(entity.getId(), rc);
-            }
-
-            //Update the entity's relationships.
-            LOGGER.info("Updating data in display in graph display: " + entity.getId());
-
-            //Get RenderingConfig of the added or updated entity to update it
-            RenderingConfig rc = m_renderingConfigMap.get(entity.getId());
-
-            //Update general entity data
-            rc.text = entity.getName();
-            rc.color = Colors.getColor(entity.getType());
+            RenderingConfig rc = updateRenderingConfig(entity);
 
             //Update Relationship Springs
             //Remove any linked springs first to catch removed relationships TODO: store relationships and springs somehow to prevent having to do this
@@ -582,6 +546,69 @@ public class CampaignEntityGraphCanvas extends JComponent implements CanvasDispl
             }
         }
     }
+
+    /**
+     * Creates the particle and rendering config of the supplied entity if it is new to the display, and updates its
+     * rendering config with the entity's name and type.  Must be called while synchronized on the particle system.
+     * @param entity the added or updated entity.
+     * @return the rendering config of the entity.
+     */
+    private RenderingConfig updateRenderingConfig(Entity entity) {
+        if (!m_renderingConfigMap.containsKey(entity.getId())) {
+            //New entity for the display, initialize it
+            LOGGER.info("Data added to graph display: " + entity.getId());
+            //Initialize entity particle and rendering config
+            Particle newParticle = createParticle(m_rand.nextInt(X_RANGE), m_rand.nextInt(Y_RANGE));
+            if (m_onLockdown) {
+                newParticle.makeFixed();
+            }
+
+            //Create an initial rendering config for the new entity
+            RenderingConfig rc = new RenderingConfig();
+            rc.particle = newParticle;
+            m_renderingConfigMap.put(entity.getId(), rc);
+        }
+
+        //Update the entity's relationships.
+        LOGGER.info("Updating data in display in graph display: " + entity.getId());
+
+        //Get RenderingConfig of the added or updated entity to update it
+        RenderingConfig rc = m_renderingConfigMap.get(entity.getId());
+
+        //Update general entity data
+        rc.text = entity.getName();
+        rc.color = Colors.getColor(entity.getType());
+        return rc;
+    }
+
+    /**
+     * Replaces every spring with one for each relationship between entities on the display, in a single pass over the
+     * relationships.  Must be called while synchronized on the particle system.
+     */
+    private void rebuildSprings() {
+        //Remove from the end, so that no springs are shifted down as each is removed
+        for (int i = m_particleSystem.numberOfSprings() - 1; i >= 0; i--) {
+            m_particleSystem.removeSpring(i);
+        }
+        //Walk the relationship graph, looking up the particle of each node once rather than once per relationship
+        RelationshipGraph graph = m_accessor.getRelationshipGraph();
+        Particle[] particles = new Particle[graph.getNodeCount()];
+        for (int node = 0; node < particles.length; node++) {
+            UUID id = graph.getId(node);
+            RenderingConfig rc = id == null ? null : m_renderingConfigMap.get(id);
+            particles[node] = rc == null ? null : rc.particle;
+        }
+        for (int node = 0; node < particles.length; node++) {
+            if (particles[node] != null) {
+                for (int edge = 0; edge < graph.getOutDegree(node); edge++) {
+                    Particle other = particles[graph.getTarget(node, edge)];
+                    if (other != null) {
+                        m_particleSystem.makeSpring(particles[node], other, SPRING_STRENGTH, SPRING_DAMPENING, getDotLineLength());
+                    }
+                }
+            }
+        }
+    }
     
     @Override
     public void timelineEntryAddedOrUpdated(TimelineEntry tle) {
@@ -599,6 +626,47 @@ public class CampaignEntityGraphCanvas extends JComponent implements CanvasDispl
             dataRemoved(id);
         }
     }
+
+    @Override
+    public void dataChanged(ChangeSet changes) {
+        //Synchronize access to particle system once for the whole batch
+        synchronized(m_particleSystem) {
+            //Remove the particles of removed entities, and their attractions in a single pass over the attractions
+            Set<Particle> removed = new HashSet<>();
+            for (UUID id : changes.getRemovedEntities()) {
+                RenderingConfig rc = m_renderingConfigMap.remove(id);
+                if (rc != null) {
+                    removed.add(rc.particle);
+                }
+            }
+            if (!removed.isEmpty()) {
+                for (int i = m_particleSystem.numberOfAttractions() - 1; i >= 0; i--) {
+                    Attraction attraction = m_particleSystem.getAttraction(i);
+                    if (removed.contains(attraction.getOneEnd()) || removed.contains(attraction.getTheOtherEnd())) {
+                        m_particleSystem.removeAttraction(i);
+                    }
+                }
+                for (Particle p : removed) {
+                    m_particleSystem.removeParticle(p);
+                }
+            }
+
+            Set<UUID> addedOrUpdated = new HashSet<>(changes.getAddedEntities());
+            addedOrUpdated.addAll(changes.getUpdatedEntities());
+            for (UUID id : addedOrUpdated) {
+                Entity entity = m_accessor.getEntity(id);
+                if (entity != null) {
+                    updateRenderingConfig(entity);
+                }
+            }
+
+            //Rather than replacing the springs of each changed entity, which scans every spring once per entity, the
+            //springs are rebuilt once for the whole batch.
+            if (!removed.isEmpty() || !addedOrUpdated.isEmpty()) {
+                rebuildSprings();
+            }
+        }
+    }
     
     /**
      * Takes the given coordinates on the screen and tells you what the render 
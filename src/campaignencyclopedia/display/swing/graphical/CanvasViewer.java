@@ -2,6 +2,7 @@ package campaignencyclopedia.display.swing.graphical;
 
 import campaignencyclopedia.data.CampaignDataManager;
 import campaignencyclopedia.data.CampaignDataManagerListener;
+import campaignencyclopedia.data.ChangeSet;
 import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.TimelineEntry;
 import java.awt.BorderLayout;
@@ -138,4 +139,9 @@ public class CanvasViewer implements CampaignDataManagerListener {
     public void clearAllData() {
         m_canvas.clearAllData();
     }
+
+    @Override
+    public void dataChanged(ChangeSet changes) {
+        m_canvas.dataChanged(changes);
+    }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package campaignencyclopedia.display.swing.graphical;
 
 import campaignencyclopedia.display.RecentHistory;
 import campaignencyclopedia.display.NavigationPath;
+import campaignencyclopedia.data.ChangeSet;
 import campaignencyclopedia.data.DataAccessor;
 import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.Relationship;
@@ -125,10 +126,8 @@ public class OrbitalEntityCanvas extends JComponent implements CanvasDisplay  {
 
                 // Fetch some required values
                 RelationshipManager currentRelMgr = m_accessor.getRelationshipsForEntity(m_currentEntity);
-                Set<Relationship> relationships = new HashSet<>(currentRelMgr.getAllRelationships());
-
                 Set<UUID> uniqueIds = new HashSet<>();
-                for (Relationship rel : relationships) {
+                for (Relationship rel : currentRelMgr) {
                     uniqueIds.add(rel.getRelatedEntity());
                 }
                 int relationshipCount = uniqueIds.size();
@@ -435,6 +434,15 @@ public class OrbitalEntityCanvas extends JComponent implements CanvasDisplay  {
         // Do nothing.
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void dataChanged(ChangeSet changes) {
+        for (UUID id : changes.getRemovedEntities()) {
+            dataRemoved(id);
+        }
+        repaint();
+    }
+
     /** A data bag for holding the locations calculated for rendering data. */
     private class RenderingConfig {
         private Point2D.Double dotPoint;
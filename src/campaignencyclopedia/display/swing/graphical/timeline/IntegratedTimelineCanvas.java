@@ -1,6 +1,7 @@
 package campaignencyclopedia.display.swing.graphical.timeline;
 
 import campaignencyclopedia.data.CampaignDataManager;
+import campaignencyclopedia.data.ChangeSet;
 import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.TimelineEntry;
 import campaignencyclopedia.display.EntityDisplay;
@@ -56,7 +57,7 @@ public class IntegratedTimelineCanvas implements CanvasDisplay {
     
     public IntegratedTimelineCanvas(EntityDisplay display, CampaignDataManager cdm) {
         m_canvas = new TimelineCanvas(cdm);
-        m_timelineListDialogContent = new TimelineListDisplay(cdm.getTimelineData(), display, cdm);
+        m_timelineListDialogContent = new TimelineListDisplay(cdm.getTimelineEntries(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE), display, cdm);
         initialize();
     }
     
@@ -221,4 +222,9 @@ public class IntegratedTimelineCanvas implements CanvasDisplay {
     public void clearAllData() {
         m_canvas.clearAllData();
     }
+
+    @Override
+    public void dataChanged(ChangeSet changes) {
+        m_canvas.dataChanged(changes);
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package campaignencyclopedia.display.swing.graphical.timeline;
 
 import campaignencyclopedia.data.CampaignCalendar;
+import campaignencyclopedia.data.ChangeSet;
 import campaignencyclopedia.data.DataAccessor;
 import campaignencyclopedia.data.Entity;
 import campaignencyclopedia.data.Month;
@@ -149,16 +150,10 @@ public class TimelineCanvas extends JComponent implements CanvasDisplay {
     private void initialize() {
         // Initialize Data Map and all offsets to zero.
         m_data.clear();
-        for (TimelineEntry tle : m_da.getTimelineData()) {
+        for (TimelineEntry tle : m_da.getTimelineEntries(m_earliestYear, Integer.MIN_VALUE, m_latestYear, Integer.MAX_VALUE)) {
             if (!m_includeSecretEntries && tle.isSecret()) {
                 continue;
             }
-            if (tle.getYear() < m_earliestYear) {
-                continue;
-            }
-            if (tle.getYear() > m_latestYear) {
-                continue;
-            }
             
             TimelineDate date = new TimelineDate(tle.getMonth(), tle.getYear());
             switch (m_zoomLevel) {
@@ -516,6 +511,12 @@ public class TimelineCanvas extends JComponent implements CanvasDisplay {
         // Do nothing.
     }
 
+    @Override
+    public void dataChanged(ChangeSet changes) {
+        m_dataChanged = true;
+        repaint();
+    }
+
     void setYearRange(Integer earliestYear, Integer latestYear) {
         m_earliestYear = earliestYear;
         m_latestYear = latestYear;
@@ -0,0 +1,162 @@
+package campaignencyclopedia.data;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests of PersistentHashMap, checked against a HashMap given the same changes.
+ * @author adam
+ */
+public class PersistentHashMapTest {
+
+    /** The empty map has no mappings. */
+    @Test
+    public void testEmpty() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.size());
+        assertNull(map.get("a"));
+        assertFalse(map.containsKey("a"));
+        assertNull(map.get(null));
+        assertFalse(map.iterator().hasNext());
+    }
+
+    /** Adding, replacing and removing mappings returns new maps and leaves the old ones unchanged. */
+    @Test
+    public void testOldVersionsAreUnchanged() {
+        PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, Integer> one = empty.plus("a", 1);
+        PersistentHashMap<String, Integer> two = one.plus("b", 2);
+        PersistentHashMap<String, Integer> replaced = two.plus("a", 3);
+        PersistentHashMap<String, Integer> removed = replaced.minus("b");
+
+        assertEquals(0, empty.size());
+        assertEquals(1, one.size());
+        assertEquals(Integer.valueOf(1), one.get("a"));
+        assertFalse(one.containsKey("b"));
+        assertEquals(2, two.size());
+        assertEquals(Integer.valueOf(1), two.get("a"));
+        assertEquals(Integer.valueOf(2), two.get("b"));
+        assertEquals(2, replaced.size());
+        assertEquals(Integer.valueOf(3), replaced.get("a"));
+        assertEquals(1, removed.size());
+        assertEquals(Integer.valueOf(3), removed.get("a"));
+        assertFalse(removed.containsKey("b"));
+    }
+
+    /** Removing a key which is not mapped returns the same map, and removing the last mapping the empty map. */
+    @Test
+    public void testMinus() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("a", 1);
+        assertSame(map, map.minus("b"));
+        assertSame(map, map.minus(null));
+        assertSame(PersistentHashMap.empty(), map.minus("a"));
+    }
+
+    /** Null keys and values are refused. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullKey() {
+        PersistentHashMap.<String, Integer>empty().plus(null, 1);
+    }
+
+    /** Null keys and values are refused. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullValue() {
+        PersistentHashMap.<String, Integer>empty().plus("a", null);
+    }
+
+    /** Keys whose hashes are identical are held apart, and can be replaced and removed individually. */
+    @Test
+    public void testCollisions() {
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.plus(new Key(i, 7), i);
+        }
+        map = map.plus(new Key(100, 8), 100);
+        assertEquals(11, map.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), map.get(new Key(i, 7)));
+        }
+        map = map.plus(new Key(3, 7), 33);
+        assertEquals(11, map.size());
+        assertEquals(Integer.valueOf(33), map.get(new Key(3, 7)));
+        for (int i = 0; i < 10; i += 2) {
+            map = map.minus(new Key(i, 7));
+        }
+        assertEquals(6, map.size());
+        assertNull(map.get(new Key(4, 7)));
+        assertEquals(Integer.valueOf(5), map.get(new Key(5, 7)));
+        assertEquals(Integer.valueOf(100), map.get(new Key(100, 8)));
+    }
+
+    /** Random changes leave the map, its iterator and its Map view holding the same mappings as a HashMap. */
+    @Test
+    public void testRandomChangesMatchHashMap() {
+        Random random = new Random(5);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            // Keys from a small range, so that mappings are often replaced and removed.
+            Integer key = random.nextInt(3000) * 65536;
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        Map<Integer, Integer> iterated = new HashMap<>();
+        Iterator<Map.Entry<Integer, Integer>> iterator = map.iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Integer> entry = iterator.next();
+            assertNull(iterated.put(entry.getKey(), entry.getValue()));
+        }
+        assertEquals(expected, iterated);
+        assertEquals(expected, map.asMap());
+    }
+
+    /** A key with a chosen hash code. */
+    private static final class Key {
+
+        /** The identity of the key. */
+        private final int m_id;
+
+        /** The hash code of the key. */
+        private final int m_hash;
+
+        /**
+         * Creates a new Key.
+         * @param id the identity of the key.
+         * @param hash the hash code of the key.
+         */
+        private Key(int id, int hash) {
+            m_id = id;
+            m_hash = hash;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return m_hash;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).m_id == m_id;
+        }
+    }
+}
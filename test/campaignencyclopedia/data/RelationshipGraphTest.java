@@ -0,0 +1,274 @@
+package campaignencyclopedia.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests of RelationshipGraph against a map of modifiable RelationshipManagers put through the same changes.
+ * @author adam
+ */
+public class RelationshipGraphTest {
+
+    /** The relationship types used. */
+    private static final String[] LABELS = {"Ally", "Enemy", "Lives In"};
+
+    /** Random changes give the same Relationships, in the same order, as RelationshipManagers given the same ones. */
+    @Test
+    public void testRandomChanges() {
+        Random random = new Random(8);
+        List<UUID> ids = createIds(60);
+        RelationshipGraph graph = RelationshipGraph.EMPTY;
+        Map<UUID, RelationshipManager> expected = new HashMap<>();
+        List<RelationshipGraph> graphs = new ArrayList<>();
+        List<Map<UUID, RelationshipManager>> states = new ArrayList<>();
+
+        for (int step = 0; step < 3000; step++) {
+            UUID owner = ids.get(random.nextInt(ids.size()));
+            int change = random.nextInt(10);
+            if (change < 5) {
+                Relationship rel = createRelationship(random, owner, ids);
+                graph = graph.withRelationship(owner, rel);
+                manager(expected, owner).addRelationship(rel);
+            } else if (change < 7) {
+                RelationshipManager current = expected.get(owner);
+                List<Relationship> rels = current == null ? new ArrayList<Relationship>()
+                                                          : new ArrayList<>(current.getAllRelationships());
+                Relationship rel = rels.isEmpty() ? createRelationship(random, owner, ids)
+                                                  : rels.get(random.nextInt(rels.size()));
+                graph = graph.withoutRelationship(owner, rel);
+                if (current != null) {
+                    current.remove(rel);
+                }
+            } else if (change < 9) {
+                RelationshipManager.Builder builder = new RelationshipManager.Builder();
+                for (int i = random.nextInt(6); i > 0; i--) {
+                    builder.add(createRelationship(random, owner, ids));
+                }
+                RelationshipManager relMgr = builder.build();
+                graph = graph.withRelationships(owner, relMgr);
+                expected.put(owner, new RelationshipManager(relMgr));
+            } else {
+                graph = graph.withoutEntity(owner);
+                expected.remove(owner);
+                for (RelationshipManager relMgr : expected.values()) {
+                    relMgr.removeAll(relationshipsTo(relMgr, owner));
+                }
+            }
+            if (step % 100 == 0) {
+                graphs.add(graph);
+                states.add(copy(expected));
+            }
+            assertGraph(expected, ids, graph);
+        }
+
+        // Every graph is unchanged by the changes made after it, and building from scratch gives the same graph.
+        for (int i = 0; i < graphs.size(); i++) {
+            assertGraph(states.get(i), ids, graphs.get(i));
+        }
+        assertGraph(expected, ids, RelationshipGraph.build(new ArrayList<UUID>(), expected));
+    }
+
+    /** Nodes are released once unused, and the trie grows past several levels as nodes are appended. */
+    @Test
+    public void testNodes() {
+        List<UUID> ids = createIds(1500);
+        RelationshipGraph graph = RelationshipGraph.EMPTY;
+        for (int i = 1; i < ids.size(); i++) {
+            graph = graph.withRelationship(ids.get(0), new Relationship(ids.get(0), ids.get(i), "Ally", i % 2 == 0));
+        }
+        assertEquals(ids.size(), graph.getNodeCount());
+        assertEquals(ids.size() - 1, graph.getEdgeCount());
+        assertEquals((ids.size() - 1) / 2, graph.getSecretEdgeCount());
+        int hub = graph.indexOf(ids.get(0));
+        for (int i = 1; i < ids.size(); i++) {
+            int node = graph.indexOf(ids.get(i));
+            assertEquals(ids.get(i), graph.getId(node));
+            assertEquals(1, graph.getSourceCount(node));
+            assertEquals(hub, graph.getSource(node, 0));
+            assertFalse(graph.isOwner(ids.get(i)));
+            assertNull(graph.getRelationships(ids.get(i)));
+        }
+        int secretCount = 0;
+        Set<UUID> targets = new HashSet<>();
+        for (int edge = 0; edge < graph.getOutDegree(hub); edge++) {
+            targets.add(graph.getId(graph.getTarget(hub, edge)));
+            assertEquals(RelationshipLabels.intern("Ally"), graph.getType(hub, edge));
+            if (graph.isSecret(hub, edge)) {
+                assertEquals(secretCount++, edge);
+            }
+        }
+        assertEquals(new HashSet<>(ids.subList(1, ids.size())), targets);
+
+        // Removing the hub leaves no Relationships, and releases every node.
+        RelationshipGraph emptied = graph.withoutEntity(ids.get(0));
+        assertEquals(0, emptied.getEdgeCount());
+        assertEquals(0, emptied.getSecretEdgeCount());
+        assertTrue(emptied.asMap().isEmpty());
+        for (UUID id : ids) {
+            assertEquals(-1, emptied.indexOf(id));
+        }
+        for (int node = 0; node < emptied.getNodeCount(); node++) {
+            assertNull(emptied.getId(node));
+        }
+
+        // Adding no Relationship still gives the owner a RelationshipManager, and adding one twice changes nothing.
+        RelationshipGraph owner = RelationshipGraph.EMPTY.withRelationship(ids.get(0), null);
+        assertTrue(owner.isOwner(ids.get(0)));
+        assertEquals(0, owner.getRelationships(ids.get(0)).size());
+        assertSame(owner, owner.withRelationship(ids.get(0), null));
+        Relationship rel = new Relationship(ids.get(0), ids.get(1), "Enemy", false);
+        RelationshipGraph related = owner.withRelationship(ids.get(0), rel);
+        assertSame(related, related.withRelationship(ids.get(0), rel));
+        assertSame(related, related.withoutRelationship(ids.get(1), rel));
+    }
+
+    /** Relationships stored under an Entity other than their owner are stored as owned by it, once each. */
+    @Test
+    public void testForeignOwners() {
+        List<UUID> ids = createIds(3);
+        RelationshipManager relMgr = new RelationshipManager();
+        relMgr.addRelationship(new Relationship(ids.get(0), ids.get(2), "Ally", false));
+        relMgr.addRelationship(new Relationship(ids.get(1), ids.get(2), "Ally", false));
+        relMgr.addRelationship(new Relationship(ids.get(1), ids.get(2), "Enemy", false));
+        RelationshipGraph graph = RelationshipGraph.EMPTY.withRelationships(ids.get(0), relMgr);
+        assertEquals(new HashSet<>(Arrays.asList(new Relationship(ids.get(0), ids.get(2), "Ally", false),
+                                                 new Relationship(ids.get(0), ids.get(2), "Enemy", false))),
+                     graph.getRelationships(ids.get(0)).getAllRelationships());
+        assertEquals(2, graph.getEdgeCount());
+    }
+
+    /**
+     * Asserts that the supplied graph holds the supplied RelationshipManagers.
+     * @param expected the RelationshipManagers, keyed by owner.
+     * @param ids the IDs of all Entities which may appear in the graph.
+     * @param graph the graph.
+     */
+    private static void assertGraph(Map<UUID, RelationshipManager> expected, List<UUID> ids, RelationshipGraph graph) {
+        int edges = 0;
+        int secretEdges = 0;
+        for (UUID id : ids) {
+            RelationshipManager relMgr = expected.get(id);
+            RelationshipManager actual = graph.getRelationships(id);
+            assertEquals(relMgr != null, graph.isOwner(id));
+            if (relMgr == null) {
+                assertNull(actual);
+            } else {
+                assertEquals(new ArrayList<>(relMgr.getAllRelationships()),
+                             new ArrayList<>(actual.getAllRelationships()));
+                assertEquals(relMgr.getSecretRelationships(), actual.getSecretRelationships());
+                assertFalse(actual.isModifiable());
+                edges += relMgr.size();
+                secretEdges += relMgr.getSecretCount();
+            }
+
+            Set<Relationship> inbound = new HashSet<>();
+            for (RelationshipManager owned : expected.values()) {
+                inbound.addAll(relationshipsTo(owned, id));
+            }
+            assertEquals(inbound, graph.getRelationshipsPointingTo(id));
+            int node = graph.indexOf(id);
+            if (node >= 0) {
+                Set<UUID> sources = new HashSet<>();
+                for (Relationship rel : inbound) {
+                    sources.add(rel.getEntityId());
+                }
+                assertEquals(sources.size(), graph.getSourceCount(node));
+                for (int i = 0; i < graph.getSourceCount(node); i++) {
+                    assertTrue(sources.contains(graph.getId(graph.getSource(node, i))));
+                    assertTrue(i == 0 || graph.getSource(node, i - 1) < graph.getSource(node, i));
+                }
+            } else {
+                assertTrue(relMgr == null && inbound.isEmpty());
+            }
+        }
+        assertEquals(edges, graph.getEdgeCount());
+        assertEquals(secretEdges, graph.getSecretEdgeCount());
+        Map<UUID, RelationshipManager> map = graph.asMap();
+        assertEquals(expected.keySet(), map.keySet());
+        for (Map.Entry<UUID, RelationshipManager> entry : map.entrySet()) {
+            assertEquals(expected.get(entry.getKey()).getAllRelationships(), entry.getValue().getAllRelationships());
+        }
+    }
+
+    /**
+     * Returns the RelationshipManager of the supplied owner, creating it if it has none.
+     * @param managers the RelationshipManagers, keyed by owner.
+     * @param owner the owner.
+     * @return the RelationshipManager of the owner.
+     */
+    private static RelationshipManager manager(Map<UUID, RelationshipManager> managers, UUID owner) {
+        RelationshipManager relMgr = managers.get(owner);
+        if (relMgr == null) {
+            relMgr = new RelationshipManager();
+            managers.put(owner, relMgr);
+        }
+        return relMgr;
+    }
+
+    /**
+     * Returns a copy of the supplied RelationshipManagers.
+     * @param managers the RelationshipManagers, keyed by owner.
+     * @return a copy of the RelationshipManagers.
+     */
+    private static Map<UUID, RelationshipManager> copy(Map<UUID, RelationshipManager> managers) {
+        Map<UUID, RelationshipManager> copy = new HashMap<>();
+        for (Map.Entry<UUID, RelationshipManager> entry : managers.entrySet()) {
+            copy.put(entry.getKey(), new RelationshipManager(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the Relationships of the supplied manager which point at the supplied Entity.
+     * @param relMgr the RelationshipManager.
+     * @param target the ID of the Entity.
+     * @return the Relationships pointing at the Entity.
+     */
+    private static Set<Relationship> relationshipsTo(RelationshipManager relMgr, UUID target) {
+        Set<Relationship> rels = new HashSet<>();
+        for (Relationship rel : relMgr) {
+            if (rel.getRelatedEntity().equals(target)) {
+                rels.add(rel);
+            }
+        }
+        return rels;
+    }
+
+    /**
+     * Creates a random Relationship.
+     * @param random the source of randomness.
+     * @param owner the owner of the Relationship.
+     * @param ids the IDs the Relationship may point at.
+     * @return a random Relationship.
+     */
+    private static Relationship createRelationship(Random random, UUID owner, List<UUID> ids) {
+        return new Relationship(owner, ids.get(random.nextInt(ids.size())), LABELS[random.nextInt(LABELS.length)],
+                                random.nextBoolean());
+    }
+
+    /**
+     * Creates the supplied number of random IDs.
+     * @param count the number of IDs.
+     * @return the IDs.
+     */
+    private static List<UUID> createIds(int count) {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(UUID.randomUUID());
+        }
+        return ids;
+    }
+}
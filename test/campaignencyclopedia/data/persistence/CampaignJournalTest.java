@@ -0,0 +1,247 @@
+package campaignencyclopedia.data.persistence;
+
+import campaignencyclopedia.data.Campaign;
+import campaignencyclopedia.data.CampaignCalendar;
+import campaignencyclopedia.data.Entity;
+import campaignencyclopedia.data.EntityData;
+import campaignencyclopedia.data.EntityType;
+import campaignencyclopedia.data.RelationshipManager;
+import campaignencyclopedia.data.TimelineEntry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that a CampaignJournal replays its committed changes, and only those, when its end has been cut short or
+ * corrupted by a crash part way through appending.
+ * @author adam
+ */
+public class CampaignJournalTest {
+
+    /** The logger of CampaignJournal, which warns of every torn or corrupt journal read. */
+    private static final Logger JOURNAL_LOGGER = Logger.getLogger(CampaignJournal.class.getName());
+
+    /** The level of the journal's logger before the tests. */
+    private static Level s_level;
+
+    /** The folder the journal is written in. */
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    /** The journal file. */
+    private File m_file;
+
+    /** The campaign as saved in full, which the journal is replayed over. */
+    private Campaign m_snapshot;
+
+    /** The Entities of the snapshot. */
+    private Entity[] m_entities;
+
+    /** The end of the journal file after the header and after each group written by writeGroups(). */
+    private long[] m_groupEnds;
+
+    /** Silences the warnings of the journal's logger. */
+    @BeforeClass
+    public static void silenceWarnings() {
+        s_level = JOURNAL_LOGGER.getLevel();
+        JOURNAL_LOGGER.setLevel(Level.SEVERE);
+    }
+
+    /** Restores the level of the journal's logger. */
+    @AfterClass
+    public static void restoreWarnings() {
+        JOURNAL_LOGGER.setLevel(s_level);
+    }
+
+    /** Creates the snapshot and names the journal file. */
+    @Before
+    public void setUp() {
+        m_file = new File(m_folder.getRoot(), "test.campaign." + CampaignJournal.FILE_EXTENSION);
+        m_entities = new Entity[] {createEntity("Alice", "first"), createEntity("Bob", "first"),
+                                   createEntity("Carol", "first")};
+        m_snapshot = new Campaign("Test", new HashSet<>(Arrays.asList(m_entities)),
+                                  new HashMap<UUID, RelationshipManager>(), new HashSet<TimelineEntry>(),
+                                  new CampaignCalendar());
+    }
+
+    /** Every committed group of changes is replayed, in order. */
+    @Test
+    public void testReplay() throws IOException {
+        Campaign[] states = writeGroups();
+        assertEquals(entities(states[states.length - 1]), entities(CampaignJournal.replay(m_snapshot, m_file)));
+    }
+
+    /** A journal cut short anywhere in a group replays the groups before it, and is cut back to them when opened. */
+    @Test
+    public void testTornTail() throws IOException {
+        Campaign[] states = writeGroups();
+        long[] ends = m_groupEnds;
+        byte[] journal = Files.readAllBytes(m_file.toPath());
+        for (int group = 1; group < ends.length; group++) {
+            for (long length = ends[group - 1]; length < ends[group]; length++) {
+                Files.write(m_file.toPath(), Arrays.copyOf(journal, (int)length));
+                assertEquals("Cut at " + length, entities(states[group - 1]),
+                             entities(CampaignJournal.replay(m_snapshot, m_file)));
+            }
+        }
+
+        // Opening the journal removes the torn group, so that the changes appended next are replayed after the others.
+        Files.write(m_file.toPath(), Arrays.copyOf(journal, (int)ends[1] + 9));
+        Entity renamed = createEntity(m_entities[2].getId(), "Caroline", "first");
+        CampaignJournal reopened = CampaignJournal.open(m_file, 0);
+        try {
+            assertEquals(ends[1], m_file.length());
+            reopened.entityStored(renamed);
+            reopened.changesComplete();
+            reopened.flush();
+        } finally {
+            reopened.close();
+        }
+        Set<Entity> expected = entities(states[1]);
+        expected.remove(m_entities[2]);
+        expected.add(renamed);
+        assertEquals(expected, entities(CampaignJournal.replay(m_snapshot, m_file)));
+    }
+
+    /** A journal with any byte of a group corrupted replays only the groups before it, even if later ones are whole. */
+    @Test
+    public void testCorruptTail() throws IOException {
+        Campaign[] states = writeGroups();
+        long[] ends = m_groupEnds;
+        byte[] journal = Files.readAllBytes(m_file.toPath());
+        for (int group = 1; group < ends.length; group++) {
+            for (long position = ends[group - 1]; position < ends[group]; position++) {
+                byte[] corrupt = journal.clone();
+                corrupt[(int)position] ^= 0x10;
+                Files.write(m_file.toPath(), corrupt);
+                assertEquals("Corrupted at " + position, entities(states[group - 1]),
+                             entities(CampaignJournal.replay(m_snapshot, m_file)));
+            }
+        }
+
+        byte[] corrupt = journal.clone();
+        corrupt[(int)ends[1] + 6] ^= 0x01;
+        Files.write(m_file.toPath(), corrupt);
+        CampaignJournal.open(m_file, 0).close();
+        assertEquals(ends[1], m_file.length());
+    }
+
+    /** A file which is not a journal is refused rather than replayed as empty. */
+    @Test
+    public void testNotAJournal() throws IOException {
+        Files.write(m_file.toPath(), "{\"campaign-name\": \"Test\"}".getBytes(StandardCharsets.UTF_8));
+        try {
+            CampaignJournal.replay(m_snapshot, m_file);
+            fail("A file which is not a journal was replayed.");
+        } catch (IOException ex) {
+            assertEquals("Not a campaign journal.", ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes three groups of changes to a new journal, recording where each ends in m_groupEnds.
+     * @return the campaign before the groups and after each of them.
+     * @throws IOException if an error occurs writing the journal.
+     */
+    private Campaign[] writeGroups() throws IOException {
+        Campaign[] states = new Campaign[4];
+        m_groupEnds = new long[4];
+        states[0] = m_snapshot;
+        Set<Entity> entities = new HashSet<>(Arrays.asList(m_entities));
+        CampaignJournal journal = CampaignJournal.open(m_file, 0);
+        try {
+            m_groupEnds[0] = m_file.length();
+
+            Entity dave = createEntity("Dave", "added");
+            Entity alice = createEntity(m_entities[0].getId(), "Alice", "edited");
+            journal.entityStored(dave);
+            journal.entityStored(alice);
+            journal.changesComplete();
+            entities.add(dave);
+            entities.remove(m_entities[0]);
+            entities.add(alice);
+            states[1] = withEntities(entities);
+            journal.flush();
+            m_groupEnds[1] = m_file.length();
+
+            journal.entityRemoved(m_entities[1].getId());
+            journal.changesComplete();
+            entities.remove(m_entities[1]);
+            states[2] = withEntities(entities);
+            journal.flush();
+            m_groupEnds[2] = m_file.length();
+
+            Entity edited = createEntity(dave.getId(), "Dave", "edited again");
+            journal.entityStored(edited);
+            journal.entityRemoved(m_entities[2].getId());
+            journal.changesComplete();
+            entities.remove(dave);
+            entities.add(edited);
+            entities.remove(m_entities[2]);
+            states[3] = withEntities(entities);
+            journal.flush();
+            m_groupEnds[3] = m_file.length();
+        } finally {
+            journal.close();
+        }
+        return states;
+    }
+
+    /**
+     * Returns the snapshot with its Entities replaced by the supplied ones.
+     * @param entities the Entities.
+     * @return the campaign with the supplied Entities.
+     */
+    private Campaign withEntities(Set<Entity> entities) {
+        return new Campaign(m_snapshot.getName(), new HashSet<>(entities), m_snapshot.getAllRelationships(),
+                            m_snapshot.getTimelineEntries(), m_snapshot.getCalendar());
+    }
+
+    /**
+     * Returns a copy of the Entities of the supplied campaign.
+     * @param campaign the campaign.
+     * @return the Entities of the campaign.
+     */
+    private static Set<Entity> entities(Campaign campaign) {
+        return new HashSet<>(campaign.getEntities());
+    }
+
+    /**
+     * Creates a new Entity with a new ID.
+     * @param name the name of the Entity.
+     * @param description the public description of the Entity.
+     * @return the Entity.
+     */
+    private static Entity createEntity(String name, String description) {
+        return createEntity(UUID.randomUUID(), name, description);
+    }
+
+    /**
+     * Creates a new Entity.
+     * @param id the ID of the Entity.
+     * @param name the name of the Entity.
+     * @param description the public description of the Entity.
+     * @return the Entity.
+     */
+    private static Entity createEntity(UUID id, String name, String description) {
+        return new Entity(id, name, EntityType.PLAYER_CHARACTER,
+                          new EntityData(description, new HashSet<>(Arrays.asList("tag"))),
+                          new EntityData("secret " + description, new HashSet<String>()), false);
+    }
+}
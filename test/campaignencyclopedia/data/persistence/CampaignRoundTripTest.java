@@ -0,0 +1,396 @@
+package campaignencyclopedia.data.persistence;
+
+import campaignencyclopedia.data.Campaign;
+import campaignencyclopedia.data.CampaignCalendar;
+import campaignencyclopedia.data.Entity;
+import campaignencyclopedia.data.EntityData;
+import campaignencyclopedia.data.EntityType;
+import campaignencyclopedia.data.Month;
+import campaignencyclopedia.data.Relationship;
+import campaignencyclopedia.data.RelationshipManager;
+import campaignencyclopedia.data.TimelineEntry;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import toolbox.file.persistence.json.JsonException;
+import toolbox.file.persistence.json.JsonObject;
+
+/**
+ * Tests that a campaign written in each save format, compressed or not, reads back as the same campaign.  Campaigns are
+ * compared by a sorted description of every field of every record, as not every record has equals().
+ * @author adam
+ */
+public class CampaignRoundTripTest {
+
+    /** Text which is awkward to encode: empty, escaped in JSON, outside ASCII, or long. */
+    private static final String[] TEXT = {"", "plain", "multi\nline \"quoted\"\ttab \\ / \u00e9 \u2713 \ud83d\udc09",
+                                          "</script>", new String(new char[70000]).replace('\0', 'x')};
+
+    /** The labels given to Relationships. */
+    private static final String[] LABELS = {"Ally", "Enemy", "Friend", "Parent"};
+
+    /** A campaign written as JSON reads back the same, with and without whitespace. */
+    @Test
+    public void testJson() throws IOException, JsonException {
+        for (int seed = 0; seed < 5; seed++) {
+            Campaign campaign = createCampaign(new Random(seed), seed * 20);
+            for (boolean compact : new boolean[] {false, true}) {
+                assertRoundTrip(campaign, readJson(writeJson(campaign, true, compact, false)), true);
+            }
+        }
+    }
+
+    /**
+     * A campaign written as JSON is, byte for byte, the pretty-printed JsonObject holding the same members that earlier
+     * versions wrote, with and without secrets.
+     */
+    @Test
+    public void testJsonMatchesJsonObject() throws IOException, JsonException {
+        for (int seed = 0; seed < 5; seed++) {
+            // Small campaigns too, as arrays of one element are laid out differently.
+            Campaign campaign = createCampaign(new Random(seed), seed * seed);
+            for (boolean includeSecrets : new boolean[] {false, true}) {
+                assertEquals(toJsonObject(campaign, includeSecrets).toString(4),
+                             new String(writeJson(campaign, includeSecrets, false, false), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /** A campaign written in the binary format reads back the same. */
+    @Test
+    public void testBinary() throws IOException, JsonException {
+        for (int seed = 0; seed < 5; seed++) {
+            Campaign campaign = createCampaign(new Random(seed), seed * 20);
+            byte[] file = writeBinary(campaign, true, false);
+            assertTrue(BinaryCampaignTranslator.isBinary(new BufferedInputStream(new ByteArrayInputStream(file))));
+            assertRoundTrip(campaign, readBinary(file), true);
+        }
+    }
+
+    /** A campaign written compressed in either format reads back the same, and is recognized as compressed. */
+    @Test
+    public void testCompressed() throws IOException, JsonException {
+        Campaign campaign = createCampaign(new Random(7), 60);
+        byte[] json = writeJson(campaign, true, false, true);
+        byte[] binary = writeBinary(campaign, true, true);
+        for (byte[] file : Arrays.asList(json, binary)) {
+            assertEquals(0x1f, file[0] & 0xff);
+            assertEquals(0x8b, file[1] & 0xff);
+        }
+        assertTrue(json.length < writeJson(campaign, true, false, false).length);
+        assertRoundTrip(campaign, readJson(json), true);
+        assertRoundTrip(campaign, readBinary(binary), true);
+    }
+
+    /** A stream which is not compressed is read through unchanged. */
+    @Test
+    public void testUncompressedPassesThrough() throws IOException {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+        assertSame(in, CampaignCompression.decompress(in));
+        InputStream empty = new BufferedInputStream(new ByteArrayInputStream(new byte[0]));
+        assertSame(empty, CampaignCompression.decompress(empty));
+    }
+
+    /**
+     * A campaign written without secrets in either format reads back without secret Entities, their TimelineEntries and
+     * the secret data of every Entity, and with everything else.
+     */
+    @Test
+    public void testWithoutSecrets() throws IOException, JsonException {
+        Campaign campaign = createCampaign(new Random(11), 60);
+        List<Campaign> read = Arrays.asList(readJson(writeJson(campaign, false, false, false)),
+                                            readBinary(writeBinary(campaign, false, false)));
+        for (Campaign without : read) {
+            assertRoundTrip(campaign, without, false);
+            for (Entity entity : without.getEntities()) {
+                assertFalse(entity.isSecret());
+                assertEquals("", entity.getSecretData().getDescription());
+                assertTrue(entity.getSecretData().getTags().isEmpty());
+            }
+        }
+    }
+
+    /** A campaign with nothing in it reads back the same in every format. */
+    @Test
+    public void testEmpty() throws IOException, JsonException {
+        Campaign campaign = createCampaign(new Random(0), 0);
+        assertRoundTrip(campaign, readJson(writeJson(campaign, true, false, true)), true);
+        assertRoundTrip(campaign, readBinary(writeBinary(campaign, true, true)), true);
+    }
+
+    /**
+     * Asserts that the supplied campaign was read back as the original.
+     * @param original the campaign written.
+     * @param read the campaign read back.
+     * @param includeSecrets true if the campaign was written with its secrets.
+     */
+    private static void assertRoundTrip(Campaign original, Campaign read, boolean includeSecrets) {
+        assertNotNull(read);
+        assertEquals(original.getCalendar(), read.getCalendar());
+        assertEquals(describe(original, includeSecrets), describe(read, includeSecrets));
+    }
+
+    /**
+     * Describes every field of every record of the supplied campaign, one record per line, in sorted order.
+     * @param campaign the campaign to describe.
+     * @param includeSecrets false to leave out what is not written without secrets: secret Entities, the secret data of
+     * every Entity, and the TimelineEntries of secret Entities.
+     * @return the description of the campaign.
+     */
+    private static List<String> describe(Campaign campaign, boolean includeSecrets) {
+        List<String> lines = new ArrayList<>();
+        lines.add("campaign " + campaign.getName());
+        for (Month month : campaign.getCalendar().getMonths()) {
+            lines.add("month " + month.getIndex() + " " + month.getName());
+        }
+        Set<UUID> secretEntities = new HashSet<>();
+        for (Entity entity : campaign.getEntities()) {
+            if (entity.isSecret()) {
+                secretEntities.add(entity.getId());
+                if (!includeSecrets) {
+                    continue;
+                }
+            }
+            String line = "entity " + entity.getId() + " " + entity.getType() + " " + entity.isSecret() + " " +
+                          entity.getName() + " " + describe(entity.getPublicData());
+            lines.add(includeSecrets ? line + " " + describe(entity.getSecretData()) : line);
+        }
+        for (Map.Entry<UUID, RelationshipManager> entry : campaign.getAllRelationships().entrySet()) {
+            for (Relationship rel : entry.getValue().getAllRelationships()) {
+                lines.add("relationship " + entry.getKey() + " " + rel.getEntityId() + " " + rel.getRelatedEntity() +
+                          " " + rel.isSecret() + " " + rel.getRelationshipText());
+            }
+        }
+        for (TimelineEntry entry : campaign.getTimelineEntries()) {
+            if (includeSecrets || !secretEntities.contains(entry.getAssociatedId())) {
+                lines.add("timeline " + entry.getId() + " " + entry.getAssociatedId() + " " + entry.isSecret() + " " +
+                          entry.getYear() + " " + entry.getMonth().getName() + " " + entry.getTitle());
+            }
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    /**
+     * Describes the supplied EntityData, with its tags in sorted order.
+     * @param data the EntityData to describe.
+     * @return the description of the EntityData.
+     */
+    private static String describe(EntityData data) {
+        return new TreeSet<>(data.getTags()) + " " + data.getDescription();
+    }
+
+    /**
+     * Writes the supplied campaign as JSON.
+     * @param campaign the campaign to write.
+     * @param includeSecrets true if secrets should be written.
+     * @param compact true to write the JSON without whitespace.
+     * @param compress true to compress the file.
+     * @return the file written.
+     * @throws IOException if an error occurs writing.
+     * @throws JsonException if an error occurs translating the campaign.
+     */
+    private static byte[] writeJson(Campaign campaign, boolean includeSecrets, boolean compact, boolean compress)
+            throws IOException, JsonException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        GZIPOutputStream compressed = compress ? CampaignCompression.compress(file) : null;
+        Writer writer = new OutputStreamWriter(compress ? compressed : file, StandardCharsets.UTF_8);
+        CampaignTranslator.writeJson(campaign, null, includeSecrets, compact, writer);
+        if (compressed != null) {
+            compressed.finish();
+        }
+        return file.toByteArray();
+    }
+
+    /**
+     * Translates the supplied campaign to a JsonObject, as earlier versions did before writing it.
+     * @param campaign the campaign to translate.
+     * @param includeSecrets true if secrets should be included.
+     * @return the JsonObject holding the campaign.
+     * @throws JsonException if an error occurs translating the campaign.
+     */
+    private static JsonObject toJsonObject(Campaign campaign, boolean includeSecrets) throws JsonException {
+        List<Entity> entities = new ArrayList<>(campaign.getEntities());
+        Collections.sort(entities);
+        Set<UUID> secretEntities = new HashSet<>();
+        List<JsonObject> jsonEntities = new ArrayList<>();
+        for (Entity entity : entities) {
+            if (entity.isSecret()) {
+                secretEntities.add(entity.getId());
+            }
+            if (includeSecrets || !entity.isSecret()) {
+                jsonEntities.add(EntityTranslator.toJsonObject(entity, null, includeSecrets));
+            }
+        }
+        List<TimelineEntry> timeline = new ArrayList<>(campaign.getTimelineEntries());
+        Collections.sort(timeline);
+        List<JsonObject> jsonTimeline = new ArrayList<>();
+        for (TimelineEntry entry : timeline) {
+            if (includeSecrets || !secretEntities.contains(entry.getAssociatedId())) {
+                jsonTimeline.add(TimelineEntryTranslator.toJsonObject(entry));
+            }
+        }
+        List<Month> months = new ArrayList<>(campaign.getCalendar().getMonths());
+        Collections.sort(months);
+        List<JsonObject> jsonMonths = new ArrayList<>();
+        for (Month month : months) {
+            jsonMonths.add(MonthTranslator.toJson(month));
+        }
+        List<Relationship> relationships = new ArrayList<>();
+        for (RelationshipManager relMgr : campaign.getAllRelationships().values()) {
+            relationships.addAll(relMgr.getAllRelationships());
+        }
+        Collections.sort(relationships);
+        List<String> labels = new ArrayList<>();
+        List<JsonObject> jsonRelationships = new ArrayList<>();
+        for (Relationship rel : relationships) {
+            if (!labels.contains(rel.getRelationshipText())) {
+                labels.add(rel.getRelationshipText());
+            }
+            jsonRelationships.add(RelationshipTranslator.toJson(rel, labels.indexOf(rel.getRelationshipText())));
+        }
+
+        JsonObject json = new JsonObject();
+        json.put("campaign-name", campaign.getName());
+        json.put("version", CampaignTranslator.VERSION);
+        json.put("entities", jsonEntities);
+        json.put("timeline-entries", jsonTimeline);
+        json.put("calendar", jsonMonths);
+        json.put("relationship-labels", labels);
+        json.put("relationships", jsonRelationships);
+        return json;
+    }
+
+    /**
+     * Writes the supplied campaign in the binary format.
+     * @param campaign the campaign to write.
+     * @param includeSecrets true if secrets should be written.
+     * @param compress true to compress the file.
+     * @return the file written.
+     * @throws IOException if an error occurs writing.
+     */
+    private static byte[] writeBinary(Campaign campaign, boolean includeSecrets, boolean compress) throws IOException {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        GZIPOutputStream compressed = compress ? CampaignCompression.compress(file) : null;
+        OutputStream out = compress ? compressed : file;
+        BinaryCampaignTranslator.write(campaign, includeSecrets, out);
+        if (compressed != null) {
+            compressed.finish();
+        }
+        return file.toByteArray();
+    }
+
+    /**
+     * Reads a campaign written as JSON, decompressing it if it is compressed.
+     * @param file the file to read.
+     * @return the campaign read.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the file is not a valid campaign.
+     */
+    private static Campaign readJson(byte[] file) throws IOException, JsonException {
+        InputStream in = CampaignCompression.decompress(new BufferedInputStream(new ByteArrayInputStream(file)));
+        return CampaignTranslator.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a campaign written in the binary format, decompressing it if it is compressed.
+     * @param file the file to read.
+     * @return the campaign read.
+     * @throws IOException if an error occurs reading.
+     */
+    private static Campaign readBinary(byte[] file) throws IOException {
+        InputStream in = CampaignCompression.decompress(new BufferedInputStream(new ByteArrayInputStream(file)));
+        assertTrue(BinaryCampaignTranslator.isBinary(in));
+        return BinaryCampaignTranslator.read(in);
+    }
+
+    /**
+     * Creates a campaign of random Entities, Relationships and TimelineEntries, some of them secret.
+     * @param random the source of randomness.
+     * @param size the number of Entities.
+     * @return the campaign created.
+     */
+    private static Campaign createCampaign(Random random, int size) {
+        List<Month> months = new ArrayList<>();
+        for (int i = 0; i < 1 + random.nextInt(12); i++) {
+            months.add(new Month("Month " + i + text(random), i));
+        }
+
+        Set<Entity> entities = new HashSet<>();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            EntityType type = EntityType.values()[random.nextInt(EntityType.values().length)];
+            entities.add(new Entity(id, "Entity " + i + text(random), type, createData(random), createData(random),
+                                    random.nextInt(4) == 0));
+        }
+
+        Map<UUID, RelationshipManager> relationships = new HashMap<>();
+        Set<TimelineEntry> timeline = new HashSet<>();
+        for (UUID id : ids) {
+            RelationshipManager manager = new RelationshipManager();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                // Some Relationships are to Entities which are not in the campaign.
+                UUID related = random.nextInt(10) == 0 ? UUID.randomUUID() : ids.get(random.nextInt(ids.size()));
+                manager.addRelationship(new Relationship(id, related, LABELS[random.nextInt(LABELS.length)],
+                                                         random.nextInt(4) == 0));
+            }
+            if (!manager.isEmpty()) {
+                relationships.put(id, manager);
+            }
+            if (random.nextBoolean()) {
+                timeline.add(new TimelineEntry("Event" + text(random), months.get(random.nextInt(months.size())),
+                                               random.nextInt(2000) - 1000, random.nextInt(4) == 0, id));
+            }
+        }
+        return new Campaign("Campaign" + text(random), entities, relationships, timeline, new CampaignCalendar(months));
+    }
+
+    /**
+     * Creates random EntityData.
+     * @param random the source of randomness.
+     * @return the EntityData created.
+     */
+    private static EntityData createData(Random random) {
+        Set<String> tags = new HashSet<>();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            tags.add("tag" + random.nextInt(6) + text(random));
+        }
+        return new EntityData(text(random), tags);
+    }
+
+    /**
+     * Returns random text, most often short.
+     * @param random the source of randomness.
+     * @return the text.
+     */
+    private static String text(Random random) {
+        return TEXT[random.nextInt(20) == 0 ? TEXT.length - 1 : random.nextInt(TEXT.length - 1)];
+    }
+}
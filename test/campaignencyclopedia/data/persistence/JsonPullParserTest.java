@@ -0,0 +1,272 @@
+package campaignencyclopedia.data.persistence;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import toolbox.file.persistence.json.JsonException;
+
+/**
+ * Tests of JsonPullParser.  Each document is read both from a StringReader and from a Reader which supplies a single
+ * character at a time, so that every token and escape is also read across the end of the parser's buffer.
+ * @author adam
+ */
+public class JsonPullParserTest {
+
+    /** Every escape sequence is read, in both double and single quoted strings. */
+    @Test
+    public void testEscapes() throws IOException, JsonException {
+        String json = "[\"a\\nb\\tc\\rd\\be\\ff\", \"\\\"\\'\\\\\\/\", \"\\u00e9\\u20AC\\u0041\", " +
+                      "'it\\'s \"quoted\"', \"\"]";
+        for (JsonPullParser parser : parsers(json)) {
+            parser.beginArray();
+            assertTrue(parser.hasNext());
+            assertEquals("a\nb\tc\rd\be\ff", parser.nextString());
+            assertTrue(parser.hasNext());
+            assertEquals("\"'\\/", parser.nextString());
+            assertTrue(parser.hasNext());
+            assertEquals("\u00e9\u20ac\u0041", parser.nextString());
+            assertTrue(parser.hasNext());
+            assertEquals("it's \"quoted\"", parser.nextString());
+            assertTrue(parser.hasNext());
+            assertEquals("", parser.nextString());
+            assertFalse(parser.hasNext());
+        }
+    }
+
+    /** Malformed escapes and strings are refused. */
+    @Test
+    public void testMalformedStrings() throws IOException {
+        assertMalformed("[\"a\\xb\"]", "Illegal escape");
+        assertMalformed("[\"\\u00g0\"]", "Illegal escape");
+        assertMalformed("[\"\\u00", "Unterminated string");
+        assertMalformed("[\"ab\ncd\"]", "Unterminated string");
+        assertMalformed("[\"abc", "Unterminated string");
+    }
+
+    /** Numbers are read as ints, with fractions truncated, and quoted numbers are accepted. */
+    @Test
+    public void testNumbers() throws IOException, JsonException {
+        String json = "[0, -17, 2147483647, 2.9, -2.9, 1e2, \"42\", '7', 3.5]";
+        for (JsonPullParser parser : parsers(json)) {
+            parser.beginArray();
+            int[] expected = {0, -17, Integer.MAX_VALUE, 2, -2, 100, 42, 7};
+            for (int value : expected) {
+                assertTrue(parser.hasNext());
+                assertEquals(value, parser.nextInt());
+            }
+            assertTrue(parser.hasNext());
+            assertEquals("3.5", parser.nextString());
+            assertFalse(parser.hasNext());
+        }
+        assertMalformed("[abc]", "Expected a number but found 'abc'");
+        assertMalformed("[null]", "Expected a number but found 'null'");
+    }
+
+    /** Booleans are read whatever their case, and quoted; null is read as null text. */
+    @Test
+    public void testLiterals() throws IOException, JsonException {
+        String json = "{\"a\": true, 'b': FALSE, \"c\": \"true\", \"d\": null, \"e\":false}";
+        for (JsonPullParser parser : parsers(json)) {
+            parser.beginObject();
+            assertTrue(parser.hasNext());
+            assertEquals("a", parser.nextName());
+            assertTrue(parser.nextBoolean());
+            assertTrue(parser.hasNext());
+            assertEquals("b", parser.nextName());
+            assertFalse(parser.nextBoolean());
+            assertTrue(parser.hasNext());
+            assertEquals("c", parser.nextName());
+            assertTrue(parser.nextBoolean());
+            assertTrue(parser.hasNext());
+            assertEquals("d", parser.nextName());
+            assertNull(parser.nextString());
+            assertTrue(parser.hasNext());
+            assertEquals("e", parser.nextName());
+            assertFalse(parser.nextBoolean());
+            assertFalse(parser.hasNext());
+        }
+        assertMalformed("{\"a\": yes}", "Expected a boolean but found 'yes'");
+    }
+
+    /** Nested objects and arrays are skipped whole, and mismatched brackets are refused. */
+    @Test
+    public void testSkipValue() throws IOException, JsonException {
+        String json = "{\"skip\": {\"a\": [1, {\"b\": \"]}\"}, []], \"c\": {}}, \"keep\": 'x'}";
+        for (JsonPullParser parser : parsers(json)) {
+            parser.beginObject();
+            assertTrue(parser.hasNext());
+            assertEquals("skip", parser.nextName());
+            parser.skipValue();
+            assertTrue(parser.hasNext());
+            assertEquals("keep", parser.nextName());
+            assertEquals("x", parser.nextString());
+            assertFalse(parser.hasNext());
+        }
+        assertMalformed("[1}", "Expected ']' at character 2");
+    }
+
+    /** Positions are reported within the document, including in error messages and from part way through one. */
+    @Test
+    public void testPositions() throws IOException, JsonException {
+        String json = "{\"name\" : \"value\", \"n\": 12}";
+        for (JsonPullParser parser : parsers(json)) {
+            assertEquals(0, parser.getPosition());
+            parser.beginObject();
+            assertEquals(1, parser.getPosition());
+            assertTrue(parser.hasNext());
+            assertEquals("name", parser.nextName());
+            assertEquals(9, parser.getPosition());
+            assertEquals("value", parser.nextString());
+            assertEquals(17, parser.getPosition());
+            assertTrue(parser.hasNext());
+            assertEquals("n", parser.nextName());
+            assertEquals(12, parser.nextInt());
+            assertEquals(26, parser.getPosition());
+            assertFalse(parser.hasNext());
+            assertEquals(json.length(), parser.getPosition());
+        }
+
+        assertMalformed("{\"a\" 1}", "Expected ':' at character 5");
+        assertMalformed("{\"a\": 1, b: 2}", "A name must begin with a quote at character 10");
+        assertMalformed("[1, 2", "Unexpected end of input at character 5");
+        assertMalformed("[1, ]", "Missing value at character 4");
+
+        JsonPullParser parser = new JsonPullParser(new StringReader("[1, x]"), 1000);
+        assertEquals(1000, parser.getPosition());
+        parser.beginArray();
+        assertTrue(parser.hasNext());
+        assertEquals(1, parser.nextInt());
+        assertTrue(parser.hasNext());
+        try {
+            parser.nextInt();
+            fail("A malformed number was read.");
+        } catch (JsonException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().endsWith("at character 1005"));
+        }
+    }
+
+    /** Copied elements are the exact text of the array, and are parsed by a parser given their position. */
+    @Test
+    public void testCopyElements() throws IOException, JsonException {
+        String json = "[{\"a\": \"x,]\"}, [1, 2], 'y', 3]";
+        for (JsonPullParser parser : parsers(json)) {
+            parser.beginArray();
+            long start = parser.getPosition();
+            StringBuilder copied = new StringBuilder();
+            assertTrue(parser.copyElements(copied, 2));
+            assertEquals("{\"a\": \"x,]\"}, [1, 2]", copied.toString());
+            copied.setLength(0);
+            assertFalse(parser.copyElements(copied, 5));
+            assertEquals(" 'y', 3", copied.toString());
+            assertEquals(json.length(), parser.getPosition());
+
+            JsonPullParser elements = new JsonPullParser(new StringReader("{\"a\": \"x,]\"}, [1, 2]"), start);
+            elements.beginObject();
+            assertTrue(elements.hasNext());
+            assertEquals("a", elements.nextName());
+            assertEquals("x,]", elements.nextString());
+            assertFalse(elements.hasNext());
+            assertEquals(start + 12, elements.getPosition());
+        }
+
+        JsonPullParser parser = new JsonPullParser(new StringReader("[[1], 2}"));
+        parser.beginArray();
+        try {
+            parser.copyElements(new StringBuilder(), 5);
+            fail("A mismatched bracket was copied.");
+        } catch (JsonException ex) {
+            assertEquals("Expected ']' at character 7", ex.getMessage());
+        }
+    }
+
+    /**
+     * Asserts that reading every value of the supplied document fails with an error whose message begins with the
+     * supplied text.
+     * @param json the malformed document.
+     * @param message the beginning of the message expected.
+     * @throws IOException if an error occurs reading.
+     */
+    private static void assertMalformed(String json, String message) throws IOException {
+        for (JsonPullParser parser : parsers(json)) {
+            try {
+                readAll(parser);
+                fail("Malformed JSON was read: " + json);
+            } catch (JsonException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().startsWith(message));
+            }
+        }
+    }
+
+    /**
+     * Reads every value of a document, reading numbers as ints and booleans as booleans.
+     * @param parser the parser to read from.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the document is malformed.
+     */
+    private static void readAll(JsonPullParser parser) throws IOException, JsonException {
+        char c = parser.peek();
+        if (c == '{' || c == '[') {
+            boolean object = c == '{';
+            if (object) {
+                parser.beginObject();
+            } else {
+                parser.beginArray();
+            }
+            while (parser.hasNext()) {
+                if (object) {
+                    parser.nextName();
+                }
+                readAll(parser);
+            }
+        } else if (c == 't' || c == 'f' || c == 'y') {
+            parser.nextBoolean();
+        } else if (c == '"' || c == '\'') {
+            parser.nextString();
+        } else {
+            parser.nextInt();
+        }
+    }
+
+    /**
+     * Returns parsers of the supplied document which read it all at once and a character at a time.
+     * @param json the document to parse.
+     * @return the parsers of the document.
+     */
+    private static JsonPullParser[] parsers(String json) {
+        return new JsonPullParser[] {new JsonPullParser(new StringReader(json)),
+                                     new JsonPullParser(new OneCharReader(json))};
+    }
+
+    /** A Reader which supplies at most one character at each read. */
+    private static final class OneCharReader extends Reader {
+
+        /** The Reader to read from. */
+        private final Reader m_reader;
+
+        /**
+         * Creates a new OneCharReader.
+         * @param text the text to read.
+         */
+        private OneCharReader(String text) {
+            m_reader = new StringReader(text);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return m_reader.read(buffer, offset, Math.min(length, 1));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException {
+            m_reader.close();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package campaignencyclopedia.data.persistence;
+
+import campaignencyclopedia.data.Campaign;
+import campaignencyclopedia.data.Entity;
+import campaignencyclopedia.data.EntityType;
+import campaignencyclopedia.data.Relationship;
+import campaignencyclopedia.data.RelationshipManager;
+import campaignencyclopedia.data.TimelineEntry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import toolbox.file.persistence.json.JsonArray;
+import toolbox.file.persistence.json.JsonException;
+import toolbox.file.persistence.json.JsonObject;
+
+/**
+ * Tests of the migrations of save files between versions, against a v1.1.0 save file kept beside this test.
+ * @author adam
+ */
+public class SaveFileMigrationsTest {
+
+    /** The v1.1.0 save file. */
+    private static final String V1_1_0 = "v1_1_0.campaign";
+
+    /** The ID of Kara in the v1.1.0 save file. */
+    private static final UUID KARA = UUID.fromString("6f1c7a52-3d4e-4b8a-9c21-0a1b2c3d4e01");
+    /** The ID of Stonehold in the v1.1.0 save file. */
+    private static final UUID STONEHOLD = UUID.fromString("6f1c7a52-3d4e-4b8a-9c21-0a1b2c3d4e02");
+    /** The ID of Marek in the v1.1.0 save file. */
+    private static final UUID MAREK = UUID.fromString("6f1c7a52-3d4e-4b8a-9c21-0a1b2c3d4e03");
+    /** The ID of Tobin in the v1.1.0 save file. */
+    private static final UUID TOBIN = UUID.fromString("6f1c7a52-3d4e-4b8a-9c21-0a1b2c3d4e04");
+
+    /** The versions of save files are read, and those without one are of the original version. */
+    @Test
+    public void testReadVersion() throws IOException, JsonException {
+        assertEquals(SaveFileMigrations.ORIGINAL_VERSION, SaveFileMigrations.readVersion(readFixture()));
+        assertEquals("1.1.0", SaveFileMigrations.ORIGINAL_VERSION);
+        assertEquals("1.2.0", SaveFileMigrations.readVersion(new StringReader("{\"a\": [1], \"version\": \"1.2.0\"}")));
+        assertEquals(SaveFileMigrations.ORIGINAL_VERSION,
+                     SaveFileMigrations.readVersion(new StringReader("{\"version\": null}")));
+        assertTrue(SaveFileMigrations.needsUpgrade(SaveFileMigrations.ORIGINAL_VERSION));
+        assertTrue(SaveFileMigrations.needsUpgrade("1.2.0"));
+        assertFalse(SaveFileMigrations.needsUpgrade(SaveFileMigrations.getCurrentVersion()));
+    }
+
+    /** The v1.1.0 save file is upgraded to the current version with all its data, and its Relationships lifted out. */
+    @Test
+    public void testUpgradeFromOriginalVersion() throws IOException, JsonException {
+        String upgraded = upgrade(readFixture(), SaveFileMigrations.ORIGINAL_VERSION);
+        assertEquals("1.3.0", SaveFileMigrations.getCurrentVersion());
+        assertEquals(SaveFileMigrations.getCurrentVersion(),
+                     SaveFileMigrations.readVersion(new StringReader(upgraded)));
+
+        // Each distinct relationship type is held once, and no Relationship is left within the data of its Entity.
+        JsonObject json = new JsonObject(upgraded);
+        JsonArray labels = json.getJsonArray("relationship-labels");
+        Set<String> distinct = new HashSet<>();
+        for (int i = 0; i < labels.length(); i++) {
+            assertTrue(distinct.add(labels.getString(i)));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("Ally", "Enemy", "Lives In")), distinct);
+        assertFalse(upgraded.contains("relationship-type"));
+        JsonArray entities = json.getJsonArray("entities");
+        for (int i = 0; i < entities.length(); i++) {
+            assertFalse(entities.getJSONObject(i).getJsonObject("public-data").has("relationships"));
+            assertFalse(entities.getJSONObject(i).getJsonObject("secret-data").has("relationships"));
+        }
+
+        Campaign campaign = CampaignTranslator.fromJson(new StringReader(upgraded));
+        assertEquals("Borderlands", campaign.getName());
+        assertEquals(2, campaign.getCalendar().getMonths().size());
+        assertEquals("Thaw", campaign.getCalendar().getMonths().get(1).getName());
+
+        Map<UUID, Entity> byId = new HashMap<>();
+        for (Entity entity : campaign.getEntities()) {
+            byId.put(entity.getId(), entity);
+        }
+        assertEquals(4, byId.size());
+        Entity kara = byId.get(KARA);
+        assertEquals("Kara", kara.getName());
+        assertEquals(EntityType.PLAYER_CHARACTER, kara.getType());
+        assertEquals("A ranger of the north.\nCarries a bow.", kara.getPublicData().getDescription());
+        assertEquals(new HashSet<>(Arrays.asList("hero")), kara.getPublicData().getTags());
+        assertEquals("Hunted by the \"Grey Hand\".", kara.getSecretData().getDescription());
+        assertTrue(byId.get(STONEHOLD).isSecret());
+        assertEquals(new HashSet<>(Arrays.asList("villain")), byId.get(MAREK).getSecretData().getTags());
+
+        // Relationships within secret data are secret, and those within public data are not.
+        assertEquals(new HashSet<>(Arrays.asList(new Relationship(KARA, STONEHOLD, "Lives In", false),
+                                                 new Relationship(KARA, TOBIN, "Ally", false),
+                                                 new Relationship(KARA, MAREK, "Enemy", true))),
+                     relationships(campaign, KARA));
+        assertEquals(new HashSet<>(Arrays.asList(new Relationship(MAREK, STONEHOLD, "Lives In", true))),
+                     relationships(campaign, MAREK));
+        assertEquals(new HashSet<>(Arrays.asList(new Relationship(TOBIN, KARA, "Ally", false))),
+                     relationships(campaign, TOBIN));
+        assertTrue(relationships(campaign, STONEHOLD).isEmpty());
+
+        assertEquals(1, campaign.getTimelineEntries().size());
+        TimelineEntry siege = campaign.getTimelineEntries().iterator().next();
+        assertEquals("Siege of Stonehold", siege.getTitle());
+        assertEquals(1042, siege.getYear());
+        assertEquals(STONEHOLD, siege.getAssociatedId());
+    }
+
+    /** Upgrading through each step in turn gives the same save file as upgrading through the whole chain at once. */
+    @Test
+    public void testChainMatchesSteps() throws IOException, JsonException {
+        String direct = upgrade(readFixture(), SaveFileMigrations.ORIGINAL_VERSION);
+
+        StringWriter v120 = new StringWriter();
+        MigrationFilter filter = new NestedRelationshipsMigration().migrate(new JsonEventWriter(v120, 4));
+        try {
+            new JsonEventReader(readFixture()).readTo(filter);
+        } finally {
+            filter.close();
+        }
+        assertEquals("1.2.0", SaveFileMigrations.readVersion(new StringReader(v120.toString())));
+        assertTrue(v120.toString().contains("\"relationship-type\""));
+        assertFalse(v120.toString().contains("relationship-labels"));
+
+        assertEquals(direct, upgrade(new StringReader(v120.toString()), "1.2.0"));
+    }
+
+    /** A save file of the current version is passed through with its content unchanged. */
+    @Test
+    public void testCurrentVersionUnchanged() throws IOException, JsonException {
+        String upgraded = upgrade(readFixture(), SaveFileMigrations.ORIGINAL_VERSION);
+        assertEquals(upgraded, upgrade(new StringReader(upgraded), SaveFileMigrations.getCurrentVersion()));
+    }
+
+    /** Save files of unknown versions are refused. */
+    @Test(expected = JsonException.class)
+    public void testUnknownVersion() throws IOException, JsonException {
+        upgrade(new StringReader("{\"version\": \"0.9.0\"}"), "0.9.0");
+    }
+
+    /** A malformed v1.1.0 Relationship is refused rather than dropped. */
+    @Test(expected = JsonException.class)
+    public void testRelationshipWithoutType() throws IOException, JsonException {
+        String json = "{\"entities\": [{\"id\": \"" + KARA + "\", \"public-data\": {\"relationships\": [{\"id\": \"" +
+                      TOBIN + "\"}]}}]}";
+        upgrade(new StringReader(json), SaveFileMigrations.ORIGINAL_VERSION);
+    }
+
+    /**
+     * A MigrationFilter writes its target version first and drops the old one, tracks the depth and member names of
+     * each event, and passes everything else on unchanged.
+     */
+    @Test
+    public void testMigrationFilter() throws IOException, JsonException {
+        final List<String> seen = new ArrayList<>();
+        StringWriter out = new StringWriter();
+        MigrationFilter filter = new MigrationFilter(new JsonEventWriter(out, 0), "9.9.9") {
+            @Override
+            protected void filter(JsonToken token, String text) throws IOException, JsonException {
+                if (token == JsonToken.STRING || token == JsonToken.LITERAL) {
+                    StringBuilder path = new StringBuilder();
+                    for (int depth = 1; depth <= getDepth(); depth++) {
+                        path.append('/').append(getName(depth));
+                    }
+                    seen.add(path + "=" + text);
+                }
+                emit(token, text);
+            }
+
+            @Override
+            protected void finish() throws IOException, JsonException {
+                emit(JsonToken.NAME, "added");
+                emit(JsonToken.LITERAL, "true");
+            }
+        };
+        String json = "{\"a\": {\"b\": [1, {\"c\": \"x\"}]}, \"version\": \"1.0.0\", \"d\": null}";
+        new JsonEventReader(new StringReader(json)).readTo(filter);
+        assertEquals("{\"version\":\"9.9.9\",\"a\":{\"b\":[1,{\"c\":\"x\"}]},\"d\":null,\"added\":true}",
+                     out.toString());
+        assertEquals(Arrays.asList("/a/b/null=1", "/a/b/null/c=x", "/d=null"), seen);
+
+        for (String invalid : new String[] {"[]", "{\"version\": {}}"}) {
+            MigrationFilter passThrough = new MigrationFilter(new JsonEventWriter(new StringWriter(), 0), "9.9.9") {
+            };
+            try {
+                new JsonEventReader(new StringReader(invalid)).readTo(passThrough);
+                fail("An invalid campaign was migrated: " + invalid);
+            } catch (JsonException ex) {
+                assertNotNull(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the Relationships of the supplied Entity in the supplied campaign.
+     * @param campaign the campaign.
+     * @param entity the ID of the Entity.
+     * @return the Relationships of the Entity, which are none if it has no RelationshipManager.
+     */
+    private static Set<Relationship> relationships(Campaign campaign, UUID entity) {
+        RelationshipManager manager = campaign.getRelationships(entity);
+        return manager == null ? new HashSet<Relationship>() : new HashSet<>(manager.getAllRelationships());
+    }
+
+    /**
+     * Upgrades the save file read by the supplied Reader from the supplied version to the current version.
+     * @param reader the Reader of the save file.
+     * @param version the version of the save file.
+     * @return the upgraded save file.
+     * @throws IOException if an error occurs reading.
+     * @throws JsonException if the save file cannot be upgraded.
+     */
+    private static String upgrade(Reader reader, String version) throws IOException, JsonException {
+        StringWriter writer = new StringWriter();
+        SaveFileMigrations.upgrade(reader, version, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Returns a Reader of the v1.1.0 save file.
+     * @return a Reader of the v1.1.0 save file.
+     */
+    private static Reader readFixture() {
+        InputStream in = SaveFileMigrationsTest.class.getResourceAsStream(V1_1_0);
+        assertNotNull("Missing " + V1_1_0, in);
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+}